@@ -0,0 +1,73 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.framework.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+
+/**
+ * Test data shared by the benchmarks, shaped like a typical directory
+ * account.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static ConnectorObjectBuilder newAccountBuilder(int i) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(ObjectClass.ACCOUNT);
+        builder.setUid("uid=user" + i + ",ou=people,dc=example,dc=com");
+        builder.setName("user" + i);
+        builder.addAttribute("givenName", "Given" + i);
+        builder.addAttribute("sn", "Surname" + i);
+        builder.addAttribute("cn", "Given" + i + " Surname" + i);
+        builder.addAttribute("mail", "user" + i + "@example.com");
+        builder.addAttribute("telephoneNumber", "+1 555 0100", "+1 555 0101");
+        builder.addAttribute("employeeNumber", i);
+        builder.addAttribute("description", "Account number " + i + " of the benchmark");
+        builder.addAttribute("memberOf", "cn=group" + (i % 10) + ",ou=groups,dc=example,dc=com",
+                "cn=group" + (i % 7) + ",ou=groups,dc=example,dc=com",
+                "cn=all,ou=groups,dc=example,dc=com");
+        builder.addAttribute(AttributeBuilder.buildEnabled(i % 5 != 0));
+        builder.addAttribute(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME,
+                new GuardedString(("secret" + i).toCharArray())));
+        return builder;
+    }
+
+    static List<ConnectorObject> newAccounts(int count) {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>(count);
+        for (int i = 0; i < count; i++) {
+            objects.add(newAccountBuilder(i).build());
+        }
+        return objects;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the copies made by {@link SerializerUtil#cloneObject(Object)} and
+ * {@link SerializerUtil#copyObject(Object)} of typical operation options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyObjectBenchmark {
+
+    private Map<String, Object> options;
+
+    private OperationOptions operationOptions;
+
+    @Setup
+    public void setUp() {
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        builder.setAttributesToGet("uid", "name", "mail", "telephoneNumber", "description");
+        builder.setPageSize(100);
+        builder.setPagedResultsOffset(0);
+        builder.setRunAsUser("admin");
+        builder.setRunWithPassword(new GuardedString("secret".toCharArray()));
+        operationOptions = builder.build();
+        options = new HashMap<String, Object>(operationOptions.getOptions());
+    }
+
+    @Benchmark
+    public Object cloneObject() {
+        return SerializerUtil.cloneObject(options);
+    }
+
+    @Benchmark
+    public Object copyObject() {
+        return SerializerUtil.copyObject(options);
+    }
+
+    @Benchmark
+    public OperationOptions buildOperationOptions() {
+        return new OperationOptionsBuilder(operationOptions).build();
+    }
+}
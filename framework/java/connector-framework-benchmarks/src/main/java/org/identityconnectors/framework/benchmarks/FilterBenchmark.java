@@ -0,0 +1,91 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.framework.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.impl.api.local.operations.FilteredResultsHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluates a nested filter on the results of a search, as the framework
+ * does for connectors which cannot translate the filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private List<ConnectorObject> objects;
+
+    private Filter filter;
+
+    @Setup
+    public void setUp() {
+        objects = BenchmarkData.newAccounts(1000);
+        // (enabled && (sn starts with "Surname1" || mail ends with "7@example.com"))
+        // || (memberOf contains group3 && employeeNumber >= 500)
+        filter =
+                FilterBuilder.or(FilterBuilder.and(FilterBuilder.equalTo(AttributeBuilder
+                        .buildEnabled(true)), FilterBuilder.or(FilterBuilder
+                        .startsWith(AttributeBuilder.build("sn", "Surname1")), FilterBuilder
+                        .endsWith(AttributeBuilder.build("mail", "7@example.com")))),
+                        FilterBuilder.and(FilterBuilder.containsAllValues(AttributeBuilder.build(
+                                "memberOf", "cn=group3,ou=groups,dc=example,dc=com")),
+                                FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build(
+                                        "employeeNumber", 500))));
+    }
+
+    @Benchmark
+    public void filteredResultsHandler(final Blackhole blackhole) {
+        ResultsHandler handler = new FilteredResultsHandler(new ResultsHandler() {
+            public boolean handle(ConnectorObject connectorObject) {
+                blackhole.consume(connectorObject);
+                return true;
+            }
+        }, filter);
+        for (ConnectorObject object : objects) {
+            handler.handle(object);
+        }
+    }
+}
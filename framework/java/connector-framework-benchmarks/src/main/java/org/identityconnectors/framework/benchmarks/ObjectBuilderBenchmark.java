@@ -0,0 +1,114 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.framework.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the objects every connector creates for each result and request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectBuilderBenchmark {
+
+    private int counter = 0;
+
+    private ConnectorObject object;
+
+    @Setup
+    public void setUp() {
+        object = BenchmarkData.newAccountBuilder(42).build();
+    }
+
+    @Benchmark
+    public ConnectorObject buildConnectorObject() {
+        return BenchmarkData.newAccountBuilder(counter++ & 1023).build();
+    }
+
+    /**
+     * Accounts of two shapes in turn, like a search over accounts which do
+     * not all have the same attributes.
+     */
+    @Benchmark
+    public ConnectorObject buildMixedConnectorObject() {
+        final int i = counter++ & 1023;
+        final ConnectorObjectBuilder builder = BenchmarkData.newAccountBuilder(i);
+        if ((i & 1) == 1) {
+            builder.addAttribute("manager", "uid=user0,ou=people,dc=example,dc=com");
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public ConnectorObject copyConnectorObject() {
+        return new ConnectorObjectBuilder().add(object).build();
+    }
+
+    @Benchmark
+    public Attribute getAttributeByName() {
+        return object.getAttributeByName("TELEPHONENUMBER");
+    }
+
+    @Benchmark
+    public int connectorObjectHashCode() {
+        return object.hashCode();
+    }
+
+    @Benchmark
+    public Map<String, Attribute> attributeMap() {
+        return AttributeUtil.toMap(object.getAttributes());
+    }
+
+    @Benchmark
+    public OperationOptions buildOperationOptions() {
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        builder.setAttributesToGet("uid", "name", "mail", "telephoneNumber", "description");
+        builder.setPageSize(100);
+        builder.setPagedResultsCookie("cookie");
+        builder.setScope(OperationOptions.SCOPE_SUBTREE);
+        return builder.build();
+    }
+}
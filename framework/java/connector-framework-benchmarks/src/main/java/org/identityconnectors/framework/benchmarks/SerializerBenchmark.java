@@ -0,0 +1,129 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+package org.identityconnectors.framework.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
+import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
+import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.identityconnectors.framework.common.serializer.XmlObjectResultsHandler;
+import org.identityconnectors.framework.common.serializer.XmlObjectSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Round trips of a stream of {@link ConnectorObject}s through the binary and
+ * the XML serializer, as a remote search result is sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({ "1", "100" })
+    public int objectCount;
+
+    private final ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
+
+    private List<ConnectorObject> objects;
+
+    private byte[] binary;
+
+    private String xml;
+
+    @Setup
+    public void setUp() {
+        objects = BenchmarkData.newAccounts(objectCount);
+        binary = writeBinary();
+        xml = writeXml();
+    }
+
+    @Benchmark
+    public byte[] writeBinary() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * objectCount);
+        BinaryObjectSerializer serializer = factory.newBinarySerializer(out);
+        for (ConnectorObject object : objects) {
+            serializer.writeObject(object);
+        }
+        serializer.close();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Object> readBinary() {
+        BinaryObjectDeserializer deserializer =
+                factory.newBinaryDeserializer(new ByteArrayInputStream(binary));
+        List<Object> result = new ArrayList<Object>(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            result.add(deserializer.readObject());
+        }
+        deserializer.close();
+        return result;
+    }
+
+    @Benchmark
+    public String writeXml() {
+        StringWriter out = new StringWriter(2048 * objectCount);
+        XmlObjectSerializer serializer = factory.newXmlSerializer(out, true, true);
+        for (ConnectorObject object : objects) {
+            serializer.writeObject(object);
+        }
+        serializer.close(true);
+        return out.toString();
+    }
+
+    @Benchmark
+    public List<Object> readXml() {
+        final List<Object> result = new ArrayList<Object>(objectCount);
+        factory.deserializeXmlStream(new InputSource(new StringReader(xml)),
+                new XmlObjectResultsHandler() {
+                    public boolean handle(Object o) {
+                        result.add(o);
+                        return true;
+                    }
+                }, false);
+        return result;
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Set;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 
@@ -48,6 +49,8 @@ public class APIConfigurationImpl implements APIConfiguration {
 
     private ResultsHandlerConfiguration resultsHandlerConfiguration;
 
+    private ObjectCacheConfiguration objectCacheConfiguration;
+
     private boolean isConnectorPoolingSupported;
 
     private ConfigurationPropertiesImpl configurationProperties;
@@ -89,6 +92,9 @@ public class APIConfigurationImpl implements APIConfiguration {
         if (null != other.resultsHandlerConfiguration) {
             this.setResultsHandlerConfiguration(new ResultsHandlerConfiguration(other.resultsHandlerConfiguration));
         }
+        if (null != other.objectCacheConfiguration) {
+            this.setObjectCacheConfiguration(new ObjectCacheConfiguration(other.objectCacheConfiguration));
+        }
         this.isConnectorPoolingSupported = other.isConnectorPoolingSupported;
         ConfigurationPropertiesImpl prop = new ConfigurationPropertiesImpl();
         prop.setProperties(other.getConfigurationProperties().getProperties());
@@ -231,4 +237,18 @@ public class APIConfigurationImpl implements APIConfiguration {
     public void setResultsHandlerConfiguration(ResultsHandlerConfiguration config) {
         this.resultsHandlerConfiguration = config;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ObjectCacheConfiguration getObjectCacheConfiguration() {
+        if (null == objectCacheConfiguration) {
+            objectCacheConfiguration = new ObjectCacheConfiguration();
+        }
+        return objectCacheConfiguration;
+    }
+
+    public void setObjectCacheConfiguration(ObjectCacheConfiguration config) {
+        this.objectCacheConfiguration = config;
+    }
 }
@@ -24,16 +24,22 @@
 package org.identityconnectors.framework.impl.api;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.text.MessageFormat;
+import java.util.List;
 import java.util.Set;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -47,6 +53,8 @@ import org.identityconnectors.framework.api.operations.TestApiOp;
 import org.identityconnectors.framework.api.operations.UpdateApiOp;
 import org.identityconnectors.framework.api.operations.ValidateApiOp;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
@@ -54,19 +62,31 @@ import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.ScriptContext;
 import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.metrics.FacadeMetrics;
 
 /**
  * Implements all the methods of the facade.
  */
 public abstract class AbstractConnectorFacade implements ConnectorFacade {
 
+    /**
+     * Operations which change the objects held in the object cache.
+     */
+    @SuppressWarnings("unchecked")
+    private static final Set<Class<? extends APIOperation>> INVALIDATING_OPERATIONS =
+            CollectionUtil.<Class<? extends APIOperation>> newReadOnlySet(UpdateApiOp.class,
+                    DeleteApiOp.class, BatchApiOp.class, SyncApiOp.class);
+
     private final APIConfigurationImpl configuration;
     private final String connectorFacadeKey;
+    private final FacadeMetrics metrics;
+    private final ObjectCache objectCache;
 
     /**
      * Builds up the maps of supported operations and calls.
@@ -83,22 +103,63 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         this.configuration = (APIConfigurationImpl) SerializerUtil.deserializeBinaryObject(bytes);
         // parent ref not included in the clone
         this.configuration.setConnectorInfo(configuration.getConnectorInfo());
+        final boolean cached = isObjectCacheEnabled(this.configuration);
+        this.metrics = new FacadeMetrics(this.configuration.getSupportedOperations(), cached);
+        this.objectCache =
+                cached ? new ObjectCache(this.configuration.getObjectCacheConfiguration(), metrics
+                        .getObjectCacheMetrics()) : null;
     }
 
     /**
      * Builds up the maps of supported operations and calls.
      */
     public AbstractConnectorFacade(String configuration, final AbstractConnectorInfo connectorInfo) {
+        this(configuration, connectorInfo, null);
+    }
+
+    /**
+     * Builds up the maps of supported operations and calls, with an object
+     * cache configuration which is not part of the serialized configuration.
+     *
+     * @param cacheConfiguration
+     *            replaces the deserialized object cache configuration if not
+     *            null.
+     */
+    protected AbstractConnectorFacade(String configuration,
+            final AbstractConnectorInfo connectorInfo,
+            final ObjectCacheConfiguration cacheConfiguration) {
         Assertions.nullCheck(configuration, "configuration");
         Assertions.nullCheck(connectorInfo, "connectorInfo");
         this.connectorFacadeKey = configuration;
         this.configuration = (APIConfigurationImpl) SerializerUtil.deserializeBase64Object(configuration);
         // parent ref not included in the clone
         this.configuration.setConnectorInfo(connectorInfo);
+        if (null != cacheConfiguration) {
+            this.configuration.setObjectCacheConfiguration(new ObjectCacheConfiguration(
+                    cacheConfiguration));
+        }
+        final boolean cached = isObjectCacheEnabled(this.configuration);
+        this.metrics = new FacadeMetrics(this.configuration.getSupportedOperations(), cached);
+        this.objectCache =
+                cached ? new ObjectCache(this.configuration.getObjectCacheConfiguration(), metrics
+                        .getObjectCacheMetrics()) : null;
+    }
+
+    private static boolean isObjectCacheEnabled(final APIConfigurationImpl configuration) {
+        final ObjectCacheConfiguration cacheConfiguration =
+                configuration.getObjectCacheConfiguration();
+        if (!cacheConfiguration.isEnabled() || !configuration.isSupportedOperation(GetApiOp.class)) {
+            return false;
+        }
+        cacheConfiguration.validate();
+        return true;
     }
 
     /**
      * Return an instance of an API operation.
+     * <p/>
+     * With the object cache enabled the operations which change objects run
+     * through the methods of this facade, so they invalidate the cache too.
      *
      * @return <code>null</code> if the operation is not support otherwise
      *         return an instance of the operation.
@@ -108,7 +169,20 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         if (!configuration.isSupportedOperation(api)) {
             return null;
         }
-        return getOperationImplementation(api);
+        if (null != objectCache && INVALIDATING_OPERATIONS.contains(api)) {
+            // run through this facade so the changed objects leave the cache
+            return newAPIOperationProxy(api, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    try {
+                        return method.invoke(AbstractConnectorFacade.this, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }
+            });
+        }
+        return createMetricsProxy(api, getOperationImplementation(api));
     }
 
     /**
@@ -131,6 +205,16 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
         return configuration.getSupportedOperations();
     }
 
+    /**
+     * Gets the call count, error count and latency of the operations of this
+     * facade.
+     *
+     * @since 1.4
+     */
+    public final FacadeMetrics getMetrics() {
+        return metrics;
+    }
+
     // =======================================================================
     // Operation API Methods
     // =======================================================================
@@ -155,8 +239,12 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      */
     public final void delete(final ObjectClass objectClass, final Uid uid,
             final OperationOptions options) {
-        ((DeleteApiOp) this.getOperationCheckSupported(DeleteApiOp.class)).delete(objectClass, uid,
-                options);
+        try {
+            ((DeleteApiOp) this.getOperationCheckSupported(DeleteApiOp.class)).delete(objectClass,
+                    uid, options);
+        } finally {
+            invalidate(objectClass, uid);
+        }
     }
 
     /**
@@ -173,8 +261,16 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      */
     public final Uid update(final ObjectClass objectClass, final Uid uid,
             final Set<Attribute> attrs, final OperationOptions options) {
-        return ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class)).update(
-                objectClass, uid, attrs, options);
+        Uid result = null;
+        try {
+            result =
+                    ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class)).update(
+                            objectClass, uid, attrs, options);
+            return result;
+        } finally {
+            invalidate(objectClass, uid);
+            invalidate(objectClass, result);
+        }
     }
 
     /**
@@ -182,8 +278,16 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      */
     public final Uid addAttributeValues(final ObjectClass objclass, final Uid uid,
             final Set<Attribute> attrs, final OperationOptions options) {
-        return ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class))
-                .addAttributeValues(objclass, uid, attrs, options);
+        Uid result = null;
+        try {
+            result =
+                    ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class))
+                            .addAttributeValues(objclass, uid, attrs, options);
+            return result;
+        } finally {
+            invalidate(objclass, uid);
+            invalidate(objclass, result);
+        }
     }
 
     /**
@@ -191,8 +295,16 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
      */
     public final Uid removeAttributeValues(final ObjectClass objclass, final Uid uid,
             final Set<Attribute> attrs, final OperationOptions options) {
-        return ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class))
-                .removeAttributeValues(objclass, uid, attrs, options);
+        Uid result = null;
+        try {
+            result =
+                    ((UpdateApiOp) this.getOperationCheckSupported(UpdateApiOp.class))
+                            .removeAttributeValues(objclass, uid, attrs, options);
+            return result;
+        } finally {
+            invalidate(objclass, uid);
+            invalidate(objclass, result);
+        }
     }
 
     /**
@@ -233,11 +345,26 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * The object comes from the object cache of the facade when it is
+     * enabled and the options have no other option than the attributes to
+     * get.
      */
     public final ConnectorObject getObject(ObjectClass objectClass, Uid uid,
             OperationOptions options) {
-        return ((GetApiOp) this.getOperationCheckSupported(GetApiOp.class)).getObject(objectClass,
-                uid, options);
+        final GetApiOp op = (GetApiOp) this.getOperationCheckSupported(GetApiOp.class);
+        if (null == objectCache || !ObjectCache.isCacheable(objectClass, uid, options)) {
+            return op.getObject(objectClass, uid, options);
+        }
+        ConnectorObject object = objectCache.get(objectClass, uid, options);
+        if (null == object) {
+            final long generation = objectCache.getGeneration();
+            object = op.getObject(objectClass, uid, options);
+            if (null != object) {
+                objectCache.put(objectClass, uid, options, object, generation);
+            }
+        }
+        return object;
     }
 
     /**
@@ -257,10 +384,22 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
     /**
      * {@inheritDoc}
      */
-    public final SyncToken sync(ObjectClass objectClass, SyncToken token,
-            SyncResultsHandler handler, OperationOptions options) {
+    public final SyncToken sync(final ObjectClass objectClass, SyncToken token,
+            final SyncResultsHandler handler, OperationOptions options) {
+        SyncResultsHandler syncHandler = handler;
+        if (null != objectCache && null != handler) {
+            syncHandler = new SyncResultsHandler() {
+                public boolean handle(SyncDelta delta) {
+                    final ObjectClass deltaClass =
+                            null != delta.getObjectClass() ? delta.getObjectClass() : objectClass;
+                    objectCache.invalidate(deltaClass, delta.getUid());
+                    objectCache.invalidate(deltaClass, delta.getPreviousUid());
+                    return handler.handle(delta);
+                }
+            };
+        }
         return ((SyncApiOp) this.getOperationCheckSupported(SyncApiOp.class)).sync(objectClass,
-                token, handler, options);
+                token, syncHandler, options);
     }
 
     /**
@@ -271,6 +410,63 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
                 .getLatestSyncToken(objectClass);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Connectors without a native batch run the operations with the create,
+     * update and delete operations, spread across the pooled connectors.
+     */
+    public final List<BatchResult> executeBatch(final List<BatchOperation> operations,
+            final OperationOptions options) {
+        if (null == objectCache) {
+            return runBatch(operations, options);
+        }
+        List<BatchResult> results = null;
+        try {
+            results = runBatch(operations, options);
+            return results;
+        } finally {
+            if (null != operations) {
+                for (BatchOperation operation : operations) {
+                    if (null != operation) {
+                        objectCache.invalidate(operation.getObjectClass(), operation.getUid());
+                    }
+                }
+            }
+            if (null != results) {
+                for (int i = 0; i < results.size() && i < operations.size(); i++) {
+                    if (null != operations.get(i)) {
+                        objectCache.invalidate(operations.get(i).getObjectClass(), results.get(i)
+                                .getUid());
+                    }
+                }
+            }
+        }
+    }
+
+    private List<BatchResult> runBatch(final List<BatchOperation> operations,
+            final OperationOptions options) {
+        if (configuration.isSupportedOperation(BatchApiOp.class)) {
+            return ((BatchApiOp) this.getOperationCheckSupported(BatchApiOp.class)).executeBatch(
+                    operations, options);
+        }
+        int parallelism = ParallelBatch.DEFAULT_PARALLELISM;
+        if (configuration.isConnectorPoolingSupported()
+                && configuration.getConnectorPoolConfiguration().getMaxObjects() > 0) {
+            parallelism = configuration.getConnectorPoolConfiguration().getMaxObjects();
+        }
+        return new ParallelBatch((CreateApiOp) getOperation(CreateApiOp.class),
+                (UpdateApiOp) getOperation(UpdateApiOp.class),
+                (DeleteApiOp) getOperation(DeleteApiOp.class), operations, options)
+                .execute(parallelism);
+    }
+
+    private void invalidate(final ObjectClass objectClass, final Uid uid) {
+        if (null != objectCache) {
+            objectCache.invalidate(objectClass, uid);
+        }
+    }
+
     private static final String MSG = "Operation ''{0}'' not supported.";
 
     private APIOperation getOperationCheckSupported(final Class<? extends APIOperation> api) {
@@ -279,7 +475,7 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
             String str = MessageFormat.format(MSG, api);
             throw new UnsupportedOperationException(str);
         }
-        return getOperationImplementation(api);
+        return createMetricsProxy(api, getOperationImplementation(api));
     }
 
     /**
@@ -336,4 +532,19 @@ public abstract class AbstractConnectorFacade implements ConnectorFacade {
             APIOperation target) {
         return newAPIOperationProxy(api, new LoggingProxy(api, target));
     }
+
+    /**
+     * Creates the proxy recording the metrics of the given operation.
+     *
+     * @param api
+     *            The operation
+     * @param target
+     *            The underlying object
+     * @return The proxy
+     */
+    private APIOperation createMetricsProxy(Class<? extends APIOperation> api,
+            APIOperation target) {
+        return newAPIOperationProxy(api, new MetricsProxy(metrics.getOperationMetrics(api),
+                target));
+    }
 }
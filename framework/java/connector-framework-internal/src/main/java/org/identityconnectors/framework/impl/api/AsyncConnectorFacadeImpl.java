@@ -0,0 +1,480 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
+import org.identityconnectors.framework.api.CompletionCallback;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.ScriptContext;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * Runs the operations of a local or remote {@link ConnectorFacade} on a pool
+ * of threads of its own.
+ * <p/>
+ * The operations still go through the facade, so the timeouts, the metrics
+ * and the connector pool apply to them as to any blocking call. The timed
+ * operations other than search and sync run on the thread of this facade
+ * under the watchdog of {@link MethodTimeoutProxy} rather than on a timeout
+ * worker.
+ *
+ * @since 1.4
+ */
+public class AsyncConnectorFacadeImpl implements AsyncConnectorFacade {
+
+    private static final Log LOG = Log.getLog(AsyncConnectorFacadeImpl.class);
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    // this thread already waits for the operation, so the
+                    // timeout needs no worker of its own
+                    MethodTimeoutProxy.useWatchdogOnCurrentThread();
+                    r.run();
+                }
+            }, "AsyncConnectorFacade-" + THREAD_NUMBER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final ConnectorFacade facade;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates the facade.
+     *
+     * @param facade
+     *            the facade running the operations.
+     * @param maxConcurrentOperations
+     *            the maximum number of operations running at the same time.
+     * @param maxQueuedOperations
+     *            the maximum number of operations waiting for a thread.
+     */
+    public AsyncConnectorFacadeImpl(final ConnectorFacade facade,
+            final int maxConcurrentOperations, final int maxQueuedOperations) {
+        Assertions.nullCheck(facade, "facade");
+        if (maxConcurrentOperations < 1) {
+            throw new IllegalArgumentException("Max concurrent operations is less than one.");
+        }
+        if (maxQueuedOperations < 0) {
+            throw new IllegalArgumentException("Max queued operations is less than zero.");
+        }
+        this.facade = facade;
+        final BlockingQueue<Runnable> queue =
+                maxQueuedOperations == 0 ? new SynchronousQueue<Runnable>()
+                        : new LinkedBlockingQueue<Runnable>(maxQueuedOperations);
+        executor =
+                new ThreadPoolExecutor(maxConcurrentOperations, maxConcurrentOperations, 60L,
+                        TimeUnit.SECONDS, queue, THREAD_FACTORY);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ConnectorFacade getConnectorFacade() {
+        return facade;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void dispose() {
+        for (Runnable waiting : executor.shutdownNow()) {
+            ((Future<?>) waiting).cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of operations running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of operations waiting for a thread.
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    // =======================================================================
+    // Operation API Methods
+    // =======================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> create(final ObjectClass objectClass, final Set<Attribute> createAttributes,
+            final OperationOptions options, final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.create(objectClass, createAttributes, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> update(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> replaceAttributes, final OperationOptions options,
+            final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.update(objectClass, uid, replaceAttributes, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> addAttributeValues(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> valuesToAdd, final OperationOptions options,
+            final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.addAttributeValues(objectClass, uid, valuesToAdd, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> removeAttributeValues(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> valuesToRemove, final OperationOptions options,
+            final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.removeAttributeValues(objectClass, uid, valuesToRemove, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Void> delete(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options, final CompletionCallback<? super Void> callback) {
+        return submit(new Callable<Void>() {
+            public Void call() {
+                facade.delete(objectClass, uid, options);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<ConnectorObject> getObject(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options,
+            final CompletionCallback<? super ConnectorObject> callback) {
+        return submit(new Callable<ConnectorObject>() {
+            public ConnectorObject call() {
+                return facade.getObject(objectClass, uid, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<SearchResult> search(final ObjectClass objectClass, final Filter filter,
+            final ResultsHandler handler, final OperationOptions options,
+            final CompletionCallback<? super SearchResult> callback) {
+        Assertions.nullCheck(handler, "handler");
+        final CancellableHandler cancellable = new CancellableHandler(handler, null);
+        final Future<SearchResult> future = submit(new Callable<SearchResult>() {
+            public SearchResult call() {
+                return facade.search(objectClass, filter, cancellable, options);
+            }
+        }, callback);
+        cancellable.future = future;
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<SyncToken> sync(final ObjectClass objectClass, final SyncToken token,
+            final SyncResultsHandler handler, final OperationOptions options,
+            final CompletionCallback<? super SyncToken> callback) {
+        Assertions.nullCheck(handler, "handler");
+        final CancellableHandler cancellable = new CancellableHandler(null, handler);
+        final Future<SyncToken> future = submit(new Callable<SyncToken>() {
+            public SyncToken call() {
+                return facade.sync(objectClass, token, cancellable, options);
+            }
+        }, callback);
+        cancellable.future = future;
+        return future;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<SyncToken> getLatestSyncToken(final ObjectClass objectClass,
+            final CompletionCallback<? super SyncToken> callback) {
+        return submit(new Callable<SyncToken>() {
+            public SyncToken call() {
+                return facade.getLatestSyncToken(objectClass);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<List<BatchResult>> executeBatch(final List<BatchOperation> operations,
+            final OperationOptions options,
+            final CompletionCallback<? super List<BatchResult>> callback) {
+        return submit(new Callable<List<BatchResult>>() {
+            public List<BatchResult> call() {
+                return facade.executeBatch(operations, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> authenticate(final ObjectClass objectClass, final String username,
+            final GuardedString password, final OperationOptions options,
+            final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.authenticate(objectClass, username, password, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Uid> resolveUsername(final ObjectClass objectClass, final String username,
+            final OperationOptions options, final CompletionCallback<? super Uid> callback) {
+        return submit(new Callable<Uid>() {
+            public Uid call() {
+                return facade.resolveUsername(objectClass, username, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Object> runScriptOnConnector(final ScriptContext request,
+            final OperationOptions options, final CompletionCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() {
+                return facade.runScriptOnConnector(request, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Object> runScriptOnResource(final ScriptContext request,
+            final OperationOptions options, final CompletionCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() {
+                return facade.runScriptOnResource(request, options);
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Schema> schema(final CompletionCallback<? super Schema> callback) {
+        return submit(new Callable<Schema>() {
+            public Schema call() {
+                return facade.schema();
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Void> test(final CompletionCallback<? super Void> callback) {
+        return submit(new Callable<Void>() {
+            public Void call() {
+                facade.test();
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<Void> validate(final CompletionCallback<? super Void> callback) {
+        return submit(new Callable<Void>() {
+            public Void call() {
+                facade.validate();
+                return null;
+            }
+        }, callback);
+    }
+
+    private <V> Future<V> submit(final Callable<V> operation,
+            final CompletionCallback<? super V> callback) {
+        final Locale locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+        final AsyncTask<V> task = new AsyncTask<V>(new Callable<V>() {
+            public V call() throws Exception {
+                if (null != locale) {
+                    CurrentLocale.set(locale);
+                }
+                try {
+                    return operation.call();
+                } finally {
+                    if (null != locale) {
+                        CurrentLocale.clear();
+                    }
+                }
+            }
+        }, callback);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Reports the outcome of the operation to the callback.
+     */
+    private static final class AsyncTask<V> extends FutureTask<V> {
+
+        private final CompletionCallback<? super V> callback;
+
+        AsyncTask(final Callable<V> callable, final CompletionCallback<? super V> callback) {
+            super(callable);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (null == callback) {
+                return;
+            }
+            try {
+                if (isCancelled()) {
+                    callback.failed(new CancellationException());
+                    return;
+                }
+                final V result;
+                try {
+                    result = get();
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    callback.failed(cause instanceof RuntimeException ? (RuntimeException) cause
+                            : new ConnectorException(cause));
+                    return;
+                } catch (InterruptedException e) {
+                    // never happens, the task is done
+                    Thread.currentThread().interrupt();
+                    callback.failed(ConnectorException.wrap(e));
+                    return;
+                }
+                callback.completed(result);
+            } catch (RuntimeException e) {
+                LOG.warn(e, "CompletionCallback failed");
+            }
+        }
+    }
+
+    /**
+     * Stops the search or the sync once the operation has been cancelled.
+     */
+    private static final class CancellableHandler implements ResultsHandler, SyncResultsHandler {
+
+        private final ResultsHandler resultsHandler;
+        private final SyncResultsHandler syncResultsHandler;
+        volatile Future<?> future = null;
+
+        CancellableHandler(final ResultsHandler resultsHandler,
+                final SyncResultsHandler syncResultsHandler) {
+            this.resultsHandler = resultsHandler;
+            this.syncResultsHandler = syncResultsHandler;
+        }
+
+        public boolean handle(final ConnectorObject object) {
+            return !isCancelled() && resultsHandler.handle(object);
+        }
+
+        public boolean handle(final SyncDelta delta) {
+            return !isCancelled() && syncResultsHandler.handle(delta);
+        }
+
+        private boolean isCancelled() {
+            final Future<?> f = future;
+            return null != f && f.isCancelled();
+        }
+    }
+}
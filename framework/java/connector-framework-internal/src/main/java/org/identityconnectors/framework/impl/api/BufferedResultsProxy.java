@@ -19,27 +19,88 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
- * Portions Copyrighted 2010-2013 ForgeRock AS.
+ * Portions Copyrighted 2010-2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 
+/**
+ * Runs a streaming operation on a producer thread and hands the results back
+ * to the calling thread through a bounded buffer, enforcing the timeout on an
+ * element by element basis.
+ * <p/>
+ * Producers run on a shared, bounded pool of daemon threads. When every pooled
+ * thread is busy the producer falls back to a dedicated thread so a burst of
+ * searches can never dead-lock on each other. The consumer drains the buffer
+ * into a local batch so the lock on the buffer is taken once per batch rather
+ * than once per object.
+ */
 public class BufferedResultsProxy implements InvocationHandler {
 
     private final static Log LOG = Log.getLog(BufferedResultsProxy.class);
 
+    /**
+     * System property to override the maximum number of pooled producer
+     * threads.
+     *
+     * @since 1.4
+     */
+    public static final String MAX_PRODUCERS_PROPERTY =
+            "org.identityconnectors.framework.bufferedResults.maxProducers";
+
+    /**
+     * How long the producer waits for room in the buffer before checking
+     * whether the consumer has gone away.
+     */
+    private static final long PRODUCER_POLL_MILLIS = 100;
+
+    private static final ThreadFactory PRODUCER_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread =
+                    new Thread(r, "BufferedResultsProducer-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static ThreadPoolExecutor producerExecutor = null;
+
+    private static synchronized ThreadPoolExecutor getProducerExecutor() {
+        if (null == producerExecutor) {
+            int maxProducers =
+                    Integer.getInteger(MAX_PRODUCERS_PROPERTY, Math.max(16, Runtime.getRuntime()
+                            .availableProcessors() * 4));
+            producerExecutor =
+                    new ThreadPoolExecutor(0, Math.max(1, maxProducers), 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), PRODUCER_THREAD_FACTORY);
+        }
+        return producerExecutor;
+    }
+
     private final Object target;
     private final int bufferSize;
     private final long timeoutMillis;
@@ -63,14 +124,19 @@ public class BufferedResultsProxy implements InvocationHandler {
         this.bufferSize = (bufferSize < 1) ? 100 : bufferSize;
     }
 
-    private static class BufferedResultsHandler extends Thread implements ObjectStreamHandler {
+    private static class BufferedResultsHandler implements Runnable, ObjectStreamHandler {
         private static final Object DONE = new Object();
         private final AtomicBoolean stopped = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
         private final Method method;
         private final Object target;
         private final Object[] arguments;
         private final long timeoutMillis;
         private final ArrayBlockingQueue<Object> buffer;
+        private final List<Object> batch;
+        private final Locale locale;
+        private int batchIndex = 0;
+        private volatile Thread producer = null;
         private Object result = null;
 
         public BufferedResultsHandler(Method method, Object target, Object[] arguments,
@@ -79,7 +145,9 @@ public class BufferedResultsProxy implements InvocationHandler {
             this.target = target;
             this.arguments = arguments;
             buffer = new ArrayBlockingQueue<Object>(bufferSize);
+            batch = new ArrayList<Object>(bufferSize);
             this.timeoutMillis = timeoutMillis;
+            this.locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
         }
 
         public boolean handle(final Object obj) {
@@ -88,7 +156,7 @@ public class BufferedResultsProxy implements InvocationHandler {
             }
             Assertions.nullCheck(obj, "obj");
             try {
-                buffer.put(obj);
+                offer(obj);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw ConnectorException.wrap(e);
@@ -96,6 +164,19 @@ public class BufferedResultsProxy implements InvocationHandler {
             return !isStopped();
         }
 
+        /**
+         * Puts the object in the buffer, giving up once the consumer has
+         * stopped so a pooled producer thread is never parked forever on a
+         * full buffer.
+         */
+        private void offer(final Object obj) throws InterruptedException {
+            while (!buffer.offer(obj, PRODUCER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (isStopped()) {
+                    return;
+                }
+            }
+        }
+
         /**
          * Stops the thread and optionally waits for it to finish.
          *
@@ -105,7 +186,7 @@ public class BufferedResultsProxy implements InvocationHandler {
          *             If we said to wait and we timed out.
          */
         public void stop(boolean wait) {
-            if (wait && Thread.currentThread() == this) {
+            if (wait && Thread.currentThread() == producer) {
                 throw new IllegalStateException("A thread cannot wait on itself");
             }
 
@@ -114,17 +195,19 @@ public class BufferedResultsProxy implements InvocationHandler {
                 // clear out the queue - this will cause the thread to
                 // wakeup so that it can exit
                 buffer.clear();
+                batch.clear();
                 if (wait) {
+                    boolean done;
                     try {
-                        // join with a time-limit. this may timeout
+                        // wait with a time-limit. this may timeout
                         // if we are blocked in the producer
-                        join(timeoutMillis);
+                        done = finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw ConnectorException.wrap(e);
                     }
-                    // if we're still alive, we've timed out
-                    if (isAlive()) {
+                    // if the producer is still running, we've timed out
+                    if (!done) {
                         throw new OperationTimeoutException();
                     }
                 }
@@ -150,23 +233,45 @@ public class BufferedResultsProxy implements InvocationHandler {
             return actualArguments;
         }
 
-        @Override
         public void run() {
+            producer = Thread.currentThread();
+            // propagate current locale since this may be a pooled thread
+            if (locale != null) {
+                CurrentLocale.set(locale);
+            }
             try {
                 try {
                     result = method.invoke(target, createActualArguments());
-                    buffer.put(DONE);
+                    offer(DONE);
                 } catch (RuntimeException e) {
-                    buffer.put(e);
+                    offer(e);
                 } catch (InvocationTargetException e) {
-                    buffer.put(e.getTargetException());
+                    offer(e.getTargetException());
                 } catch (InterruptedException e) {
                     throw e;
                 } catch (Exception e) {
-                    buffer.put(ConnectorException.wrap(e));
+                    offer(ConnectorException.wrap(e));
                 }
             } catch (InterruptedException e) {
                 LOG.error(e, null);
+            } finally {
+                CurrentLocale.clear();
+                producer = null;
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Submits this producer to the shared pool, or to a dedicated thread
+         * if the pool is saturated.
+         */
+        public void start() {
+            try {
+                getProducerExecutor().execute(this);
+            } catch (RejectedExecutionException e) {
+                LOG.ok("Producer pool is saturated, starting a dedicated thread");
+                Thread thread = PRODUCER_THREAD_FACTORY.newThread(this);
+                thread.start();
             }
         }
 
@@ -184,11 +289,21 @@ public class BufferedResultsProxy implements InvocationHandler {
                 return null;
             }
             Object obj;
-            try {
-                obj = buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw ConnectorException.wrap(e);
+            if (batchIndex < batch.size()) {
+                obj = batch.get(batchIndex++);
+            } else {
+                batch.clear();
+                batchIndex = 0;
+                try {
+                    obj = buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ConnectorException.wrap(e);
+                }
+                if (obj != null) {
+                    // take whatever else is ready in one go
+                    buffer.drainTo(batch);
+                }
             }
             if (obj == null) {
                 stop(false); // stop, but don't wait since we've already timed
@@ -240,11 +355,8 @@ public class BufferedResultsProxy implements InvocationHandler {
                     "We only support operations that have a single stream handler " + method);
         }
 
-        // this guy will automatically inherit
-        // CurrentLocale since we are using a new thread
-        // NOTE: if we ever introduce thread pooling
-        // here, it needs to explicitly propagate
-        bufHandler.setDaemon(true);
+        // the handler explicitly propagates CurrentLocale
+        // since the producer may run on a pooled thread
         bufHandler.start();
         while (!bufHandler.isStopped()) {
             Object obj = bufHandler.getNextObject();
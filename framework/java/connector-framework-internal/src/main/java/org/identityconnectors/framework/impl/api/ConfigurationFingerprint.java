@@ -0,0 +1,371 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.script.Script;
+import org.identityconnectors.common.security.GuardedByteArray;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
+
+/**
+ * Computes a stable digest of a connector configuration.
+ * <p>
+ * The digest is fed field by field straight from the configuration objects,
+ * so it is a lot cheaper than serializing the whole
+ * {@link APIConfigurationImpl}. Two configurations that are equal produce the
+ * same fingerprint regardless of the iteration order of their maps and sets.
+ * Confidential values are digested in clear form and never leave this class.
+ * <p>
+ * The digest of each configuration property value and of the whole
+ * configuration properties is kept until a value is set, so a guarded value is
+ * only decrypted once. A guarded value changed in place is not digested again
+ * until it is set. The digest of a remote framework connection is kept for as
+ * long as its connection info is in use.
+ *
+ * @since 1.4
+ */
+public final class ConfigurationFingerprint {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Comparator<Class<?>> CLASS_NAME_ORDER = new Comparator<Class<?>>() {
+        public int compare(Class<?> o1, Class<?> o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    /**
+     * The digests of the remote framework connections, they are immutable.
+     */
+    private static final Map<RemoteFrameworkConnectionInfo, byte[]> REMOTE_FINGERPRINTS =
+            Collections.synchronizedMap(new WeakHashMap<RemoteFrameworkConnectionInfo, byte[]>());
+
+    private final MessageDigest digest;
+
+    private ConfigurationFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a complete API configuration: the connector
+     * it belongs to and the remote framework connection if any, the
+     * configuration properties, the pool, results handler and object cache
+     * configuration, the timeouts and the producer buffer size.
+     *
+     * @param configuration
+     *            the configuration to digest.
+     * @return the Base64 encoded fingerprint.
+     */
+    public static String of(final APIConfigurationImpl configuration) {
+        final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+        final AbstractConnectorInfo connectorInfo = configuration.getConnectorInfo();
+        if (null != connectorInfo) {
+            fingerprint.update(connectorInfo.getConnectorKey());
+            if (connectorInfo instanceof RemoteConnectorInfoImpl) {
+                final RemoteFrameworkConnectionInfo info =
+                        ((RemoteConnectorInfoImpl) connectorInfo).getRemoteConnectionInfo();
+                if (null == info) {
+                    fingerprint.update(false);
+                } else {
+                    fingerprint.update(true);
+                    fingerprint.update(fingerprint(info));
+                }
+            }
+        }
+        fingerprint.update(configuration.getConfigurationProperties());
+        fingerprint.update(configuration.isConnectorPoolingSupported());
+        fingerprint.update(configuration.getConnectorPoolConfiguration());
+        fingerprint.update(configuration.getResultsHandlerConfiguration());
+        fingerprint.update(configuration.getObjectCacheConfiguration());
+        fingerprint.update(configuration.getProducerBufferSize());
+        fingerprint.update(configuration.getTimeoutMap());
+        fingerprint.update(configuration.getSupportedOperations());
+        return Base64.encode(fingerprint.digest.digest());
+    }
+
+    /**
+     * Computes a hash code of the identity of a connector pool. Equal
+     * arguments always yield the same hash code, but unlike
+     * {@link ConfigurationPropertiesImpl#hashCode()} the property values are
+     * taken into account.
+     *
+     * @param connectorKey
+     *            the key of the pooled connector.
+     * @param properties
+     *            the configuration of the pooled connectors.
+     * @param poolConfiguration
+     *            the configuration of the pool.
+     * @return the hash code.
+     */
+    public static int hashCode(final ConnectorKey connectorKey,
+            final ConfigurationPropertiesImpl properties,
+            final ObjectPoolConfiguration poolConfiguration) {
+        final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+        fingerprint.update(connectorKey);
+        fingerprint.update(properties);
+        fingerprint.update(poolConfiguration);
+        final byte[] bytes = fingerprint.digest.digest();
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8
+                | (bytes[3] & 0xFF);
+    }
+
+    private void update(final ConnectorKey key) {
+        if (null == key) {
+            update(false);
+        } else {
+            update(true);
+            update(key.getBundleName());
+            update(key.getBundleVersion());
+            update(key.getConnectorName());
+        }
+    }
+
+    private static byte[] fingerprint(final RemoteFrameworkConnectionInfo info) {
+        byte[] bytes = REMOTE_FINGERPRINTS.get(info);
+        if (null == bytes) {
+            final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+            fingerprint.update(info.getHost());
+            fingerprint.update(info.getPort());
+            fingerprint.update(info.getUseSSL());
+            fingerprint.update(info.getTrustManagers().size());
+            for (Object trustManager : info.getTrustManagers()) {
+                fingerprint.update(trustManager.getClass().getName());
+            }
+            fingerprint.updateValue(info.getKey());
+            fingerprint.update(info.getTimeout());
+            fingerprint.update(info.getConnectionPoolConfiguration());
+            fingerprint.update(info.isMultiplexingEnabled());
+            fingerprint.update(info.isCompressionEnabled());
+            bytes = fingerprint.digest.digest();
+            REMOTE_FINGERPRINTS.put(info, bytes);
+        }
+        return bytes;
+    }
+
+    private static byte[] fingerprint(final ConfigurationPropertyImpl property) {
+        byte[] bytes = property.getFingerprint();
+        if (null == bytes) {
+            final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+            fingerprint.updateValue(property.getValue());
+            bytes = fingerprint.digest.digest();
+            property.setFingerprint(bytes);
+        }
+        return bytes;
+    }
+
+    private void update(final ConfigurationPropertiesImpl properties) {
+        if (null == properties) {
+            update(-1);
+            return;
+        }
+        byte[] bytes = properties.getFingerprint();
+        if (null == bytes) {
+            final Map<String, ConfigurationPropertyImpl> sorted =
+                    new TreeMap<String, ConfigurationPropertyImpl>();
+            for (ConfigurationPropertyImpl property : properties.getProperties()) {
+                sorted.put(property.getName(), property);
+            }
+            final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+            fingerprint.update(sorted.size());
+            for (ConfigurationPropertyImpl property : sorted.values()) {
+                fingerprint.update(property.getName());
+                fingerprint.update(fingerprint(property));
+            }
+            bytes = fingerprint.digest.digest();
+            properties.setFingerprint(bytes);
+        }
+        update(bytes);
+    }
+
+    private void update(final ObjectPoolConfiguration config) {
+        if (null == config) {
+            update(false);
+        } else {
+            update(true);
+            update(config.getMaxObjects());
+            update(config.getMaxIdle());
+            update(config.getMaxWait());
+            update(config.getMinEvictableIdleTimeMillis());
+            update(config.getMinIdle());
+            update(config.getTimeBetweenEvictionRunsMillis());
+            update(config.getTestOnBorrowIdleTimeMillis());
+            update(config.isLifo());
+        }
+    }
+
+    private void update(final ResultsHandlerConfiguration config) {
+        if (null == config) {
+            update(false);
+        } else {
+            update(true);
+            update(config.isEnableNormalizingResultsHandler());
+            update(config.isEnableFilteredResultsHandler());
+            update(config.isEnableCaseInsensitiveFilter());
+            update(config.isEnableAttributesToGetSearchResultsHandler());
+        }
+    }
+
+    private void update(final ObjectCacheConfiguration config) {
+        if (null == config || !config.isEnabled()) {
+            update(false);
+        } else {
+            update(true);
+            update(config.getMaxObjects());
+            update(config.getTimeToLiveMillis());
+        }
+    }
+
+    private void update(final Map<Class<? extends APIOperation>, Integer> timeouts) {
+        if (null == timeouts) {
+            update(-1);
+            return;
+        }
+        final Map<Class<?>, Integer> sorted = new TreeMap<Class<?>, Integer>(CLASS_NAME_ORDER);
+        sorted.putAll(timeouts);
+        update(sorted.size());
+        for (Map.Entry<Class<?>, Integer> entry : sorted.entrySet()) {
+            update(entry.getKey().getName());
+            update(null != entry.getValue() ? entry.getValue() : -1);
+        }
+    }
+
+    private void update(final Collection<Class<? extends APIOperation>> operations) {
+        if (null == operations) {
+            update(-1);
+            return;
+        }
+        final List<Class<?>> sorted = new ArrayList<Class<?>>(operations);
+        Collections.sort(sorted, CLASS_NAME_ORDER);
+        update(sorted.size());
+        for (Class<?> operation : sorted) {
+            update(operation.getName());
+        }
+    }
+
+    /**
+     * Digests a configuration property value. Every value is prefixed with
+     * its type so that, for example, {@code "1"} and {@code 1} differ.
+     */
+    private void updateValue(final Object value) {
+        if (null == value) {
+            update("null");
+            return;
+        }
+        final Class<?> clazz = value.getClass();
+        update(clazz.getName());
+        if (clazz.isArray()) {
+            final int length = Array.getLength(value);
+            update(length);
+            for (int i = 0; i < length; i++) {
+                updateValue(Array.get(value, i));
+            }
+        } else if (value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Character
+                || value instanceof URI || value instanceof File) {
+            update(value.toString());
+        } else if (value instanceof GuardedString) {
+            ((GuardedString) value).access(new GuardedString.Accessor() {
+                public void access(char[] clearChars) {
+                    final byte[] bytes = SecurityUtil.charsToBytes(clearChars);
+                    try {
+                        update(bytes);
+                    } finally {
+                        SecurityUtil.clear(bytes);
+                    }
+                }
+            });
+        } else if (value instanceof GuardedByteArray) {
+            ((GuardedByteArray) value).access(new GuardedByteArray.Accessor() {
+                public void access(byte[] clearBytes) {
+                    update(clearBytes);
+                }
+            });
+        } else if (value instanceof Script) {
+            update(((Script) value).getScriptLanguage());
+            update(((Script) value).getScriptText());
+        } else {
+            // Not a supported configuration type, fall back to its serialized form
+            update(SerializerUtil.serializeBinaryObject(value));
+        }
+    }
+
+    private void update(final String value) {
+        if (null == value) {
+            update(-1);
+        } else {
+            update(value.getBytes(UTF8));
+        }
+    }
+
+    private void update(final byte[] bytes) {
+        update(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void update(final boolean value) {
+        digest.update((byte) (value ? 1 : 0));
+    }
+
+    private void update(final int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private void update(final long value) {
+        update((int) (value >>> 32));
+        update((int) value);
+    }
+}
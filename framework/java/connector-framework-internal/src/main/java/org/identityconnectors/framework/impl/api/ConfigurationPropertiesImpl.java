@@ -52,6 +52,12 @@ public class ConfigurationPropertiesImpl implements ConfigurationProperties {
      */
     private transient APIConfigurationImpl parent;
 
+    /**
+     * The {@link ConfigurationFingerprint} digest of the properties, cleared
+     * when a value is set.
+     */
+    private transient volatile byte[] fingerprint;
+
     // =======================================================================
     // Internal Methods
     // =======================================================================
@@ -64,6 +70,14 @@ public class ConfigurationPropertiesImpl implements ConfigurationProperties {
         this.parent = parent;
     }
 
+    byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    void setFingerprint(byte[] fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     private static class PropertyComparator implements Comparator<ConfigurationPropertyImpl>, Serializable {
 
         private static final long serialVersionUID = 1L;
@@ -88,6 +102,7 @@ public class ConfigurationPropertiesImpl implements ConfigurationProperties {
             property.setParent(this);
         }
         this.properties = temp;
+        this.fingerprint = null;
     }
 
     public Collection<ConfigurationPropertyImpl> getProperties() {
@@ -91,6 +91,12 @@ public class ConfigurationPropertyImpl implements ConfigurationProperty {
      */
     private transient ConfigurationPropertiesImpl parent;
 
+    /**
+     * The {@link ConfigurationFingerprint} digest of the value, cleared when
+     * the value is set.
+     */
+    private transient volatile byte[] fingerprint;
+
     // =======================================================================
     // Internal Methods
     // =======================================================================
@@ -146,6 +152,14 @@ public class ConfigurationPropertyImpl implements ConfigurationProperty {
         this.parent = parent;
     }
 
+    byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    void setFingerprint(byte[] fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     public Set<Class<? extends APIOperation>> getOperations() {
         return operations;
     }
@@ -205,6 +219,10 @@ public class ConfigurationPropertyImpl implements ConfigurationProperty {
      */
     public void setValue(Object value) {
         this.value = value;
+        fingerprint = null;
+        if (null != parent) {
+            parent.setFingerprint(null);
+        }
     }
 
     /**
@@ -26,6 +26,7 @@ package org.identityconnectors.framework.impl.api;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,6 +40,7 @@ import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorFacadeImpl;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
 
 public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImpl {
 
@@ -50,12 +52,31 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
     private static final ConcurrentMap<String, Pair<AtomicLong, ConnectorFacade>> CACHE =
             new ConcurrentHashMap<String, Pair<AtomicLong, ConnectorFacade>>();
 
+    /**
+     * Index of the {@link ConfigurationFingerprint} of a configuration to the
+     * key of its cached ConnectorFacade, so a cache hit does not need to
+     * serialize the whole configuration again.
+     */
+    private static final ConcurrentMap<String, String> FINGERPRINTS =
+            new ConcurrentHashMap<String, String>();
+
     /**
      * {@inheritDoc}
      */
     @Override
     public ConnectorFacade newInstance(final APIConfiguration config) {
+        final String fingerprint = ConfigurationFingerprint.of((APIConfigurationImpl) config);
+        final String facadeKey = FINGERPRINTS.get(fingerprint);
+        if (null != facadeKey) {
+            final Pair<AtomicLong, ConnectorFacade> cached = CACHE.get(facadeKey);
+            if (null != cached) {
+                logger.ok("ConnectorFacade found in cache");
+                cached.getKey().set(System.currentTimeMillis());
+                return cached.getValue();
+            }
+        }
         ConnectorFacade facade = super.newInstance(config);
+        FINGERPRINTS.put(fingerprint, facade.getConnectorFacadeKey());
         Pair<AtomicLong, ConnectorFacade> ret =
                 CACHE.putIfAbsent(facade.getConnectorFacadeKey(), Pair.of(new AtomicLong(System
                         .currentTimeMillis()), facade));
@@ -63,6 +84,8 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
             logger.ok("ConnectorFacade found in cache");
             ret.getKey().set(System.currentTimeMillis());
             facade = ret.getValue();
+        } else {
+            registerMetrics(facade);
         }
 
         return facade;
@@ -82,6 +105,8 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
                 logger.ok("ConnectorFacade found in cache");
                 ret.getKey().set(System.currentTimeMillis());
                 facade = ret;
+            } else {
+                registerMetrics(facade.getValue());
             }
         } else {
             facade.getKey().set(System.currentTimeMillis());
@@ -97,6 +122,7 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
     public void dispose() {
         super.dispose();
         for (Pair<AtomicLong, ConnectorFacade> facade : CACHE.values()) {
+            unregisterMetrics(facade.getValue());
             if (facade.getValue() instanceof LocalConnectorFacadeImpl) {
                 try {
                     ((LocalConnectorFacadeImpl) facade.getValue()).dispose();
@@ -106,6 +132,7 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
             }
         }
         CACHE.clear();
+        FINGERPRINTS.clear();
     }
 
     public void evictIdle(long time, TimeUnit unit) {
@@ -115,6 +142,8 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
         for (Map.Entry<String, Pair<AtomicLong, ConnectorFacade>> entry : CACHE.entrySet()) {
             if (entry.getValue().getKey().get() < lastTime) {
                 if (CACHE.remove(entry.getKey(), entry.getValue())) {
+                    FINGERPRINTS.values().removeAll(Collections.singleton(entry.getKey()));
+                    unregisterMetrics(entry.getValue().getValue());
                     if (entry.getValue().getValue() instanceof LocalConnectorFacadeImpl) {
                         try {
                             ((LocalConnectorFacadeImpl) entry.getValue().getValue()).dispose();
@@ -128,6 +157,29 @@ public class ManagedConnectorFacadeFactoryImpl extends ConnectorFacadeFactoryImp
         }
     }
 
+    /**
+     * A new name to publish the metrics of the facade with.
+     */
+    private static String getMetricsName(final ConnectorFacade facade) {
+        final AbstractConnectorInfo info =
+                ((AbstractConnectorFacade) facade).getAPIConfiguration().getConnectorInfo();
+        final String prefix = null != info ? info.getConnectorKey().getConnectorName() : "facade";
+        return MetricsRegistry.newName(prefix);
+    }
+
+    private static void registerMetrics(final ConnectorFacade facade) {
+        if (facade instanceof AbstractConnectorFacade) {
+            MetricsRegistry.registerFacade(getMetricsName(facade),
+                    ((AbstractConnectorFacade) facade).getMetrics());
+        }
+    }
+
+    private static void unregisterMetrics(final ConnectorFacade facade) {
+        if (facade instanceof AbstractConnectorFacade) {
+            MetricsRegistry.unregisterFacade(((AbstractConnectorFacade) facade).getMetrics());
+        }
+    }
+
     /**
      * Finds the {@code ConnectorFacade} in the cache.
      *
@@ -19,6 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
+ * Portions Copyrighted 2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api;
 
@@ -28,11 +29,16 @@ import java.lang.reflect.Method;
 import java.util.Locale;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
@@ -45,13 +51,128 @@ import org.identityconnectors.framework.common.exceptions.OperationTimeoutExcept
  * element by element basis. Moreover, it would be unsafe for search since the
  * thread could continue to return elements after it has timed out and we need
  * to guarantee that not happen.
+ * <p/>
+ * By default the method runs on a bounded pool of worker threads and the
+ * caller waits for it at most the timeout. When every worker is busy the call
+ * waits in a queue for the next free worker, the time it waits counts
+ * against its timeout. In watchdog
+ * mode the method runs on the caller's thread instead and a shared watchdog
+ * interrupts the caller once the deadline has passed. Either way the caller
+ * gets an {@link OperationTimeoutException} when the deadline passes.
+ * <p/>
+ * Threads owned by the framework may ask for the watchdog mode whatever the
+ * mode of the proxy, see {@link #useWatchdogOnCurrentThread()}.
  */
 public class MethodTimeoutProxy implements InvocationHandler {
 
+    /**
+     * System property to run timed operations on the caller's thread under
+     * the watchdog instead of handing them to a worker thread.
+     *
+     * @since 1.4
+     */
+    public static final String WATCHDOG_PROPERTY =
+            "org.identityconnectors.framework.timeout.watchdog";
+
+    /**
+     * System property to override the maximum number of worker threads.
+     *
+     * @since 1.4
+     */
+    public static final String MAX_THREADS_PROPERTY =
+            "org.identityconnectors.framework.timeout.maxThreads";
+
+    /**
+     * Number of operations which passed their deadline and are still running.
+     */
+    private static final AtomicInteger OVERDUE = new AtomicInteger();
+
+    /**
+     * Number of operations which passed their deadline so far.
+     */
+    private static final AtomicLong TIMEOUTS = new AtomicLong();
+
+    /**
+     * Set on the threads which run timed methods themselves.
+     */
+    private static final ThreadLocal<Boolean> WATCHDOG_THREAD = new ThreadLocal<Boolean>();
+
+    private static ThreadPoolExecutor threadPool = null;
+
+    private static ScheduledThreadPoolExecutor watchdog = null;
+
     /**
      * Get a pool of threads to use for operational timeouts.
      */
-    private static final ExecutorService THREADPOOL = Executors.newCachedThreadPool();
+    private static synchronized ThreadPoolExecutor getThreadPool() {
+        if (null == threadPool) {
+            int maxThreads =
+                    Integer.getInteger(MAX_THREADS_PROPERTY, Math.max(16, Runtime.getRuntime()
+                            .availableProcessors() * 4));
+            // the calls beyond the workers wait in the queue
+            threadPool =
+                    new ThreadPoolExecutor(Math.max(1, maxThreads), Math.max(1, maxThreads), 60L,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactory() {
+                                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                                public Thread newThread(Runnable r) {
+                                    Thread thread =
+                                            new Thread(r, "MethodTimeoutWorker-"
+                                                    + threadNumber.getAndIncrement());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+            threadPool.allowCoreThreadTimeOut(true);
+        }
+        return threadPool;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getWatchdog() {
+        if (null == watchdog) {
+            watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MethodTimeoutWatchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            watchdog.setRemoveOnCancelPolicy(true);
+        }
+        return watchdog;
+    }
+
+    /**
+     * Makes the timed methods called from the current thread run on it under
+     * the watchdog. Only for threads owned by the framework, since the
+     * watchdog interrupts them when a deadline passes.
+     */
+    static void useWatchdogOnCurrentThread() {
+        WATCHDOG_THREAD.set(Boolean.TRUE);
+    }
+
+    /**
+     * Returns the number of operations which have passed their deadline but
+     * have not returned yet.
+     *
+     * @return number of operations running past their deadline.
+     * @since 1.4
+     */
+    public static int getOverdueCount() {
+        return OVERDUE.get();
+    }
+
+    /**
+     * Returns the number of operations which have passed their deadline since
+     * the framework was loaded.
+     *
+     * @return number of timed out operations.
+     * @since 1.4
+     */
+    public static long getTimeoutCount() {
+        return TIMEOUTS.get();
+    }
 
     /**
      * The underlying operation that we are providing a timeout for
@@ -63,6 +184,11 @@ public class MethodTimeoutProxy implements InvocationHandler {
      */
     private final long timeoutMillis;
 
+    /**
+     * Run the method on the caller's thread under the watchdog.
+     */
+    private final boolean useWatchdog;
+
     /**
      * Create a new MethodTimeoutProxy.
      *
@@ -71,8 +197,24 @@ public class MethodTimeoutProxy implements InvocationHandler {
      * @param timeoutMillis
      */
     public MethodTimeoutProxy(Object target, long timeoutMillis) {
+        this(target, timeoutMillis, Boolean.getBoolean(WATCHDOG_PROPERTY));
+    }
+
+    /**
+     * Create a new MethodTimeoutProxy.
+     *
+     * @param target
+     *            The object we are wrapping
+     * @param timeoutMillis
+     * @param useWatchdog
+     *            true to run the method on the caller's thread and let the
+     *            watchdog interrupt it when the deadline passes.
+     * @since 1.4
+     */
+    public MethodTimeoutProxy(Object target, long timeoutMillis, boolean useWatchdog) {
         this.target = target;
         this.timeoutMillis = timeoutMillis;
+        this.useWatchdog = useWatchdog;
     }
 
     public Object invoke(final Object proxy, final Method method, final Object[] args)
@@ -83,7 +225,15 @@ public class MethodTimeoutProxy implements InvocationHandler {
             return method.invoke(target, args);
         }
 
+        if (useWatchdog || Boolean.TRUE.equals(WATCHDOG_THREAD.get())) {
+            return invokeOnCaller(method, args);
+        }
+        return invokeOnWorker(method, args);
+    }
+
+    private Object invokeOnWorker(final Method method, final Object[] args) throws Throwable {
         final Locale locale = CurrentLocale.get();
+        final Deadline deadline = new Deadline();
 
         Callable<Object> callable = new Callable<Object>() {
 
@@ -93,36 +243,131 @@ public class MethodTimeoutProxy implements InvocationHandler {
                         // propagate current locale
                         // since this is a thread pool
                         CurrentLocale.set(locale);
-                        return method.invoke(target, args);
+                        return invokeTarget(method, args);
                     } finally {
                         CurrentLocale.clear();
                     }
-                } catch (InvocationTargetException e) {
-                    Throwable root = e.getCause();
-                    if (root instanceof RuntimeException) {
-                        throw (RuntimeException) root;
-                    } else if (root instanceof Exception) {
-                        throw (Exception) root;
-                    } else if (root instanceof Error) {
-                        throw (Error) root;
-                    } else {
-                        throw ConnectorException.wrap(root);
-                    }
+                } finally {
+                    deadline.complete();
                 }
             }
         };
 
+        // package in a future task so we can set a timeout..
+        FutureTask<Object> t = new FutureTask<Object>(callable);
         try {
-            // package in a future task so we can set a timeout..
-            FutureTask<Object> t = new FutureTask<Object>(callable);
             // execute it in the thread pool so we don't waste resources.
-            THREADPOOL.execute(t);
+            getThreadPool().execute(t);
             // execute and hope it doesn't timeout :)
             return t.get(timeoutMillis, TimeUnit.MILLISECONDS);
         } catch (TimeoutException ex) {
+            if (getThreadPool().remove(t)) {
+                // still waiting for a worker, nothing is left running
+                TIMEOUTS.incrementAndGet();
+            } else {
+                deadline.expire();
+            }
             throw new OperationTimeoutException(ex);
         } catch (ExecutionException ex) {
             throw ex.getCause();
         }
     }
+
+    private Object invokeOnCaller(final Method method, final Object[] args) throws Throwable {
+        final Thread caller = Thread.currentThread();
+        final Deadline deadline = new Deadline();
+        ScheduledFuture<?> future = getWatchdog().schedule(new Runnable() {
+            public void run() {
+                synchronized (deadline) {
+                    if (deadline.expire()) {
+                        caller.interrupt();
+                    }
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        Object result = null;
+        Throwable failure = null;
+        try {
+            result = invokeTarget(method, args);
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            future.cancel(false);
+        }
+        boolean expired;
+        synchronized (deadline) {
+            expired = deadline.complete();
+            if (expired) {
+                // clear the interrupt the watchdog raised
+                Thread.interrupted();
+            }
+        }
+        if (expired) {
+            throw null != failure ? new OperationTimeoutException(failure)
+                    : new OperationTimeoutException();
+        } else if (null != failure) {
+            throw failure;
+        }
+        return result;
+    }
+
+    private Object invokeTarget(final Method method, final Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable root = e.getCause();
+            if (root instanceof RuntimeException) {
+                throw (RuntimeException) root;
+            } else if (root instanceof Exception) {
+                throw (Exception) root;
+            } else if (root instanceof Error) {
+                throw (Error) root;
+            } else {
+                throw ConnectorException.wrap(root);
+            }
+        }
+    }
+
+    /**
+     * Tracks whether a single call finished before or after its deadline.
+     */
+    private static final class Deadline {
+
+        private static final int RUNNING = 0;
+        private static final int COMPLETED = 1;
+        private static final int EXPIRED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+        /**
+         * Marks the deadline as passed.
+         *
+         * @return true if the call was still running.
+         */
+        boolean expire() {
+            if (state.compareAndSet(RUNNING, EXPIRED)) {
+                OVERDUE.incrementAndGet();
+                TIMEOUTS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Marks the call as returned.
+         *
+         * @return true if the deadline had already passed.
+         */
+        boolean complete() {
+            if (state.compareAndSet(RUNNING, COMPLETED)) {
+                return false;
+            }
+            if (state.compareAndSet(EXPIRED, COMPLETED)) {
+                OVERDUE.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.metrics.OperationMetrics;
+
+/**
+ * Proxy responsible for recording the call count, error count and latency of
+ * the operations from the API.
+ *
+ * @since 1.4
+ */
+public class MetricsProxy implements InvocationHandler {
+
+    private final Object target;
+    private final OperationMetrics metrics;
+
+    public MetricsProxy(OperationMetrics metrics, Object target) {
+        this.metrics = metrics;
+        this.target = target;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+            throws Throwable {
+        // do not measure equals, hashCode, toString
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(target, args);
+        }
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object ret = method.invoke(target, args);
+            failed = false;
+            return ret;
+        } catch (InvocationTargetException e) {
+            Throwable root = e.getCause();
+            if (root instanceof RuntimeException) {
+                throw (RuntimeException) root;
+            } else if (root instanceof Exception) {
+                throw (Exception) root;
+            } else if (root instanceof Error) {
+                throw (Error) root;
+            } else {
+                throw ConnectorException.wrap(root);
+            }
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.QualifiedUid;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.metrics.ObjectCacheMetrics;
+
+/**
+ * The objects returned by the get operation of a ConnectorFacade.
+ * <p/>
+ * The objects are kept per object class and {@code Uid}, and under each of
+ * them per attributes to get, until they expire or the least recently used
+ * one is evicted to stay under the maximum size. At most
+ * {@link #MAX_VARIANTS} attributes to get are kept per {@code Uid}, the least
+ * recently used one is evicted first. A read which misses takes
+ * the current generation before calling the connector, and its object is
+ * only stored if no invalidation happened in between, so a write racing
+ * with the read never leaves the old object in the cache.
+ *
+ * @since 1.4
+ */
+final class ObjectCache {
+
+    /**
+     * Maximum number of attributes to get variants kept per {@code Uid}.
+     */
+    static final int MAX_VARIANTS = 8;
+
+    private final long timeToLiveNanos;
+
+    private final ObjectCacheMetrics metrics;
+
+    private final Map<QualifiedUid, Map<List<String>, CachedObject>> objects;
+
+    /**
+     * Incremented by each invalidation, guarded by this.
+     */
+    private long generation = 0;
+
+    ObjectCache(final ObjectCacheConfiguration configuration, final ObjectCacheMetrics metrics) {
+        this.timeToLiveNanos =
+                TimeUnit.MILLISECONDS.toNanos(configuration.getTimeToLiveMillis());
+        this.metrics = metrics;
+        final int maxObjects = configuration.getMaxObjects();
+        this.objects =
+                new LinkedHashMap<QualifiedUid, Map<List<String>, CachedObject>>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<QualifiedUid, Map<List<String>, CachedObject>> eldest) {
+                        if (size() > maxObjects) {
+                            ObjectCache.this.metrics.recordEviction();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+    }
+
+    /**
+     * Whether the object of this read can come from the cache. Only the
+     * attributes to get option is allowed, any other option could change the
+     * returned object.
+     */
+    static boolean isCacheable(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options) {
+        if (null == objectClass || null == uid || ObjectClass.ALL.equals(objectClass)) {
+            return false;
+        }
+        if (null == options) {
+            return true;
+        }
+        for (String name : options.getOptions().keySet()) {
+            if (!OperationOptions.OP_ATTRIBUTES_TO_GET.equals(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the current generation, to pass to
+     * {@link #put(ObjectClass, Uid, OperationOptions, ConnectorObject, long)}.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Gets a cached object and records the hit or the miss.
+     *
+     * @return null if the object is not in the cache or expired.
+     */
+    synchronized ConnectorObject get(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options) {
+        final QualifiedUid key = new QualifiedUid(objectClass, uid);
+        final Map<List<String>, CachedObject> variants = objects.get(key);
+        if (null != variants) {
+            final List<String> attributesToGet = getAttributesToGet(options);
+            final CachedObject cached = variants.get(attributesToGet);
+            if (null != cached) {
+                if (System.nanoTime() - cached.expiresAt < 0) {
+                    metrics.recordHit();
+                    return cached.object;
+                }
+                variants.remove(attributesToGet);
+                if (variants.isEmpty()) {
+                    objects.remove(key);
+                }
+            }
+        }
+        metrics.recordMiss();
+        return null;
+    }
+
+    /**
+     * Stores an object read by the connector, unless an invalidation happened
+     * since the given generation.
+     */
+    synchronized void put(final ObjectClass objectClass, final Uid uid,
+            final OperationOptions options, final ConnectorObject object, final long readGeneration) {
+        if (readGeneration != generation) {
+            return;
+        }
+        final QualifiedUid key = new QualifiedUid(objectClass, uid);
+        Map<List<String>, CachedObject> variants = objects.get(key);
+        if (null == variants) {
+            variants = new LinkedHashMap<List<String>, CachedObject>(4, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<List<String>, CachedObject> eldest) {
+                    if (size() > MAX_VARIANTS) {
+                        metrics.recordEviction();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            objects.put(key, variants);
+        }
+        variants.put(getAttributesToGet(options), new CachedObject(object, System.nanoTime()
+                + timeToLiveNanos));
+    }
+
+    /**
+     * Removes an object changed by the facade.
+     *
+     * @param objectClass
+     *            the class of the object, null to remove the {@code Uid} from
+     *            every class.
+     * @param uid
+     *            the object, nothing is done if null.
+     */
+    synchronized void invalidate(final ObjectClass objectClass, final Uid uid) {
+        if (null == uid) {
+            return;
+        }
+        generation++;
+        if (null == objectClass || ObjectClass.ALL.equals(objectClass)) {
+            final Iterator<QualifiedUid> iterator = objects.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (uid.equals(iterator.next().getUid())) {
+                    iterator.remove();
+                    metrics.recordInvalidation();
+                }
+            }
+        } else if (null != objects.remove(new QualifiedUid(objectClass, uid))) {
+            metrics.recordInvalidation();
+        }
+    }
+
+    /**
+     * Removes all objects.
+     */
+    synchronized void clear() {
+        generation++;
+        objects.clear();
+    }
+
+    synchronized int size() {
+        return objects.size();
+    }
+
+    /**
+     * The attribute names sorted, their order does not change the object.
+     */
+    private static List<String> getAttributesToGet(final OperationOptions options) {
+        final String[] names = null != options ? options.getAttributesToGet() : null;
+        if (null == names) {
+            return null;
+        }
+        final String[] sorted = names.clone();
+        Arrays.sort(sorted);
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    private static final class CachedObject {
+
+        private final ConnectorObject object;
+
+        private final long expiresAt;
+
+        private CachedObject(final ConnectorObject object, final long expiresAt) {
+            this.object = object;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
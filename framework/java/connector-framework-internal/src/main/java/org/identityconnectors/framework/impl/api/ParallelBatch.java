@@ -0,0 +1,218 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.framework.api.operations.CreateApiOp;
+import org.identityconnectors.framework.api.operations.DeleteApiOp;
+import org.identityconnectors.framework.api.operations.UpdateApiOp;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.Uid;
+
+/**
+ * Runs a batch for the connectors which do not implement
+ * {@link org.identityconnectors.framework.spi.operations.BatchOp}.
+ * <p/>
+ * Each operation of the batch runs with the create, update or delete operation
+ * of the facade, so each borrows a connector from the pool. The caller and up
+ * to {@code parallelism - 1} worker threads take the operations one after the
+ * other until none is left. An operation the connector does not support, or
+ * which fails, gets the exception in its result.
+ *
+ * @since 1.4
+ */
+final class ParallelBatch {
+
+    /**
+     * The system property to set the maximum number of worker threads shared
+     * by all batches.
+     */
+    public static final String MAX_THREADS_PROPERTY =
+            "org.identityconnectors.framework.batch.maxThreads";
+
+    /**
+     * Number of operations run at the same time for the connectors without a
+     * pool.
+     */
+    static final int DEFAULT_PARALLELISM = 8;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BatchWorker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static ThreadPoolExecutor executor = null;
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (null == executor) {
+            int maxThreads =
+                    Integer.getInteger(MAX_THREADS_PROPERTY, Math.max(16, Runtime.getRuntime()
+                            .availableProcessors() * 4));
+            executor =
+                    new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), THREAD_FACTORY);
+        }
+        return executor;
+    }
+
+    private final CreateApiOp create;
+    private final UpdateApiOp update;
+    private final DeleteApiOp delete;
+    private final List<BatchOperation> operations;
+    private final OperationOptions options;
+    private final BatchResult[] results;
+    private final AtomicInteger next = new AtomicInteger(0);
+
+    /**
+     * Creates the batch.
+     *
+     * @param create
+     *            the create operation of the facade, null if not supported.
+     * @param update
+     *            the update operation of the facade, null if not supported.
+     * @param delete
+     *            the delete operation of the facade, null if not supported.
+     */
+    ParallelBatch(final CreateApiOp create, final UpdateApiOp update, final DeleteApiOp delete,
+            final List<BatchOperation> operations, final OperationOptions options) {
+        Assertions.nullCheck(operations, "operations");
+        this.create = create;
+        this.update = update;
+        this.delete = delete;
+        this.operations = operations;
+        this.options = options;
+        this.results = new BatchResult[operations.size()];
+    }
+
+    /**
+     * Runs the operations, at most {@code parallelism} at the same time.
+     *
+     * @return the result of each operation, in the order of the operations.
+     */
+    List<BatchResult> execute(final int parallelism) {
+        final int workers = Math.min(Math.max(1, parallelism), operations.size()) - 1;
+        final CountDownLatch done = new CountDownLatch(Math.max(0, workers));
+        final Locale locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+        int started = 0;
+        try {
+            for (; started < workers; started++) {
+                getExecutor().execute(new Runnable() {
+                    public void run() {
+                        if (null != locale) {
+                            CurrentLocale.set(locale);
+                        }
+                        try {
+                            drain();
+                        } finally {
+                            if (null != locale) {
+                                CurrentLocale.clear();
+                            }
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        } catch (RejectedExecutionException e) {
+            // No more worker available, the caller takes the rest
+            for (; started < workers; started++) {
+                done.countDown();
+            }
+        }
+        drain();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ConnectorException.wrap(e);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void drain() {
+        for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+            BatchResult result;
+            try {
+                result = new BatchResult(run(operations.get(i)));
+            } catch (RuntimeException e) {
+                result = new BatchResult(e);
+            } catch (Error e) {
+                result = new BatchResult(new ConnectorException(e));
+            }
+            results[i] = result;
+        }
+    }
+
+    private Uid run(final BatchOperation operation) {
+        Assertions.nullCheck(operation, "operation");
+        switch (operation.getType()) {
+        case CREATE:
+            return checkSupported(create, CreateApiOp.class).create(operation.getObjectClass(),
+                    operation.getAttributes(), options);
+        case UPDATE:
+            return checkSupported(update, UpdateApiOp.class).update(operation.getObjectClass(),
+                    operation.getUid(), operation.getAttributes(), options);
+        case ADD_ATTRIBUTE_VALUES:
+            return checkSupported(update, UpdateApiOp.class).addAttributeValues(
+                    operation.getObjectClass(), operation.getUid(), operation.getAttributes(),
+                    options);
+        case REMOVE_ATTRIBUTE_VALUES:
+            return checkSupported(update, UpdateApiOp.class).removeAttributeValues(
+                    operation.getObjectClass(), operation.getUid(), operation.getAttributes(),
+                    options);
+        default:
+            checkSupported(delete, DeleteApiOp.class).delete(operation.getObjectClass(),
+                    operation.getUid(), options);
+            return operation.getUid();
+        }
+    }
+
+    private static <T> T checkSupported(final T operation, final Class<T> api) {
+        if (null == operation) {
+            throw new UnsupportedOperationException("Operation '" + api + "' not supported.");
+        }
+        return operation;
+    }
+}
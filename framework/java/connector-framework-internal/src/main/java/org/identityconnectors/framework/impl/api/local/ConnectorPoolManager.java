@@ -24,6 +24,7 @@
 
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -32,10 +33,11 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.ConnectorKey;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
-import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
+import org.identityconnectors.framework.impl.api.ConfigurationFingerprint;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
 import org.identityconnectors.framework.impl.api.local.operations.OperationalContext;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.PoolableConnector;
@@ -46,6 +48,7 @@ public class ConnectorPoolManager {
         private final ConnectorKey connectorKey;
         private final ConfigurationPropertiesImpl configProperties;
         private final ObjectPoolConfiguration poolingConfig;
+        private final int hashCode;
 
         public ConnectorPoolKey(final ConnectorKey connectorKey,
                 final ConfigurationPropertiesImpl configProperties,
@@ -54,11 +57,14 @@ public class ConnectorPoolManager {
             this.connectorKey = connectorKey;
             this.configProperties = configProperties;
             this.poolingConfig = poolingConfig;
+            this.hashCode =
+                    ConfigurationFingerprint.hashCode(connectorKey, configProperties,
+                            poolingConfig);
         }
 
         @Override
         public int hashCode() {
-            return connectorKey.hashCode();
+            return hashCode;
         }
 
         @Override
@@ -98,8 +104,7 @@ public class ConnectorPoolManager {
         }
 
         public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
-            ObjectPoolConfiguration configuration =
-                    (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
+            ObjectPoolConfiguration configuration = new ObjectPoolConfiguration(original);
             configuration.validate();
             return configuration;
         }
@@ -218,6 +223,10 @@ public class ConnectorPoolManager {
                 // Use the pool made by other thread
                 if (previousPool != null) {
                     pool = previousPool;
+                } else {
+                    MetricsRegistry.registerPool(getMetricsName(key), pool);
+                    // create the MinIdle connectors in parallel up front
+                    pool.warmUp();
                 }
             }
             return Pair.of(key, pool);
@@ -228,10 +237,19 @@ public class ConnectorPoolManager {
         return Pair.of(null, null);
     }
 
+    /**
+     * A new name to publish the metrics of the pool with.
+     */
+    private static String getMetricsName(final ConnectorPoolKey key) {
+        return MetricsRegistry.newName(key.connectorKey.getConnectorName() + "-"
+                + key.connectorKey.getBundleVersion());
+    }
+
     public static void dispose(final ConnectorPoolKey connectorPoolKey) {
         synchronized (POOLS) {
             ObjectPool<PoolableConnector> pool = POOLS.remove(connectorPoolKey);
             if (null != pool) {
+                MetricsRegistry.unregisterPool(pool);
                 try {
                     pool.shutdown();
                 } catch (Exception e) {
@@ -244,7 +262,10 @@ public class ConnectorPoolManager {
     public static void dispose() {
         synchronized (POOLS) {
             // close each pool..
-            for (ObjectPool<PoolableConnector> pool : POOLS.values()) {
+            for (Map.Entry<ConnectorPoolKey, ObjectPool<PoolableConnector>> entry : POOLS
+                    .entrySet()) {
+                ObjectPool<PoolableConnector> pool = entry.getValue();
+                MetricsRegistry.unregisterPool(pool);
                 try {
                     pool.shutdown();
                 } catch (Exception e) {
@@ -199,7 +199,7 @@ public class JavaClassProperties {
             // some value types such as arrays
             // are mutable. make sure the config object
             // has its own copy
-            value = SerializerUtil.cloneObject(value);
+            value = SerializerUtil.copyObject(value);
             Method setter = desc.getWriteMethod();
             try {
                 setter.invoke(config, value);
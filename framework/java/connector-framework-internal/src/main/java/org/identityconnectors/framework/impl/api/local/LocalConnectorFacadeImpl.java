@@ -29,6 +29,7 @@ import java.util.Map;
 
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -47,6 +48,7 @@ import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
 import org.identityconnectors.framework.impl.api.LoggingProxy;
 import org.identityconnectors.framework.impl.api.local.operations.APIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.AuthenticationImpl;
+import org.identityconnectors.framework.impl.api.local.operations.BatchImpl;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunner;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorAPIOperationRunnerProxy;
 import org.identityconnectors.framework.impl.api.local.operations.ConnectorOperationalContext;
@@ -105,6 +107,7 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
         addImplementation(ScriptOnConnectorApiOp.class, ScriptOnConnectorImpl.class);
         addImplementation(ScriptOnResourceApiOp.class, ScriptOnResourceImpl.class);
         addImplementation(SyncApiOp.class, SyncImpl.class);
+        addImplementation(BatchApiOp.class, BatchImpl.class);
     }
 
     // =======================================================================
@@ -182,12 +185,13 @@ public class LocalConnectorFacadeImpl extends AbstractConnectorFacade {
             final Constructor<? extends APIOperationRunner> constructor =
                     API_TO_IMPL.get(SearchApiOp.class);
             final ConnectorAPIOperationRunnerProxy handler =
-                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
+                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor,
+                            GetApiOp.class);
             proxy = new GetImpl((SearchApiOp) newAPIOperationProxy(SearchApiOp.class, handler));
         } else {
             final Constructor<? extends APIOperationRunner> constructor = API_TO_IMPL.get(api);
             final ConnectorAPIOperationRunnerProxy handler =
-                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor);
+                    new ConnectorAPIOperationRunnerProxy(getOperationalContext(), constructor, api);
             proxy = newAPIOperationProxy(api, handler);
         }
 
@@ -21,15 +21,26 @@
  * ====================
  * Portions Copyrighted 2010-2013 ForgeRock AS.
  */
-
 package org.identityconnectors.framework.impl.api.local;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -37,6 +48,7 @@ import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.metrics.LatencyHistogram;
 
 public class ObjectPool<T> {
 
@@ -48,10 +60,22 @@ public class ObjectPool<T> {
     public static final class Statistics {
         private final int numIdle;
         private final int numActive;
-
-        private Statistics(final int numIdle, final int numActive) {
+        private final int maxObjects;
+        private final long createdCount;
+        private final long disposedCount;
+        private final long validationFailureCount;
+        private final LatencyHistogram borrowWaitTime;
+
+        private Statistics(final int numIdle, final int numActive, final int maxObjects,
+                final long createdCount, final long disposedCount,
+                final long validationFailureCount, final LatencyHistogram borrowWaitTime) {
             this.numIdle = numIdle;
             this.numActive = numActive;
+            this.maxObjects = maxObjects;
+            this.createdCount = createdCount;
+            this.disposedCount = disposedCount;
+            this.validationFailureCount = validationFailureCount;
+            this.borrowWaitTime = borrowWaitTime;
         }
 
         /**
@@ -67,6 +91,62 @@ public class ObjectPool<T> {
         public int getNumActive() {
             return numActive - numIdle;
         }
+
+        /**
+         * Returns the maximum number of objects (idle+active)
+         *
+         * @since 1.4
+         */
+        public int getMaxObjects() {
+            return maxObjects;
+        }
+
+        /**
+         * Returns the ratio of the active objects to the maximum number of
+         * objects
+         *
+         * @since 1.4
+         */
+        public double getUtilization() {
+            return maxObjects == 0 ? 0.0 : getNumActive() / (double) maxObjects;
+        }
+
+        /**
+         * Returns the number of objects created since the pool was created
+         *
+         * @since 1.4
+         */
+        public long getCreatedCount() {
+            return createdCount;
+        }
+
+        /**
+         * Returns the number of objects disposed since the pool was created
+         *
+         * @since 1.4
+         */
+        public long getDisposedCount() {
+            return disposedCount;
+        }
+
+        /**
+         * Returns the number of borrowed objects which failed the test
+         *
+         * @since 1.4
+         */
+        public long getValidationFailureCount() {
+            return validationFailureCount;
+        }
+
+        /**
+         * Returns how long the borrowers waited for an object, including the
+         * creation and the test of the object
+         *
+         * @since 1.4
+         */
+        public LatencyHistogram getBorrowWaitTime() {
+            return borrowWaitTime;
+        }
     }
 
     /**
@@ -104,11 +184,11 @@ public class ObjectPool<T> {
         }
 
         public void close() throws IOException {
-            try {
-                returnObject(this);
-            } catch (InterruptedException e) {
-                LOG.error(e, "Failed to close/dispose PooledObject object");
-            }
+            returnObject(this);
+        }
+
+        public void invalidate() {
+            dispose(this);
         }
 
         public boolean isNew() {
@@ -135,6 +215,111 @@ public class ObjectPool<T> {
         }
     }
 
+    /**
+     * Periodically evicts the idle objects of a pool.
+     * <p/>
+     * The pool is only weakly referenced so a pool which was never shut down
+     * can still be garbage collected, the task cancels itself then.
+     */
+    private static final class Evictor implements Runnable {
+
+        private final WeakReference<ObjectPool<?>> pool;
+
+        private volatile ScheduledFuture<?> future;
+
+        private Evictor(final ObjectPool<?> pool) {
+            this.pool = new WeakReference<ObjectPool<?>>(pool);
+        }
+
+        public void run() {
+            final ObjectPool<?> target = pool.get();
+            if (null == target || target.isShutdown()) {
+                cancel();
+            } else {
+                try {
+                    target.evictIdleObjects();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to evict idle objects");
+                }
+            }
+        }
+
+        private void cancel() {
+            final ScheduledFuture<?> f = future;
+            if (null != f) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Creates an idle object in the background. The permit for the new object
+     * must be acquired before the task is submitted.
+     */
+    private final class IdleObjectCreator implements Runnable {
+
+        private IdleObjectCreator() {
+            pendingCreations.incrementAndGet();
+        }
+
+        public void run() {
+            try {
+                final PooledObject pooled = makeObject();
+                pooled.setNew(false);
+                if (isShutdown()) {
+                    dispose(pooled);
+                } else {
+                    // the tail, so the warm objects at the head are reused
+                    // first
+                    numIdle.incrementAndGet();
+                    idleObjects.offerLast(pooled);
+                    signalNotEmpty();
+                }
+            } catch (Exception e) {
+                LOG.warn(e, "Failed to create idle object");
+            } finally {
+                pendingCreations.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Runs the {@link Evictor} of every pool, created on first use.
+     */
+    private static ScheduledThreadPoolExecutor evictorExecutor = null;
+
+    /**
+     * Runs the {@link IdleObjectCreator}s of every pool, created on first use.
+     */
+    private static ExecutorService creatorExecutor = null;
+
+    private static synchronized ExecutorService getCreatorExecutor() {
+        if (null == creatorExecutor) {
+            creatorExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ObjectPoolReplenisher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return creatorExecutor;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getEvictorExecutor() {
+        if (null == evictorExecutor) {
+            evictorExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ObjectPoolEvictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            evictorExecutor.setRemoveOnCancelPolicy(true);
+        }
+        return evictorExecutor;
+    }
+
     /**
      * Set contains all the PooledObject was made by this pool. It contains all
      * idle and borrowed(active) objects.
@@ -142,11 +327,36 @@ public class ObjectPool<T> {
     private Set<PooledObject> activeObjects;
 
     /**
-     * Queue of idle objects. The one that has been idle for the longest comes
-     * first in the queue
+     * Deque of idle objects. The most recently returned object is at the head,
+     * the one that has been idle for the longest is at the tail. Objects
+     * created in the background are added to the tail.
      */
-    private final ConcurrentLinkedQueue<PooledObject> idleObjects =
-            new ConcurrentLinkedQueue<PooledObject>();
+    private final ConcurrentLinkedDeque<PooledObject> idleObjects =
+            new ConcurrentLinkedDeque<PooledObject>();
+
+    /**
+     * Number of objects in {@link #idleObjects}, the size of the deque is not
+     * a constant-time operation.
+     */
+    private final AtomicInteger numIdle = new AtomicInteger();
+
+    /**
+     * Number of objects being created by {@link IdleObjectCreator}s.
+     */
+    private final AtomicInteger pendingCreations = new AtomicInteger();
+
+    /**
+     * Keep at least {@code MinIdle} idle objects, set by {@link #warmUp()}.
+     */
+    private volatile boolean replenish = false;
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong disposedCount = new AtomicLong();
+
+    private final AtomicLong validationFailureCount = new AtomicLong();
+
+    private final LatencyHistogram borrowWaitTime = new LatencyHistogram();
 
     /**
      * Limits the maximum available pooled object in the pool.
@@ -172,6 +382,11 @@ public class ObjectPool<T> {
      */
     private final ObjectPoolConfiguration poolConfiguration;
 
+    /**
+     * Background evictor of this pool or null if it's disabled.
+     */
+    private final Evictor evictor;
+
     /**
      * Is the pool shutdown
      */
@@ -195,6 +410,16 @@ public class ObjectPool<T> {
         poolConfiguration = this.handler.validate(config);
         activeObjects = new HashSet<PooledObject>(poolConfiguration.getMaxObjects());
         totalPermit = new Semaphore(poolConfiguration.getMaxObjects());
+
+        final long period = poolConfiguration.getTimeBetweenEvictionRunsMillis();
+        if (period > 0) {
+            evictor = new Evictor(this);
+            evictor.future =
+                    getEvictorExecutor().scheduleWithFixedDelay(evictor, period, period,
+                            TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
     }
 
     /**
@@ -206,28 +431,76 @@ public class ObjectPool<T> {
         return isShutdown;
     }
 
+    /**
+     * Creates {@code MinIdle} idle objects in parallel and waits until they
+     * are ready.
+     * <p/>
+     * From then on the pool keeps at least {@code MinIdle} idle objects if
+     * {@code MaxObjects} allows, the objects taken from the pool or disposed
+     * are replaced in the background.
+     */
+    public void warmUp() {
+        replenish = true;
+        final List<Future<?>> creations = new ArrayList<Future<?>>();
+        while (numIdle.get() + pendingCreations.get() < poolConfiguration.getMinIdle()
+                && totalPermit.tryAcquire()) {
+            creations.add(getCreatorExecutor().submit(new IdleObjectCreator()));
+        }
+        for (Future<?> creation : creations) {
+            try {
+                creation.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // IdleObjectCreator logs its failures
+            }
+        }
+    }
+
+    /**
+     * Starts the creation of the missing idle objects if the pool was warmed
+     * up.
+     */
+    private void replenishIdleObjects() {
+        if (!replenish || isShutdown()) {
+            return;
+        }
+        while (numIdle.get() + pendingCreations.get() < poolConfiguration.getMinIdle()
+                && totalPermit.tryAcquire()) {
+            try {
+                getCreatorExecutor().execute(new IdleObjectCreator());
+            } catch (RuntimeException e) {
+                totalPermit.release();
+                LOG.warn(e, "Failed to replenish idle objects");
+                return;
+            }
+        }
+    }
+
     /**
      * Return an object to the pool
      *
      * @param pooled
      */
-    private void returnObject(PooledObject pooled) throws InterruptedException {
+    private void returnObject(PooledObject pooled) {
         if (isShutdown() || poolConfiguration.getMaxIdle() < 1) {
             dispose(pooled);
         } else {
             try {
-                for (PooledObject entry : idleObjects) {
-                    if ((poolConfiguration.getMaxIdle() <= idleObjects.size())
-                            || entry.isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis())) {
-                        if (idleObjects.remove(entry)) {
-                            dispose(entry);
-                        }
+                // make room by disposing the objects idle for the longest
+                while (poolConfiguration.getMaxIdle() <= numIdle.get()) {
+                    PooledObject eldest = pollIdleObject(false);
+                    if (null == eldest) {
+                        break;
                     }
+                    dispose(eldest);
                 }
             } finally {
                 pooled.setActive(false);
                 pooled.setNew(false);
-                idleObjects.add(pooled);
+                numIdle.incrementAndGet();
+                idleObjects.offerFirst(pooled);
                 signalNotEmpty();
             }
         }
@@ -239,14 +512,16 @@ public class ObjectPool<T> {
      * @return An object
      */
     public ObjectPoolEntry<T> borrowObject() {
+        final long start = System.nanoTime();
         PooledObject rv = null;
         try {
             do {
                 rv = borrowObjectNoTest();
-                try {
-                    handler.testObject(rv.getPooledObject());
-                } catch (Exception e) {
-                    if (null != rv) {
+                if (isTestRequired(rv)) {
+                    try {
+                        handler.testObject(rv.getPooledObject());
+                    } catch (Exception e) {
+                        validationFailureCount.incrementAndGet();
                         dispose(rv);
                         // if it's a new object, break out of the loop
                         // immediately
@@ -258,6 +533,7 @@ public class ObjectPool<T> {
                 }
             } while (null == rv);
             rv.setActive(true);
+            borrowWaitTime.record(System.nanoTime() - start);
         } catch (InterruptedException e) {
             LOG.error(e, "Failed to borrow object from pool.");
             throw ConnectorException.wrap(e);
@@ -265,6 +541,15 @@ public class ObjectPool<T> {
         return rv;
     }
 
+    /**
+     * New objects are always tested, idle objects only if they have been idle
+     * for longer than {@code TestOnBorrowIdleTimeMillis}.
+     */
+    private boolean isTestRequired(final PooledObject pooled) {
+        final long idleTime = poolConfiguration.getTestOnBorrowIdleTimeMillis();
+        return pooled.isNew() || idleTime == 0 || pooled.isOlderThan(idleTime);
+    }
+
     /**
      * Borrow an object from the pool, but don't test it (it gets tested by the
      * caller *outside* of synchronization)
@@ -286,8 +571,8 @@ public class ObjectPool<T> {
                 do {
                     if (totalPermit.tryAcquire()) {
                         // If the pool is empty and there are available permits
-                        // then create a new instance.
-                        return makeObject();
+                        // then create a new instance, outside of the lock.
+                        break;
                     } else {
                         // Wait for permit or object to became available
                         try {
@@ -311,32 +596,68 @@ public class ObjectPool<T> {
             } finally {
                 lock.unlock();
             }
+            return makeObject();
         }
         return pooledConn;
     }
 
     /**
-     * Polls the head object from the queue.
+     * Takes an idle object from the pool.
      * <p/>
-     * Polls the head object and before it returns it checks the {@code MaxIdle}
-     * size and the {@code MinEvictableIdleTime} before accepts the object.
+     * Before it takes the object it evicts the objects idle for longer than
+     * {@code MinEvictableIdleTime} but keeps at least {@code MinIdle} objects.
+     * The most recently returned object is taken if the pool is {@code Lifo}
+     * so the least objects have to be kept warm.
      *
-     * @return null if there was no fresh/new object in the queue.
-     * @throws InterruptedException
-     */
-    private PooledObject borrowIdleObject() throws InterruptedException {
-        for (PooledObject pooledConn = idleObjects.poll(); pooledConn != null; pooledConn =
-                idleObjects.poll()) {
-            int size = idleObjects.size();
-            if (poolConfiguration.getMinIdle() < size + 1
-                    && ((poolConfiguration.getMaxIdle() < size) || pooledConn
-                            .isOlderThan(poolConfiguration.getMinEvictableIdleTimeMillis()))) {
-                dispose(pooledConn);
-            } else {
-                return pooledConn;
+     * @return null if there was no idle object in the pool.
+     */
+    private PooledObject borrowIdleObject() {
+        evictExpiredObjects();
+        final PooledObject pooledConn = pollIdleObject(poolConfiguration.isLifo());
+        if (null != pooledConn) {
+            replenishIdleObjects();
+        }
+        return pooledConn;
+    }
+
+    private PooledObject pollIdleObject(boolean newest) {
+        PooledObject pooledConn = newest ? idleObjects.pollFirst() : idleObjects.pollLast();
+        if (null != pooledConn) {
+            numIdle.decrementAndGet();
+        }
+        return pooledConn;
+    }
+
+    /**
+     * Disposes the objects from the tail of the idle deque while they have
+     * been idle for longer than {@code MinEvictableIdleTimeMillis} and there
+     * are more than {@code MinIdle} idle objects.
+     */
+    private void evictExpiredObjects() {
+        final long maxAge = poolConfiguration.getMinEvictableIdleTimeMillis();
+        while (poolConfiguration.getMinIdle() < numIdle.get()) {
+            PooledObject eldest = idleObjects.peekLast();
+            if (null == eldest || !eldest.isOlderThan(maxAge)) {
+                return;
+            }
+            if (idleObjects.removeLastOccurrence(eldest)) {
+                numIdle.decrementAndGet();
+                dispose(eldest);
             }
         }
-        return null;
+    }
+
+    /**
+     * Disposes the idle objects which have been idle for longer than
+     * {@code MinEvictableIdleTimeMillis} but keeps at least {@code MinIdle}
+     * objects in the pool.
+     * <p/>
+     * The pool evicts idle objects when an object is borrowed and, unless
+     * {@code TimeBetweenEvictionRunsMillis} is zero, periodically from a
+     * background thread.
+     */
+    public void evictIdleObjects() {
+        evictExpiredObjects();
     }
 
     /**
@@ -347,17 +668,17 @@ public class ObjectPool<T> {
      */
     public void shutdown() {
         isShutdown = true;
+        if (null != evictor) {
+            evictor.cancel();
+        }
         // just evict idle objects
         // if there are any active objects still
         // going, leave them alone so they can return
         // gracefully
         try {
-            for (PooledObject entry = idleObjects.poll(); entry != null; entry = idleObjects.poll()) {
-                try {
-                    dispose(entry);
-                } catch (InterruptedException e) {
-                    LOG.error(e, "Failed to dispose PooledObject object");
-                }
+            for (PooledObject entry = pollIdleObject(false); entry != null; entry =
+                    pollIdleObject(false)) {
+                dispose(entry);
             }
         } finally {
             handler.shutdown();
@@ -370,7 +691,11 @@ public class ObjectPool<T> {
      * @return The statistics
      */
     public Statistics getStatistics() {
-        return new Statistics(idleObjects.size(), activeObjects.size());
+        synchronized (activeObjects) {
+            return new Statistics(numIdle.get(), activeObjects.size(), poolConfiguration
+                    .getMaxObjects(), createdCount.get(), disposedCount.get(),
+                    validationFailureCount.get(), borrowWaitTime.snapshot());
+        }
     }
 
     /**
@@ -381,13 +706,18 @@ public class ObjectPool<T> {
      *             if something happens.
      */
     private PooledObject makeObject() {
+        final PooledObject pooledConn;
+        try {
+            pooledConn = new PooledObject(handler.makeObject());
+        } catch (RuntimeException e) {
+            totalPermit.release();
+            throw e;
+        }
+        createdCount.incrementAndGet();
         synchronized (activeObjects) {
-            PooledObject pooledConn =
-                    new PooledObject((activeObjects.size() > 0) ? handler.makeObject() : handler
-                            .makeObject());
             activeObjects.add(pooledConn);
-            return pooledConn;
         }
+        return pooledConn;
     }
 
     /**
@@ -395,25 +725,19 @@ public class ObjectPool<T> {
      *
      * @param entry
      */
-    private void dispose(final PooledObject entry) throws InterruptedException {
-        final ReentrantLock lock = this.takeLock;
-        lock.lockInterruptibly();
+    private void dispose(final PooledObject entry) {
+        synchronized (activeObjects) {
+            activeObjects.remove(entry);
+        }
+        disposedCount.incrementAndGet();
         try {
-            synchronized (activeObjects) {
-                // Make sure the disposed object was the last item in the
-                // activeObjects
-                if (activeObjects.remove(entry) && activeObjects.isEmpty()) {
-                    handler.disposeObject(entry.getPooledObject());
-                } else {
-                    handler.disposeObject(entry.getPooledObject());
-                }
-            }
+            handler.disposeObject(entry.getPooledObject());
         } catch (Exception e) {
             LOG.warn(e, "disposeObject() is not supposed to throw");
         } finally {
             totalPermit.release();
-            notEmpty.signal();
-            lock.unlock();
+            signalNotEmpty();
+            replenishIdleObjects();
         }
     }
 
@@ -47,4 +47,12 @@ public interface ObjectPoolEntry<T> extends Closeable {
      */
     public void close() throws IOException;
 
+    /**
+     * Disposes the pooled object instead of putting it back to the pool, for
+     * an object which is known to be broken.
+     *
+     * @since 1.4
+     */
+    public void invalidate();
+
 }
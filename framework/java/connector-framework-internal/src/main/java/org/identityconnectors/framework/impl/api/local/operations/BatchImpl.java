@@ -0,0 +1,133 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchOperationType;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.operations.BatchOp;
+
+public class BatchImpl extends ConnectorAPIOperationRunner implements
+        org.identityconnectors.framework.api.operations.BatchApiOp {
+
+    /**
+     * Initializes the operation works.
+     */
+    public BatchImpl(final ConnectorOperationalContext context, final Connector connector) {
+        super(context, connector);
+    }
+
+    /**
+     * Calls the executeBatch method on the Connector side.
+     * <p/>
+     * The operations which fail the validation get their error as result and
+     * are not passed to the connector.
+     *
+     * @see BatchOp#executeBatch(java.util.List,
+     *      org.identityconnectors.framework.common.objects.OperationOptions)
+     */
+    public List<BatchResult> executeBatch(final List<BatchOperation> operations,
+            OperationOptions options) {
+        Assertions.nullCheck(operations, "operations");
+        if (operations.isEmpty()) {
+            return new ArrayList<BatchResult>(0);
+        }
+        // cast null as empty
+        if (options == null) {
+            options = new OperationOptionsBuilder().build();
+        }
+        final BatchResult[] ret = new BatchResult[operations.size()];
+        final List<BatchOperation> normalized = new ArrayList<BatchOperation>(operations.size());
+        // position in the batch of each operation passed to the connector
+        final int[] positions = new int[operations.size()];
+        for (int i = 0; i < operations.size(); i++) {
+            try {
+                normalized.add(normalize(operations.get(i)));
+                positions[normalized.size() - 1] = i;
+            } catch (RuntimeException e) {
+                ret[i] = new BatchResult(e);
+            }
+        }
+        if (normalized.isEmpty()) {
+            return Arrays.asList(ret);
+        }
+
+        final List<BatchResult> results =
+                ((BatchOp) getConnector()).executeBatch(normalized, options);
+        if (results == null || results.size() != normalized.size()) {
+            throw new ConnectorException("Connector returned "
+                    + (results == null ? 0 : results.size()) + " results for "
+                    + normalized.size() + " batch operations");
+        }
+        for (int i = 0; i < results.size(); i++) {
+            final BatchResult result = results.get(i);
+            if (result == null) {
+                throw new ConnectorException("Connector returned no result for batch operation "
+                        + i);
+            }
+            if (result.isSuccess() && result.getUid() != null) {
+                final ObjectNormalizerFacade normalizer =
+                        getNormalizer(normalized.get(i).getObjectClass());
+                ret[positions[i]] =
+                        new BatchResult((Uid) normalizer.normalizeAttribute(result.getUid()));
+            } else {
+                ret[positions[i]] = result;
+            }
+        }
+        return Arrays.asList(ret);
+    }
+
+    private BatchOperation normalize(final BatchOperation operation) {
+        Assertions.nullCheck(operation, "operation");
+        final ObjectClass objectClass = operation.getObjectClass();
+        if (ObjectClass.ALL.equals(objectClass)) {
+            throw new UnsupportedOperationException(
+                    "Operation is not allowed on __ALL__ object class");
+        }
+        if (operation.getType() == BatchOperationType.CREATE
+                && AttributeUtil.getUidAttribute(operation.getAttributes()) != null) {
+            throw new InvalidAttributeValueException("Parameter 'createAttributes' contains a uid.");
+        }
+        final ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
+        return new BatchOperation(operation.getType(), objectClass, (Uid) normalizer
+                .normalizeAttribute(operation.getUid()),
+                operation.getType() == BatchOperationType.DELETE ? null : normalizer
+                        .normalizeAttributes(operation.getAttributes()));
+    }
+}
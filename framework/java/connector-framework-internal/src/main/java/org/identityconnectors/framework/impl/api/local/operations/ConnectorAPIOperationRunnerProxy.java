@@ -19,7 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
- * Portions Copyrighted 2010-2013 ForgeRock AS.
+ * Portions Copyrighted 2010-2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
@@ -29,8 +29,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.impl.api.local.ObjectPool;
 import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.metrics.TracePhase;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+import org.identityconnectors.framework.impl.metrics.Tracing;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.PoolableConnector;
 
@@ -56,6 +60,11 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
      */
     private final Constructor<? extends APIOperationRunner> runnerImplConstructor;
 
+    /**
+     * The operation reported in the trace spans, null if not traced.
+     */
+    private final Class<? extends APIOperation> operation;
+
     /**
      * Create an APIOperationRunnerProxy
      * @param context The operational context
@@ -64,8 +73,23 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
      */
     public ConnectorAPIOperationRunnerProxy(ConnectorOperationalContext context,
             Constructor<? extends APIOperationRunner> runnerImplConstructor) {
+        this(context, runnerImplConstructor, null);
+    }
+
+    /**
+     * Create an APIOperationRunnerProxy which traces the calls.
+     * @param context The operational context
+     * @param runnerImplConstructor The implementation constructor. Implementation
+     * must define a two-argument constructor(OperationalContext,Connector)
+     * @param operation The operation reported in the trace spans
+     * @since 1.4
+     */
+    public ConnectorAPIOperationRunnerProxy(ConnectorOperationalContext context,
+            Constructor<? extends APIOperationRunner> runnerImplConstructor,
+            Class<? extends APIOperation> operation) {
         this.context = context;
         this.runnerImplConstructor = runnerImplConstructor;
+        this.operation = operation;
     }
 
     public Object invoke(Object proxy, Method method, Object[] args)
@@ -74,6 +98,10 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
         if (method.getDeclaringClass() == Object.class) {
             return method.invoke(this, args);
         }
+        final TraceSpan span =
+                null != operation ? Tracing.start(operation, context.getConnectorInfo()
+                        .getConnectorKey()) : null;
+        Throwable failure = null;
         Object ret = null;
         Connector connector = null;
         ObjectPool<PoolableConnector> pool = context.getPool();
@@ -83,23 +111,42 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
         try {
             // pooling is implemented get one..
             if (pool != null) {
+                if (null != span) {
+                    span.enter(TracePhase.POOL_BORROW);
+                }
                 poolEntry = pool.borrowObject();
                 connector = poolEntry.getPooledObject();
             }
             else {
+                if (null != span) {
+                    span.enter(TracePhase.CONNECTOR_INIT);
+                }
                 // get a new instance of the connector..
                 connector = connectorClazz.newInstance();
                 // initialize the connector..
                 connector.init(context.getConfiguration());
             }
+            if (null != span) {
+                span.enter(TracePhase.FRAMEWORK);
+            }
             APIOperationRunner runner =
                 runnerImplConstructor.newInstance(context,connector);
+            if (null != span) {
+                span.enter(TracePhase.CONNECTOR);
+            }
             ret = method.invoke(runner, args);
             // call out to the operation..
         } catch (InvocationTargetException e) {
             Throwable root = e.getCause();
+            failure = root;
             throw root;
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
         } finally {
+            if (null != span) {
+                span.enter(TracePhase.POOL_RETURN);
+            }
 
             // make sure dispose of the connector properly
             if (connector != null) {
@@ -133,6 +180,9 @@ public class ConnectorAPIOperationRunnerProxy implements InvocationHandler {
                     }
                 }
             }
+            if (null != span) {
+                span.finish(failure);
+            }
         }
         return ret;
     }
@@ -23,12 +23,11 @@
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+import org.identityconnectors.framework.impl.metrics.Tracing;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 
 public final class DuplicateFilteringResultsHandler implements SearchResultsHandler {
@@ -37,9 +36,11 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
     // Fields
     // =======================================================================
     private final SearchResultsHandler handler;
-    private final Set<String> visitedUIDs = new HashSet<String>();
+    private final UidFingerprintSet visitedUIDs = new UidFingerprintSet();
+    private final TraceSpan span = Tracing.current();
 
-    private boolean stillHandling;
+    private boolean stillHandling = true;
+    private long duplicateCount = 0L;
 
     // =======================================================================
     // Constructors
@@ -64,6 +65,10 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
         if (!visitedUIDs.add(uid)) {
             // we've already seen this - don't pass it
             // throw
+            duplicateCount++;
+            if (null != span) {
+                span.incrementDuplicateCount();
+            }
             return true;
         }
         stillHandling = handler.handle(object);
@@ -77,4 +82,12 @@ public final class DuplicateFilteringResultsHandler implements SearchResultsHand
     public boolean isStillHandling() {
         return stillHandling;
     }
+
+    /**
+     * Returns the number of objects which were not passed on because an
+     * object with the same UID was already handled.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
 }
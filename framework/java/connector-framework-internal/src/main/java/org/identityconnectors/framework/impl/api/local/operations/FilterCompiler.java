@@ -0,0 +1,641 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ComparableAttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.StringFilter;
+
+/**
+ * Compiles a {@link Filter} into a predicate which is evaluated on every
+ * object returned by a search.
+ * <p/>
+ * The compiled predicate gives the same answer as {@link Filter#accept} of
+ * the original filter, but
+ * <ul>
+ * <li>nested {@code and}/{@code or} filters are flattened into arrays, so no
+ * iterator is created per object;</li>
+ * <li>the leaves of an {@code and}/{@code or} which test the same attribute
+ * look the attribute up once per object;</li>
+ * <li>the constants of the leaves are unpacked once, and the cheaper leaves
+ * are evaluated first.</li>
+ * </ul>
+ * A leaf which may throw, like a string filter on an attribute whose value
+ * is not a string or a comparison with a value which is not comparable, is
+ * never moved: the leaves are only grouped and reordered between such
+ * leaves, so the compiled filter throws exactly when the original does.
+ * Filters the compiler does not know, like connector specific filters or
+ * subclasses of the known filters, are evaluated with their own
+ * {@code accept}.
+ * The compiled filter is immutable and can be shared between threads.
+ *
+ * @since 1.4
+ */
+public final class FilterCompiler {
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * Compiles the filter.
+     *
+     * @param filter
+     *            the filter to compile, may be null.
+     * @return a filter which accepts the same objects as the original, the
+     *         visitor methods are forwarded to the original filter. Null if
+     *         the filter was null.
+     */
+    public static Filter compile(final Filter filter) {
+        if (null == filter || filter instanceof CompiledFilter) {
+            return filter;
+        }
+        return new CompiledFilter(filter, filter.accept(COMPILER, null));
+    }
+
+    private static final class CompiledFilter implements Filter {
+
+        private final Filter original;
+
+        private final Node root;
+
+        private CompiledFilter(final Filter original, final Node root) {
+            this.original = original;
+            this.root = root;
+        }
+
+        public boolean accept(final ConnectorObject obj) {
+            return root.test(obj);
+        }
+
+        public <R, P> R accept(final FilterVisitor<R, P> v, final P p) {
+            return original.accept(v, p);
+        }
+
+        @Override
+        public String toString() {
+            return original.toString();
+        }
+    }
+
+    // =======================================================================
+    // Predicate tree
+    // =======================================================================
+
+    private static final Comparator<Cost> BY_COST = new Comparator<Cost>() {
+        public int compare(final Cost o1, final Cost o2) {
+            return o1.cost() < o2.cost() ? -1 : (o1.cost() == o2.cost() ? 0 : 1);
+        }
+    };
+
+    private interface Cost {
+        /**
+         * Relative cost of the evaluation, used to evaluate the cheaper
+         * branches first.
+         */
+        int cost();
+    }
+
+    private abstract static class Node implements Cost {
+        abstract boolean test(ConnectorObject obj);
+
+        /**
+         * Whether the test may throw, the node then keeps its place.
+         */
+        abstract boolean mayThrow();
+    }
+
+    /**
+     * Test of the value of one attribute, the attribute is null if the object
+     * does not have it.
+     */
+    private abstract static class ValueTest implements Cost {
+        abstract boolean test(Attribute attribute);
+
+        /**
+         * Whether the test may throw, the leaf then keeps its place.
+         */
+        abstract boolean mayThrow();
+    }
+
+    /**
+     * Several tests of the same attribute joined with {@code and} or
+     * {@code or}.
+     */
+    private static final class AttributeGroupNode extends Node {
+        private final String name;
+        private final ValueTest[] tests;
+        private final boolean and;
+        private final int cost;
+
+        AttributeGroupNode(final String name, final ValueTest[] tests, final boolean and) {
+            this.name = name;
+            this.tests = tests;
+            this.and = and;
+            int sum = 0;
+            for (ValueTest test : tests) {
+                sum += test.cost();
+            }
+            this.cost = sum;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            final Attribute attribute = obj.getAttributeByName(name);
+            for (ValueTest test : tests) {
+                if (test.test(attribute) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+
+        boolean mayThrow() {
+            return false;
+        }
+
+        public int cost() {
+            return cost;
+        }
+    }
+
+    private static final class CompositeNode extends Node {
+        private final Node[] children;
+        private final boolean and;
+        private final int cost;
+        private final boolean mayThrow;
+
+        CompositeNode(final Node[] children, final boolean and) {
+            this.children = children;
+            this.and = and;
+            int sum = 0;
+            boolean throwing = false;
+            for (Node child : children) {
+                sum += child.cost();
+                throwing |= child.mayThrow();
+            }
+            this.cost = sum;
+            this.mayThrow = throwing;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            for (Node child : children) {
+                if (child.test(obj) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+
+        boolean mayThrow() {
+            return mayThrow;
+        }
+
+        public int cost() {
+            return cost;
+        }
+    }
+
+    private static final class NotNode extends Node {
+        private final Node node;
+
+        NotNode(final Node node) {
+            this.node = node;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            return !node.test(obj);
+        }
+
+        boolean mayThrow() {
+            return node.mayThrow();
+        }
+
+        public int cost() {
+            return node.cost();
+        }
+    }
+
+    /**
+     * Evaluates the inner compiled filter on the normalized object.
+     */
+    private static final class NormalizingNode extends Node {
+        private final ObjectNormalizerFacade normalizer;
+        private final Node node;
+
+        NormalizingNode(final ObjectNormalizerFacade normalizer, final Node node) {
+            this.normalizer = normalizer;
+            this.node = node;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            return node.test(normalizer.normalizeObject(obj));
+        }
+
+        boolean mayThrow() {
+            // so may the normalizer of the connector
+            return true;
+        }
+
+        public int cost() {
+            return 20 + node.cost();
+        }
+    }
+
+    private static final class OpaqueNode extends Node {
+        private final Filter filter;
+
+        OpaqueNode(final Filter filter) {
+            this.filter = filter;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            return filter.accept(obj);
+        }
+
+        boolean mayThrow() {
+            return true;
+        }
+
+        public int cost() {
+            return 50;
+        }
+    }
+
+    // =======================================================================
+    // Value tests
+    // =======================================================================
+
+    /**
+     * Same as {@link Attribute#equals(Object)} once the names are known to
+     * match.
+     */
+    private static final class EqualsTest extends ValueTest {
+        private final Class<? extends Attribute> type;
+        private final List<Object> values;
+        private final Object single;
+        private final boolean isSingle;
+
+        EqualsTest(final Attribute attribute) {
+            type = attribute.getClass();
+            values = attribute.getValue();
+            isSingle = null != values && values.size() == 1;
+            single = isSingle ? values.get(0) : null;
+        }
+
+        boolean test(final Attribute attribute) {
+            if (null == attribute || attribute.getClass() != type) {
+                return false;
+            }
+            final List<Object> value = attribute.getValue();
+            if (isSingle && null != value) {
+                return value.size() == 1 && CollectionUtil.equals(value.get(0), single);
+            }
+            return CollectionUtil.equals(values, value);
+        }
+
+        boolean mayThrow() {
+            return false;
+        }
+
+        public int cost() {
+            return isSingle ? 1 : 2 + values.size();
+        }
+    }
+
+    private static final class StringTest extends ValueTest {
+        private static final int STARTS_WITH = 0;
+        private static final int ENDS_WITH = 1;
+        private static final int CONTAINS = 2;
+
+        private final String value;
+        private final int kind;
+
+        StringTest(final StringFilter filter, final int kind) {
+            this.value = filter.getValue();
+            this.kind = kind;
+        }
+
+        boolean test(final Attribute attribute) {
+            if (null == attribute) {
+                return false;
+            }
+            final String actual = (String) attribute.getValue().get(0);
+            switch (kind) {
+            case STARTS_WITH:
+                return actual.startsWith(value);
+            case ENDS_WITH:
+                return actual.endsWith(value);
+            default:
+                return actual.contains(value);
+            }
+        }
+
+        boolean mayThrow() {
+            // the value may not be a string or may be missing
+            return true;
+        }
+
+        public int cost() {
+            return kind == CONTAINS ? 4 : 2;
+        }
+    }
+
+    /**
+     * Same as {@link ComparableAttributeFilter#compare(ConnectorObject)}
+     * followed by the comparison of the concrete filter.
+     */
+    private static final class CompareTest extends ValueTest {
+        private static final int GREATER_THAN = 0;
+        private static final int GREATER_THAN_OR_EQUAL = 1;
+        private static final int LESS_THAN = 2;
+        private static final int LESS_THAN_OR_EQUAL = 3;
+
+        private final Object value;
+        private final int kind;
+
+        CompareTest(final ComparableAttributeFilter filter, final int kind) {
+            this.value = filter.getValue();
+            this.kind = kind;
+        }
+
+        boolean test(final Attribute attribute) {
+            if (null == attribute) {
+                return false;
+            }
+            int result = -1;
+            final List<Object> actual = attribute.getValue();
+            if (actual.size() == 1) {
+                final Object o1 = actual.get(0);
+                if (!(o1 instanceof Comparable)) {
+                    throw new IllegalArgumentException("Attribute value must be comparable!");
+                }
+                result = CollectionUtil.forceCompare(o1, value);
+            }
+            switch (kind) {
+            case GREATER_THAN:
+                return result > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return result >= 0;
+            case LESS_THAN:
+                return result < 0;
+            default:
+                return result <= 0;
+            }
+        }
+
+        boolean mayThrow() {
+            // the value may not be comparable with the constant
+            return true;
+        }
+
+        public int cost() {
+            return 2;
+        }
+    }
+
+    private static final class ContainsAllValuesTest extends ValueTest {
+        private final ContainsAllValuesFilter filter;
+        private final List<Object> values;
+
+        ContainsAllValuesTest(final ContainsAllValuesFilter filter) {
+            this.filter = filter;
+            this.values = filter.getAttribute().getValue();
+        }
+
+        boolean test(final Attribute attribute) {
+            if (null == attribute) {
+                return false;
+            }
+            final List<Object> value = attribute.getValue();
+            if (value == null) {
+                throw new IllegalStateException("Null value found in attribute "
+                        + filter.getName());
+            }
+            return value.containsAll(values);
+        }
+
+        boolean mayThrow() {
+            return true;
+        }
+
+        public int cost() {
+            return 3 + values.size();
+        }
+    }
+
+    /**
+     * A single test of an attribute.
+     */
+    private static final class LeafNode extends Node {
+        private final String name;
+        private final ValueTest test;
+
+        LeafNode(final AttributeFilter filter, final ValueTest test) {
+            this(filter.getName(), test);
+        }
+
+        LeafNode(final String name, final ValueTest test) {
+            this.name = name;
+            this.test = test;
+        }
+
+        boolean test(final ConnectorObject obj) {
+            return test.test(obj.getAttributeByName(name));
+        }
+
+        boolean mayThrow() {
+            return test.mayThrow();
+        }
+
+        public int cost() {
+            return test.cost();
+        }
+    }
+
+    // =======================================================================
+    // Compiler
+    // =======================================================================
+
+    private static final FilterVisitor<Node, Void> COMPILER = new FilterVisitor<Node, Void>() {
+
+        public Node visitAndFilter(final Void p, final AndFilter filter) {
+            return composite(filter.getFilters(), true);
+        }
+
+        public Node visitOrFilter(final Void p, final OrFilter filter) {
+            return composite(filter.getFilters(), false);
+        }
+
+        public Node visitNotFilter(final Void p, final NotFilter filter) {
+            return new NotNode(filter.getFilter().accept(this, p));
+        }
+
+        public Node visitEqualsFilter(final Void p, final EqualsFilter filter) {
+            return new LeafNode(filter, new EqualsTest(filter.getAttribute()));
+        }
+
+        public Node visitContainsAllValuesFilter(final Void p,
+                final ContainsAllValuesFilter filter) {
+            if (filter.getClass() != ContainsAllValuesFilter.class) {
+                // the subclass may accept other objects
+                return new OpaqueNode(filter);
+            }
+            return new LeafNode(filter, new ContainsAllValuesTest(filter));
+        }
+
+        public Node visitStartsWithFilter(final Void p, final StartsWithFilter filter) {
+            return new LeafNode(filter, new StringTest(filter, StringTest.STARTS_WITH));
+        }
+
+        public Node visitEndsWithFilter(final Void p, final EndsWithFilter filter) {
+            return new LeafNode(filter, new StringTest(filter, StringTest.ENDS_WITH));
+        }
+
+        public Node visitContainsFilter(final Void p, final ContainsFilter filter) {
+            return new LeafNode(filter, new StringTest(filter, StringTest.CONTAINS));
+        }
+
+        public Node visitGreaterThanFilter(final Void p, final GreaterThanFilter filter) {
+            return new LeafNode(filter, new CompareTest(filter, CompareTest.GREATER_THAN));
+        }
+
+        public Node visitGreaterThanOrEqualFilter(final Void p,
+                final GreaterThanOrEqualFilter filter) {
+            return new LeafNode(filter, new CompareTest(filter,
+                    CompareTest.GREATER_THAN_OR_EQUAL));
+        }
+
+        public Node visitLessThanFilter(final Void p, final LessThanFilter filter) {
+            return new LeafNode(filter, new CompareTest(filter, CompareTest.LESS_THAN));
+        }
+
+        public Node visitLessThanOrEqualFilter(final Void p, final LessThanOrEqualFilter filter) {
+            return new LeafNode(filter, new CompareTest(filter, CompareTest.LESS_THAN_OR_EQUAL));
+        }
+
+        public Node visitExtendedFilter(final Void p, final Filter filter) {
+            if (filter.getClass() == NormalizingFilter.class) {
+                final NormalizingFilter normalizing = (NormalizingFilter) filter;
+                return new NormalizingNode(normalizing.getNormalizer(), normalizing.getFilter()
+                        .accept(this, p));
+            }
+            if (filter.getClass() == FilteredResultsHandler.PassThroughFilter.class) {
+                return new CompositeNode(new Node[0], true);
+            }
+            return new OpaqueNode(filter);
+        }
+
+        private Node composite(final Iterable<Filter> filters, final boolean and) {
+            // flatten the nested filters of the same kind
+            final List<Node> nodes = new ArrayList<Node>();
+            for (Filter filter : filters) {
+                final Node node = filter.accept(this, null);
+                if (node instanceof CompositeNode && ((CompositeNode) node).and == and) {
+                    nodes.addAll(Arrays.asList(((CompositeNode) node).children));
+                } else {
+                    nodes.add(node);
+                }
+            }
+            // reorder only between the nodes which may throw
+            final List<Node> children = new ArrayList<Node>(nodes.size());
+            int start = 0;
+            for (int i = 0; i <= nodes.size(); i++) {
+                if (i == nodes.size() || nodes.get(i).mayThrow()) {
+                    children.addAll(reorder(nodes.subList(start, i), and));
+                    if (i < nodes.size()) {
+                        children.add(nodes.get(i));
+                    }
+                    start = i + 1;
+                }
+            }
+            if (children.size() == 1) {
+                return children.get(0);
+            }
+            return new CompositeNode(children.toArray(new Node[children.size()]), and);
+        }
+
+        /**
+         * Groups the leaves by attribute and sorts the nodes, none of them may
+         * throw.
+         */
+        private List<Node> reorder(final List<Node> nodes, final boolean and) {
+            // look each attribute up once
+            final Map<String, List<ValueTest>> byName = CollectionUtil.newCaseInsensitiveMap();
+            final Map<String, String> names = CollectionUtil.newCaseInsensitiveMap();
+            final List<Node> children = new ArrayList<Node>(nodes.size());
+            for (Node node : nodes) {
+                if (node instanceof LeafNode) {
+                    final LeafNode leaf = (LeafNode) node;
+                    List<ValueTest> tests = byName.get(leaf.name);
+                    if (null == tests) {
+                        tests = new ArrayList<ValueTest>();
+                        byName.put(leaf.name, tests);
+                        names.put(leaf.name, leaf.name);
+                    }
+                    tests.add(leaf.test);
+                } else {
+                    children.add(node);
+                }
+            }
+            for (Map.Entry<String, List<ValueTest>> entry : byName.entrySet()) {
+                final List<ValueTest> tests = entry.getValue();
+                final String name = names.get(entry.getKey());
+                if (tests.size() == 1) {
+                    children.add(new LeafNode(name, tests.get(0)));
+                } else {
+                    Collections.sort(tests, BY_COST);
+                    children.add(new AttributeGroupNode(name, tests
+                            .toArray(new ValueTest[tests.size()]), and));
+                }
+            }
+            Collections.sort(children, BY_COST);
+            return children;
+        }
+    };
+}
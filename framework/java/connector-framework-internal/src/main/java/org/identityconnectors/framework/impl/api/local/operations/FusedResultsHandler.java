@@ -0,0 +1,314 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.identityconnectors.framework.impl.metrics.TracePhase;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+
+/**
+ * Normalizes, filters and reduces the search results in one pass.
+ * <p/>
+ * The chain of {@link NormalizingResultsHandler}, {@link FilteredResultsHandler}
+ * and {@link SearchImpl.AttributesToGetSearchResultsHandler} creates a new
+ * {@link ConnectorObject} in each link. This handler normalizes only the
+ * attributes which are returned or which the filter reads, evaluates the
+ * filter on the normalized attributes and creates the returned object once.
+ * An extra object is only created to evaluate the filter when it reads
+ * attributes which are not returned.
+ *
+ * @since 1.4
+ */
+public final class FusedResultsHandler implements ResultsHandler {
+
+    private final ResultsHandler handler;
+
+    private final Filter filter;
+
+    private final ObjectNormalizerFacade normalizer;
+
+    /**
+     * Names of the returned attributes, null to return all attributes.
+     */
+    private final Set<String> attributesToKeep;
+
+    /**
+     * Names of the attributes the filter reads, null if the filter may read
+     * any attribute.
+     */
+    private final Set<String> filterAttributes;
+
+    private final TraceSpan span;
+
+    /**
+     * Creates the handler.
+     *
+     * @param handler
+     *            the handler to pass the results to.
+     * @param filter
+     *            the filter to accept the objects with, in normalized form if
+     *            a normalizer is given. Null to accept all objects.
+     * @param normalizer
+     *            the normalizer of the attributes, null to return the
+     *            attributes as the connector did.
+     * @param attributesToGet
+     *            the names of the attributes to return besides the
+     *            {@link Uid} and the {@link Name}, null to return all
+     *            attributes.
+     * @param span
+     *            the span of the traced operation, may be null.
+     */
+    public FusedResultsHandler(final ResultsHandler handler, final Filter filter,
+            final ObjectNormalizerFacade normalizer, final String[] attributesToGet,
+            final TraceSpan span) {
+        Assertions.nullCheck(handler, "handler");
+        this.handler = handler;
+        this.filter = FilterCompiler.compile(filter);
+        this.normalizer = normalizer;
+        if (null != attributesToGet) {
+            attributesToKeep = CollectionUtil.newCaseInsensitiveSet();
+            attributesToKeep.add(Uid.NAME);
+            attributesToKeep.add(Name.NAME);
+            for (String name : attributesToGet) {
+                attributesToKeep.add(name);
+            }
+        } else {
+            attributesToKeep = null;
+        }
+        if (null != filter) {
+            final Set<String> names = CollectionUtil.newCaseInsensitiveSet();
+            filterAttributes = filter.accept(ATTRIBUTE_NAMES, names) ? names : null;
+        } else {
+            filterAttributes = null;
+        }
+        this.span = span;
+    }
+
+    public boolean handle(final ConnectorObject object) {
+        if (null == normalizer) {
+            // the filter reads the object of the connector
+            return !accept(object) || handler.handle(reduce(object));
+        }
+        final ConnectorObject candidate;
+        ConnectorObject result = null;
+        final Set<Attribute> attributes = new HashSet<Attribute>();
+        TracePhase previous = enter(TracePhase.NORMALIZE);
+        try {
+            List<Attribute> filterOnly = null;
+            for (Attribute attribute : object.getAttributes()) {
+                if (isKept(attribute.getName())) {
+                    attributes.add(normalizer.normalizeAttribute(attribute));
+                } else if (isFiltered(attribute.getName())) {
+                    if (null == filterOnly) {
+                        filterOnly = new ArrayList<Attribute>();
+                    }
+                    filterOnly.add(normalizer.normalizeAttribute(attribute));
+                }
+            }
+            if (null == filterOnly) {
+                result = new ConnectorObject(object.getObjectClass(), attributes);
+                candidate = result;
+            } else {
+                final Set<Attribute> all = new HashSet<Attribute>(attributes);
+                all.addAll(filterOnly);
+                candidate = new ConnectorObject(object.getObjectClass(), all);
+            }
+        } finally {
+            leave(previous);
+        }
+        if (!accept(candidate)) {
+            return true;
+        }
+        if (null == result) {
+            previous = enter(TracePhase.NORMALIZE);
+            try {
+                result = new ConnectorObject(object.getObjectClass(), attributes);
+            } finally {
+                leave(previous);
+            }
+        }
+        return handler.handle(result);
+    }
+
+    private boolean accept(final ConnectorObject object) {
+        if (null == filter) {
+            return true;
+        }
+        final TracePhase previous = enter(TracePhase.FILTER);
+        try {
+            return filter.accept(object);
+        } finally {
+            leave(previous);
+        }
+    }
+
+    private ConnectorObject reduce(final ConnectorObject object) {
+        if (null == attributesToKeep) {
+            return object;
+        }
+        final TracePhase previous = enter(TracePhase.ATTRIBUTES_TO_GET);
+        try {
+            final Set<Attribute> attributes = new HashSet<Attribute>(attributesToKeep.size());
+            for (Attribute attribute : object.getAttributes()) {
+                if (attributesToKeep.contains(attribute.getName())) {
+                    attributes.add(attribute);
+                }
+            }
+            return new ConnectorObject(object.getObjectClass(), attributes);
+        } finally {
+            leave(previous);
+        }
+    }
+
+    private boolean isKept(final String name) {
+        return null == attributesToKeep || attributesToKeep.contains(name);
+    }
+
+    private boolean isFiltered(final String name) {
+        return null != filter && (null == filterAttributes || filterAttributes.contains(name));
+    }
+
+    private TracePhase enter(final TracePhase phase) {
+        return null == span ? null : span.enter(phase);
+    }
+
+    private void leave(final TracePhase previous) {
+        if (null != span) {
+            span.enter(previous);
+        }
+    }
+
+    /**
+     * Collects the names of the attributes the filter reads, returns false if
+     * the filter may read attributes it does not tell about.
+     */
+    private static final FilterVisitor<Boolean, Set<String>> ATTRIBUTE_NAMES =
+            new FilterVisitor<Boolean, Set<String>>() {
+
+                public Boolean visitAndFilter(final Set<String> p, final AndFilter filter) {
+                    return visitAll(p, filter.getFilters());
+                }
+
+                public Boolean visitOrFilter(final Set<String> p, final OrFilter filter) {
+                    return visitAll(p, filter.getFilters());
+                }
+
+                public Boolean visitNotFilter(final Set<String> p, final NotFilter filter) {
+                    return filter.getFilter().accept(this, p);
+                }
+
+                public Boolean visitContainsFilter(final Set<String> p,
+                        final ContainsFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitContainsAllValuesFilter(final Set<String> p,
+                        final ContainsAllValuesFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitEqualsFilter(final Set<String> p, final EqualsFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitGreaterThanFilter(final Set<String> p,
+                        final GreaterThanFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitGreaterThanOrEqualFilter(final Set<String> p,
+                        final GreaterThanOrEqualFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitLessThanFilter(final Set<String> p,
+                        final LessThanFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitLessThanOrEqualFilter(final Set<String> p,
+                        final LessThanOrEqualFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitStartsWithFilter(final Set<String> p,
+                        final StartsWithFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitEndsWithFilter(final Set<String> p,
+                        final EndsWithFilter filter) {
+                    return add(p, filter);
+                }
+
+                public Boolean visitExtendedFilter(final Set<String> p, final Filter filter) {
+                    if (filter instanceof NormalizingFilter) {
+                        return ((NormalizingFilter) filter).getFilter().accept(this, p);
+                    }
+                    return filter instanceof FilteredResultsHandler.PassThroughFilter;
+                }
+
+                private Boolean visitAll(final Set<String> p, final Iterable<Filter> filters) {
+                    for (Filter filter : filters) {
+                        if (!filter.accept(this, p)) {
+                            return Boolean.FALSE;
+                        }
+                    }
+                    return Boolean.TRUE;
+                }
+
+                private Boolean add(final Set<String> p, final AttributeFilter filter) {
+                    p.add(filter.getName());
+                    return Boolean.TRUE;
+                }
+            };
+}
@@ -58,6 +58,10 @@ public class NormalizingFilter extends ExternallyChainedFilter {
         return getFilter().accept(normalizerFacade.normalizeObject(obj));
     }
 
+    ObjectNormalizerFacade getNormalizer() {
+        return normalizerFacade;
+    }
+
     public <R, P> R accept(FilterVisitor<R, P> v, P p) {
         return v.visitExtendedFilter(p, this);
     }
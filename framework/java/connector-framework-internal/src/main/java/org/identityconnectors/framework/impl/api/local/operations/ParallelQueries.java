@@ -0,0 +1,346 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.ConnectorClass;
+import org.identityconnectors.framework.spi.PoolableConnector;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.operations.SearchOp;
+
+/**
+ * Runs the queries of a search at the same time, for the connectors which
+ * declare {@link ConnectorClass#parallelQueries()}.
+ * <p/>
+ * The first query runs on the connector of the caller. Each other query runs
+ * on a worker thread with a connector of its own, borrowed from the pool or
+ * created for the query, and fills a bounded buffer. The caller hands the
+ * buffered objects to the handler one query after the other, so the handler
+ * is only called by the caller thread, in the same order as if the queries
+ * ran one after the other. When the handler stops, the workers stop too.
+ * <p/>
+ * A query runs on the connector of the caller when its turn comes if no
+ * worker or no idle connector was available.
+ *
+ * @since 1.4
+ */
+final class ParallelQueries {
+
+    private static final Log LOG = Log.getLog(ParallelQueries.class);
+
+    /**
+     * The system property to set the maximum number of worker threads shared
+     * by all searches.
+     */
+    public static final String MAX_THREADS_PROPERTY =
+            "org.identityconnectors.framework.search.maxParallelQueries";
+
+    /**
+     * Number of objects a worker buffers ahead of the caller.
+     */
+    private static final int BUFFER_SIZE = 1000;
+
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Signals the end of the results of a query.
+     */
+    private static final Object END = new Object();
+
+    /**
+     * Signals that the worker did not run the query.
+     */
+    private static final Object NOT_STARTED = new Object();
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ParallelQueryWorker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static ThreadPoolExecutor executor = null;
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (null == executor) {
+            int maxThreads =
+                    Integer.getInteger(MAX_THREADS_PROPERTY, Math.max(16, Runtime.getRuntime()
+                            .availableProcessors() * 4));
+            executor =
+                    new ThreadPoolExecutor(0, Math.max(1, maxThreads), 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(), THREAD_FACTORY);
+        }
+        return executor;
+    }
+
+    private ParallelQueries() {
+    }
+
+    /**
+     * Tells whether the queries of the connector may run at the same time.
+     */
+    static boolean isSupported(final Class<? extends Connector> connectorClass) {
+        final ConnectorClass annotation = connectorClass.getAnnotation(ConnectorClass.class);
+        return null != annotation && annotation.parallelQueries();
+    }
+
+    /**
+     * Runs the queries.
+     *
+     * @param context
+     *            provides the connectors of the other queries.
+     * @param search
+     *            the connector of the caller.
+     */
+    static void execute(final ConnectorOperationalContext context, final SearchOp<?> search,
+            final ObjectClass objectClass, final List<?> queries,
+            final DuplicateFilteringResultsHandler handler, final OperationOptions options) {
+        final ObjectPool<PoolableConnector> pool = context.getPool();
+        final List<SubQuery> subQueries = new ArrayList<SubQuery>(queries.size() - 1);
+        try {
+            for (Object query : queries.subList(1, queries.size())) {
+                final SubQuery subQuery = new SubQuery(context, pool, objectClass, query, options);
+                subQueries.add(subQuery);
+                try {
+                    getExecutor().execute(subQuery);
+                } catch (RejectedExecutionException e) {
+                    LOG.ok("Parallel query pool is saturated, the query runs after the previous");
+                }
+            }
+            executeQuery(search, objectClass, queries.get(0), handler, options);
+            for (SubQuery subQuery : subQueries) {
+                if (!handler.isStillHandling()) {
+                    break;
+                }
+                subQuery.drainTo(search, handler);
+            }
+        } finally {
+            for (SubQuery subQuery : subQueries) {
+                subQuery.cancel();
+            }
+        }
+    }
+
+    private static void executeQuery(final SearchOp<?> search, final ObjectClass objectClass,
+            final Object query, final SearchResultsHandler handler,
+            final OperationOptions options) {
+        @SuppressWarnings("unchecked")
+        SearchOp<Object> hack = (SearchOp<Object>) search;
+        hack.executeQuery(objectClass, query, handler, options);
+    }
+
+    /**
+     * A query run by a worker.
+     */
+    private static final class SubQuery implements Runnable, SearchResultsHandler {
+
+        private final ConnectorOperationalContext context;
+        private final ObjectPool<PoolableConnector> pool;
+        private final ObjectClass objectClass;
+        private final Object query;
+        private final OperationOptions options;
+        private final Locale locale;
+
+        private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(BUFFER_SIZE);
+
+        /**
+         * Set by whichever of the worker and the caller runs the query.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        private volatile boolean cancelled = false;
+        private volatile SearchResult result = null;
+        private volatile RuntimeException failure = null;
+
+        private SubQuery(final ConnectorOperationalContext context,
+                final ObjectPool<PoolableConnector> pool, final ObjectClass objectClass,
+                final Object query, final OperationOptions options) {
+            this.context = context;
+            this.pool = pool;
+            this.objectClass = objectClass;
+            this.query = query;
+            this.options = options;
+            this.locale = CurrentLocale.isSet() ? CurrentLocale.get() : null;
+        }
+
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            if (null != locale) {
+                CurrentLocale.set(locale);
+            }
+            Connector connector = null;
+            ObjectPoolEntry<PoolableConnector> poolEntry = null;
+            boolean started = false;
+            try {
+                if (null != pool) {
+                    final ObjectPool.Statistics statistics = pool.getStatistics();
+                    if (statistics.getNumIdle() == 0
+                            && statistics.getNumActive() >= statistics.getMaxObjects()) {
+                        // don't wait for a connector, the caller runs the query
+                        return;
+                    }
+                    poolEntry = pool.borrowObject();
+                    connector = poolEntry.getPooledObject();
+                } else {
+                    connector = context.getConnectorClass().newInstance();
+                    connector.init(context.getConfiguration());
+                }
+                started = true;
+                executeQuery((SearchOp<?>) connector, objectClass, query, this, options);
+            } catch (Throwable t) {
+                if (started) {
+                    // thrown to the caller when it reaches the query
+                    failure =
+                            t instanceof RuntimeException ? (RuntimeException) t
+                                    : new ConnectorException(t);
+                } else {
+                    LOG.ok(t, "No connector for the parallel query, the query runs after the previous");
+                }
+            } finally {
+                release(connector, poolEntry);
+                try {
+                    offer(started ? END : NOT_STARTED);
+                } catch (InterruptedException e) {
+                    LOG.error(e, null);
+                } finally {
+                    if (null != locale) {
+                        CurrentLocale.clear();
+                    }
+                }
+            }
+        }
+
+        private void release(final Connector connector,
+                final ObjectPoolEntry<PoolableConnector> poolEntry) {
+            try {
+                if (null != poolEntry) {
+                    poolEntry.close();
+                } else if (null != connector) {
+                    connector.dispose();
+                }
+            } catch (Exception e) {
+                LOG.error(e, null);
+            }
+        }
+
+        public boolean handle(final ConnectorObject connectorObject) {
+            try {
+                return offer(connectorObject);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ConnectorException.wrap(e);
+            }
+        }
+
+        public void handleResult(final SearchResult searchResult) {
+            result = searchResult;
+        }
+
+        /**
+         * Waits for room in the buffer.
+         *
+         * @return false if the search was cancelled.
+         */
+        private boolean offer(final Object obj) throws InterruptedException {
+            while (!buffer.offer(obj, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    return false;
+                }
+            }
+            return !cancelled;
+        }
+
+        /**
+         * Hands the results of the query to the handler, runs the query on
+         * the connector of the caller if the worker did not.
+         */
+        void drainTo(final SearchOp<?> search, final DuplicateFilteringResultsHandler handler) {
+            if (claimed.compareAndSet(false, true)) {
+                // the worker has not started yet
+                executeQuery(search, objectClass, query, handler, options);
+                return;
+            }
+            try {
+                while (true) {
+                    final Object next = buffer.take();
+                    if (next == END) {
+                        if (null != failure) {
+                            throw failure;
+                        }
+                        if (null != result) {
+                            handler.handleResult(result);
+                        }
+                        return;
+                    } else if (next == NOT_STARTED) {
+                        executeQuery(search, objectClass, query, handler, options);
+                        return;
+                    } else if (!handler.handle((ConnectorObject) next)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ConnectorException.wrap(e);
+            }
+        }
+
+        /**
+         * Stops the worker, or keeps it from starting.
+         */
+        void cancel() {
+            claimed.set(true);
+            cancelled = true;
+            buffer.clear();
+        }
+    }
+}
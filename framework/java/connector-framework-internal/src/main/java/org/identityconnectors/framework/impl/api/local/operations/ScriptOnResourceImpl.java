@@ -46,7 +46,7 @@ public class ScriptOnResourceImpl extends ConnectorAPIOperationRunner implements
             options = new OperationOptionsBuilder().build();
         }
         Object rv = ((ScriptOnResourceOp) getConnector()).runScriptOnResource(request, options);
-        return SerializerUtil.cloneObject(rv);
+        return SerializerUtil.copyObject(rv);
     }
 
 }
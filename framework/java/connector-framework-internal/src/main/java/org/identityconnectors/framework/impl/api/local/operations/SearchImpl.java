@@ -38,6 +38,9 @@ import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
+import org.identityconnectors.framework.impl.metrics.TracePhase;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+import org.identityconnectors.framework.impl.metrics.Tracing;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.SearchResultsHandler;
 import org.identityconnectors.framework.spi.operations.SearchOp;
@@ -80,6 +83,10 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
                 null != getOperationalContext() ? getOperationalContext()
                         .getResultsHandlerConfiguration() : new ResultsHandlerConfiguration();
 
+        // time spent in each link of the chain is traced separately
+        final TraceSpan span = Tracing.current();
+        handler = TracingResultsHandler.wrap(handler, span, TracePhase.RESULTS_HANDLER);
+
         Filter actualFilter = originalFilter;               // actualFilter is used for chaining filters - it points to the filter where new filters should be chained
 
         if (hdlCfg.isEnableFilteredResultsHandler() && hdlCfg.isEnableCaseInsensitiveFilter() && actualFilter != null) {
@@ -88,34 +95,29 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
             actualFilter = new NormalizingFilter(actualFilter, normalizer);
         }
 
+        ObjectNormalizerFacade normalizer = null;
         if (hdlCfg.isEnableNormalizingResultsHandler()) {
-            final ObjectNormalizerFacade normalizer = getNormalizer(objectClass);
-            // chain a normalizing handler (must come before
-            // filter handler)
-            NormalizingResultsHandler normalizingHandler =
-                    new NormalizingResultsHandler(handler, normalizer);
-            // chain a filter handler..
+            normalizer = getNormalizer(objectClass);
             if (hdlCfg.isEnableFilteredResultsHandler()) {
-                // chain a filter handler..
-                final Filter normalizedFilter = normalizer.normalizeFilter(actualFilter);
-                handler = new FilteredResultsHandler(normalizingHandler, normalizedFilter);
-                actualFilter = normalizedFilter;
-            } else {
-                handler = normalizingHandler;
+                // the filter is evaluated on the normalized object
+                actualFilter = normalizer.normalizeFilter(actualFilter);
             }
-        } else if (hdlCfg.isEnableFilteredResultsHandler()) {
-            // chain a filter handler..
-            handler = new FilteredResultsHandler(handler, actualFilter);
         }
-        // chain an attributes to get handler..
+        Filter resultsFilter = hdlCfg.isEnableFilteredResultsHandler() ? actualFilter : null;
         String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0 && hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
-            handler = getAttributesToGetResutlsHandler(handler, options);
+        if (attrsToGet == null || attrsToGet.length == 0
+                || !hdlCfg.isEnableAttributesToGetSearchResultsHandler()) {
+            attrsToGet = null;
+        }
+        // normalize, filter and reduce the objects in a single pass
+        if (normalizer != null || resultsFilter != null || attrsToGet != null) {
+            handler = new FusedResultsHandler(handler, resultsFilter, normalizer, attrsToGet, span);
         }
 
         final ResultsHandler handlerChain = handler;
 
         final AtomicReference<SearchResult> result = new AtomicReference<SearchResult>(null);
+        final ConnectorOperationalContext context = getOperationalContext();
         rawSearch(search, objectClass, actualFilter, new SearchResultsHandler() {
 
             public void handleResult(final SearchResult searchResult) {
@@ -125,7 +127,8 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
             public boolean handle(ConnectorObject connectorObject) {
                 return handlerChain.handle(connectorObject);
             }
-        }, options);
+        }, options, null != context && ParallelQueries.isSupported(context.getConnectorClass())
+                ? context : null);
         return result.get();
     }
 
@@ -146,6 +149,20 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
      */
     public static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
             SearchResultsHandler handler, OperationOptions options) {
+        rawSearch(search, objectClass, filter, handler, options, null);
+    }
+
+    /**
+     * Raw, SPI-level search which runs the queries at the same time if a
+     * context is given.
+     *
+     * @param parallelContext
+     *            The context to get the connectors of the parallel queries
+     *            from, null to run the queries one after the other.
+     */
+    private static void rawSearch(SearchOp<?> search, ObjectClass objectClass, Filter filter,
+            SearchResultsHandler handler, OperationOptions options,
+            ConnectorOperationalContext parallelContext) {
         FilterTranslator<?> translator = search.createFilterTranslator(objectClass, options);
         List<?> queries = translator.translate(filter);
 
@@ -157,32 +174,32 @@ public class SearchImpl extends ConnectorAPIOperationRunner implements SearchApi
             if (eliminateDups) {
                 handler = new DuplicateFilteringResultsHandler(handler);
             }
-            for (Object query : queries) {
-                @SuppressWarnings("unchecked")
-                SearchOp<Object> hack = (SearchOp<Object>) search;
-                hack.executeQuery(objectClass, query, handler, options);
-                // don't run any more queries if the consumer
-                // has stopped
-                if (handler instanceof DuplicateFilteringResultsHandler) {
-                    DuplicateFilteringResultsHandler h = (DuplicateFilteringResultsHandler) handler;
-                    if (!h.isStillHandling()) {
-                        break;
+            if (eliminateDups && null != parallelContext) {
+                ParallelQueries.execute(parallelContext, search, objectClass, queries,
+                        (DuplicateFilteringResultsHandler) handler, options);
+            } else {
+                for (Object query : queries) {
+                    @SuppressWarnings("unchecked")
+                    SearchOp<Object> hack = (SearchOp<Object>) search;
+                    hack.executeQuery(objectClass, query, handler, options);
+                    // don't run any more queries if the consumer
+                    // has stopped
+                    if (handler instanceof DuplicateFilteringResultsHandler) {
+                        DuplicateFilteringResultsHandler h = (DuplicateFilteringResultsHandler) handler;
+                        if (!h.isStillHandling()) {
+                            break;
+                        }
                     }
                 }
             }
+            if (eliminateDups && logger.isOk()) {
+                logger.ok("Dropped {0} duplicate objects returned by {1} queries",
+                        ((DuplicateFilteringResultsHandler) handler).getDuplicateCount(), queries
+                                .size());
+            }
         }
     }
 
-    private ResultsHandler getAttributesToGetResutlsHandler(ResultsHandler handler,
-            OperationOptions options) {
-        ResultsHandler ret = handler;
-        String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet != null && attrsToGet.length > 0) {
-            ret = new AttributesToGetSearchResultsHandler(handler, attrsToGet);
-        }
-        return ret;
-    }
-
     /**
      * Simple results handler that can reduce attributes to only the set of
      * attribute to get.
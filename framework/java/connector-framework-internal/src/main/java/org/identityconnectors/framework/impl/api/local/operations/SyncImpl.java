@@ -19,7 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
- * Portions Copyrighted 2010-2013 ForgeRock AS.
+ * Portions Copyrighted 2010-2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api.local.operations;
 
@@ -34,6 +34,9 @@ import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncDeltaBuilder;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.impl.metrics.TracePhase;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+import org.identityconnectors.framework.impl.metrics.Tracing;
 import org.identityconnectors.framework.spi.AttributeNormalizer;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
@@ -54,14 +57,22 @@ public class SyncImpl extends ConnectorAPIOperationRunner implements SyncApiOp {
             options = new OperationOptionsBuilder().build();
         }
 
+        // time spent in each link of the chain is traced separately
+        final TraceSpan span = Tracing.current();
+        handler = TracingResultsHandler.wrapSync(handler, span, TracePhase.RESULTS_HANDLER);
+
         // add a handler in the chain to remove attributes
         String[] attrsToGet = options.getAttributesToGet();
         if (attrsToGet != null && attrsToGet.length > 0) {
-            handler = new AttributesToGetSyncResultsHandler(handler, attrsToGet);
+            handler =
+                    TracingResultsHandler.wrapSync(new AttributesToGetSyncResultsHandler(handler,
+                            attrsToGet), span, TracePhase.ATTRIBUTES_TO_GET);
         }
         // chain a normalizing results handler
         if (getConnector() instanceof AttributeNormalizer) {
-            handler = new NormalizingSyncResultsHandler(handler, getNormalizer(objectClass));
+            handler =
+                    TracingResultsHandler.wrapSync(new NormalizingSyncResultsHandler(handler,
+                            getNormalizer(objectClass)), span, TracePhase.NORMALIZE);
         }
 
         final SyncResultsHandler handlerChain = handler;
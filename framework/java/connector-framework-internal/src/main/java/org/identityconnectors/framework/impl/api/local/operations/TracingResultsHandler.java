@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.impl.metrics.TracePhase;
+import org.identityconnectors.framework.impl.metrics.TraceSpan;
+
+/**
+ * Counts the time spent in a link of the results handler chain against a
+ * {@link TracePhase} of the current span.
+ */
+final class TracingResultsHandler implements ResultsHandler {
+
+    /**
+     * Wraps the handler if the operation is traced.
+     *
+     * @return the handler itself if the span is null.
+     */
+    static ResultsHandler wrap(final ResultsHandler handler, final TraceSpan span,
+            final TracePhase phase) {
+        return null == span ? handler : new TracingResultsHandler(handler, span, phase);
+    }
+
+    /**
+     * Wraps the handler if the operation is traced.
+     *
+     * @return the handler itself if the span is null.
+     */
+    static SyncResultsHandler wrapSync(final SyncResultsHandler handler, final TraceSpan span,
+            final TracePhase phase) {
+        return null == span ? handler : new TracingSyncResultsHandler(handler, span, phase);
+    }
+
+    private final ResultsHandler handler;
+    private final TraceSpan span;
+    private final TracePhase phase;
+
+    private TracingResultsHandler(final ResultsHandler handler, final TraceSpan span,
+            final TracePhase phase) {
+        this.handler = handler;
+        this.span = span;
+        this.phase = phase;
+    }
+
+    public boolean handle(final ConnectorObject connectorObject) {
+        if (phase == TracePhase.RESULTS_HANDLER) {
+            span.incrementObjectCount();
+        }
+        final TracePhase previous = span.enter(phase);
+        try {
+            return handler.handle(connectorObject);
+        } finally {
+            span.enter(previous);
+        }
+    }
+
+    private static final class TracingSyncResultsHandler implements SyncResultsHandler {
+
+        private final SyncResultsHandler handler;
+        private final TraceSpan span;
+        private final TracePhase phase;
+
+        private TracingSyncResultsHandler(final SyncResultsHandler handler,
+                final TraceSpan span, final TracePhase phase) {
+            this.handler = handler;
+            this.span = span;
+            this.phase = phase;
+        }
+
+        public boolean handle(final SyncDelta delta) {
+            if (phase == TracePhase.RESULTS_HANDLER) {
+                span.incrementObjectCount();
+            }
+            final TracePhase previous = span.enter(phase);
+            try {
+                return handler.handle(delta);
+            } finally {
+                span.enter(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+/**
+ * Set of the 128 bit fingerprints of {@link String}s, used to recognise the
+ * UIDs which were already returned.
+ * <p/>
+ * The fingerprints are kept in a flat {@code long} array with open
+ * addressing instead of a {@link String} and a map entry for each UID. A slot
+ * takes 16 bytes and the table is kept between 3/8 and 3/4 full, so a UID
+ * takes 21 to 43 bytes whatever its length. While the table grows, the old
+ * and the new array are both allocated.
+ * <p/>
+ * The two halves of the fingerprint are computed from the same characters,
+ * so they are not independent hashes. Two different UIDs rarely have the same
+ * fingerprint, but when they do the second one is taken for a duplicate.
+ *
+ * @since 1.4
+ */
+final class UidFingerprintSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The two halves of the fingerprint at {@code 2 * slot} and
+     * {@code 2 * slot + 1}, both zero for an empty slot.
+     */
+    private long[] table = new long[2 * INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /**
+     * Adds the fingerprint of the value.
+     *
+     * @return true if the set did not contain the fingerprint yet.
+     */
+    boolean add(final String value) {
+        long high = 0xcbf29ce484222325L;
+        long low = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            high = (high ^ c) * 0x100000001b3L;
+            low = Long.rotateLeft(low + c, 31) * 0xc2b2ae3d27d4eb4fL;
+        }
+        high = mix(high ^ value.length());
+        low = mix(low ^ value.length());
+        if (high == 0L && low == 0L) {
+            low = 1L;
+        }
+        if (size >= (table.length >> 1) - (table.length >> 3)) {
+            // keep the load factor under 0.75
+            resize();
+        }
+        if (insert(table, high, low)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of fingerprints in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    private static boolean insert(final long[] slots, final long high, final long low) {
+        final int mask = (slots.length >> 1) - 1;
+        int slot = (int) (high ^ (high >>> 32)) & mask;
+        while (slots[2 * slot] != 0L || slots[2 * slot + 1] != 0L) {
+            if (slots[2 * slot] == high && slots[2 * slot + 1] == low) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[2 * slot] = high;
+        slots[2 * slot + 1] = low;
+        return true;
+    }
+
+    private void resize() {
+        final long[] larger = new long[table.length * 2];
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] != 0L || table[i + 1] != 0L) {
+                insert(larger, table[i], table[i + 1]);
+            }
+        }
+        table = larger;
+    }
+
+    /**
+     * The finalizer of the 64 bit MurmurHash3.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a remote framework connection with Deflate.
+ * <p/>
+ * Every {@link #flush()} ends the compressed block with a sync flush, so the
+ * other side can decompress every message as soon as it was sent.
+ */
+class CompressingOutputStream extends FilterOutputStream {
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final byte[] buffer = new byte[4096];
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Guarded by the deflater.
+     */
+    private boolean ended = false;
+
+    public CompressingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        synchronized (deflater) {
+            ensureOpen();
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH, len);
+                len = 0;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (deflater) {
+            ensureOpen();
+            // a full buffer may leave output in the deflater
+            while (deflate(Deflater.SYNC_FLUSH, 0) == buffer.length) {
+                continue;
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (deflater) {
+                ensureOpen();
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH, 0);
+                }
+            }
+            out.close();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Releases the deflater without writing to or closing the underlying
+     * stream, for connections whose socket is closed directly. Writing to
+     * this stream fails afterwards.
+     */
+    void end() {
+        synchronized (deflater) {
+            if (!ended) {
+                ended = true;
+                deflater.end();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (ended) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private int deflate(int flush, int uncompressed) throws IOException {
+        long start = System.nanoTime();
+        int length = deflater.deflate(buffer, 0, buffer.length, flush);
+        CompressionStatistics.getInstance().compressed(uncompressed, length,
+                System.nanoTime() - start);
+        if (length > 0) {
+            out.write(buffer, 0, length);
+        }
+        return length;
+    }
+}
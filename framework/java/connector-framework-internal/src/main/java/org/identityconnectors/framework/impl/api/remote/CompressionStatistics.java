@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the compressed remote framework connections of this JVM, both
+ * on the client and on the server side.
+ *
+ * @since 1.4
+ */
+public final class CompressionStatistics {
+
+    private static final CompressionStatistics INSTANCE = new CompressionStatistics();
+
+    private final AtomicLong uncompressedBytesWritten = new AtomicLong();
+    private final AtomicLong compressedBytesWritten = new AtomicLong();
+    private final AtomicLong compressedBytesRead = new AtomicLong();
+    private final AtomicLong uncompressedBytesRead = new AtomicLong();
+    private final AtomicLong compressionTime = new AtomicLong();
+    private final AtomicLong decompressionTime = new AtomicLong();
+
+    private CompressionStatistics() {
+    }
+
+    public static CompressionStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    void compressed(long uncompressed, long compressed, long nanos) {
+        uncompressedBytesWritten.addAndGet(uncompressed);
+        compressedBytesWritten.addAndGet(compressed);
+        compressionTime.addAndGet(nanos);
+    }
+
+    void decompressed(long compressed, long uncompressed, long nanos) {
+        compressedBytesRead.addAndGet(compressed);
+        uncompressedBytesRead.addAndGet(uncompressed);
+        decompressionTime.addAndGet(nanos);
+    }
+
+    /**
+     * Returns the number of bytes written before compression.
+     */
+    public long getUncompressedBytesWritten() {
+        return uncompressedBytesWritten.get();
+    }
+
+    /**
+     * Returns the number of bytes written to the sockets.
+     */
+    public long getCompressedBytesWritten() {
+        return compressedBytesWritten.get();
+    }
+
+    /**
+     * Returns the number of bytes read from the sockets.
+     */
+    public long getCompressedBytesRead() {
+        return compressedBytesRead.get();
+    }
+
+    /**
+     * Returns the number of bytes read after decompression.
+     */
+    public long getUncompressedBytesRead() {
+        return uncompressedBytesRead.get();
+    }
+
+    /**
+     * Returns the time spent in the compressor in nanoseconds. The compressor
+     * never blocks so this is the CPU time of the compression.
+     */
+    public long getCompressionTime() {
+        return compressionTime.get();
+    }
+
+    /**
+     * Returns the time spent in the decompressor in nanoseconds, not
+     * including the time spent waiting for the data.
+     */
+    public long getDecompressionTime() {
+        return decompressionTime.get();
+    }
+
+    /**
+     * Returns the ratio of the uncompressed and the compressed size of all
+     * data written and read, or 1 if nothing was compressed yet.
+     */
+    public double getCompressionRatio() {
+        long compressed = getCompressedBytesWritten() + getCompressedBytesRead();
+        if (compressed == 0) {
+            return 1;
+        }
+        return (double) (getUncompressedBytesWritten() + getUncompressedBytesRead()) / compressed;
+    }
+
+    @Override
+    public String toString() {
+        return "{written=" + getUncompressedBytesWritten() + "/" + getCompressedBytesWritten()
+                + ", read=" + getUncompressedBytesRead() + "/" + getCompressedBytesRead()
+                + ", ratio=" + getCompressionRatio() + "}";
+    }
+}
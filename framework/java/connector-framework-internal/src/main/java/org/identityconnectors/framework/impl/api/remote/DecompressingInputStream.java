@@ -0,0 +1,160 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a remote framework connection compressed by a
+ * {@link CompressingOutputStream}.
+ */
+class DecompressingInputStream extends FilterInputStream {
+
+    private final Inflater inflater = new Inflater(true);
+
+    private final byte[] buffer = new byte[4096];
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Guarded by the inflater.
+     */
+    private boolean ended = false;
+
+    public DecompressingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            synchronized (inflater) {
+                ensureOpen();
+                int remaining = inflater.getRemaining();
+                long start = System.nanoTime();
+                int length;
+                try {
+                    length = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                }
+                CompressionStatistics.getInstance().decompressed(
+                        remaining - inflater.getRemaining(), length, System.nanoTime() - start);
+                if (length > 0) {
+                    return length;
+                }
+                if (inflater.finished()) {
+                    return -1;
+                }
+                if (!inflater.needsInput()) {
+                    continue;
+                }
+            }
+            // wait for the input without holding the inflater
+            int read = in.read(buffer, 0, buffer.length);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of the compressed stream");
+            }
+            synchronized (inflater) {
+                ensureOpen();
+                inflater.setInput(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * The decompressed size of the pending data is not known, so readers
+     * never wait for more data than they asked for.
+     */
+    @Override
+    public int available() throws IOException {
+        return 0;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] skipBuffer = new byte[(int) Math.min(buffer.length, n)];
+        long skipped = 0;
+        while (skipped < n) {
+            int length = read(skipBuffer, 0, (int) Math.min(skipBuffer.length, n - skipped));
+            if (length == -1) {
+                break;
+            }
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Releases the inflater without closing the underlying stream, for
+     * connections whose socket is closed directly. Reading from this stream
+     * fails afterwards.
+     */
+    void end() {
+        synchronized (inflater) {
+            if (!ended) {
+                ended = true;
+                inflater.end();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (ended) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+/**
+ * Credit based flow control of the streamed results of one request, kept by
+ * the client.
+ * <p/>
+ * The client grants the initial window with the request and tops the credit
+ * up every time half of the window was handled, so the server never has to
+ * wait as long as the window covers the results sent within one round trip.
+ * When the server still runs out of credit the client measures how long the
+ * server waited for the credit on its way and grows the window by twice the
+ * results it would have received meanwhile.
+ */
+class FlowControlWindow {
+
+    /**
+     * The window to start with, it matches the fixed pause interval of the
+     * servers without credit based flow control.
+     */
+    static final int MIN_WINDOW = 200;
+
+    /**
+     * Bounds the results buffered on the way to a slow client.
+     */
+    static final int MAX_WINDOW = 10000;
+
+    private int window = MIN_WINDOW;
+
+    /**
+     * The results handled since the last grant.
+     */
+    private int handled = 0;
+
+    private long handledTotal = 0;
+
+    private long firstResultTime = 0;
+
+    /**
+     * When the server ran out of credit or zero.
+     */
+    private long pauseTime = 0;
+
+    /**
+     * Returns the credit granted with the request.
+     */
+    public int getInitialCredit() {
+        return window;
+    }
+
+    /**
+     * Records that the server ran out of credit and waits for the credit on
+     * its way.
+     */
+    public void paused() {
+        if (pauseTime == 0) {
+            pauseTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a handled result.
+     *
+     * @return the credit to grant now or zero.
+     */
+    public int handled() {
+        long now = System.nanoTime();
+        if (handledTotal++ == 0) {
+            firstResultTime = now;
+        }
+        int growth = 0;
+        if (pauseTime != 0) {
+            growth = grow(now - pauseTime, now);
+            pauseTime = 0;
+        }
+        if (++handled < window / 2) {
+            return growth;
+        }
+        int credit = handled + growth;
+        handled = 0;
+        return credit;
+    }
+
+    private int grow(long stall, long now) {
+        long elapsed = now - firstResultTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        // the results the server could have sent while it waited
+        long missed = handledTotal * stall / elapsed;
+        int growth = (int) Math.min(MAX_WINDOW - window, Math.max(1, 2 * missed));
+        window += growth;
+        return growth;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+/**
+ * The messages of one request exchanged with the other side, either over a
+ * {@link RemoteFrameworkConnection} used by this request only or over a
+ * connection shared by concurrent requests.
+ *
+ * @since 1.4
+ */
+public interface MessageChannel {
+
+    /**
+     * Sends the message to the other side.
+     */
+    public void writeObject(Object object);
+
+    /**
+     * Waits for the next message from the other side.
+     */
+    public Object readObject();
+
+    /**
+     * Returns the next message if it was received already, without waiting.
+     *
+     * @return null if no message is pending.
+     */
+    public Object pollObject();
+}
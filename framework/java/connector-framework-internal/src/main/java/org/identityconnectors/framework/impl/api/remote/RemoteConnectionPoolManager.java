@@ -0,0 +1,257 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
+import org.identityconnectors.framework.impl.metrics.MetricsRegistry;
+
+/**
+ * Keeps the pools of the open {@link RemoteFrameworkConnection}s, one pool per
+ * {@link RemoteFrameworkConnectionInfo}.
+ * <p/>
+ * The connector server processes any number of requests on one connection so
+ * a connection returned to the pool after a complete request/response exchange
+ * can be reused without a new TCP connection and SSL handshake.
+ * <p/>
+ * If multiplexing is enabled it also keeps the one
+ * {@link RemoteMultiplexedConnection} shared by all requests to the remote
+ * framework.
+ */
+public class RemoteConnectionPoolManager {
+
+    private static class RemoteConnectionPoolHandler implements
+            ObjectPoolHandler<RemoteFrameworkConnection> {
+
+        private final RemoteFrameworkConnectionInfo connectionInfo;
+
+        public RemoteConnectionPoolHandler(final RemoteFrameworkConnectionInfo connectionInfo) {
+            this.connectionInfo = connectionInfo;
+        }
+
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            ObjectPoolConfiguration configuration = new ObjectPoolConfiguration(original);
+            configuration.validate();
+            return configuration;
+        }
+
+        public RemoteFrameworkConnection makeObject() {
+            return new RemoteFrameworkConnection(connectionInfo);
+        }
+
+        public void testObject(RemoteFrameworkConnection object) {
+            if (!object.isAlive()) {
+                throw new ConnectorIOException("Remote connection is closed: " + connectionInfo);
+            }
+        }
+
+        public void disposeObject(RemoteFrameworkConnection object) {
+            object.close();
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Cache of the various POOLS..
+     */
+    private static final ConcurrentMap<RemoteFrameworkConnectionInfo, ObjectPool<RemoteFrameworkConnection>> POOLS =
+            new ConcurrentHashMap<RemoteFrameworkConnectionInfo, ObjectPool<RemoteFrameworkConnection>>();
+
+    /**
+     * The shared connection of a remote framework with multiplexing enabled.
+     * The entry guards opening the connection, so a slow remote framework
+     * does not hold up the others, and it is removed with its connection.
+     */
+    private static final class MultiplexedEntry {
+        private volatile RemoteMultiplexedConnection connection;
+    }
+
+    /**
+     * The shared connections of the remote frameworks with multiplexing
+     * enabled.
+     */
+    private static final ConcurrentMap<RemoteFrameworkConnectionInfo, MultiplexedEntry> MULTIPLEXED_CONNECTIONS =
+            new ConcurrentHashMap<RemoteFrameworkConnectionInfo, MultiplexedEntry>();
+
+    /**
+     * The remote frameworks which don't support multiplexing.
+     */
+    private static final Set<RemoteFrameworkConnectionInfo> NOT_MULTIPLEXED = Collections
+            .newSetFromMap(new ConcurrentHashMap<RemoteFrameworkConnectionInfo, Boolean>());
+
+    private static final Log LOG = Log.getLog(RemoteConnectionPoolManager.class);
+
+    /**
+     * Get a connection pool for the remote framework if the connection pooling
+     * is enabled.
+     *
+     * @return the pool or null if the connections are not pooled.
+     */
+    public static ObjectPool<RemoteFrameworkConnection> getPool(
+            final RemoteFrameworkConnectionInfo connectionInfo) {
+        if (!connectionInfo.isConnectionPoolingEnabled()) {
+            return null;
+        }
+        ObjectPool<RemoteFrameworkConnection> pool = POOLS.get(connectionInfo);
+        if (pool == null) {
+            synchronized (POOLS) {
+                pool = POOLS.get(connectionInfo);
+                if (pool == null) {
+                    LOG.info("Creating new connection pool: {0}", connectionInfo);
+                    pool =
+                            new ObjectPool<RemoteFrameworkConnection>(
+                                    new RemoteConnectionPoolHandler(connectionInfo),
+                                    connectionInfo.getConnectionPoolConfiguration());
+                    MetricsRegistry.registerPool(getMetricsName(connectionInfo), pool);
+                    POOLS.put(connectionInfo, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Get the connection shared by all requests to the remote framework if
+     * the multiplexing is enabled and the remote framework supports it.
+     * <p/>
+     * A broken connection is replaced by a new one.
+     *
+     * @return the connection or null if the requests don't share a
+     *         connection.
+     */
+    public static RemoteMultiplexedConnection getMultiplexedConnection(
+            final RemoteFrameworkConnectionInfo connectionInfo) {
+        if (!connectionInfo.isMultiplexingEnabled() || NOT_MULTIPLEXED.contains(connectionInfo)) {
+            return null;
+        }
+        while (true) {
+            MultiplexedEntry entry = MULTIPLEXED_CONNECTIONS.get(connectionInfo);
+            if (null == entry) {
+                entry = new MultiplexedEntry();
+                final MultiplexedEntry previous =
+                        MULTIPLEXED_CONNECTIONS.putIfAbsent(connectionInfo, entry);
+                if (null != previous) {
+                    entry = previous;
+                }
+            }
+            RemoteMultiplexedConnection connection = entry.connection;
+            if (null != connection && connection.isAlive()) {
+                return connection;
+            }
+            synchronized (entry) {
+                if (MULTIPLEXED_CONNECTIONS.get(connectionInfo) != entry) {
+                    // disposed in the meantime
+                    continue;
+                }
+                connection = entry.connection;
+                if (null == connection || !connection.isAlive()) {
+                    connection = RemoteMultiplexedConnection.open(connectionInfo);
+                    if (null == connection) {
+                        LOG.info("Remote framework does not support multiplexing: {0}",
+                                connectionInfo);
+                        NOT_MULTIPLEXED.add(connectionInfo);
+                        MULTIPLEXED_CONNECTIONS.remove(connectionInfo, entry);
+                    }
+                    entry.connection = connection;
+                }
+                return connection;
+            }
+        }
+    }
+
+    private static void close(final MultiplexedEntry entry) {
+        synchronized (entry) {
+            if (null != entry.connection) {
+                entry.connection.close();
+                entry.connection = null;
+            }
+        }
+    }
+
+    /**
+     * A new name to publish the metrics of the pool with.
+     */
+    private static String getMetricsName(final RemoteFrameworkConnectionInfo connectionInfo) {
+        return MetricsRegistry.newName("remote-" + connectionInfo.getHost() + ":"
+                + connectionInfo.getPort());
+    }
+
+    public static void dispose(final RemoteFrameworkConnectionInfo connectionInfo) {
+        NOT_MULTIPLEXED.remove(connectionInfo);
+        final MultiplexedEntry entry = MULTIPLEXED_CONNECTIONS.remove(connectionInfo);
+        if (null != entry) {
+            close(entry);
+        }
+        synchronized (POOLS) {
+            ObjectPool<RemoteFrameworkConnection> pool = POOLS.remove(connectionInfo);
+            if (null != pool) {
+                MetricsRegistry.unregisterPool(pool);
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to close pool: {0}", pool);
+                }
+            }
+        }
+    }
+
+    public static void dispose() {
+        for (RemoteFrameworkConnectionInfo connectionInfo : MULTIPLEXED_CONNECTIONS.keySet()) {
+            final MultiplexedEntry entry = MULTIPLEXED_CONNECTIONS.remove(connectionInfo);
+            if (null != entry) {
+                close(entry);
+            }
+        }
+        NOT_MULTIPLEXED.clear();
+        synchronized (POOLS) {
+            // close each pool..
+            for (Map.Entry<RemoteFrameworkConnectionInfo, ObjectPool<RemoteFrameworkConnection>> entry : POOLS
+                    .entrySet()) {
+                ObjectPool<RemoteFrameworkConnection> pool = entry.getValue();
+                MetricsRegistry.unregisterPool(pool);
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    LOG.warn(e, "Failed to close pool: {0}", pool);
+                }
+            }
+            // clear the map of all POOLS..
+            POOLS.clear();
+        }
+    }
+}
@@ -43,7 +43,8 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
      * Builds up the maps of supported operations and calls.
      */
     public RemoteConnectorFacadeImpl(final APIConfigurationImpl configuration) {
-        super(generateRemoteConnectorFacadeKey(configuration), configuration.getConnectorInfo());
+        super(generateRemoteConnectorFacadeKey(configuration), configuration.getConnectorInfo(),
+                configuration.getObjectCacheConfiguration());
         // Restore the original configuration settings
         getAPIConfiguration().setProducerBufferSize(configuration.getProducerBufferSize());
         getAPIConfiguration().setTimeoutMap(configuration.getTimeoutMap());
@@ -60,6 +61,9 @@ public class RemoteConnectorFacadeImpl extends AbstractConnectorFacade {
         APIConfigurationImpl copy = new APIConfigurationImpl(configuration);
         copy.setProducerBufferSize(0);
         copy.setTimeoutMap(new HashMap<Class<? extends APIOperation>, Integer>());
+        // The cache is kept by this facade, the server must neither cache
+        // again nor fail to read the configuration if it is older.
+        copy.setObjectCacheConfiguration(null);
         return SerializerUtil.serializeBase64Object(copy);
     }
 
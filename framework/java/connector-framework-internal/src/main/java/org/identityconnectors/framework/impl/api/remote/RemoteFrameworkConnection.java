@@ -19,6 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
+ * Portions Copyrighted 2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.impl.api.remote;
 
@@ -28,6 +29,8 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import javax.net.ssl.SSLContext;
@@ -42,13 +45,28 @@ import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectDeserializer;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.common.serializer.ObjectSerializerFactory;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
 
-public class RemoteFrameworkConnection implements Closeable {
+public class RemoteFrameworkConnection implements Closeable, MessageChannel {
 
     private static final Log LOG = Log.getLog(RemoteFrameworkConnection.class);
+
+    /**
+     * A connection idle for longer is probed with a read before it is reused,
+     * the other side may have closed it meanwhile.
+     */
+    static final long PROBE_IDLE_TIME_MILLIS = 1000;
+
     private Socket socket;
+    private InputStream inputStream;
+    private OutputStream outputStream;
     private BinaryObjectSerializer encoder;
     private BinaryObjectDeserializer decoder;
+    private boolean sharedSymbols = false;
+    private CompressingOutputStream compressingStream;
+    private DecompressingInputStream decompressingStream;
+    private volatile long lastReadTime = System.currentTimeMillis();
 
     public RemoteFrameworkConnection(RemoteFrameworkConnectionInfo info) {
         try {
@@ -74,6 +92,30 @@ public class RemoteFrameworkConnection implements Closeable {
         }
     }
 
+    /**
+     * Creates a connection which reads from the given stream instead of the
+     * stream of the socket.
+     * <p/>
+     * This is used by the non-blocking connector server listener, which reads
+     * the beginning of each request before it hands the connection over.
+     *
+     * @param socket
+     *            the connected socket.
+     * @param inputStream
+     *            the stream to read the requests from.
+     */
+    public RemoteFrameworkConnection(Socket socket, InputStream inputStream) {
+        try {
+            init(socket, inputStream);
+        } catch (SocketException e) {
+            throw new ConnectorIOException("Failed to init remote connection to "
+                    + (null != socket ? socket.toString() : "null"), e);
+        } catch (Exception e) {
+            throw new ConnectorException("Failed to init remote connection to "
+                    + (null != socket ? socket.toString() : "null"), e);
+        }
+    }
+
     private void init(RemoteFrameworkConnectionInfo connectionInfo) throws Exception {
         Socket socket = new Socket();
         socket.setSoTimeout(connectionInfo.getTimeout());
@@ -114,28 +156,145 @@ public class RemoteFrameworkConnection implements Closeable {
     }
 
     private void init(Socket socket) throws Exception {
+        init(socket, socket.getInputStream());
+    }
+
+    private void init(Socket socket, InputStream inputStream) throws Exception {
         this.socket = socket;
-        InputStream inputStream = this.socket.getInputStream();
-        OutputStream outputStream = this.socket.getOutputStream();
+        this.inputStream = inputStream;
+        this.outputStream = this.socket.getOutputStream();
         ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
         encoder = factory.newBinarySerializer(outputStream);
         decoder = factory.newBinaryDeserializer(inputStream);
     }
 
-    public void close() {
-        flush();
+    /**
+     * Checks whether this connection can be used to send a new request.
+     * <p/>
+     * The remote framework never sends data before it gets a request so any
+     * pending data or the end of the stream on an idle connection means the
+     * connection is out of sync or it was closed by the other side.
+     * <p/>
+     * Only a connection idle for longer than {@link #PROBE_IDLE_TIME_MILLIS}
+     * is probed for the end of the stream with a short blocking read, a
+     * recently used one is checked without waiting.
+     *
+     * @return true if the connection can be reused.
+     */
+    public boolean isAlive() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
         try {
-            if (socket instanceof SSLSocket) {
-                // SSLSocket doesn't like shutdownOutput/shutdownInput
-                socket.close();
-            } else {
-                socket.shutdownOutput();
-                socket.shutdownInput();
-                socket.close();
+            if (((BinaryObjectDecoder) decoder).isDataAvailable()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - lastReadTime < PROBE_IDLE_TIME_MILLIS) {
+                return true;
+            }
+            int timeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            try {
+                socket.getInputStream().read();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                socket.setSoTimeout(timeout);
             }
         } catch (Exception e) {
-            LOG.info(e, "Failed to close connection.");
-            throw ConnectorException.wrap(e);
+            LOG.ok(e, "Remote connection is broken");
+            return false;
+        }
+    }
+
+    /**
+     * Changes the read timeout of the socket.
+     *
+     * @param timeout
+     *            the timeout in milliseconds, 0 means infinite timeout.
+     */
+    void setTimeout(int timeout) {
+        try {
+            socket.setSoTimeout(timeout);
+        } catch (SocketException e) {
+            throw new ConnectorIOException(e);
+        }
+    }
+
+    /**
+     * Switches both directions of the connection to shared symbols, the
+     * constant pool of each side then lives as long as the connection.
+     * <p/>
+     * Both sides must switch between the same objects of the stream, this is
+     * negotiated with the
+     * {@link org.identityconnectors.framework.impl.api.remote.messages.HelloRequest#SHARED_SYMBOLS_PROTOCOL_VERSION}
+     * and done right after the {@code HelloResponse}.
+     *
+     * @since 1.4
+     */
+    public void enableSharedSymbols() {
+        sharedSymbols = true;
+        ((BinaryObjectEncoder) encoder).setSharedSymbols(true);
+        ((BinaryObjectDecoder) decoder).setSharedSymbols(true);
+    }
+
+    /**
+     * Compresses both directions of the connection with Deflate.
+     * <p/>
+     * The serializers are replaced, the following objects are encoded as a
+     * new stream. Both sides must switch right after the
+     * {@code HelloResponse} which negotiated the compression, before anything
+     * else is sent, so no data of the old stream is left in the buffers.
+     *
+     * @since 1.4
+     */
+    public void enableCompression() {
+        encoder.flush();
+        ObjectSerializerFactory factory = ObjectSerializerFactory.getInstance();
+        compressingStream = new CompressingOutputStream(outputStream);
+        decompressingStream = new DecompressingInputStream(inputStream);
+        encoder = factory.newBinarySerializer(compressingStream);
+        decoder = factory.newBinaryDeserializer(decompressingStream);
+        if (sharedSymbols) {
+            enableSharedSymbols();
+        }
+    }
+
+    public void close() {
+        try {
+            closeSocket();
+        } finally {
+            // the socket is closed, so nothing waits in the zlib streams
+            if (null != compressingStream) {
+                compressingStream.end();
+            }
+            if (null != decompressingStream) {
+                decompressingStream.end();
+            }
+        }
+    }
+
+    private void closeSocket() {
+        if (socket.isClosed()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            try {
+                if (socket instanceof SSLSocket) {
+                    // SSLSocket doesn't like shutdownOutput/shutdownInput
+                    socket.close();
+                } else {
+                    socket.shutdownOutput();
+                    socket.shutdownInput();
+                    socket.close();
+                }
+            } catch (Exception e) {
+                LOG.info(e, "Failed to close connection.");
+                throw ConnectorException.wrap(e);
+            }
         }
     }
 
@@ -151,6 +310,47 @@ public class RemoteFrameworkConnection implements Closeable {
         // flush first in case there is any data in the
         // output buffer
         flush();
-        return decoder.readObject();
+        return receiveObject();
+    }
+
+    /**
+     * Returns the serial type of an object received on this connection but
+     * not read yet.
+     *
+     * @see BinaryObjectDecoder#scanObjectType(ByteBuffer, int, boolean)
+     * @since 1.4
+     */
+    public String scanObjectType(ByteBuffer buffer, int offset, boolean header) {
+        return ((BinaryObjectDecoder) decoder).scanObjectType(buffer, offset, header);
+    }
+
+    /**
+     * Reads the next object if its first bytes were received already.
+     * <p/>
+     * The other side writes every message in one piece, so the rest of the
+     * message follows right away.
+     *
+     * @since 1.4
+     */
+    public Object pollObject() {
+        flush();
+        if (!((BinaryObjectDecoder) decoder).isDataAvailable()) {
+            return null;
+        }
+        return receiveObject();
+    }
+
+    /**
+     * Reads the next object without flushing the output first.
+     * <p/>
+     * Used by the reader of a multiplexed connection, where other threads
+     * write and flush their messages concurrently.
+     *
+     * @since 1.4
+     */
+    public Object receiveObject() {
+        final Object object = decoder.readObject();
+        lastReadTime = System.currentTimeMillis();
+        return object;
     }
 }
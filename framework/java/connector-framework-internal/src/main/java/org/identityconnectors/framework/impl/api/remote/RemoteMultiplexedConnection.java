@@ -0,0 +1,261 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+import org.identityconnectors.framework.impl.api.remote.messages.MultiplexedMessage;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+
+/**
+ * A connection to a remote framework which was switched to the
+ * {@link HelloRequest#MULTIPLEXED_PROTOCOL_VERSION} and is shared by
+ * concurrent requests.
+ * <p/>
+ * Every request gets its own {@link MessageChannel}. A reader thread receives
+ * the messages of all requests and hands each one over to the channel of its
+ * request.
+ *
+ * @since 1.4
+ */
+public class RemoteMultiplexedConnection implements Closeable {
+
+    private static final Log LOG = Log.getLog(RemoteMultiplexedConnection.class);
+
+    /**
+     * Received by the channels when the connection is broken.
+     */
+    private static final Object CLOSED = new Object();
+
+    private final RemoteFrameworkConnectionInfo connectionInfo;
+
+    private final RemoteFrameworkConnection connection;
+
+    private final AtomicLong lastRequestId = new AtomicLong();
+
+    private final ConcurrentMap<Long, Channel> channels = new ConcurrentHashMap<Long, Channel>();
+
+    private volatile Throwable failure = null;
+
+    /**
+     * The messages of one request.
+     */
+    class Channel implements MessageChannel, Closeable {
+
+        private final long requestId = lastRequestId.incrementAndGet();
+
+        private final BlockingQueue<Object> messages = new LinkedBlockingQueue<Object>();
+
+        public void writeObject(Object object) {
+            // the server needs the locale only to start the operation
+            send(new MultiplexedMessage(requestId,
+                    object instanceof OperationRequest ? CurrentLocale.get() : null, object));
+        }
+
+        public Object readObject() {
+            Object message;
+            try {
+                int timeout = connectionInfo.getTimeout();
+                if (timeout > 0) {
+                    message = messages.poll(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    message = messages.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ConnectorException.wrap(e);
+            }
+            if (null == message) {
+                throw new ConnectorIOException("Timed out waiting for the response from "
+                        + connectionInfo);
+            }
+            if (CLOSED == message) {
+                throw new ConnectorIOException("Remote connection is closed: " + connectionInfo,
+                        failure);
+            }
+            return message;
+        }
+
+        public Object pollObject() {
+            final Object message = messages.peek();
+            if (null == message || CLOSED == message) {
+                // the closed connection is reported by readObject
+                return null;
+            }
+            return messages.poll();
+        }
+
+        /**
+         * Stops receiving the messages of this request.
+         */
+        public void close() {
+            channels.remove(requestId);
+        }
+    }
+
+    private RemoteMultiplexedConnection(final RemoteFrameworkConnectionInfo connectionInfo,
+            final RemoteFrameworkConnection connection) {
+        this.connectionInfo = connectionInfo;
+        this.connection = connection;
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "RemoteMultiplexedConnection " + connectionInfo);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Opens a connection to the remote framework and asks to switch it to the
+     * multiplexed protocol.
+     *
+     * @return the new connection or null if the remote framework does not
+     *         support the multiplexed protocol.
+     */
+    public static RemoteMultiplexedConnection open(
+            final RemoteFrameworkConnectionInfo connectionInfo) {
+        RemoteFrameworkConnection connection = new RemoteFrameworkConnection(connectionInfo);
+        boolean multiplexed = false;
+        try {
+            connection.writeObject(CurrentLocale.get());
+            connection.writeObject(connectionInfo.getKey());
+            connection.writeObject(new HelloRequest(HelloRequest.SERVER_INFO,
+                    HelloRequest.SHARED_SYMBOLS_PROTOCOL_VERSION, connectionInfo
+                            .isCompressionEnabled() ? HelloRequest.DEFLATE_COMPRESSION : null));
+            HelloResponse response = (HelloResponse) connection.readObject();
+            if (response.getException() != null) {
+                throw ConnectorException.wrap(response.getException());
+            }
+            if (response.getProtocolVersion() < HelloRequest.MULTIPLEXED_PROTOCOL_VERSION) {
+                return null;
+            }
+            if (HelloRequest.DEFLATE_COMPRESSION.equals(response.getCompression())) {
+                connection.enableCompression();
+            }
+            if (response.getProtocolVersion() >= HelloRequest.SHARED_SYMBOLS_PROTOCOL_VERSION) {
+                connection.enableSharedSymbols();
+            }
+            // the reader waits for the responses of any request, the channels
+            // apply the timeout
+            connection.setTimeout(0);
+            multiplexed = true;
+            return new RemoteMultiplexedConnection(connectionInfo, connection);
+        } finally {
+            if (!multiplexed) {
+                try {
+                    connection.close();
+                } catch (Exception e) {
+                    /* ignore */
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the channel of a new request.
+     */
+    Channel openChannel() {
+        Channel channel = new Channel();
+        channels.put(channel.requestId, channel);
+        if (null != failure) {
+            channel.close();
+            throw new ConnectorIOException("Remote connection is closed: " + connectionInfo,
+                    failure);
+        }
+        return channel;
+    }
+
+    public boolean isAlive() {
+        return null == failure;
+    }
+
+    private void send(MultiplexedMessage message) {
+        try {
+            synchronized (connection) {
+                connection.writeObject(message);
+                connection.flush();
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    private void receive() {
+        try {
+            while (true) {
+                Object object = connection.receiveObject();
+                if (!(object instanceof MultiplexedMessage)) {
+                    throw new ConnectorException("Unexpected response: " + object);
+                }
+                MultiplexedMessage message = (MultiplexedMessage) object;
+                Channel channel = channels.get(message.getRequestId());
+                // nobody waits for the rest of an abandoned request
+                if (null != channel) {
+                    channel.messages.add(message.getMessage());
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Throwable e) {
+        synchronized (channels) {
+            if (null != failure) {
+                return;
+            }
+            failure = e;
+        }
+        LOG.ok(e, "Remote connection is broken: {0}", connectionInfo);
+        try {
+            connection.close();
+        } catch (Exception e2) {
+            /* ignore */
+        }
+        for (Channel channel : channels.values()) {
+            channel.messages.add(CLOSED);
+        }
+    }
+
+    public void close() {
+        fail(new ConnectorIOException("Remote connection was closed: " + connectionInfo));
+    }
+}
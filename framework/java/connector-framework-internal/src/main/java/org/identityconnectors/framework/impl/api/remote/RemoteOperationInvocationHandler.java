@@ -33,11 +33,15 @@ import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseCredit;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
@@ -69,48 +73,133 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
         ObjectStreamHandler streamHandlerArg =
                 extractStreamHandler(method.getParameterTypes(), simpleMarshallArgs);
 
+        // the results are streamed within the credit granted by the client
+        FlowControlWindow window = null;
+        if (streamHandlerArg != null) {
+            window = new FlowControlWindow();
+        }
+
         // build the request object
         RemoteFrameworkConnectionInfo connectionInfo = connectorInfo.getRemoteConnectionInfo();
         OperationRequest request =
                 new OperationRequest(connectorInfo.getConnectorKey(), connectorFacadeKey,
-                        operation, method.getName(), simpleMarshallArgs);
+                        operation, method.getName(), simpleMarshallArgs,
+                        null != window ? window.getInitialCredit() : 0);
 
-        // create the connection
+        // share the multiplexed connection if the server supports it
+        RemoteMultiplexedConnection multiplexedConnection =
+                RemoteConnectionPoolManager.getMultiplexedConnection(connectionInfo);
+        if (null != multiplexedConnection) {
+            return invokeMultiplexed(multiplexedConnection, request, streamHandlerArg, window);
+        }
+
+        // borrow a pooled connection or create a new one
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(connectionInfo);
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = null;
         RemoteFrameworkConnection connection = null;
+        // the connection can be reused only after the complete response was read
+        boolean reusable = false;
 
         try {
-            connection = new RemoteFrameworkConnection(connectionInfo);
+            if (null != pool) {
+                entry = pool.borrowObject();
+                connection = entry.getPooledObject();
+            } else {
+                connection = new RemoteFrameworkConnection(connectionInfo);
+            }
             connection.writeObject(CurrentLocale.get());
             connection.writeObject(connectionInfo.getKey());
             // send the request
             connection.writeObject(request);
 
             // now process the response stream (if any)
+            int unhandled = 0;
             if (streamHandlerArg != null) {
-                handleStreamResponse(connection, streamHandlerArg);
+                unhandled = handleStreamResponse(connection, streamHandlerArg, window);
             }
 
             // finally return the actual return value
             OperationResponsePart response = (OperationResponsePart) connection.readObject();
+            reusable = true;
             if (response.getException() != null) {
                 throw response.getException();
             }
-            return response.getResult();
+            return addUnhandled(response.getResult(), unhandled);
         } finally {
             if (null != connection) {
-                connection.close();
+                if (null == entry) {
+                    connection.close();
+                } else if (reusable) {
+                    entry.close();
+                } else {
+                    // the rest of the response is still on the way, the
+                    // connection can't be used for another request
+                    try {
+                        connection.close();
+                    } catch (Exception e) {
+                        /* ignore */
+                    }
+                    entry.invalidate();
+                }
             }
         }
 
     }
 
+    private static Object invokeMultiplexed(final RemoteMultiplexedConnection connection,
+            final OperationRequest request, final ObjectStreamHandler streamHandlerArg,
+            final FlowControlWindow window) throws Throwable {
+        RemoteMultiplexedConnection.Channel channel = connection.openChannel();
+        boolean complete = false;
+        try {
+            // the connection is authenticated, send just the request
+            channel.writeObject(request);
+
+            // now process the response stream (if any)
+            int unhandled = 0;
+            if (streamHandlerArg != null) {
+                unhandled = handleStreamResponse(channel, streamHandlerArg, window);
+            }
+
+            // finally return the actual return value
+            OperationResponsePart response = (OperationResponsePart) channel.readObject();
+            complete = true;
+            if (response.getException() != null) {
+                throw response.getException();
+            }
+            return addUnhandled(response.getResult(), unhandled);
+        } finally {
+            if (!complete && connection.isAlive()) {
+                // don't let the server wait for an abandoned request
+                try {
+                    channel.writeObject(new OperationRequestStopData());
+                } catch (Exception e) {
+                    /* ignore */
+                }
+            }
+            channel.close();
+        }
+    }
+
     /**
      * Handles a stream response until the end of the stream
+     * <p/>
+     * The server sends the results within the credit granted by the window.
+     * A server which does not support credit based flow control pauses after
+     * a fixed number of results and waits for the reply instead.
+     *
+     * @return the number of results the handler refused or never got because
+     *         it stopped before.
      */
-    private static void handleStreamResponse(final RemoteFrameworkConnection connection,
-            final ObjectStreamHandler streamHandler) throws ConnectorException {
+    private static int handleStreamResponse(final MessageChannel connection,
+            final ObjectStreamHandler streamHandler, final FlowControlWindow window)
+            throws ConnectorException {
         Object response;
+        int unhandled = 0;
         boolean handleMore = true;
+        // the server confirms that it understood the initial credit
+        boolean credited = false;
         while (true) {
             response = connection.readObject();
             if (response instanceof OperationResponsePart) {
@@ -121,9 +210,27 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                 Object object = part.getResult();
                 if (handleMore) {
                     handleMore = streamHandler.handle(object);
+                    if (credited) {
+                        if (!handleMore) {
+                            connection.writeObject(new OperationRequestStopData());
+                        } else {
+                            int credit = window.handled();
+                            if (credit > 0) {
+                                connection.writeObject(new OperationRequestMoreData(credit));
+                            }
+                        }
+                    }
                 }
+                if (!handleMore) {
+                    unhandled++;
+                }
+            } else if (response instanceof OperationResponseCredit) {
+                credited = true;
             } else if (response instanceof OperationResponsePause) {
-                if (handleMore) {
+                if (credited) {
+                    // the credit granted last is on its way
+                    window.paused();
+                } else if (handleMore) {
                     connection.writeObject(new OperationRequestMoreData());
                 } else {
                     connection.writeObject(new OperationRequestStopData());
@@ -134,6 +241,23 @@ public class RemoteOperationInvocationHandler implements InvocationHandler {
                 throw new ConnectorException("Unexpected response: " + response);
             }
         }
+        return unhandled;
+    }
+
+    /**
+     * The server counted the results it sent before it saw the stop as
+     * handled, a search reports them as remaining like a local search does.
+     */
+    private static Object addUnhandled(final Object result, final int unhandled) {
+        if (unhandled > 0 && result instanceof SearchResult) {
+            final SearchResult searchResult = (SearchResult) result;
+            if (searchResult.getRemainingPagedResults() >= 0) {
+                return new SearchResult(searchResult.getPagedResultsCookie(), searchResult
+                        .getRemainingPagedResults()
+                        + unhandled);
+            }
+        }
+        return result;
     }
 
     /**
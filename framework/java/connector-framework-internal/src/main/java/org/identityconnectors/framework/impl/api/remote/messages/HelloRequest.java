@@ -35,16 +35,93 @@ public class HelloRequest implements Message {
     //public static final int DEFAULT_CONFIG = 32;
     public static final int CONNECTOR_INFO = CONNECTOR_KEY_LIST | SERVER_INFO;
 
+    /**
+     * One request at a time on a connection.
+     */
+    public static final int PROTOCOL_VERSION = 1;
+
+    /**
+     * Every message after the {@link HelloResponse} is wrapped in a
+     * {@link MultiplexedMessage} so concurrent requests can share the
+     * connection.
+     *
+     * @since 1.4
+     */
+    public static final int MULTIPLEXED_PROTOCOL_VERSION = 2;
+
+    /**
+     * Same as {@link #MULTIPLEXED_PROTOCOL_VERSION} and in addition attribute
+     * names and other symbols are sent only once for the life of the
+     * connection.
+     *
+     * @since 1.4
+     */
+    public static final int SHARED_SYMBOLS_PROTOCOL_VERSION = 3;
+
+    /**
+     * The name of the Deflate compression of the connection.
+     *
+     * @since 1.4
+     */
+    public static final String DEFLATE_COMPRESSION = "deflate";
+
     private final int level;
 
+    private final int protocolVersion;
+
+    private final String compression;
+
     public HelloRequest(int infoLevel) {
+        this(infoLevel, PROTOCOL_VERSION);
+    }
+
+    /**
+     * Creates a request which asks the server to switch the connection to the
+     * given protocol version after the response.
+     *
+     * @since 1.4
+     */
+    public HelloRequest(int infoLevel, int protocolVersion) {
+        this(infoLevel, protocolVersion, null);
+    }
+
+    /**
+     * Creates a request which in addition asks the server to compress the
+     * multiplexed connection.
+     *
+     * @param compression
+     *            the requested compression, {@link #DEFLATE_COMPRESSION} or
+     *            null for none.
+     * @since 1.4
+     */
+    public HelloRequest(int infoLevel, int protocolVersion, String compression) {
         level = infoLevel;
+        this.protocolVersion = protocolVersion;
+        this.compression = compression;
     }
 
     public int getInfoLevel() {
         return level;
     }
 
+    /**
+     * Returns the highest protocol version supported by the client.
+     *
+     * @since 1.4
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Returns the compression requested by the client or null.
+     *
+     * @since 1.4
+     */
+    public String getCompression() {
+        return compression;
+    }
+
     private boolean checkInfoLevel(int info) {
         return ((level & info) == info);
     }
@@ -56,8 +56,38 @@ public class HelloResponse implements Message {
      */
     private List<ConnectorKey> connectorKeys;
 
+    /**
+     * The protocol version used on the connection after this response.
+     */
+    private int protocolVersion;
+
+    /**
+     * The compression used on the connection after this response.
+     */
+    private String compression;
+
     public HelloResponse(Throwable exception, Map<String, Object> serverInfo,
             List<ConnectorKey> connectorKeys, List<RemoteConnectorInfoImpl> connectorInfos) {
+        this(exception, serverInfo, connectorKeys, connectorInfos, HelloRequest.PROTOCOL_VERSION);
+    }
+
+    /**
+     * @since 1.4
+     */
+    public HelloResponse(Throwable exception, Map<String, Object> serverInfo,
+            List<ConnectorKey> connectorKeys, List<RemoteConnectorInfoImpl> connectorInfos,
+            int protocolVersion) {
+        this(exception, serverInfo, connectorKeys, connectorInfos, protocolVersion, null);
+    }
+
+    /**
+     * @since 1.4
+     */
+    public HelloResponse(Throwable exception, Map<String, Object> serverInfo,
+            List<ConnectorKey> connectorKeys, List<RemoteConnectorInfoImpl> connectorInfos,
+            int protocolVersion, String compression) {
+        this.protocolVersion = protocolVersion;
+        this.compression = compression;
         this.exception = exception;
         this.serverInfo = CollectionUtil.asReadOnlyMap(serverInfo);
         this.connectorKeys = CollectionUtil.newReadOnlyList(connectorKeys);
@@ -80,6 +110,24 @@ public class HelloResponse implements Message {
         return serverInfo;
     }
 
+    /**
+     * Returns the protocol version the server switched the connection to.
+     *
+     * @since 1.4
+     */
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Returns the compression the server switched the connection to or null.
+     *
+     * @since 1.4
+     */
+    public String getCompression() {
+        return compression;
+    }
+
     public Date getStartTime() {
         Object time = getServerInfo().get(SERVER_START_TIME);
         if (time instanceof Long) {
@@ -0,0 +1,67 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.remote.messages;
+
+import java.util.Locale;
+
+/**
+ * Carries a message of one of the requests which share a connection that was
+ * switched to the {@link HelloRequest#MULTIPLEXED_PROTOCOL_VERSION}.
+ * <p/>
+ * The client assigns the request id and every message of the request, in
+ * either direction, is sent with it.
+ *
+ * @since 1.4
+ */
+public class MultiplexedMessage implements Message {
+
+    private final long requestId;
+
+    /**
+     * The locale of the client, sent with the {@link OperationRequest} only.
+     */
+    private final Locale locale;
+
+    private final Object message;
+
+    public MultiplexedMessage(long requestId, Locale locale, Object message) {
+        this.requestId = requestId;
+        this.locale = locale;
+        this.message = message;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public Object getMessage() {
+        return message;
+    }
+}
@@ -63,9 +63,27 @@ public class OperationRequest implements Message {
      */
     private final List<Object> arguments;
 
+    /**
+     * The number of streamed results the server may send before it waits for
+     * an {@link OperationRequestMoreData} with more credit. Zero means the
+     * client expects an {@link OperationResponsePause} after a fixed number of
+     * results instead.
+     */
+    private final int initialCredit;
+
     public OperationRequest(ConnectorKey key, String connectorFacadeKey,
             Class<? extends APIOperation> operation, String operationMethodName,
             List<Object> arguments) {
+        this(key, connectorFacadeKey, operation, operationMethodName, arguments, 0);
+    }
+
+    /**
+     * @since 1.4
+     */
+    public OperationRequest(ConnectorKey key, String connectorFacadeKey,
+            Class<? extends APIOperation> operation, String operationMethodName,
+            List<Object> arguments, int initialCredit) {
+        this.initialCredit = initialCredit;
         connectorKey = key;
         configuration = connectorFacadeKey;
         this.operation = operation;
@@ -92,4 +110,11 @@ public class OperationRequest implements Message {
     public List<Object> getArguments() {
         return arguments;
     }
+
+    /**
+     * @since 1.4
+     */
+    public int getInitialCredit() {
+        return initialCredit;
+    }
 }
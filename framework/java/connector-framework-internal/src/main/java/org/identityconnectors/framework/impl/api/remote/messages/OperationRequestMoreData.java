@@ -24,10 +24,32 @@ package org.identityconnectors.framework.impl.api.remote.messages;
 
 /**
  * Sent by the client to request more data.
+ * <p/>
+ * If the request granted an initial credit the client sends this ahead of
+ * time, granting the server the credit to send more results.
  */
 public class OperationRequestMoreData implements Message {
 
+    private final int credit;
+
     public OperationRequestMoreData() {
+        this(0);
+    }
+
+    /**
+     * @since 1.4
+     */
+    public OperationRequestMoreData(int credit) {
+        this.credit = credit;
     }
 
+    /**
+     * Returns the number of results the server may send in addition to the
+     * credit it got before.
+     *
+     * @since 1.4
+     */
+    public int getCredit() {
+        return credit;
+    }
 }
@@ -26,6 +26,9 @@ package org.identityconnectors.framework.impl.api.remote.messages;
  * Special marker class to ask if the client wants more data.
  * At this point the client will respond with either
  * OperationRequestMoreData or OperationRequestStopData
+ * <p/>
+ * If the request granted an initial credit the server sends this when it ran
+ * out of credit and waits for more, the client does not respond to it.
  */
 public class OperationResponsePause implements Message {
 
@@ -0,0 +1,105 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * The {@link OperationMetrics} of every operation of one ConnectorFacade.
+ *
+ * @since 1.4
+ */
+public final class FacadeMetrics {
+
+    private final ConcurrentMap<Class<? extends APIOperation>, OperationMetrics> operations =
+            new ConcurrentHashMap<Class<? extends APIOperation>, OperationMetrics>();
+
+    private final ObjectCacheMetrics objectCache;
+
+    /**
+     * Creates the metrics with an entry for each of the given operations.
+     *
+     * @param supportedOperations
+     *            the operations of the facade, may be null.
+     */
+    public FacadeMetrics(final Iterable<Class<? extends APIOperation>> supportedOperations) {
+        this(supportedOperations, false);
+    }
+
+    /**
+     * Creates the metrics with an entry for each of the given operations.
+     *
+     * @param supportedOperations
+     *            the operations of the facade, may be null.
+     * @param objectCache
+     *            whether the facade has an object cache.
+     */
+    public FacadeMetrics(final Iterable<Class<? extends APIOperation>> supportedOperations,
+            final boolean objectCache) {
+        this.objectCache = objectCache ? new ObjectCacheMetrics() : null;
+        if (null != supportedOperations) {
+            for (Class<? extends APIOperation> api : supportedOperations) {
+                operations.put(api, new OperationMetrics(api));
+            }
+        }
+    }
+
+    /**
+     * Gets the metrics of an operation, they are created on first use.
+     */
+    public OperationMetrics getOperationMetrics(final Class<? extends APIOperation> api) {
+        OperationMetrics metrics = operations.get(api);
+        if (null == metrics) {
+            metrics = new OperationMetrics(api);
+            final OperationMetrics previous = operations.putIfAbsent(api, metrics);
+            if (null != previous) {
+                metrics = previous;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns a read-only view of the metrics of all operations.
+     */
+    public Map<Class<? extends APIOperation>, OperationMetrics> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    /**
+     * Gets the metrics of the object cache.
+     *
+     * @return null if the facade has no object cache.
+     */
+    public ObjectCacheMetrics getObjectCacheMetrics() {
+        return objectCache;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+
+/**
+ * Publishes the metrics as MXBeans in the platform MBean server.
+ * <p/>
+ * Each pool is an {@link ObjectPoolMXBean} named
+ * {@code org.identityconnectors.framework:type=ObjectPool,name="..."}, each
+ * operation of a facade is an {@link OperationMetricsMXBean} named
+ * {@code org.identityconnectors.framework:type=ConnectorFacade,name="...",operation=...}
+ * , the object cache of a facade is an {@link ObjectCacheMXBean} named
+ * {@code org.identityconnectors.framework:type=ConnectorFacade,name="...",component=ObjectCache}
+ * .
+ *
+ * @since 1.4
+ */
+public class JmxMetricsPublisher implements MetricsPublisher {
+
+    public static final String DOMAIN = "org.identityconnectors.framework";
+
+    private static final Log LOG = Log.getLog(JmxMetricsPublisher.class);
+
+    private final MBeanServer server;
+
+    private final ConcurrentMap<String, ObjectName> pools =
+            new ConcurrentHashMap<String, ObjectName>();
+
+    private final ConcurrentMap<String, List<ObjectName>> facades =
+            new ConcurrentHashMap<String, List<ObjectName>>();
+
+    public JmxMetricsPublisher() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsPublisher(final MBeanServer server) {
+        this.server = server;
+    }
+
+    public void publishPool(final String name, final ObjectPool<?> pool) {
+        try {
+            final ObjectName objectName =
+                    new ObjectName(DOMAIN + ":type=ObjectPool,name=" + ObjectName.quote(name));
+            server.registerMBean(new ObjectPoolBean(pool), objectName);
+            pools.put(name, objectName);
+        } catch (JMException e) {
+            LOG.warn(e, "Failed to register MBean of pool {0}", name);
+        }
+    }
+
+    public void unpublishPool(final String name) {
+        final ObjectName objectName = pools.remove(name);
+        if (null != objectName) {
+            unregister(objectName);
+        }
+    }
+
+    public void publishFacade(final String name, final FacadeMetrics metrics) {
+        final List<ObjectName> objectNames = new ArrayList<ObjectName>();
+        for (Map.Entry<Class<? extends APIOperation>, OperationMetrics> entry : metrics
+                .getOperations().entrySet()) {
+            try {
+                final ObjectName objectName =
+                        new ObjectName(DOMAIN + ":type=ConnectorFacade,name="
+                                + ObjectName.quote(name) + ",operation="
+                                + entry.getKey().getSimpleName());
+                server.registerMBean(new OperationMetricsBean(entry.getValue()), objectName);
+                objectNames.add(objectName);
+            } catch (JMException e) {
+                LOG.warn(e, "Failed to register MBean of facade {0}", name);
+            }
+        }
+        if (null != metrics.getObjectCacheMetrics()) {
+            try {
+                final ObjectName objectName =
+                        new ObjectName(DOMAIN + ":type=ConnectorFacade,name="
+                                + ObjectName.quote(name) + ",component=ObjectCache");
+                server.registerMBean(new ObjectCacheBean(metrics.getObjectCacheMetrics()),
+                        objectName);
+                objectNames.add(objectName);
+            } catch (JMException e) {
+                LOG.warn(e, "Failed to register MBean of facade {0}", name);
+            }
+        }
+        facades.put(name, objectNames);
+    }
+
+    public void unpublishFacade(final String name) {
+        final List<ObjectName> objectNames = facades.remove(name);
+        if (null != objectNames) {
+            for (ObjectName objectName : objectNames) {
+                unregister(objectName);
+            }
+        }
+    }
+
+    private void unregister(final ObjectName objectName) {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.warn(e, "Failed to unregister MBean {0}", objectName);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1L);
+    }
+
+    private static final class ObjectPoolBean implements ObjectPoolMXBean {
+
+        private final ObjectPool<?> pool;
+
+        private ObjectPoolBean(final ObjectPool<?> pool) {
+            this.pool = pool;
+        }
+
+        public int getNumIdle() {
+            return pool.getStatistics().getNumIdle();
+        }
+
+        public int getNumActive() {
+            return pool.getStatistics().getNumActive();
+        }
+
+        public int getMaxObjects() {
+            return pool.getStatistics().getMaxObjects();
+        }
+
+        public double getUtilization() {
+            return pool.getStatistics().getUtilization();
+        }
+
+        public long getCreatedCount() {
+            return pool.getStatistics().getCreatedCount();
+        }
+
+        public long getDisposedCount() {
+            return pool.getStatistics().getDisposedCount();
+        }
+
+        public long getValidationFailureCount() {
+            return pool.getStatistics().getValidationFailureCount();
+        }
+
+        public long getBorrowCount() {
+            return pool.getStatistics().getBorrowWaitTime().getCount();
+        }
+
+        public double getBorrowWaitTimeMean() {
+            return toMillis(pool.getStatistics().getBorrowWaitTime().getMean());
+        }
+
+        public double getBorrowWaitTime50thPercentile() {
+            return toMillis(pool.getStatistics().getBorrowWaitTime().getPercentile(0.5));
+        }
+
+        public double getBorrowWaitTime95thPercentile() {
+            return toMillis(pool.getStatistics().getBorrowWaitTime().getPercentile(0.95));
+        }
+
+        public double getBorrowWaitTime99thPercentile() {
+            return toMillis(pool.getStatistics().getBorrowWaitTime().getPercentile(0.99));
+        }
+
+        public double getBorrowWaitTimeMax() {
+            return toMillis(pool.getStatistics().getBorrowWaitTime().getMax());
+        }
+    }
+
+    private static final class OperationMetricsBean implements OperationMetricsMXBean {
+
+        private final OperationMetrics metrics;
+
+        private OperationMetricsBean(final OperationMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public long getCallCount() {
+            return metrics.getCallCount();
+        }
+
+        public long getErrorCount() {
+            return metrics.getErrorCount();
+        }
+
+        public double getLatencyMean() {
+            return toMillis(metrics.getLatency().getMean());
+        }
+
+        public double getLatency50thPercentile() {
+            return toMillis(metrics.getLatency().getPercentile(0.5));
+        }
+
+        public double getLatency95thPercentile() {
+            return toMillis(metrics.getLatency().getPercentile(0.95));
+        }
+
+        public double getLatency99thPercentile() {
+            return toMillis(metrics.getLatency().getPercentile(0.99));
+        }
+
+        public double getLatencyMax() {
+            return toMillis(metrics.getLatency().getMax());
+        }
+    }
+
+    private static final class ObjectCacheBean implements ObjectCacheMXBean {
+
+        private final ObjectCacheMetrics metrics;
+
+        private ObjectCacheBean(final ObjectCacheMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        public long getHitCount() {
+            return metrics.getHitCount();
+        }
+
+        public long getMissCount() {
+            return metrics.getMissCount();
+        }
+
+        public long getEvictionCount() {
+            return metrics.getEvictionCount();
+        }
+
+        public long getInvalidationCount() {
+            return metrics.getInvalidationCount();
+        }
+
+        public double getHitRatio() {
+            return metrics.getHitRatio();
+        }
+    }
+}
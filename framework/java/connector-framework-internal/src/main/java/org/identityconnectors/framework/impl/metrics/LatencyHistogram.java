@@ -0,0 +1,154 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations.
+ * <p/>
+ * The durations are counted in buckets of exponentially growing size: bucket
+ * {@code i} holds the durations from 2<sup>i-1</sup> up to 2<sup>i</sup>
+ * microseconds. The percentiles are therefore accurate within a factor of
+ * two, which is enough to tell a slow resource from a fast one, while a
+ * recording costs only a few atomic increments.
+ *
+ * @since 1.4
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets;
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(final LatencyHistogram other) {
+        buckets = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, other.buckets.get(i));
+        }
+        count.set(other.count.get());
+        total.set(other.total.get());
+        max.set(other.max.get());
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos
+     *            the duration in nanoseconds, negative values are counted as
+     *            zero.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0L, nanos);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(value);
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of the recorded durations in nanoseconds.
+     */
+    public long getMean() {
+        final long n = count.get();
+        return n == 0 ? 0L : total.get() / n;
+    }
+
+    /**
+     * Returns the longest recorded duration in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the duration in nanoseconds that the given fraction of the
+     * recorded durations did not exceed.
+     *
+     * @param fraction
+     *            the percentile as a fraction, for example {@code 0.99}.
+     * @return the upper bound of the bucket holding the percentile, at most
+     *         the longest recorded duration.
+     */
+    public long getPercentile(double fraction) {
+        if (fraction < 0.0 || fraction > 1.0) {
+            throw new IllegalArgumentException("Percentile is not between 0 and 1: " + fraction);
+        }
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += buckets.get(i);
+        }
+        if (n == 0) {
+            return 0L;
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns a copy of the current state which is not updated any more.
+     */
+    public LatencyHistogram snapshot() {
+        return new LatencyHistogram(this);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", mean=" + getMean() + "ns, p99="
+                + getPercentile(0.99) + "ns, max=" + getMax() + "ns}";
+    }
+}
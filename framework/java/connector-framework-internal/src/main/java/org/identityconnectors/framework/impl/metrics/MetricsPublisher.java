@@ -0,0 +1,73 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+
+/**
+ * Publishes the metrics of the framework to a monitoring system.
+ * <p/>
+ * Publishers are registered with
+ * {@link MetricsRegistry#addPublisher(MetricsPublisher)}. The metrics are
+ * live objects, a publisher keeps a reference and reads them whenever the
+ * monitoring system asks for the values. The methods of a publisher are
+ * called from the threads which create and dispose the pools and facades.
+ *
+ * @see JmxMetricsPublisher
+ * @since 1.4
+ */
+public interface MetricsPublisher {
+
+    /**
+     * A connector pool or a remote connection pool was created.
+     *
+     * @param name
+     *            the unique name of the pool.
+     * @param pool
+     *            the pool, its metrics are in {@link ObjectPool#getStatistics()}.
+     */
+    void publishPool(String name, ObjectPool<?> pool);
+
+    /**
+     * The pool was shut down.
+     */
+    void unpublishPool(String name);
+
+    /**
+     * A managed ConnectorFacade was created.
+     *
+     * @param name
+     *            the unique name of the facade.
+     * @param metrics
+     *            the metrics of the facade operations.
+     */
+    void publishFacade(String name, FacadeMetrics metrics);
+
+    /**
+     * The managed ConnectorFacade was disposed.
+     */
+    void unpublishFacade(String name);
+}
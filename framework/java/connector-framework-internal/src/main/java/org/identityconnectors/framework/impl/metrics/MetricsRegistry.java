@@ -0,0 +1,221 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.common.Assertions;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+
+/**
+ * Keeps the pools and facades whose metrics are published and the
+ * {@link MetricsPublisher}s they are published to.
+ * <p/>
+ * A publisher added later receives the pools and facades registered before.
+ * If the system property {@value #JMX_PROPERTY} is {@code true} a
+ * {@link JmxMetricsPublisher} is added when the class is loaded.
+ *
+ * @since 1.4
+ */
+public final class MetricsRegistry {
+
+    /**
+     * System property which enables the publication of the metrics as MBeans.
+     */
+    public static final String JMX_PROPERTY = "org.identityconnectors.framework.metrics.jmx";
+
+    private static final Log LOG = Log.getLog(MetricsRegistry.class);
+
+    private static final CopyOnWriteArrayList<MetricsPublisher> PUBLISHERS =
+            new CopyOnWriteArrayList<MetricsPublisher>();
+
+    private static final ConcurrentMap<String, ObjectPool<?>> POOLS =
+            new ConcurrentHashMap<String, ObjectPool<?>>();
+
+    private static final ConcurrentMap<String, FacadeMetrics> FACADES =
+            new ConcurrentHashMap<String, FacadeMetrics>();
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    static {
+        if (Boolean.getBoolean(JMX_PROPERTY)) {
+            addPublisher(new JmxMetricsPublisher());
+        }
+    }
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Adds a publisher and publishes the registered pools and facades to it.
+     */
+    public static synchronized void addPublisher(final MetricsPublisher publisher) {
+        Assertions.nullCheck(publisher, "publisher");
+        if (PUBLISHERS.addIfAbsent(publisher)) {
+            for (Map.Entry<String, ObjectPool<?>> entry : POOLS.entrySet()) {
+                publishPool(publisher, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, FacadeMetrics> entry : FACADES.entrySet()) {
+                publishFacade(publisher, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes a publisher and unpublishes the registered pools and facades
+     * from it.
+     */
+    public static synchronized void removePublisher(final MetricsPublisher publisher) {
+        if (PUBLISHERS.remove(publisher)) {
+            for (String name : POOLS.keySet()) {
+                unpublishPool(publisher, name);
+            }
+            for (String name : FACADES.keySet()) {
+                unpublishFacade(publisher, name);
+            }
+        }
+    }
+
+    /**
+     * Returns a name no other pool or facade is registered with.
+     *
+     * @param prefix
+     *            the readable part of the name.
+     */
+    public static String newName(final String prefix) {
+        return prefix + "@" + SEQUENCE.incrementAndGet();
+    }
+
+    public static synchronized void registerPool(final String name, final ObjectPool<?> pool) {
+        if (null == POOLS.put(name, pool)) {
+            for (MetricsPublisher publisher : PUBLISHERS) {
+                publishPool(publisher, name, pool);
+            }
+        }
+    }
+
+    public static synchronized void unregisterPool(final String name) {
+        if (null != POOLS.remove(name)) {
+            for (MetricsPublisher publisher : PUBLISHERS) {
+                unpublishPool(publisher, name);
+            }
+        }
+    }
+
+    /**
+     * Unregisters the pool whatever name it was registered with.
+     */
+    public static synchronized void unregisterPool(final ObjectPool<?> pool) {
+        for (Map.Entry<String, ObjectPool<?>> entry : POOLS.entrySet()) {
+            if (entry.getValue() == pool) {
+                unregisterPool(entry.getKey());
+            }
+        }
+    }
+
+    public static synchronized void registerFacade(final String name, final FacadeMetrics metrics) {
+        if (null == FACADES.put(name, metrics)) {
+            for (MetricsPublisher publisher : PUBLISHERS) {
+                publishFacade(publisher, name, metrics);
+            }
+        }
+    }
+
+    public static synchronized void unregisterFacade(final String name) {
+        if (null != FACADES.remove(name)) {
+            for (MetricsPublisher publisher : PUBLISHERS) {
+                unpublishFacade(publisher, name);
+            }
+        }
+    }
+
+    /**
+     * Unregisters the metrics of the facade whatever name they were
+     * registered with.
+     */
+    public static synchronized void unregisterFacade(final FacadeMetrics metrics) {
+        for (Map.Entry<String, FacadeMetrics> entry : FACADES.entrySet()) {
+            if (entry.getValue() == metrics) {
+                unregisterFacade(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns the pool registered with the given name or null.
+     */
+    public static ObjectPool<?> getPool(final String name) {
+        return POOLS.get(name);
+    }
+
+    /**
+     * Returns the metrics of the facade registered with the given name or
+     * null.
+     */
+    public static FacadeMetrics getFacade(final String name) {
+        return FACADES.get(name);
+    }
+
+    // a failing publisher must not fail the pool or facade
+
+    private static void publishPool(MetricsPublisher publisher, String name, ObjectPool<?> pool) {
+        try {
+            publisher.publishPool(name, pool);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to publish the metrics of pool {0}", name);
+        }
+    }
+
+    private static void unpublishPool(MetricsPublisher publisher, String name) {
+        try {
+            publisher.unpublishPool(name);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to unpublish the metrics of pool {0}", name);
+        }
+    }
+
+    private static void publishFacade(MetricsPublisher publisher, String name,
+            FacadeMetrics metrics) {
+        try {
+            publisher.publishFacade(name, metrics);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to publish the metrics of facade {0}", name);
+        }
+    }
+
+    private static void unpublishFacade(MetricsPublisher publisher, String name) {
+        try {
+            publisher.unpublishFacade(name);
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to unpublish the metrics of facade {0}", name);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+/**
+ * Management interface of a connector pool or remote connection pool.
+ * <p/>
+ * The durations are in milliseconds.
+ *
+ * @since 1.4
+ */
+public interface ObjectPoolMXBean {
+
+    int getNumIdle();
+
+    int getNumActive();
+
+    int getMaxObjects();
+
+    /**
+     * Returns the ratio of the active objects to {@code MaxObjects}.
+     */
+    double getUtilization();
+
+    long getCreatedCount();
+
+    long getDisposedCount();
+
+    long getValidationFailureCount();
+
+    long getBorrowCount();
+
+    double getBorrowWaitTimeMean();
+
+    double getBorrowWaitTime50thPercentile();
+
+    double getBorrowWaitTime95thPercentile();
+
+    double getBorrowWaitTime99thPercentile();
+
+    double getBorrowWaitTimeMax();
+}
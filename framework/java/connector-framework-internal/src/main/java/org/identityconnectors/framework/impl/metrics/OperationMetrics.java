@@ -0,0 +1,89 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * The call count, error count and latency of one {@link APIOperation} of a
+ * ConnectorFacade.
+ *
+ * @since 1.4
+ */
+public final class OperationMetrics {
+
+    private final Class<? extends APIOperation> operation;
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    OperationMetrics(final Class<? extends APIOperation> operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records a completed call.
+     *
+     * @param nanos
+     *            how long the call took.
+     * @param failed
+     *            whether the call threw an exception.
+     */
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public Class<? extends APIOperation> getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the number of completed calls, including the failed ones.
+     */
+    public long getCallCount() {
+        return latency.getCount();
+    }
+
+    /**
+     * Returns the number of calls which threw an exception.
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the latencies of the completed calls.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+/**
+ * The phases the time of a traced operation is split into.
+ * <p/>
+ * The phases are exclusive: while a results handler runs, for example, the
+ * time is counted against {@link #RESULTS_HANDLER} and not against
+ * {@link #CONNECTOR} even though the connector called the handler.
+ *
+ * @since 1.4
+ */
+public enum TracePhase {
+
+    /**
+     * Framework code which is not part of any other phase.
+     */
+    FRAMEWORK,
+
+    /**
+     * Waiting for and validating a connector from the pool.
+     */
+    POOL_BORROW,
+
+    /**
+     * Creating and initialising an unpooled connector.
+     */
+    CONNECTOR_INIT,
+
+    /**
+     * The connector SPI call, filter translation included.
+     */
+    CONNECTOR,
+
+    /**
+     * Normalizing the objects returned by the connector.
+     */
+    NORMALIZE,
+
+    /**
+     * Evaluating the filter on the objects returned by the connector.
+     */
+    FILTER,
+
+    /**
+     * Reducing the objects to the attributes to get.
+     */
+    ATTRIBUTES_TO_GET,
+
+    /**
+     * The handler of the caller. When the results are buffered this is the
+     * time the connector waited for room in the buffer.
+     */
+    RESULTS_HANDLER,
+
+    /**
+     * Returning the connector to the pool or disposing it.
+     */
+    POOL_RETURN
+}
@@ -0,0 +1,47 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+/**
+ * Receives the spans of the traced operations.
+ * <p/>
+ * The sink is called on the thread which ran the operation once the
+ * operation has finished, so it should hand the span off quickly. The span
+ * is not modified after it was recorded.
+ *
+ * @see Tracing#setSink(TraceSink)
+ * @since 1.4
+ */
+public interface TraceSink {
+
+    /**
+     * Records a finished span.
+     *
+     * @param span
+     *            the span of the finished operation.
+     */
+    void record(TraceSpan span);
+}
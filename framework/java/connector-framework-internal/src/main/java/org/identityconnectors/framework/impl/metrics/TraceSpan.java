@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * The timing breakdown of one operation.
+ * <p/>
+ * A span is confined to the thread which runs the operation. At any time
+ * exactly one {@link TracePhase} is active and the elapsed time is counted
+ * against it, so the phase durations add up to the total duration. No
+ * argument or result of the operation is kept.
+ *
+ * @since 1.4
+ */
+public final class TraceSpan {
+
+    private static final TracePhase[] PHASES = TracePhase.values();
+
+    private final TraceSink sink;
+
+    private final Class<? extends APIOperation> operation;
+
+    private final ConnectorKey connectorKey;
+
+    private final TraceSpan parent;
+
+    private final long startTime;
+
+    private final long startNanos;
+
+    private final long[] durations = new long[PHASES.length];
+
+    private TracePhase phase = TracePhase.FRAMEWORK;
+
+    private long mark;
+
+    private long duration = -1L;
+
+    private int objectCount = 0;
+
+    private int duplicateCount = 0;
+
+    private Throwable failure = null;
+
+    TraceSpan(final TraceSink sink, final Class<? extends APIOperation> operation,
+            final ConnectorKey connectorKey, final TraceSpan parent) {
+        this.sink = sink;
+        this.operation = operation;
+        this.connectorKey = connectorKey;
+        this.parent = parent;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.mark = startNanos;
+    }
+
+    /**
+     * Switches to a new phase.
+     *
+     * @param next
+     *            the phase to count the time against from now on.
+     * @return the phase which was active, pass it to this method again to
+     *         switch back.
+     */
+    public TracePhase enter(final TracePhase next) {
+        final long now = System.nanoTime();
+        durations[phase.ordinal()] += now - mark;
+        mark = now;
+        final TracePhase previous = phase;
+        phase = next;
+        return previous;
+    }
+
+    /**
+     * Counts an object handed to the results handler.
+     */
+    public void incrementObjectCount() {
+        objectCount++;
+    }
+
+    /**
+     * Counts an object dropped because an object with the same UID was
+     * already returned by an earlier query of the search.
+     */
+    public void incrementDuplicateCount() {
+        duplicateCount++;
+    }
+
+    /**
+     * Ends the span and records it in the sink.
+     *
+     * @param error
+     *            the exception the operation failed with or null.
+     */
+    public void finish(final Throwable error) {
+        if (duration >= 0) {
+            return;
+        }
+        enter(TracePhase.FRAMEWORK);
+        duration = mark - startNanos;
+        failure = error;
+        Tracing.finished(this);
+    }
+
+    TraceSink getSink() {
+        return sink;
+    }
+
+    TraceSpan getParent() {
+        return parent;
+    }
+
+    public Class<? extends APIOperation> getOperation() {
+        return operation;
+    }
+
+    public ConnectorKey getConnectorKey() {
+        return connectorKey;
+    }
+
+    /**
+     * Returns the time the operation started, in milliseconds since the
+     * epoch.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the total duration in nanoseconds, or -1 if the span has not
+     * finished yet.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the time spent in the phase in nanoseconds.
+     */
+    public long getDuration(final TracePhase tracePhase) {
+        return durations[tracePhase.ordinal()];
+    }
+
+    /**
+     * Returns the number of objects handed to the results handler.
+     */
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * Returns the number of duplicate objects dropped.
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Returns the exception the operation failed with or null.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(operation.getSimpleName());
+        builder.append(" duration=").append(duration).append("ns");
+        for (TracePhase tracePhase : PHASES) {
+            final long value = durations[tracePhase.ordinal()];
+            if (value > 0) {
+                builder.append(' ').append(tracePhase).append('=').append(value).append("ns");
+            }
+        }
+        if (objectCount > 0) {
+            builder.append(" objects=").append(objectCount);
+        }
+        if (duplicateCount > 0) {
+            builder.append(" duplicates=").append(duplicateCount);
+        }
+        if (null != failure) {
+            builder.append(" failure=").append(failure.getClass().getName());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.operations.APIOperation;
+
+/**
+ * Entry point of the operation tracing.
+ * <p/>
+ * Tracing is off until a {@link TraceSink} is set. While it is off the
+ * framework only reads one volatile field per operation, no span is created
+ * and no handler is wrapped.
+ *
+ * @since 1.4
+ */
+public final class Tracing {
+
+    private static final Log LOG = Log.getLog(Tracing.class);
+
+    private static final ThreadLocal<TraceSpan> CURRENT = new ThreadLocal<TraceSpan>();
+
+    private static volatile TraceSink sink = null;
+
+    private Tracing() {
+    }
+
+    /**
+     * Sets the sink which receives the spans.
+     *
+     * @param newSink
+     *            the sink, or null to turn tracing off.
+     */
+    public static void setSink(final TraceSink newSink) {
+        sink = newSink;
+    }
+
+    public static TraceSink getSink() {
+        return sink;
+    }
+
+    public static boolean isEnabled() {
+        return null != sink;
+    }
+
+    /**
+     * Starts a span on the current thread.
+     *
+     * @param operation
+     *            the operation being traced.
+     * @param connectorKey
+     *            the connector running the operation.
+     * @return the new span or null if tracing is off.
+     */
+    public static TraceSpan start(final Class<? extends APIOperation> operation,
+            final ConnectorKey connectorKey) {
+        final TraceSink currentSink = sink;
+        if (null == currentSink) {
+            return null;
+        }
+        final TraceSpan span = new TraceSpan(currentSink, operation, connectorKey, CURRENT.get());
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Returns the span running on the current thread.
+     *
+     * @return the span or null if there is none.
+     */
+    public static TraceSpan current() {
+        return null == sink ? null : CURRENT.get();
+    }
+
+    static void finished(final TraceSpan span) {
+        if (null == span.getParent()) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(span.getParent());
+        }
+        try {
+            span.getSink().record(span);
+        } catch (RuntimeException e) {
+            LOG.warn(e, "TraceSink failed to record {0}", span.getOperation().getSimpleName());
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Set;
 
 import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.ResultsHandlerConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
@@ -58,6 +59,11 @@ class APIConfigurationHandlers {
                 rv.setMinEvictableIdleTimeMillis(decoder.readLongField(
                         "minEvictableIdleTimeMillis", rv.getMinEvictableIdleTimeMillis()));
                 rv.setMinIdle(decoder.readIntField("minIdle", rv.getMinIdle()));
+                rv.setTimeBetweenEvictionRunsMillis(decoder.readLongField(
+                        "timeBetweenEvictionRunsMillis", rv.getTimeBetweenEvictionRunsMillis()));
+                rv.setTestOnBorrowIdleTimeMillis(decoder.readLongField(
+                        "testOnBorrowIdleTimeMillis", rv.getTestOnBorrowIdleTimeMillis()));
+                rv.setLifo(decoder.readBooleanField("lifo", rv.isLifo()));
                 return rv;
             }
 
@@ -69,10 +75,35 @@ class APIConfigurationHandlers {
                 encoder.writeLongField("minEvictableIdleTimeMillis", val
                         .getMinEvictableIdleTimeMillis());
                 encoder.writeIntField("minIdle", val.getMinIdle());
+                encoder.writeLongField("timeBetweenEvictionRunsMillis", val
+                        .getTimeBetweenEvictionRunsMillis());
+                encoder.writeLongField("testOnBorrowIdleTimeMillis", val
+                        .getTestOnBorrowIdleTimeMillis());
+                encoder.writeBooleanField("lifo", val.isLifo());
             }
 
         });
 
+        HANDLERS.add(new AbstractObjectSerializationHandler(ObjectCacheConfiguration.class,
+                "ObjectCacheConfiguration") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                ObjectCacheConfiguration rv = new ObjectCacheConfiguration();
+                rv.setEnabled(decoder.readBooleanField("enabled", rv.isEnabled()));
+                rv.setMaxObjects(decoder.readIntField("maxObjects", rv.getMaxObjects()));
+                rv.setTimeToLiveMillis(decoder.readLongField("timeToLiveMillis", rv
+                        .getTimeToLiveMillis()));
+                return rv;
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                ObjectCacheConfiguration val = (ObjectCacheConfiguration) object;
+                encoder.writeBooleanField("enabled", val.isEnabled());
+                encoder.writeIntField("maxObjects", val.getMaxObjects());
+                encoder.writeLongField("timeToLiveMillis", val.getTimeToLiveMillis());
+            }
+        });
+
         HANDLERS.add(new AbstractObjectSerializationHandler(ResultsHandlerConfiguration.class,
                 "ResultsHandlerConfiguration") {
 
@@ -174,6 +205,8 @@ class APIConfigurationHandlers {
                         "connectorPoolConfiguration", null, null));
                 rv.setResultsHandlerConfiguration((ResultsHandlerConfiguration) decoder
                         .readObjectField("resultsHandlerConfiguration", null, null));
+                rv.setObjectCacheConfiguration((ObjectCacheConfiguration) decoder
+                        .readObjectField("objectCacheConfiguration", null, null));
                 rv.setConfigurationProperties((ConfigurationPropertiesImpl) decoder
                         .readObjectField("ConfigurationProperties",
                                 ConfigurationPropertiesImpl.class, null));
@@ -198,6 +231,12 @@ class APIConfigurationHandlers {
                         .getConnectorPoolConfiguration(), false);
                 encoder.writeObjectField("resultsHandlerConfiguration", val
                         .getResultsHandlerConfiguration(), false);
+                // only a client side setting, left out unless enabled so the
+                // configuration stays readable by older connector servers
+                if (val.getObjectCacheConfiguration().isEnabled()) {
+                    encoder.writeObjectField("objectCacheConfiguration", val
+                            .getObjectCacheConfiguration(), false);
+                }
                 encoder.writeObjectField("ConfigurationProperties", val
                         .getConfigurationProperties(), true);
                 encoder.writeObjectField("timeoutMap", val.getTimeoutMap(), false);
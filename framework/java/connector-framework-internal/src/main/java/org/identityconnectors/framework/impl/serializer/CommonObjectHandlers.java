@@ -55,6 +55,9 @@ import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.AttributeInfo;
 import org.identityconnectors.framework.common.objects.AttributeInfo.Flags;
 import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchOperationType;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.ObjectClass;
@@ -88,7 +91,7 @@ class CommonObjectHandlers {
         }
 
         public final Object deserialize(final ObjectDecoder decoder) {
-            final String name = decoder.readStringField("name", null);
+            final String name = decoder.readSymbolField("name", null);
             @SuppressWarnings("unchecked")
             final List<Object> value = (List) decoder.readObjectField("Values", List.class, null);
             return createAttribute(name, value);
@@ -96,7 +99,7 @@ class CommonObjectHandlers {
 
         public final void serialize(final Object object, final ObjectEncoder encoder) {
             final Attribute val = (Attribute) object;
-            encoder.writeStringField("name", val.getName());
+            encoder.writeSymbolField("name", val.getName());
             encoder.writeObjectField("Values", val.getValue(), true);
         }
 
@@ -355,7 +358,7 @@ class CommonObjectHandlers {
 
             public Object deserialize(final ObjectDecoder decoder) {
                 final AttributeInfoBuilder builder =
-                        new AttributeInfoBuilder(decoder.readStringField("name", null), decoder
+                        new AttributeInfoBuilder(decoder.readSymbolField("name", null), decoder
                                 .readClassField("type", null));
                 final Set<Flags> flags = new HashSet<Flags>();
                 final int count = decoder.getNumSubObjects();
@@ -371,7 +374,7 @@ class CommonObjectHandlers {
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 final AttributeInfo val = (AttributeInfo) object;
-                encoder.writeStringField("name", val.getName());
+                encoder.writeSymbolField("name", val.getName());
                 encoder.writeClassField("type", val.getType());
                 final Set<Flags> flags = val.getFlags();
                 for (Flags flag : flags) {
@@ -416,13 +419,13 @@ class CommonObjectHandlers {
         HANDLERS.add(new AbstractObjectSerializationHandler(ObjectClass.class, "ObjectClass") {
 
             public Object deserialize(final ObjectDecoder decoder) {
-                final String type = decoder.readStringField("type", null);
+                final String type = decoder.readSymbolField("type", null);
                 return new ObjectClass(type);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 final ObjectClass val = (ObjectClass) object;
-                encoder.writeStringField("type", val.getObjectClassValue());
+                encoder.writeSymbolField("type", val.getObjectClassValue());
             }
         });
 
@@ -726,5 +729,50 @@ class CommonObjectHandlers {
                 encoder.writeObjectField("Uid", val.getUid(), true);
             }
         });
+
+        HANDLERS.add(new EnumSerializationHandler(BatchOperationType.class, "BatchOperationType"));
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(BatchOperation.class, "BatchOperation") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                final BatchOperationType type =
+                        (BatchOperationType) decoder.readObjectField("BatchOperationType",
+                                BatchOperationType.class, null);
+                final ObjectClass objectClass =
+                        (ObjectClass) decoder.readObjectField("ObjectClass", ObjectClass.class,
+                                null);
+                final Uid uid = (Uid) decoder.readObjectField("Uid", Uid.class, null);
+                @SuppressWarnings("unchecked")
+                final Set<Attribute> attributes =
+                        (Set<Attribute>) decoder.readObjectField("Attributes", Set.class, null);
+                return new BatchOperation(type, objectClass, uid, attributes);
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                final BatchOperation val = (BatchOperation) object;
+                encoder.writeObjectField("BatchOperationType", val.getType(), true);
+                encoder.writeObjectField("ObjectClass", val.getObjectClass(), true);
+                encoder.writeObjectField("Uid", val.getUid(), true);
+                encoder.writeObjectField("Attributes", val.getAttributes(), true);
+            }
+        });
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(BatchResult.class, "BatchResult") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                final Uid uid = (Uid) decoder.readObjectField("Uid", Uid.class, null);
+                final RemoteWrappedException error =
+                        (RemoteWrappedException) decoder.readObjectField("RemoteWrappedException",
+                                RemoteWrappedException.class, null);
+                return new BatchResult(uid, error);
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                final BatchResult val = (BatchResult) object;
+                encoder.writeObjectField("Uid", val.getUid(), true);
+                encoder.writeObjectField("RemoteWrappedException", RemoteWrappedException
+                        .wrap(val.getError()), true);
+            }
+        });
     }
 }
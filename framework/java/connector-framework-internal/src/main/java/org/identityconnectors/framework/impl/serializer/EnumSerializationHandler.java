@@ -30,7 +30,7 @@ public class EnumSerializationHandler extends AbstractObjectSerializationHandler
 
     @SuppressWarnings("rawtypes")
     public Object deserialize(final ObjectDecoder decoder) {
-        String val = decoder.readStringField("value", null);
+        String val = decoder.readSymbolField("value", null);
         Class enumClass = (Class) getHandledObjectType();
         @SuppressWarnings("unchecked")
         Object rv = Enum.valueOf(enumClass, val);
@@ -39,6 +39,6 @@ public class EnumSerializationHandler extends AbstractObjectSerializationHandler
 
     public void serialize(final Object object, final ObjectEncoder encoder) {
         Enum<?> e = (Enum<?>) object;
-        encoder.writeStringField("value", e.name());
+        encoder.writeSymbolField("value", e.name());
     }
 }
@@ -26,6 +26,7 @@ package org.identityconnectors.framework.impl.serializer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import org.identityconnectors.framework.api.ConnectorKey;
@@ -34,9 +35,11 @@ import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+import org.identityconnectors.framework.impl.api.remote.messages.MultiplexedMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseCredit;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
@@ -54,12 +57,16 @@ class MessageHandlers {
 
             public Object deserialize(final ObjectDecoder decoder) {
                 return new HelloRequest(decoder.readIntField("infoLevel",
-                        HelloRequest.CONNECTOR_INFO));
+                        HelloRequest.CONNECTOR_INFO), decoder.readIntField("protocolVersion",
+                        HelloRequest.PROTOCOL_VERSION), decoder.readStringField("compression",
+                        null));
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 HelloRequest val = (HelloRequest) object;
                 encoder.writeIntField("infoLevel", val.getInfoLevel());
+                encoder.writeIntField("protocolVersion", val.getProtocolVersion());
+                encoder.writeStringField("compression", val.getCompression());
             }
         });
 
@@ -77,12 +84,18 @@ class MessageHandlers {
                 @SuppressWarnings("unchecked")
                 final List<ConnectorKey> connectorKeys =
                         (List) decoder.readObjectField("ConnectorKeys", List.class, null);
+                final int protocolVersion =
+                        decoder.readIntField("protocolVersion", HelloRequest.PROTOCOL_VERSION);
+                final String compression = decoder.readStringField("compression", null);
 
-                return new HelloResponse(exception, serverInfo, connectorKeys, connectorInfos);
+                return new HelloResponse(exception, serverInfo, connectorKeys, connectorInfos,
+                        protocolVersion, compression);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 final HelloResponse val = (HelloResponse) object;
+                encoder.writeIntField("protocolVersion", val.getProtocolVersion());
+                encoder.writeStringField("compression", val.getCompression());
                 encoder.writeObjectField("exception", val.getException(), false);
                 encoder.writeObjectField("serverInfoMap", val.getServerInfo(), false);
                 encoder.writeObjectField("ConnectorInfos", val.getConnectorInfos(), true);
@@ -107,14 +120,18 @@ class MessageHandlers {
                 @SuppressWarnings("unchecked")
                 final List<Object> arguments =
                         (List) decoder.readObjectField("Arguments", List.class, null);
+                final int initialCredit = decoder.readIntField("initialCredit", 0);
                 return new OperationRequest(connectorKey, connectorFacadeKey, operation,
-                        operationMethodName, arguments);
+                        operationMethodName, arguments, initialCredit);
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
                 OperationRequest val = (OperationRequest) object;
                 encoder.writeClassField("operation", val.getOperation());
                 encoder.writeStringField("operationMethodName", val.getOperationMethodName());
+                if (val.getInitialCredit() > 0) {
+                    encoder.writeIntField("initialCredit", val.getInitialCredit());
+                }
                 encoder.writeObjectField("ConnectorKey", val.getConnectorKey(), true);
                 encoder.writeStringField("connectorFacadeKey", val.getConnectorFacadeKey());
                 encoder.writeObjectField("Arguments", val.getArguments(), true);
@@ -154,10 +171,14 @@ class MessageHandlers {
                 "OperationRequestMoreData") {
 
             public Object deserialize(final ObjectDecoder decoder) {
-                return new OperationRequestMoreData();
+                return new OperationRequestMoreData(decoder.readIntField("credit", 0));
             }
 
             public void serialize(final Object object, final ObjectEncoder encoder) {
+                final OperationRequestMoreData val = (OperationRequestMoreData) object;
+                if (val.getCredit() > 0) {
+                    encoder.writeIntField("credit", val.getCredit());
+                }
             }
         });
 
@@ -183,6 +204,35 @@ class MessageHandlers {
             }
         });
 
+        HANDLERS.add(new AbstractObjectSerializationHandler(OperationResponseCredit.class,
+                "OperationResponseCredit") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                return new OperationResponseCredit();
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+            }
+        });
+
+        HANDLERS.add(new AbstractObjectSerializationHandler(MultiplexedMessage.class,
+                "MultiplexedMessage") {
+
+            public Object deserialize(final ObjectDecoder decoder) {
+                final long requestId = decoder.readLongField("requestId", 0L);
+                final Locale locale = (Locale) decoder.readObjectField("locale", null, null);
+                final Object message = decoder.readObjectField("message", null, null);
+                return new MultiplexedMessage(requestId, locale, message);
+            }
+
+            public void serialize(final Object object, final ObjectEncoder encoder) {
+                final MultiplexedMessage val = (MultiplexedMessage) object;
+                encoder.writeLongField("requestId", val.getRequestId());
+                encoder.writeObjectField("locale", val.getLocale(), false);
+                encoder.writeObjectField("message", val.getMessage(), false);
+            }
+        });
+
         HANDLERS.add(new AbstractObjectSerializationHandler(EchoMessage.class, "EchoMessage") {
 
             public Object deserialize(final ObjectDecoder decoder) {
@@ -88,6 +88,16 @@ public interface ObjectDecoder {
      */
     public String readStringField(String fieldName, String dflt );
 
+    /**
+     * Reads a String written with
+     * {@link ObjectEncoder#writeSymbolField(String, String)}.
+     * @param fieldName A hint of the field name. Ignored for binary
+     * serialization. The attribute name for xml serialization
+     * @dflt The default value if there is no value.
+     * @since 1.4
+     */
+    public String readSymbolField(String fieldName, String dflt );
+
     /**
      * Reads a double.
      * @param fieldName A hint of the field name. Ignored for binary
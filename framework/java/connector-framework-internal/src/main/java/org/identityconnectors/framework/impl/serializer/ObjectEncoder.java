@@ -94,6 +94,17 @@ public interface ObjectEncoder {
      */
     public void writeStringField(String fieldName, String v);
 
+    /**
+     * Writes a String which is repeated in many objects, like an attribute
+     * name. Binary serialization may send each distinct value only once per
+     * connection.
+     * @param fieldName A hint of the field name. Ignored for binary
+     * serialization. Becomes the attribute name for xml serialization
+     * @param v The value to serialize
+     * @since 1.4
+     */
+    public void writeSymbolField(String fieldName, String v);
+
     /**
      * Writes the value in-line.
      */
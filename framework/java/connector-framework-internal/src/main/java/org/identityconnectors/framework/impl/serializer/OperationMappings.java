@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -72,5 +73,7 @@ class OperationMappings {
         "ScriptOnConnectorApiOp"));
         MAPPINGS.add(new ObjectTypeMapperImpl(SyncApiOp.class,
         "SyncApiOp"));
+        MAPPINGS.add(new ObjectTypeMapperImpl(BatchApiOp.class,
+        "BatchApiOp"));
     }
 }
@@ -23,14 +23,14 @@
 package org.identityconnectors.framework.impl.serializer.binary;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Array;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
@@ -43,85 +43,164 @@ import org.identityconnectors.framework.impl.serializer.ObjectTypeMapper;
 
 public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeserializer {
 
+    /**
+     * The fields of an object being read, as regions of the buffer of the
+     * top-level object.
+     */
     private static class ReadState {
-        public Map<String, byte[]> objectFields = new HashMap<String, byte[]>();
-        public List<byte[]> anonymousFields = new ArrayList<byte[]>();
-        public DataInputStream currentInput;
+        private String[] fieldNames = new String[8];
+        private int[] fieldRegions = new int[16];
+        private int numFields = 0;
+
+        private int[] anonymousRegions = new int[16];
+        private int numAnonymousFields = 0;
+
+        /**
+         * The region of the current field.
+         */
+        public int position;
+        public int limit;
+
+        public ReadState(int position, int limit) {
+            this.position = position;
+            this.limit = limit;
+        }
+
+        public void addField(String name, int offset, int length) {
+            if (numFields == fieldNames.length) {
+                fieldNames = Arrays.copyOf(fieldNames, numFields * 2);
+                fieldRegions = Arrays.copyOf(fieldRegions, numFields * 4);
+            }
+            fieldNames[numFields] = name;
+            fieldRegions[numFields * 2] = offset;
+            fieldRegions[numFields * 2 + 1] = length;
+            numFields++;
+        }
 
-        public ReadState() {
+        public void addAnonymousField(int offset, int length) {
+            if (numAnonymousFields * 2 == anonymousRegions.length) {
+                anonymousRegions = Arrays.copyOf(anonymousRegions, numAnonymousFields * 4);
+            }
+            anonymousRegions[numAnonymousFields * 2] = offset;
+            anonymousRegions[numAnonymousFields * 2 + 1] = length;
+            numAnonymousFields++;
         }
 
         public boolean startField(String name) {
-            currentInput = null;
-            byte[] content = objectFields.get(name);
-            if (content == null) {
-                return false;
-            } else {
-                currentInput = new DataInputStream(new ByteArrayInputStream(content));
-                return true;
+            // the last one wins if the name is repeated
+            for (int i = numFields - 1; i >= 0; i--) {
+                if (name.equals(fieldNames[i])) {
+                    position = fieldRegions[i * 2];
+                    limit = position + fieldRegions[i * 2 + 1];
+                    return true;
+                }
             }
+            position = 0;
+            limit = 0;
+            return false;
         }
 
         public void startAnonymousField(int index) {
-            if (index >= anonymousFields.size()) {
+            if (index >= numAnonymousFields) {
                 throw new ConnectorException("Anonymous content not found");
             }
-            currentInput =
-                    new DataInputStream(new ByteArrayInputStream(anonymousFields.get(index)));
+            position = anonymousRegions[index * 2];
+            limit = position + anonymousRegions[index * 2 + 1];
         }
     }
 
+    /**
+     * Reads each top-level object into one buffer and decodes the fields of
+     * all nested objects in place.
+     */
     private static class InternalDecoder {
 
+        /**
+         * The buffer is reallocated after a top-level object larger than this
+         * so one huge object doesn't keep the memory for the whole stream.
+         */
+        private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+        private static final int INITIAL_BUFFER = 4096;
+
         private boolean firstObject = true;
 
+        private boolean sharedSymbols = false;
+
         private final Map<Integer, String> constantPool = new HashMap<Integer, String>();
 
         private final Stack<ReadState> readStateStack = new Stack<ReadState>();
         private final DataInputStream rootInput;
 
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+
         public InternalDecoder(DataInputStream input) {
             rootInput = input;
         }
 
         public Object readObject(ObjectDecoder decoder) {
 
-            if (firstObject) {
-                int magic = readInt();
-                if (magic != BinaryObjectEncoder.OBJECT_MAGIC) {
-                    throw new ConnectorException("Bad magic number: " + magic);
-                }
-                int version = readInt();
-                if (version != BinaryObjectEncoder.ENCODING_VERSION) {
-                    throw new ConnectorException("Unexpected version: " + version);
+            ReadState parent;
+            boolean topLevel = readStateStack.isEmpty();
+            // if it's a top-level object, it's proceeded by a constant pool
+            if (topLevel) {
+                try {
+                    if (firstObject) {
+                        int magic = rootInput.readInt();
+                        if (magic != BinaryObjectEncoder.OBJECT_MAGIC) {
+                            throw new ConnectorException("Bad magic number: " + magic);
+                        }
+                        int version = rootInput.readInt();
+                        if (version != BinaryObjectEncoder.ENCODING_VERSION) {
+                            throw new ConnectorException("Unexpected version: " + version);
+                        }
+                        firstObject = false;
+                    }
+                    int size = rootInput.readInt();
+                    for (int i = 0; i < size; i++) {
+                        byte[] bytes = new byte[rootInput.readInt()];
+                        rootInput.readFully(bytes);
+                        int code = rootInput.readInt();
+                        constantPool.put(code, new String(bytes, "UTF8"));
+                    }
+                    parent = new ReadState(0, receiveObject());
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
                 }
-                firstObject = false;
+                readStateStack.push(parent);
+            } else {
+                parent = readStateStack.peek();
             }
 
-            // if it's a top-level object, it's proceeded by a constant pool
-            if (readStateStack.size() == 0) {
-                int size = readInt();
-                for (int i = 0; i < size; i++) {
-                    String constant = readString(false);
-                    int code = readInt();
-                    constantPool.put(code, constant);
+            try {
+                return readObject(decoder, parent);
+            } finally {
+                if (topLevel) {
+                    readStateStack.clear();
+                    if (buffer.length > MAX_RETAINED_BUFFER) {
+                        buffer = new byte[INITIAL_BUFFER];
+                    }
                 }
             }
+        }
 
+        private Object readObject(ObjectDecoder decoder, ReadState parent) {
             Class<?> clazz = readClass();
-            ReadState state = new ReadState();
+            ReadState state = new ReadState(0, 0);
 
             while (true) {
                 byte type = readByte();
                 if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
                     break;
                 } else if (type == BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
-                    byte[] bytes = readByteArray();
-                    state.anonymousFields.add(bytes);
+                    int length = readLength();
+                    state.addAnonymousField(parent.position, length);
+                    parent.position += length;
                 } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
                     String fieldName = readString(true);
-                    byte[] bytes = readByteArray();
-                    state.objectFields.put(fieldName, bytes);
+                    int length = readLength();
+                    state.addField(fieldName, parent.position, length);
+                    parent.position += length;
                 } else {
                     throw new ConnectorException("Unknown type: " + type);
                 }
@@ -159,6 +238,72 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             return rv;
         }
 
+        /**
+         * Copies the next top-level object from the stream into the buffer.
+         *
+         * @return the length of the object.
+         */
+        private int receiveObject() throws IOException {
+            int length = 0;
+            // class
+            while (true) {
+                byte type = rootInput.readByte();
+                length = put(length, type);
+                if (type == BinaryObjectEncoder.OBJECT_TYPE_CLASS) {
+                    length = receive(length, 4);
+                    break;
+                } else if (type == BinaryObjectEncoder.OBJECT_TYPE_NULL) {
+                    break;
+                } else if (type != BinaryObjectEncoder.OBJECT_TYPE_ARRAY) {
+                    throw new ConnectorException("Bad type value: " + type);
+                }
+            }
+            // fields
+            while (true) {
+                byte type = rootInput.readByte();
+                length = put(length, type);
+                if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
+                    return length;
+                } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
+                    length = receive(length, 4);
+                } else if (type != BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
+                    throw new ConnectorException("Unknown type: " + type);
+                }
+                int fieldLength = rootInput.readInt();
+                if (fieldLength < 0) {
+                    throw new ConnectorException("Bad field length: " + fieldLength);
+                }
+                ensureCapacity(length + 4);
+                putInt(length, fieldLength);
+                length = receive(length + 4, fieldLength);
+            }
+        }
+
+        private int put(int offset, byte b) {
+            ensureCapacity(offset + 1);
+            buffer[offset] = b;
+            return offset + 1;
+        }
+
+        private int receive(int offset, int length) throws IOException {
+            ensureCapacity(offset + length);
+            rootInput.readFully(buffer, offset, length);
+            return offset + length;
+        }
+
+        private void putInt(int offset, int v) {
+            buffer[offset] = (byte) (v >>> 24);
+            buffer[offset + 1] = (byte) (v >>> 16);
+            buffer[offset + 2] = (byte) (v >>> 8);
+            buffer[offset + 3] = (byte) v;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, capacity));
+            }
+        }
+
         public Class<?> readClass() {
             int type = readByte();
             if (type == BinaryObjectEncoder.OBJECT_TYPE_NULL) {
@@ -179,97 +324,218 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
         }
 
         public int getNumAnonymousFields() {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            return readState.anonymousFields.size();
+            return readStateStack.peek().numAnonymousFields;
         }
 
         public void startAnonymousField(int index) {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            readState.startAnonymousField(index);
+            readStateStack.peek().startAnonymousField(index);
         }
 
         public boolean startField(String name) {
-            ReadState readState = readStateStack.get(readStateStack.size() - 1);
-            return readState.startField(name);
+            return readStateStack.peek().startField(name);
         }
 
         public int readInt() {
-            try {
-                return getCurrentInput().readInt();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ReadState state = advance(4);
+            int i = state.position - 4;
+            return ((buffer[i] & 0xFF) << 24) | ((buffer[i + 1] & 0xFF) << 16)
+                    | ((buffer[i + 2] & 0xFF) << 8) | (buffer[i + 3] & 0xFF);
         }
 
         public long readLong() {
-            try {
-                return getCurrentInput().readLong();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
         }
 
         public double readDouble() {
-            try {
-                return getCurrentInput().readDouble();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            return Double.longBitsToDouble(readLong());
         }
 
         public byte[] readByteArray() {
-            try {
-                int length = getCurrentInput().readInt();
-                byte[] rv = new byte[length];
-                getCurrentInput().readFully(rv);
-                return rv;
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            int length = readLength();
+            ReadState state = advance(length);
+            return Arrays.copyOfRange(buffer, state.position - length, state.position);
         }
 
         public byte readByte() {
-            try {
-                return getCurrentInput().readByte();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ReadState state = advance(1);
+            return buffer[state.position - 1];
         }
 
         public boolean readBoolean() {
+            return readByte() != 0;
+        }
+
+        public String readString(boolean interned) {
+            if (interned) {
+                return readConstant(readInt());
+            }
+
             try {
-                return getCurrentInput().readBoolean();
+                int length = readLength();
+                ReadState state = advance(length);
+                return new String(buffer, state.position - length, length, "UTF8");
             } catch (IOException e) {
                 throw ConnectorException.wrap(e);
             }
         }
 
-        public String readString(boolean interned) {
-            if (interned) {
+        public String readSymbol() {
+            if (sharedSymbols) {
                 int code = readInt();
-                String name = constantPool.get(code);
-                if (name == null) {
-                    throw new ConnectorException("Undeclared code: " + code);
+                if (code != BinaryObjectEncoder.INLINE_SYMBOL) {
+                    return readConstant(code);
                 }
-                return name;
             }
+            return readString(false);
+        }
+
+        private String readConstant(int code) {
+            String name = constantPool.get(code);
+            if (name == null) {
+                throw new ConnectorException("Undeclared code: " + code);
+            }
+            return name;
+        }
+
+        private int readLength() {
+            int length = readInt();
+            if (length < 0) {
+                throw new ConnectorException("Bad field length: " + length);
+            }
+            return length;
+        }
+
+        /**
+         * Moves the current state past the given number of bytes.
+         */
+        private ReadState advance(int length) {
+            ReadState state = readStateStack.peek();
+            if (state.position + length > state.limit) {
+                throw ConnectorException.wrap(new EOFException());
+            }
+            state.position += length;
+            return state;
+        }
+    }
+
+    /**
+     * Returns the number of bytes the next top-level object occupies in the
+     * buffer without decoding it.
+     * <p/>
+     * This is used by non-blocking readers to find out whether a complete
+     * object has arrived before a decoder is asked to read it.
+     *
+     * @param buffer
+     *            the data received so far, between position and limit.
+     * @param offset
+     *            the offset from the position of the buffer where the object
+     *            starts.
+     * @param header
+     *            true if the object is the first one of the stream and it is
+     *            preceded by the magic number and the version.
+     * @return the length of the object or -1 if the buffer does not contain
+     *         the whole object.
+     */
+    public static int scanObject(ByteBuffer buffer, int offset, boolean header) {
+        int start = buffer.position() + offset;
+        int pos = start;
+        int limit = buffer.limit();
+        if (header) {
+            pos += 8;
+        }
+        // constant pool
+        if (pos + 4 > limit) {
+            return -1;
+        }
+        int size = buffer.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < size; i++) {
+            if (pos + 4 > limit) {
+                return -1;
+            }
+            pos += 4 + buffer.getInt(pos) + 4;
+        }
+        // class
+        while (true) {
+            if (pos + 1 > limit) {
+                return -1;
+            }
+            byte type = buffer.get(pos++);
+            if (type == BinaryObjectEncoder.OBJECT_TYPE_CLASS) {
+                pos += 4;
+                break;
+            } else if (type == BinaryObjectEncoder.OBJECT_TYPE_NULL) {
+                break;
+            } else if (type != BinaryObjectEncoder.OBJECT_TYPE_ARRAY) {
+                throw new ConnectorException("Bad type value: " + type);
+            }
+        }
+        // fields
+        while (true) {
+            if (pos + 1 > limit) {
+                return -1;
+            }
+            byte type = buffer.get(pos++);
+            if (type == BinaryObjectEncoder.FIELD_TYPE_END_OBJECT) {
+                return pos - start;
+            } else if (type == BinaryObjectEncoder.FIELD_TYPE_NAMED_FIELD) {
+                pos += 4;
+            } else if (type != BinaryObjectEncoder.FIELD_TYPE_ANONYMOUS_FIELD) {
+                throw new ConnectorException("Unknown type: " + type);
+            }
+            if (pos + 4 > limit) {
+                return -1;
+            }
+            pos += 4 + buffer.getInt(pos);
+        }
+    }
 
+    /**
+     * Returns the serial type of the next top-level object in the buffer
+     * without decoding it.
+     * <p/>
+     * The constants the object declares are added to those of this decoder,
+     * as reading the object does, so the types of the objects are known even
+     * if the objects before them were scanned but not read yet.
+     *
+     * @param buffer
+     *            the data received so far, between position and limit. It
+     *            must contain the whole object, see
+     *            {@link #scanObject(ByteBuffer, int, boolean)}.
+     * @param offset
+     *            the offset from the position of the buffer where the object
+     *            starts.
+     * @param header
+     *            true if the object is the first one of the stream and it is
+     *            preceded by the magic number and the version.
+     * @return the serial type or null if the object is null or an array.
+     * @since 1.4
+     */
+    public String scanObjectType(ByteBuffer buffer, int offset, boolean header) {
+        int pos = buffer.position() + offset;
+        if (header) {
+            pos += 8;
+        }
+        int size = buffer.getInt(pos);
+        pos += 4;
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[buffer.getInt(pos)];
+            pos += 4;
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(pos++);
+            }
             try {
-                byte[] bytes = readByteArray();
-                return new String(bytes, "UTF8");
+                internalDecoder.constantPool.put(buffer.getInt(pos), new String(bytes, "UTF8"));
             } catch (IOException e) {
                 throw ConnectorException.wrap(e);
             }
+            pos += 4;
         }
-
-        private DataInputStream getCurrentInput() {
-            if (readStateStack.size() > 0) {
-                ReadState state = readStateStack.get(readStateStack.size() - 1);
-                return state.currentInput;
-            } else {
-                return rootInput;
-            }
+        byte type = buffer.get(pos);
+        if (type == BinaryObjectEncoder.OBJECT_TYPE_CLASS) {
+            return internalDecoder.readConstant(buffer.getInt(pos + 1));
         }
+        return null;
     }
 
     private InternalDecoder internalDecoder;
@@ -279,6 +545,17 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
                 new InternalDecoder(new DataInputStream(new BufferedInputStream(in, 4096)));
     }
 
+    /**
+     * Enables or disables shared symbols, it must match the
+     * {@link BinaryObjectEncoder#setSharedSymbols(boolean) encoder} of the
+     * stream.
+     *
+     * @since 1.4
+     */
+    public void setSharedSymbols(boolean sharedSymbols) {
+        internalDecoder.sharedSymbols = sharedSymbols;
+    }
+
     public void close() {
         try {
             internalDecoder.rootInput.close();
@@ -291,6 +568,20 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
         return internalDecoder.readObject(this);
     }
 
+    /**
+     * Checks whether the next object can be read without waiting for its
+     * first bytes.
+     *
+     * @since 1.4
+     */
+    public boolean isDataAvailable() {
+        try {
+            return internalDecoder.rootInput.available() > 0;
+        } catch (IOException e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     public boolean readBooleanContents() {
         internalDecoder.startAnonymousField(0);
         return internalDecoder.readBoolean();
@@ -409,4 +700,12 @@ public class BinaryObjectDecoder implements ObjectDecoder, BinaryObjectDeseriali
             return dflt;
         }
     }
+
+    public String readSymbolField(String fieldName, String dflt) {
+        if (internalDecoder.startField(fieldName)) {
+            return internalDecoder.readSymbol();
+        } else {
+            return dflt;
+        }
+    }
 }
@@ -23,18 +23,16 @@
 package org.identityconnectors.framework.impl.serializer.binary;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
-import org.identityconnectors.common.Pair;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.serializer.BinaryObjectSerializer;
 import org.identityconnectors.framework.impl.serializer.ObjectEncoder;
@@ -60,14 +58,27 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
     public static final byte FIELD_TYPE_NAMED_FIELD = 71;
     public static final byte FIELD_TYPE_END_OBJECT = 72;
 
-    private static class OutputBuffer extends Pair<ByteArrayOutputStream, DataOutputStream> {
-        public OutputBuffer(ByteArrayOutputStream buf, DataOutputStream data) {
-            super(buf, data);
-        }
-    }
+    /**
+     * Written in place of the constant code of a symbol which is not in the
+     * constant pool when shared symbols are enabled.
+     */
+    public static final int INLINE_SYMBOL = -1;
 
+    /**
+     * Writes each top-level object into one growable buffer. The length of a
+     * field is not known before its content was written, so a placeholder is
+     * written first and patched when the field ends.
+     */
     private static class InternalEncoder {
 
+        /**
+         * The buffer is reallocated after a top-level object larger than this
+         * so one huge object doesn't keep the memory for the whole stream.
+         */
+        private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+        private static final int INITIAL_BUFFER = 4096;
+
         /**
          * Mapping from type name to the ID we serialize so we only have to
          */
@@ -75,7 +86,26 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         private List<String> constantBuffer = new ArrayList<String>();
 
-        private Stack<OutputBuffer> outputBufferStack = new Stack<OutputBuffer>();
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private int position = 0;
+
+        /**
+         * The positions of the length placeholders of the open fields.
+         */
+        private int[] fieldStack = new int[16];
+        private int fieldDepth = 0;
+
+        private int objectDepth = 0;
+
+        /**
+         * The most constants the pool may hold before symbols are written
+         * inline, so a connector with unbounded attribute names doesn't grow
+         * the pool of a long-lived connection forever.
+         */
+        private static final int MAX_SHARED_SYMBOLS = 4096;
+
+        private boolean sharedSymbols = false;
+
         private DataOutputStream rootOutput;
         private boolean firstObject = true;
 
@@ -86,69 +116,75 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
         public void writeObject(ObjectEncoder encoder, Object object) {
 
             if (firstObject) {
-                writeInt(OBJECT_MAGIC);
-                writeInt(ENCODING_VERSION);
+                try {
+                    rootOutput.writeInt(OBJECT_MAGIC);
+                    rootOutput.writeInt(ENCODING_VERSION);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                }
                 firstObject = false;
             }
 
-            // push the stack
-            OutputBuffer objectBuffer;
-            {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                DataOutputStream data = new DataOutputStream(baos);
-                objectBuffer = new OutputBuffer(baos, data);
-                outputBufferStack.push(objectBuffer);
-            }
-
-            if (object == null) {
-                writeByte(OBJECT_TYPE_NULL);
-            } else {
-                Class<?> clazz = object.getClass();
-                writeClass(clazz);
-                ObjectSerializationHandler handler =
-                        ObjectSerializerRegistry.getHandlerByObjectType(clazz);
-                if (handler == null) {
-                    // we may have special handlers for certain types of arrays
-                    // if handler is null, treat like any other array
-                    if (clazz.isArray()) {
-                        int length = Array.getLength(object);
-                        for (int i = 0; i < length; i++) {
-                            Object val = Array.get(object, i);
-                            startAnonymousField();
-                            writeObject(encoder, val);
-                            endField();
+            objectDepth++;
+            try {
+                if (object == null) {
+                    writeByte(OBJECT_TYPE_NULL);
+                } else {
+                    Class<?> clazz = object.getClass();
+                    writeClass(clazz);
+                    ObjectSerializationHandler handler =
+                            ObjectSerializerRegistry.getHandlerByObjectType(clazz);
+                    if (handler == null) {
+                        // we may have special handlers for certain types of arrays
+                        // if handler is null, treat like any other array
+                        if (clazz.isArray()) {
+                            int length = Array.getLength(object);
+                            for (int i = 0; i < length; i++) {
+                                Object val = Array.get(object, i);
+                                startAnonymousField();
+                                writeObject(encoder, val);
+                                endField();
+                            }
+                        } else {
+                            throw new ConnectorException("No serializer for class: " + clazz);
                         }
                     } else {
-                        throw new ConnectorException("No serializer for class: " + clazz);
+                        handler.serialize(object, encoder);
                     }
-                } else {
-                    handler.serialize(object, encoder);
                 }
-            }
-            writeByte(FIELD_TYPE_END_OBJECT); // write end-object into the
-                                              // current obj buffer
-
-            // pop the stack
-            outputBufferStack.pop();
-
-            // it's a top-level object, flush the constant pool
-            if (outputBufferStack.size() == 0) {
-                writeInt(constantBuffer.size());
-                for (String constant : constantBuffer) {
-                    writeString(constant, false);
-                    writeInt(constantPool.get(constant));
+                writeByte(FIELD_TYPE_END_OBJECT);
+            } catch (RuntimeException e) {
+                if (objectDepth == 1) {
+                    // drop the partially written object
+                    position = 0;
+                    fieldDepth = 0;
                 }
-                constantBuffer.clear();
+                throw e;
+            } finally {
+                objectDepth--;
             }
 
-            // now write the actual object
-            try {
-                objectBuffer.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            // it's a top-level object, flush the constant pool and the object
+            if (objectDepth == 0) {
+                try {
+                    rootOutput.writeInt(constantBuffer.size());
+                    for (String constant : constantBuffer) {
+                        byte[] bytes = constant.getBytes("UTF8");
+                        rootOutput.writeInt(bytes.length);
+                        rootOutput.write(bytes);
+                        rootOutput.writeInt(constantPool.get(constant));
+                    }
+                    constantBuffer.clear();
+                    rootOutput.write(buffer, 0, position);
+                } catch (IOException e) {
+                    throw ConnectorException.wrap(e);
+                } finally {
+                    position = 0;
+                    if (buffer.length > MAX_RETAINED_BUFFER) {
+                        buffer = new byte[INITIAL_BUFFER];
+                    }
+                }
             }
-            byte[] bytes = objectBuffer.first.toByteArray();
-            writeBytes(bytes);
         }
 
         public void writeClass(Class<?> clazz) {
@@ -171,77 +207,60 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
 
         public void startAnonymousField() {
             writeByte(FIELD_TYPE_ANONYMOUS_FIELD);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startLength();
         }
 
         public void startField(String name) {
             writeByte(FIELD_TYPE_NAMED_FIELD);
             writeString(name, true);
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            DataOutputStream data = new DataOutputStream(buf);
-            outputBufferStack.push(new OutputBuffer(buf, data));
+            startLength();
         }
 
         public void endField() {
-            OutputBuffer buf = outputBufferStack.pop();
-            try {
-                buf.second.close();
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+            int start = fieldStack[--fieldDepth];
+            putInt(start, position - start - 4);
+        }
+
+        private void startLength() {
+            if (fieldDepth == fieldStack.length) {
+                fieldStack = Arrays.copyOf(fieldStack, fieldDepth * 2);
             }
-            byte[] bytes = buf.first.toByteArray();
-            writeByteArray(bytes);
+            fieldStack[fieldDepth++] = position;
+            // the placeholder of the length
+            writeInt(0);
         }
 
         public void writeInt(int v) {
-            try {
-                getCurrentOutput().writeInt(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(4);
+            putInt(position, v);
+            position += 4;
         }
 
         public void writeLong(long v) {
-            try {
-                getCurrentOutput().writeLong(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(8);
+            putInt(position, (int) (v >>> 32));
+            putInt(position + 4, (int) v);
+            position += 8;
         }
 
         public void writeDouble(double l) {
-            try {
-                getCurrentOutput().writeDouble(l);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeLong(Double.doubleToLongBits(l));
         }
 
         public void writeByteArray(byte[] v) {
-            try {
-                getCurrentOutput().writeInt(v.length);
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeInt(v.length);
+            ensureCapacity(v.length);
+            System.arraycopy(v, 0, buffer, position, v.length);
+            position += v.length;
         }
 
         public void writeByte(byte b) {
-            try {
-                getCurrentOutput().writeByte(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            ensureCapacity(1);
+            buffer[position++] = b;
         }
 
         public void writeBoolean(boolean b) {
-            try {
-                getCurrentOutput().writeBoolean(b);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
-            }
+            writeByte(b ? (byte) 1 : (byte) 0);
         }
 
         public void writeString(String str, boolean intern) {
@@ -258,11 +277,27 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
         }
 
-        private void writeBytes(byte[] v) {
-            try {
-                getCurrentOutput().write(v);
-            } catch (IOException e) {
-                throw ConnectorException.wrap(e);
+        public void writeSymbol(String str) {
+            if (sharedSymbols) {
+                if (constantPool.containsKey(str) || constantPool.size() < MAX_SHARED_SYMBOLS) {
+                    writeInt(internIdentifier(str));
+                    return;
+                }
+                writeInt(INLINE_SYMBOL);
+            }
+            writeString(str, false);
+        }
+
+        private void putInt(int index, int v) {
+            buffer[index] = (byte) (v >>> 24);
+            buffer[index + 1] = (byte) (v >>> 16);
+            buffer[index + 2] = (byte) (v >>> 8);
+            buffer[index + 3] = (byte) v;
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
             }
         }
 
@@ -275,14 +310,6 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             }
             return code;
         }
-
-        private DataOutputStream getCurrentOutput() {
-            if (outputBufferStack.size() == 0) {
-                return rootOutput;
-            } else {
-                return outputBufferStack.peek().second;
-            }
-        }
     }
 
     private InternalEncoder internalEncoder;
@@ -292,6 +319,21 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
                 new InternalEncoder(new DataOutputStream(new BufferedOutputStream(output, 4096)));
     }
 
+    /**
+     * Enables or disables shared symbols.
+     * <p/>
+     * When enabled, the values written with
+     * {@link #writeSymbolField(String, String)} are interned in the constant
+     * pool, which lives as long as this encoder, so each of them is sent only
+     * once. The decoder must be switched at the same object of the stream,
+     * this is negotiated by the remote framework connection.
+     *
+     * @since 1.4
+     */
+    public void setSharedSymbols(boolean sharedSymbols) {
+        internalEncoder.sharedSymbols = sharedSymbols;
+    }
+
     public void flush() {
         try {
             internalEncoder.rootOutput.flush();
@@ -426,4 +468,12 @@ public class BinaryObjectEncoder implements ObjectEncoder, BinaryObjectSerialize
             internalEncoder.endField();
         }
     }
+
+    public void writeSymbolField(String fieldName, String v) {
+        if (v != null) {
+            internalEncoder.startField(fieldName);
+            internalEncoder.writeSymbol(v);
+            internalEncoder.endField();
+        }
+    }
 }
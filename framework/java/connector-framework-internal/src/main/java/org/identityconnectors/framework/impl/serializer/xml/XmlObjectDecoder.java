@@ -162,6 +162,10 @@ public class XmlObjectDecoder implements ObjectDecoder {
         return readStringAttributeInternal(fieldName, dflt);
     }
 
+    public String readSymbolField(String fieldName, String dflt) {
+        return readStringField(fieldName, dflt);
+    }
+
     private String readStringContentsInternal() {
         String xml = XmlUtil.getContent(node);
         return xml;
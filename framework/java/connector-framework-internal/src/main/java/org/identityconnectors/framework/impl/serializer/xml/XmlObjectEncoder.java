@@ -146,6 +146,10 @@ public class XmlObjectEncoder implements ObjectEncoder {
         }
     }
 
+    public void writeSymbolField(String fieldName, String str) {
+        writeStringField(fieldName, str);
+    }
+
     static String encodeBoolean(boolean b) {
         return String.valueOf(b);
     }
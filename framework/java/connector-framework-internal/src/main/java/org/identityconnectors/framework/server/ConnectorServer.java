@@ -85,6 +85,11 @@ public abstract class ConnectorServer {
      */
     private boolean useSSL = false;
 
+    /**
+     * Watch the idle connections with a selector instead of a worker thread
+     */
+    private boolean useNIO = false;
+
     /**
      * The bundle URLs for connectors to be hosted in this server.
      */
@@ -268,6 +273,35 @@ public abstract class ConnectorServer {
         useSSL = ssl;
     }
 
+    /**
+     * Returns true if the idle connections are watched by a selector instead
+     * of a worker thread each.
+     *
+     * @return true if we are to use the non-blocking listener.
+     * @since 1.4
+     */
+    public boolean getUseNIO() {
+        return useNIO;
+    }
+
+    /**
+     * Sets whether the idle connections are watched by a selector instead of a
+     * worker thread each.
+     * <p/>
+     * With the non-blocking listener a worker thread is used only while a
+     * request is processed, so the max worker threads limit the concurrent
+     * requests instead of the open connections. The non-blocking listener
+     * does not support SSL.
+     *
+     * @param nio
+     *            true if we are to use the non-blocking listener.
+     * @since 1.4
+     */
+    public void setUseNIO(final boolean nio) {
+        assertNotStarted();
+        useNIO = nio;
+    }
+
     /**
      * Returns the base-64 encoded SHA1 hash of the key.
      *
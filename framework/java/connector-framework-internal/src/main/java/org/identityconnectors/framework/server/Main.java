@@ -51,6 +51,7 @@ public final class Main {
     private static final String PROP_BUNDLE_DIR = "connectorserver.bundleDir";
     private static final String PROP_LIB_DIR = "connectorserver.libDir";
     private static final String PROP_SSL = "connectorserver.usessl";
+    private static final String PROP_NIO = "connectorserver.usenio";
     private static final String PROP_IFADDRESS = "connectorserver.ifaddress";
     private static final String PROP_KEY = "connectorserver.key";
     private static final String PROP_FACADE_LIFETIME = "connectorserver.maxFacadeLifeTime";
@@ -203,6 +204,7 @@ public final class Main {
         String bundleDirStr = properties.getProperty(PROP_BUNDLE_DIR);
         String libDirStr = properties.getProperty(PROP_LIB_DIR);
         String useSSLStr = properties.getProperty(PROP_SSL);
+        String useNIOStr = properties.getProperty(PROP_NIO);
         String ifAddress = properties.getProperty(PROP_IFADDRESS);
         String keyHash = properties.getProperty(PROP_KEY);
         String facadeLifeTime = properties.getProperty(PROP_FACADE_LIFETIME);
@@ -243,6 +245,9 @@ public final class Main {
             boolean useSSL = Boolean.parseBoolean(useSSLStr);
             connectorServer.setUseSSL(useSSL);
         }
+        if (useNIOStr != null) {
+            connectorServer.setUseNIO(Boolean.parseBoolean(useNIOStr));
+        }
         if (ifAddress != null) {
             connectorServer.setIfAddress(InetAddress.getByName(ifAddress));
         }
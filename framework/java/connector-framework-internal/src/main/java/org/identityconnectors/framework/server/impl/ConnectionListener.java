@@ -33,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
 import org.identityconnectors.framework.server.ConnectorServer;
 
 class ConnectionListener extends CCLWatchThread {
@@ -49,7 +50,7 @@ class ConnectionListener extends CCLWatchThread {
     /**
      * The server object that we are using
      */
-    private final ConnectorServer connectorServer;
+    final ConnectorServer connectorServer;
 
     /**
      * The server socket. This must be bound at the time of creation.
@@ -59,7 +60,13 @@ class ConnectionListener extends CCLWatchThread {
     /**
      * Pool of executors
      */
-    private final ExecutorService threadPool;
+    final ExecutorService threadPool;
+
+    /**
+     * Runs the requests of all multiplexed connections, at most
+     * {@link ConnectorServer#getMaxWorkers()} at a time with as many waiting.
+     */
+    final ThreadPoolExecutor requestPool;
 
     /**
      * Set to indicated we need to start shutting down
@@ -75,15 +82,23 @@ class ConnectionListener extends CCLWatchThread {
      *            The socket (should already be bound)
      */
     public ConnectionListener(ConnectorServer server, ServerSocket socket) {
+        // idle time timeout
+        this(server, socket, new ThreadPoolExecutor(server.getMinWorkers(), server
+                .getMaxWorkers(), 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+                INTERNAL_QUEUE_SIZE, true), // fair
+                new CCLWatchThreadFactory()));
+    }
+
+    ConnectionListener(ConnectorServer server, ServerSocket socket, ExecutorService threadPool) {
         super("ConnectionListener");
         connectorServer = server;
         this.socket = socket;
-        // idle time timeout
-        threadPool =
-                new ThreadPoolExecutor(server.getMinWorkers(), server.getMaxWorkers(), 30,
-                        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(INTERNAL_QUEUE_SIZE,
-                                true), // fair
-                        new CCLWatchThreadFactory());
+        this.threadPool = threadPool;
+        this.requestPool =
+                new ThreadPoolExecutor(server.getMaxWorkers(), server.getMaxWorkers(), 30,
+                        TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(server
+                                .getMaxWorkers()), new CCLWatchThreadFactory());
+        this.requestPool.allowCoreThreadTimeOut(true);
     }
 
     @Override
@@ -92,7 +107,8 @@ class ConnectionListener extends CCLWatchThread {
             try {
                 Socket connection = socket.accept();
                 ConnectionProcessor processor =
-                        new ConnectionProcessor(connectorServer, connection);
+                        new ConnectionProcessor(connectorServer, new RemoteFrameworkConnection(
+                                connection), requestPool);
                 // this really sucks - ideally, execute would block
                 // if the queue is full. now we have to do a busy wait
                 // the effect is that eventually our socket's accept
@@ -131,10 +147,17 @@ class ConnectionListener extends CCLWatchThread {
         stopped = true;
     }
 
-    private synchronized boolean isStopped() {
+    synchronized boolean isStopped() {
         return stopped;
     }
 
+    /**
+     * Wakes up the listener thread after the server socket was closed.
+     */
+    void wakeup() {
+        // accept throws an exception when the socket is closed
+    }
+
     public void shutdown() {
         if (Thread.currentThread() == this) {
             throw new IllegalArgumentException("Shutdown may not be called from this thread");
@@ -146,11 +169,13 @@ class ConnectionListener extends CCLWatchThread {
                 markStopped();
                 // close the socket - this causes accept to throw an exception
                 socket.close();
+                wakeup();
                 // wait for the main listener thread to die so we don't
                 // get any new requests
                 join();
                 // wait for all in-progress requests to finish
                 threadPool.shutdown();
+                requestPool.shutdown();
             } catch (Exception e) {
                 throw ConnectorException.wrap(e);
             }
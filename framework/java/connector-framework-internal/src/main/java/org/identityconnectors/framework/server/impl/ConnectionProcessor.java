@@ -35,6 +35,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.logging.Log;
@@ -54,12 +56,15 @@ import org.identityconnectors.framework.impl.api.ObjectStreamHandler;
 import org.identityconnectors.framework.impl.api.StreamHandlerUtil;
 import org.identityconnectors.framework.impl.api.local.LocalConnectorInfoImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
+import org.identityconnectors.framework.impl.api.remote.MessageChannel;
 import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
 import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseCredit;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
@@ -69,18 +74,53 @@ public class ConnectionProcessor implements Runnable {
 
     private static final Log LOG = Log.getLog(ConnectionListener.class);
 
+    /**
+     * Number of times a stream waited for the credit of the client.
+     */
+    private static final AtomicLong PAUSES = new AtomicLong();
+
+    /**
+     * Returns the number of times a stream ran out of credit and waited for
+     * the client, since the framework was loaded.
+     *
+     * @return number of pauses of the credit based streams.
+     * @since 1.4
+     */
+    public static long getPauseCount() {
+        return PAUSES.get();
+    }
+
+    /**
+     * Streams the results to the client.
+     * <p/>
+     * If the client granted an initial credit the results are sent as long as
+     * there is credit left, the client grants more before it runs out.
+     * Otherwise the handler pauses after every {@link #PAUSE_INTERVAL} results
+     * and waits for the client to ask for more.
+     * <p/>
+     * Between the results the handler picks up the credit and the stop
+     * already received, so a stopped client gets no more results than the
+     * ones on the way.
+     */
     private static class RemoteResultsHandler implements ObjectStreamHandler {
         private static final int PAUSE_INTERVAL = 200;
 
-        private final RemoteFrameworkConnection connection;
+        private final MessageChannel connection;
+        private final boolean creditBased;
         private long count = 0;
+        private long credit;
 
-        public RemoteResultsHandler(RemoteFrameworkConnection conn) {
+        public RemoteResultsHandler(MessageChannel conn, int initialCredit) {
             connection = conn;
+            creditBased = initialCredit > 0;
+            credit = initialCredit;
         }
 
         public boolean handle(Object obj) {
             try {
+                if (creditBased) {
+                    return handleWithinCredit(obj);
+                }
                 OperationResponsePart part = new OperationResponsePart(null, obj);
                 connection.writeObject(part);
                 count++;
@@ -100,14 +140,64 @@ public class ConnectionProcessor implements Runnable {
             }
         }
 
+        private boolean handleWithinCredit(Object obj) {
+            if (count == 0) {
+                connection.writeObject(new OperationResponseCredit());
+            }
+            Object pending = connection.pollObject();
+            while (null != pending) {
+                if (pending instanceof OperationRequestMoreData) {
+                    credit += ((OperationRequestMoreData) pending).getCredit();
+                } else {
+                    return false;
+                }
+                pending = connection.pollObject();
+            }
+            while (credit == 0) {
+                // the client is behind, wait for the credit on its way
+                PAUSES.incrementAndGet();
+                connection.writeObject(new OperationResponsePause());
+                Object message = connection.readObject();
+                if (message instanceof OperationRequestMoreData) {
+                    credit += ((OperationRequestMoreData) message).getCredit();
+                } else {
+                    return false;
+                }
+            }
+            connection.writeObject(new OperationResponsePart(null, obj));
+            count++;
+            credit--;
+            return true;
+        }
     }
 
     private final ConnectorServer connectorServer;
     private final RemoteFrameworkConnection connection;
 
+    /**
+     * The pool shared by the multiplexed connections of the server or null if
+     * the connection can't be multiplexed.
+     */
+    private final ExecutorService requestPool;
+
+    /**
+     * Whether a request of the connection had the right key.
+     */
+    private boolean authenticated = false;
+
     public ConnectionProcessor(ConnectorServer server, Socket socket) {
+        this(server, new RemoteFrameworkConnection(socket));
+    }
+
+    public ConnectionProcessor(ConnectorServer server, RemoteFrameworkConnection connection) {
+        this(server, connection, null);
+    }
+
+    ConnectionProcessor(ConnectorServer server, RemoteFrameworkConnection connection,
+            ExecutorService requestPool) {
         connectorServer = server;
-        connection = new RemoteFrameworkConnection(socket);
+        this.connection = connection;
+        this.requestPool = requestPool;
     }
 
     public void run() {
@@ -131,10 +221,28 @@ public class ConnectionProcessor implements Runnable {
         }
     }
 
-    private boolean processRequest() throws Exception {
+    /**
+     * Returns whether a request of the connection had the right key.
+     */
+    boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * Reads and processes one request.
+     *
+     * @return false if the other side closed the connection.
+     */
+    boolean processRequest() throws Exception {
         Locale locale;
         try {
-            locale = (Locale) connection.readObject();
+            Object object = connection.readObject();
+            // the credit or stop the previous stream ended without
+            while (object instanceof OperationRequestMoreData
+                    || object instanceof OperationRequestStopData) {
+                object = connection.readObject();
+            }
+            locale = (Locale) object;
         } catch (RuntimeException e) {
             if (e.getCause() instanceof EOFException) {
                 return false;
@@ -147,6 +255,7 @@ public class ConnectionProcessor implements Runnable {
         boolean authorized;
         try {
             authorized = key.verifyBase64SHA1Hash(connectorServer.getKeyHash());
+            authenticated |= authorized;
         } finally {
             key.dispose();
         }
@@ -161,8 +270,23 @@ public class ConnectionProcessor implements Runnable {
                 HelloResponse response = new HelloResponse(authException, null, null, null);
                 connection.writeObject(response);
             } else {
-                HelloResponse response = processHelloRequest((HelloRequest) requestObject);
+                HelloRequest helloRequest = (HelloRequest) requestObject;
+                HelloResponse response = processHelloRequest(helloRequest);
                 connection.writeObject(response);
+                if (response.getProtocolVersion() >= HelloRequest.MULTIPLEXED_PROTOCOL_VERSION) {
+                    // the authenticated connection is shared by the requests
+                    // of the client from now on
+                    connection.flush();
+                    if (HelloRequest.DEFLATE_COMPRESSION.equals(response.getCompression())) {
+                        connection.enableCompression();
+                    }
+                    if (response.getProtocolVersion()
+                            >= HelloRequest.SHARED_SYMBOLS_PROTOCOL_VERSION) {
+                        connection.enableSharedSymbols();
+                    }
+                    new MultiplexedConnectionProcessor(this, connection, requestPool).run();
+                    return false;
+                }
             }
         } else if (requestObject instanceof OperationRequest) {
             if (authException != null) {
@@ -170,7 +294,7 @@ public class ConnectionProcessor implements Runnable {
                 connection.writeObject(part);
             } else {
                 OperationRequest opRequest = (OperationRequest) requestObject;
-                OperationResponsePart part = processOperationRequest(opRequest);
+                OperationResponsePart part = processOperationRequest(opRequest, connection);
                 connection.writeObject(part);
             }
         } else if (requestObject instanceof EchoMessage) {
@@ -208,6 +332,15 @@ public class ConnectionProcessor implements Runnable {
         List<ConnectorKey> connectorKeys = null;
         Map<String, Object> serverInfo = null;
         Exception exception = null;
+        int protocolVersion =
+                Math.min(request.getProtocolVersion(),
+                        null != requestPool ? HelloRequest.SHARED_SYMBOLS_PROTOCOL_VERSION
+                                : HelloRequest.PROTOCOL_VERSION);
+        String compression = null;
+        if (protocolVersion >= HelloRequest.MULTIPLEXED_PROTOCOL_VERSION
+                && HelloRequest.DEFLATE_COMPRESSION.equals(request.getCompression())) {
+            compression = HelloRequest.DEFLATE_COMPRESSION;
+        }
         try {
             serverInfo = new HashMap<String, Object>(1);
             if (request.isServerInfo()) {
@@ -232,8 +365,11 @@ public class ConnectionProcessor implements Runnable {
         } catch (Exception e) {
             exception = e;
             connectorInfo = null;
+            protocolVersion = HelloRequest.PROTOCOL_VERSION;
+            compression = null;
         }
-        return new HelloResponse(exception, serverInfo, connectorKeys, connectorInfo);
+        return new HelloResponse(exception, serverInfo, connectorKeys, connectorInfo,
+                protocolVersion, compression);
     }
 
     private Method getOperationMethod(OperationRequest request) {
@@ -256,8 +392,15 @@ public class ConnectionProcessor implements Runnable {
         return found;
     }
 
-    private OperationResponsePart processOperationRequest(OperationRequest request)
-            throws IOException {
+    /**
+     * Invokes the requested operation.
+     *
+     * @param connection
+     *            the channel of the request, used to stream the results.
+     * @return the final response part.
+     */
+    OperationResponsePart processOperationRequest(OperationRequest request,
+            MessageChannel connection) throws IOException {
         Object result;
         Throwable exception = null;
         try {
@@ -265,7 +408,8 @@ public class ConnectionProcessor implements Runnable {
             APIOperation operation = getAPIOperation(request);
             List<Object> arguments = request.getArguments();
             List<Object> argumentsAndStreamHandlers =
-                    populateStreamHandlers(method.getParameterTypes(), arguments);
+                    populateStreamHandlers(method.getParameterTypes(), arguments, connection,
+                            request.getInitialCredit());
             try {
                 result = method.invoke(operation, argumentsAndStreamHandlers.toArray());
             } catch (InvocationTargetException e) {
@@ -294,7 +438,8 @@ public class ConnectionProcessor implements Runnable {
         return new OperationResponsePart(exception, result);
     }
 
-    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments) {
+    private List<Object> populateStreamHandlers(Class<?>[] paramTypes, List<Object> arguments,
+            MessageChannel connection, int initialCredit) {
         List<Object> rv = new ArrayList<Object>();
         boolean firstStream = true;
         Iterator<Object> argIt = arguments.iterator();
@@ -304,7 +449,7 @@ public class ConnectionProcessor implements Runnable {
                     throw new UnsupportedOperationException(
                             "At most one stream handler is supported");
                 }
-                ObjectStreamHandler osh = new RemoteResultsHandler(connection);
+                ObjectStreamHandler osh = new RemoteResultsHandler(connection, initialCredit);
                 rv.add(StreamHandlerUtil.adaptFromObjectStreamHandler(paramType, osh));
                 firstStream = false;
             } else {
@@ -24,7 +24,9 @@
 
 package org.identityconnectors.framework.server.impl;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -76,8 +78,16 @@ public class ConnectorServerImpl extends ConnectorServer {
                 (ConnectorInfoManagerFactoryImpl) ConnectorInfoManagerFactory.getInstance();
         factory.getLocalManager(getBundleURLs(), getBundleParentClassLoader());
 
-        final ServerSocket socket = createServerSocket();
-        final ConnectionListener listener = new ConnectionListener(this, socket);
+        final ConnectionListener listener;
+        if (getUseNIO() && getUseSSL()) {
+            logger.warn("The non-blocking listener does not support SSL, using blocking listener");
+        }
+        if (getUseNIO() && !getUseSSL()) {
+            listener = createNioListener();
+        } else {
+            final ServerSocket socket = createServerSocket();
+            listener = new ConnectionListener(this, socket);
+        }
         listener.setDaemon(true);
         listener.start();
         stopLatch = new CountDownLatch(1);
@@ -114,6 +124,28 @@ public class ConnectorServerImpl extends ConnectorServer {
         }
     }
 
+    private ConnectionListener createNioListener() {
+        ServerSocketChannel channel = null;
+        try {
+            channel = ServerSocketChannel.open();
+            if (getIfAddress() == null) {
+                channel.bind(new InetSocketAddress(getPort()), getMaxConnections());
+            } else {
+                channel.bind(new InetSocketAddress(getIfAddress(), getPort()), getMaxConnections());
+            }
+            return new NioConnectionListener(this, channel);
+        } catch (Exception e) {
+            if (null != channel) {
+                try {
+                    channel.close();
+                } catch (Exception e2) {
+                    /* ignore */
+                }
+            }
+            throw ConnectorException.wrap(e);
+        }
+    }
+
     private ServerSocketFactory createSSLServerSocketFactory() throws Exception {
         KeyManager[] keyManagers = null;
         // convert empty to null
@@ -0,0 +1,262 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.server.impl;
+
+import java.io.EOFException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.identityconnectors.common.l10n.CurrentLocale;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.RetryableException;
+import org.identityconnectors.framework.impl.api.remote.MessageChannel;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.impl.api.remote.messages.MultiplexedMessage;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
+
+/**
+ * Processes the requests of a connection which was switched to the
+ * multiplexed protocol.
+ * <p/>
+ * The connection was authenticated by the hello request so every
+ * {@link OperationRequest} is started right away on a worker of the pool
+ * shared by all multiplexed connections of the server. The other messages of
+ * a request are handed over to the worker which processes it.
+ * <p/>
+ * A request the full pool can't take waits in the pending requests of the
+ * connection, in order, until a worker of the pool finishes a request of any
+ * connection. Only when {@link #MAX_PENDING} requests wait already is it
+ * answered with a {@link RetryableException}. The reader never waits for a
+ * worker, the running requests may wait for the credit it reads.
+ */
+class MultiplexedConnectionProcessor {
+
+    private static final Log LOG = Log.getLog(MultiplexedConnectionProcessor.class);
+
+    /**
+     * Maximum number of requests of a connection waiting for a worker.
+     */
+    static final int MAX_PENDING = 64;
+
+    /**
+     * The connections with pending requests, drained each time a request
+     * finishes.
+     */
+    private static final Queue<MultiplexedConnectionProcessor> WAITING =
+            new ConcurrentLinkedQueue<MultiplexedConnectionProcessor>();
+
+    private final ConnectionProcessor processor;
+
+    private final RemoteFrameworkConnection connection;
+
+    private final ExecutorService workers;
+
+    private final ConcurrentMap<Long, Channel> channels = new ConcurrentHashMap<Long, Channel>();
+
+    /**
+     * The requests waiting for a worker, guarded by itself.
+     */
+    private final Queue<Channel> pending = new ArrayDeque<Channel>();
+
+    /**
+     * The messages of one request.
+     */
+    private class Channel implements MessageChannel, Runnable {
+
+        private final long requestId;
+
+        private final Locale locale;
+
+        private final OperationRequest request;
+
+        private final BlockingQueue<Object> messages = new LinkedBlockingQueue<Object>();
+
+        public Channel(long requestId, Locale locale, OperationRequest request) {
+            this.requestId = requestId;
+            this.locale = locale;
+            this.request = request;
+        }
+
+        public void writeObject(Object object) {
+            synchronized (connection) {
+                connection.writeObject(new MultiplexedMessage(requestId, null, object));
+                connection.flush();
+            }
+        }
+
+        public Object readObject() {
+            try {
+                return messages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ConnectorException.wrap(e);
+            }
+        }
+
+        public Object pollObject() {
+            return messages.poll();
+        }
+
+        public void run() {
+            try {
+                if (null != locale) {
+                    CurrentLocale.set(locale);
+                }
+                OperationResponsePart part = processor.processOperationRequest(request, this);
+                writeObject(part);
+            } catch (Throwable e) {
+                LOG.error(e, null);
+            } finally {
+                channels.remove(requestId);
+                CurrentLocale.clear();
+                drainWaiting();
+            }
+        }
+    }
+
+    public MultiplexedConnectionProcessor(ConnectionProcessor processor,
+            RemoteFrameworkConnection connection, ExecutorService workers) {
+        this.processor = processor;
+        this.connection = connection;
+        this.workers = workers;
+    }
+
+    /**
+     * Reads the messages until the other side closes the connection.
+     */
+    public void run() {
+        try {
+            while (true) {
+                Object object;
+                try {
+                    object = connection.receiveObject();
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof EOFException) {
+                        break;
+                    }
+                    throw e;
+                }
+                if (!(object instanceof MultiplexedMessage)) {
+                    throw new ConnectorException("Unexpected request: " + object);
+                }
+                MultiplexedMessage message = (MultiplexedMessage) object;
+                if (message.getMessage() instanceof OperationRequest) {
+                    Channel channel =
+                            new Channel(message.getRequestId(), message.getLocale(),
+                                    (OperationRequest) message.getMessage());
+                    channels.put(channel.requestId, channel);
+                    if (!submit(channel)) {
+                        channels.remove(channel.requestId);
+                        channel.writeObject(new OperationResponsePart(RetryableException.wrap(
+                                "Connector server is busy", new RejectedExecutionException(
+                                        MAX_PENDING + " requests are waiting")), null));
+                    }
+                } else {
+                    Channel channel = channels.get(message.getRequestId());
+                    // the request may have finished already
+                    if (null != channel) {
+                        channel.messages.add(message.getMessage());
+                    }
+                }
+            }
+        } finally {
+            // nobody is waiting for the pending requests
+            synchronized (pending) {
+                for (Channel channel : pending) {
+                    channels.remove(channel.requestId);
+                }
+                pending.clear();
+                WAITING.remove(this);
+            }
+            // nobody is going to ask for more data
+            for (Channel channel : channels.values()) {
+                channel.messages.add(new OperationRequestStopData());
+            }
+        }
+    }
+
+    /**
+     * Starts the request on a worker or adds it to the pending requests.
+     *
+     * @return false if the request can neither start nor wait.
+     */
+    private boolean submit(Channel channel) {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                try {
+                    workers.execute(channel);
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    /* wait for a worker */
+                }
+            }
+            if (pending.size() >= MAX_PENDING) {
+                return false;
+            }
+            if (pending.isEmpty()) {
+                WAITING.add(this);
+            }
+            pending.add(channel);
+        }
+        // a worker may have finished since it was rejected
+        drain();
+        return true;
+    }
+
+    /**
+     * Starts the pending requests while the pool takes them.
+     */
+    private void drain() {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                try {
+                    workers.execute(pending.peek());
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+                pending.poll();
+            }
+            WAITING.remove(this);
+        }
+    }
+
+    private static void drainWaiting() {
+        for (MultiplexedConnectionProcessor processor : WAITING) {
+            processor.drain();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.server.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.serializer.ObjectSerializerRegistry;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
+import org.identityconnectors.framework.server.ConnectorServer;
+
+/**
+ * A listener which watches the idle connections with a {@link Selector}.
+ * <p/>
+ * A connection is handed over to a worker thread only when a complete request
+ * has arrived, the worker processes that single request and gives the
+ * connection back to the selector. Idle connections therefore do not hold any
+ * thread and the number of workers limits only the number of concurrent
+ * requests.
+ */
+class NioConnectionListener extends ConnectionListener {
+
+    private static final Log LOG = Log.getLog(NioConnectionListener.class);
+
+    /**
+     * Every request is the locale, the key and the request message.
+     */
+    private static final int OBJECTS_PER_REQUEST = 3;
+
+    /**
+     * The credit and the stop a finished stream left behind, the processor
+     * skips them before the next request.
+     */
+    private static final String MORE_DATA_TYPE =
+            ObjectSerializerRegistry.getMapperByObjectType(OperationRequestMoreData.class)
+                    .getHandledSerialType();
+
+    private static final String STOP_DATA_TYPE =
+            ObjectSerializerRegistry.getMapperByObjectType(OperationRequestStopData.class)
+                    .getHandledSerialType();
+
+    /**
+     * Upper bound of the buffered request until a request had the right key,
+     * so a client which does not know the key can't make the server allocate
+     * more.
+     */
+    private static final int MAX_UNAUTHENTICATED_REQUEST = 64 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Selector selector;
+
+    /**
+     * Connections processed by a worker which are ready to be watched again.
+     */
+    private final Queue<ChannelConnection> idleConnections =
+            new ConcurrentLinkedQueue<ChannelConnection>();
+
+    /**
+     * Creates the listener thread
+     *
+     * @param server
+     *            The server object
+     * @param serverChannel
+     *            The channel (should already be bound)
+     */
+    public NioConnectionListener(ConnectorServer server, ServerSocketChannel serverChannel)
+            throws IOException {
+        super(server, serverChannel.socket(), newWorkerPool(server));
+        this.serverChannel = serverChannel;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    private static ThreadPoolExecutor newWorkerPool(ConnectorServer server) {
+        ThreadPoolExecutor pool =
+                new ThreadPoolExecutor(server.getMaxWorkers(), server.getMaxWorkers(), 30,
+                        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new CCLWatchThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    @Override
+    public void run() {
+        List<ChannelConnection> ready = new ArrayList<ChannelConnection>();
+        try {
+            while (!isStopped()) {
+                try {
+                    selector.select();
+                    for (ChannelConnection connection = idleConnections.poll(); connection != null; connection =
+                            idleConnections.poll()) {
+                        connection.register();
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            ChannelConnection connection = (ChannelConnection) key.attachment();
+                            if (connection.fill()) {
+                                key.cancel();
+                                ready.add(connection);
+                            }
+                        }
+                    }
+                    if (!ready.isEmpty()) {
+                        // deregister the cancelled keys before the channels
+                        // are switched to blocking mode
+                        selector.selectNow();
+                        for (ChannelConnection connection : ready) {
+                            connection.dispatch();
+                        }
+                        ready.clear();
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (Throwable e) {
+                    // log the error unless it's because we've stopped
+                    if (!isStopped()) {
+                        LOG.error(e, "Error processing request");
+                    }
+                }
+            }
+        } finally {
+            closeIdleConnections();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (null != channel) {
+            new ChannelConnection(channel).register();
+        }
+    }
+
+    private void closeIdleConnections() {
+        for (ChannelConnection connection = idleConnections.poll(); connection != null; connection =
+                idleConnections.poll()) {
+            connection.close();
+        }
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof ChannelConnection) {
+                    ((ChannelConnection) key.attachment()).close();
+                }
+            }
+            selector.close();
+        } catch (Exception e) {
+            LOG.warn(e, "Failed to close the selector");
+        }
+    }
+
+    @Override
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * A connection and the request bytes read so far.
+     */
+    private class ChannelConnection extends InputStream implements Runnable {
+
+        private final SocketChannel channel;
+
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        /**
+         * The magic number and the version precede the first request.
+         */
+        private boolean header = true;
+
+        private final RemoteFrameworkConnection connection;
+
+        private final ConnectionProcessor processor;
+
+        public ChannelConnection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            channel.configureBlocking(false);
+            connection = new RemoteFrameworkConnection(channel.socket(), this);
+            processor = new ConnectionProcessor(connectorServer, connection, requestPool);
+        }
+
+        public void register() {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                LOG.error(e, "Failed to register connection");
+                close();
+            }
+        }
+
+        /**
+         * Reads the available data.
+         *
+         * @return true if a complete request was received.
+         */
+        public boolean fill() {
+            try {
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= MAX_UNAUTHENTICATED_REQUEST
+                            && !processor.isAuthenticated()) {
+                        LOG.warn("Request from {0} exceeds {1} bytes before authentication",
+                                channel.socket().getRemoteSocketAddress(),
+                                MAX_UNAUTHENTICATED_REQUEST);
+                        close();
+                        return false;
+                    }
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                if (channel.read(buffer) < 0) {
+                    close();
+                    return false;
+                }
+                ByteBuffer received = buffer.duplicate();
+                received.flip();
+                int offset = 0;
+                int objects = 0;
+                while (objects < OBJECTS_PER_REQUEST) {
+                    boolean first = header && offset == 0;
+                    int length = BinaryObjectDecoder.scanObject(received, offset, first);
+                    if (length < 0) {
+                        return false;
+                    }
+                    String type = connection.scanObjectType(received, offset, first);
+                    if (!MORE_DATA_TYPE.equals(type) && !STOP_DATA_TYPE.equals(type)) {
+                        objects++;
+                    }
+                    offset += length;
+                }
+                return true;
+            } catch (Exception e) {
+                LOG.error(e, "Failed to read request");
+                close();
+                return false;
+            }
+        }
+
+        /**
+         * Hands the connection over to a worker.
+         */
+        public void dispatch() {
+            try {
+                channel.configureBlocking(true);
+                buffer.flip();
+                header = false;
+                threadPool.execute(this);
+            } catch (Exception e) {
+                LOG.error(e, "Failed to dispatch request");
+                close();
+            }
+        }
+
+        public void run() {
+            try {
+                if (processor.processRequest() && !isStopped()) {
+                    // the response is not flushed by the next read
+                    connection.flush();
+                    buffer.compact();
+                    channel.configureBlocking(false);
+                    idleConnections.add(this);
+                    selector.wakeup();
+                } else {
+                    close();
+                }
+            } catch (Throwable e) {
+                LOG.error(e, null);
+                close();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (buffer.hasRemaining()) {
+                return buffer.get() & 0xFF;
+            }
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (buffer.hasRemaining()) {
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+            // the worker reads the rest of the conversation in blocking mode
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        /**
+         * Counts the buffered bytes and the bytes the channel has at hand, so
+         * the worker sees the credit or the stop of the client while it
+         * streams the results.
+         */
+        @Override
+        public int available() throws IOException {
+            if (!buffer.hasRemaining() && channel.isBlocking()) {
+                // only the worker reads from a blocking channel, it is not
+                // waiting on it now
+                buffer.clear();
+                channel.configureBlocking(false);
+                try {
+                    channel.read(buffer);
+                } finally {
+                    buffer.flip();
+                    channel.configureBlocking(true);
+                }
+            }
+            return buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (Exception e) {
+                LOG.ok(e, "Failed to close connection");
+            }
+        }
+    }
+}
@@ -23,12 +23,15 @@
 package org.identityconnectors.framework.impl.api;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
+import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
@@ -171,6 +174,35 @@ public class BufferedSearchProxyTests {
         }
     }
 
+    @Test
+    public void propagateLocaleToPooledProducer() {
+        final List<Locale> locales = new ArrayList<Locale>();
+        final List<String> threadNames = new ArrayList<String>();
+        SearchApiOp search = new Searches.ConnectorObjectSearch(3) {
+            protected void beforeObject(int count) {
+                locales.add(CurrentLocale.get());
+                threadNames.add(Thread.currentThread().getName());
+            }
+        };
+        SearchApiOp proxy = createSearchProxy(search, 2, 20000);
+        CurrentLocale.set(Locale.JAPANESE);
+        try {
+            for (int i = 0; i < 10; i++) {
+                ExpectedTestResults expected = new ExpectedTestResults();
+                expected.addExpectedRange(0, 3);
+                proxy.search(ObjectClass.ACCOUNT, null, expected, null);
+                expected.assertFinished();
+            }
+        } finally {
+            CurrentLocale.clear();
+        }
+        assertEquals(locales.size(), 30);
+        for (int i = 0; i < locales.size(); i++) {
+            assertEquals(locales.get(i), Locale.JAPANESE);
+            assertTrue(threadNames.get(i).startsWith("BufferedResultsProducer"));
+        }
+    }
+
     private static SearchApiOp createSearchProxy(SearchApiOp search, int bufSize, long timeout) {
         BufferedResultsProxy timeoutHandler = new BufferedResultsProxy(search, bufSize, timeout);
         return (SearchApiOp)Proxy.newProxyInstance(SearchApiOp.class.getClassLoader(),
@@ -25,9 +25,13 @@ package org.identityconnectors.framework.impl.api;
 
 import static org.identityconnectors.framework.common.objects.ObjectClass.ACCOUNT;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,26 +41,35 @@ import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
 import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
 import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.api.operations.UpdateApiOp;
 import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.exceptions.UnknownUidException;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
 import org.identityconnectors.framework.common.objects.ScriptContextBuilder;
 import org.identityconnectors.framework.common.objects.SyncDelta;
 import org.identityconnectors.framework.common.objects.SyncResultsHandler;
 import org.identityconnectors.framework.common.objects.SyncToken;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
 import org.identityconnectors.framework.spi.Configuration;
+import org.identityconnectors.framework.impl.metrics.ObjectCacheMetrics;
 import org.identityconnectors.framework.spi.Connector;
 import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockBatchConnector;
 import org.identityconnectors.mockconnector.MockConfiguration;
 import org.identityconnectors.mockconnector.MockConnector;
 import org.identityconnectors.mockconnector.MockConnector.Call;
@@ -140,6 +153,14 @@ public class ConnectorFacadeTests {
                 null);
     }
 
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void asyncInstanceArgumentsTest() {
+        Configuration config = new MockConfiguration(false);
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        APIConfiguration impl = TestHelpers.createTestConfiguration(MockConnector.class, config);
+        factory.newAsyncInstance(factory.newInstance(impl), 0, 0);
+    }
+
     @Test
     public void runScriptOnConnectorCallPattern() {
         testCallPattern(new TestOperationPattern() {
@@ -526,6 +547,222 @@ public class ConnectorFacadeTests {
         });
     }
 
+    @Test
+    public void batchCallPattern() {
+        testCallPattern(new TestOperationPattern() {
+
+            public void makeCall(ConnectorFacade facade) {
+                assertTrue(facade.getSupportedOperations().contains(BatchApiOp.class));
+                List<BatchOperation> operations = new ArrayList<BatchOperation>();
+                operations.add(BatchOperation.create(ACCOUNT, CollectionUtil
+                        .<Attribute> newReadOnlySet()));
+                operations.add(BatchOperation.delete(ACCOUNT, newUid(1)));
+                List<BatchResult> results = facade.executeBatch(operations, null);
+                assertEquals(results.size(), 2);
+                assertEquals(results.get(0).getUid(), newUid(0));
+                assertTrue(results.get(1).getError() instanceof UnknownUidException);
+            }
+
+            public void checkCalls(List<Call> calls) {
+                assertEquals(calls.remove(0).getMethodName(), "executeBatch");
+            }
+        }, MockBatchConnector.class);
+    }
+
+    @Test
+    public void batchAllCallPattern() {
+        testCallPattern(new TestOperationPattern() {
+
+            public void makeCall(ConnectorFacade facade) {
+                List<BatchResult> results =
+                        facade.executeBatch(CollectionUtil.newList(BatchOperation.delete(
+                                ObjectClass.ALL, newUid(0))), null);
+                assertEquals(results.size(), 1);
+                assertTrue(results.get(0).getError() instanceof UnsupportedOperationException);
+            }
+
+            public void checkCalls(List<Call> calls) {
+                // nothing valid left for the connector
+            }
+        }, MockBatchConnector.class);
+    }
+
+    @Test
+    public void batchInvalidCallPattern() {
+        testCallPattern(new TestOperationPattern() {
+
+            public void makeCall(ConnectorFacade facade) {
+                List<BatchOperation> operations = new ArrayList<BatchOperation>();
+                operations.add(BatchOperation.delete(ObjectClass.ALL, newUid(0)));
+                operations.add(BatchOperation.create(ACCOUNT, CollectionUtil
+                        .<Attribute> newReadOnlySet()));
+                operations.add(BatchOperation.create(ACCOUNT, CollectionUtil
+                        .<Attribute> newSet(newUid(2))));
+                operations.add(BatchOperation.update(ACCOUNT, newUid(3), CollectionUtil
+                        .<Attribute> newSet(AttributeBuilder.build("batch", 3))));
+                List<BatchResult> results = facade.executeBatch(operations, null);
+                assertEquals(results.size(), 4);
+                assertTrue(results.get(0).getError() instanceof UnsupportedOperationException);
+                // the connector only saw the valid operations
+                assertEquals(results.get(1).getUid(), newUid(0));
+                assertTrue(results.get(2).getError() instanceof InvalidAttributeValueException);
+                assertEquals(results.get(3).getUid(), newUid(3));
+            }
+
+            public void checkCalls(List<Call> calls) {
+                Call call = calls.remove(0);
+                assertEquals(call.getMethodName(), "executeBatch");
+                assertEquals(((List<?>) call.getArguments()[0]).size(), 2);
+            }
+        }, MockBatchConnector.class);
+    }
+
+    @Test
+    public void batchFallbackCallPattern() {
+        testCallPattern(new TestOperationPattern() {
+
+            public void makeCall(ConnectorFacade facade) {
+                assertFalse(facade.getSupportedOperations().contains(BatchApiOp.class));
+                List<BatchResult> results =
+                        facade.executeBatch(CollectionUtil.newList(BatchOperation.delete(ACCOUNT,
+                                newUid(0))), null);
+                assertEquals(results.size(), 1);
+                assertTrue(results.get(0).isSuccess());
+                assertEquals(results.get(0).getUid(), newUid(0));
+            }
+
+            public void checkCalls(List<Call> calls) {
+                assertEquals(calls.remove(0).getMethodName(), "delete");
+            }
+        });
+    }
+
+    @Test
+    public void batchFallbackParallelTest() {
+        Configuration config = new MockConfiguration(false);
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        APIConfiguration impl =
+                TestHelpers.createTestConfiguration(MockUpdateConnector.class, config);
+        ConnectorFacade facade = factory.newInstance(impl);
+        List<BatchOperation> operations = new ArrayList<BatchOperation>();
+        // keep off the objects updateMergeTests works on..
+        for (int i = 50; i < 100; i++) {
+            operations.add(BatchOperation.update(ACCOUNT, newUid(i), CollectionUtil
+                    .<Attribute> newSet(AttributeBuilder.build("batch", i))));
+        }
+        operations.add(BatchOperation.create(ACCOUNT, CollectionUtil.<Attribute> newReadOnlySet()));
+        List<BatchResult> results = facade.executeBatch(operations, null);
+        assertEquals(results.size(), 51);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(results.get(i).getUid(), newUid(50 + i));
+        }
+        // the connector does not support create..
+        assertTrue(results.get(50).getError() instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void objectCacheTest() {
+        APIConfiguration impl =
+                TestHelpers.createTestConfiguration(MockUpdateConnector.class,
+                        new MockConfiguration(false));
+        impl.getObjectCacheConfiguration().setEnabled(true);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(impl);
+        ObjectCacheMetrics metrics =
+                ((AbstractConnectorFacade) facade).getMetrics().getObjectCacheMetrics();
+
+        // keep off the objects the other tests work on..
+        ConnectorObject first = facade.getObject(ACCOUNT, newUid(20), null);
+        assertSame(facade.getObject(ACCOUNT, newUid(20), null), first);
+        assertEquals(metrics.getMissCount(), 1L);
+        assertEquals(metrics.getHitCount(), 1L);
+        assertEquals(((AbstractConnectorFacade) facade).getMetrics().getOperationMetrics(
+                GetApiOp.class).getCallCount(), 1L);
+
+        // the attributes to get are part of the key, not their order..
+        facade.getObject(ACCOUNT, newUid(20), new OperationOptionsBuilder().setAttributesToGet(
+                Name.NAME, Uid.NAME).build());
+        facade.getObject(ACCOUNT, newUid(20), new OperationOptionsBuilder().setAttributesToGet(
+                Uid.NAME, Name.NAME).build());
+        assertEquals(metrics.getMissCount(), 2L);
+        assertEquals(metrics.getHitCount(), 2L);
+
+        // other options bypass the cache..
+        facade.getObject(ACCOUNT, newUid(20), new OperationOptionsBuilder().setScope("sub")
+                .build());
+        assertEquals(metrics.getMissCount(), 2L);
+        assertEquals(metrics.getHitCount(), 2L);
+
+        // an update through the facade removes the object..
+        facade.update(ACCOUNT, newUid(20), CollectionUtil.<Attribute> newSet(AttributeBuilder
+                .build("cached", "changed")), null);
+        assertEquals(metrics.getInvalidationCount(), 1L);
+        ConnectorObject second = facade.getObject(ACCOUNT, newUid(20), null);
+        assertEquals(second.getAttributeByName("cached"), AttributeBuilder.build("cached",
+                "changed"));
+        assertEquals(metrics.getMissCount(), 3L);
+
+        // so does a batch..
+        facade.executeBatch(CollectionUtil.newList(BatchOperation.update(ACCOUNT, newUid(20),
+                CollectionUtil.<Attribute> newSet(AttributeBuilder.build("cached", "batch")))),
+                null);
+        assertEquals(facade.getObject(ACCOUNT, newUid(20), null).getAttributeByName("cached"),
+                AttributeBuilder.build("cached", "batch"));
+
+        // and an update through the operation of the facade..
+        ((UpdateApiOp) facade.getOperation(UpdateApiOp.class)).update(ACCOUNT, newUid(20),
+                CollectionUtil.<Attribute> newSet(AttributeBuilder.build("cached", "operation")),
+                null);
+        assertEquals(facade.getObject(ACCOUNT, newUid(20), null).getAttributeByName("cached"),
+                AttributeBuilder.build("cached", "operation"));
+        // counted once per call, the batch fallback included..
+        assertEquals(((AbstractConnectorFacade) facade).getMetrics().getOperationMetrics(
+                UpdateApiOp.class).getCallCount(), 3L);
+    }
+
+    @Test
+    public void objectCacheBoundsTest() throws Exception {
+        APIConfiguration impl =
+                TestHelpers.createTestConfiguration(MockUpdateConnector.class,
+                        new MockConfiguration(false));
+        impl.getObjectCacheConfiguration().setEnabled(true);
+        impl.getObjectCacheConfiguration().setMaxObjects(2);
+        impl.getObjectCacheConfiguration().setTimeToLiveMillis(200L);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(impl);
+        ObjectCacheMetrics metrics =
+                ((AbstractConnectorFacade) facade).getMetrics().getObjectCacheMetrics();
+
+        facade.getObject(ACCOUNT, newUid(21), null);
+        facade.getObject(ACCOUNT, newUid(22), null);
+        facade.getObject(ACCOUNT, newUid(21), null);
+        assertEquals(metrics.getHitCount(), 1L);
+        // 22 is the least recently used..
+        facade.getObject(ACCOUNT, newUid(23), null);
+        assertEquals(metrics.getEvictionCount(), 1L);
+        facade.getObject(ACCOUNT, newUid(21), null);
+        assertEquals(metrics.getHitCount(), 2L);
+        facade.getObject(ACCOUNT, newUid(22), null);
+        assertEquals(metrics.getMissCount(), 4L);
+
+        Thread.sleep(400L);
+        facade.getObject(ACCOUNT, newUid(22), null);
+        assertEquals(metrics.getMissCount(), 5L);
+        assertEquals(metrics.getHitCount(), 2L);
+
+        // the attributes to get variants of one object are bounded too..
+        long evictions = metrics.getEvictionCount();
+        for (int i = 0; i < ObjectCache.MAX_VARIANTS; i++) {
+            facade.getObject(ACCOUNT, newUid(22), new OperationOptionsBuilder()
+                    .setAttributesToGet("variant" + i).build());
+        }
+        assertEquals(metrics.getEvictionCount(), evictions + 1);
+        facade.getObject(ACCOUNT, newUid(22), new OperationOptionsBuilder().setAttributesToGet(
+                "variant" + (ObjectCache.MAX_VARIANTS - 1)).build());
+        assertEquals(metrics.getHitCount(), 3L);
+        // the no attributes to get variant was the least recently used..
+        facade.getObject(ACCOUNT, newUid(22), null);
+        assertEquals(metrics.getHitCount(), 3L);
+    }
+
     @Test
     public void updateMergeTests() {
         Attribute expected, actual;
@@ -588,6 +825,65 @@ public class ConnectorFacadeTests {
         assertTrue(obj.getAttributeByName("does not exist") == null);
     }
 
+    @Test
+    public void configurationFingerprintTest() {
+        Class<? extends Connector> clazz = MockAllOpsConnector.class;
+        APIConfigurationImpl first =
+                (APIConfigurationImpl) TestHelpers.createTestConfiguration(clazz,
+                        new MockConfiguration(false));
+        APIConfigurationImpl second =
+                (APIConfigurationImpl) TestHelpers.createTestConfiguration(clazz,
+                        new MockConfiguration(false));
+        assertEquals(ConfigurationFingerprint.of(first), ConfigurationFingerprint.of(second));
+
+        second.getConfigurationProperties().setPropertyValue("fail", true);
+        assertFalse(ConfigurationFingerprint.of(first).equals(
+                ConfigurationFingerprint.of(second)));
+        assertFalse(ConfigurationFingerprint.hashCode(null, first.getConfigurationProperties(),
+                first.getConnectorPoolConfiguration()) == ConfigurationFingerprint.hashCode(null,
+                second.getConfigurationProperties(), second.getConnectorPoolConfiguration()));
+
+        second.getConfigurationProperties().setPropertyValue("fail", false);
+        second.setTimeout(GetApiOp.class, 1000);
+        assertFalse(ConfigurationFingerprint.of(first).equals(
+                ConfigurationFingerprint.of(second)));
+
+        first.setTimeout(GetApiOp.class, 1000);
+        assertEquals(ConfigurationFingerprint.of(first), ConfigurationFingerprint.of(second));
+
+        // the remote connection settings are part of it, the key included..
+        RemoteConnectorInfoImpl remote = new RemoteConnectorInfoImpl();
+        remote.setRemoteConnectionInfo(new RemoteFrameworkConnectionInfo("127.0.0.1", 8759,
+                new GuardedString("changeit".toCharArray())));
+        first.setConnectorInfo(remote);
+        String fingerprint = ConfigurationFingerprint.of(first);
+        remote.setRemoteConnectionInfo(new RemoteFrameworkConnectionInfo("127.0.0.1", 8759,
+                new GuardedString("other".toCharArray())));
+        assertFalse(fingerprint.equals(ConfigurationFingerprint.of(first)));
+        remote.setRemoteConnectionInfo(new RemoteFrameworkConnectionInfo("127.0.0.1", 8759,
+                new GuardedString("changeit".toCharArray()), false, null, 1000));
+        assertFalse(fingerprint.equals(ConfigurationFingerprint.of(first)));
+        remote.setRemoteConnectionInfo(new RemoteFrameworkConnectionInfo("127.0.0.1", 8759,
+                new GuardedString("changeit".toCharArray())));
+        assertEquals(ConfigurationFingerprint.of(first), fingerprint);
+    }
+
+    @Test
+    public void managedFacadeCacheTest() {
+        Class<? extends Connector> clazz = MockAllOpsConnector.class;
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getManagedInstance();
+        APIConfiguration impl =
+                TestHelpers.createTestConfiguration(clazz, new MockConfiguration(false));
+        ConnectorFacade first = factory.newInstance(impl);
+        ConnectorFacade second =
+                factory.newInstance(TestHelpers.createTestConfiguration(clazz,
+                        new MockConfiguration(false)));
+        assertSame(second, first);
+
+        impl.setTimeout(GetApiOp.class, 1000);
+        assertNotSame(factory.newInstance(impl), first);
+    }
+
     static Uid newUid(int id) {
         return new Uid(Integer.toString(id));
     }
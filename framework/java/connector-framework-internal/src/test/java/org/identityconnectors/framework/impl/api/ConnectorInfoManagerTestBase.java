@@ -43,12 +43,20 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.Version;
 import org.identityconnectors.common.l10n.CurrentLocale;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
+import org.identityconnectors.framework.api.CompletionCallback;
 import org.identityconnectors.framework.api.ConfigurationProperties;
 import org.identityconnectors.framework.api.ConfigurationProperty;
 import org.identityconnectors.framework.api.ConnectorFacade;
@@ -74,6 +82,7 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
 import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.ScriptContextBuilder;
 import org.identityconnectors.framework.common.objects.SearchResult;
 import org.identityconnectors.framework.common.objects.SortKey;
@@ -376,6 +385,109 @@ public abstract class ConnectorInfoManagerTestBase {
         }
     }
 
+    @Test
+    public void testAsyncValidate() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("failValidation", true);
+        ConnectorFacadeFactory facf = ConnectorFacadeFactory.getInstance();
+        AsyncConnectorFacade facade = facf.newAsyncInstance(facf.newInstance(api), 2, 10);
+        try {
+            final RuntimeException[] failure = new RuntimeException[1];
+            final CountDownLatch done = new CountDownLatch(1);
+            Future<Void> future;
+            // the locale of the caller goes with the operation
+            try {
+                CurrentLocale.set(new Locale("es"));
+                future = facade.validate(new CompletionCallback<Void>() {
+                    public void completed(Void result) {
+                        done.countDown();
+                    }
+
+                    public void failed(RuntimeException error) {
+                        failure[0] = error;
+                        done.countDown();
+                    }
+                });
+            } finally {
+                CurrentLocale.clear();
+            }
+            try {
+                future.get(30, TimeUnit.SECONDS);
+                fail("exception expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).hasMessage("validation failed es");
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertThat(failure[0]).hasMessage("validation failed es");
+
+            assertNotNull(facade.schema(null).get(30, TimeUnit.SECONDS));
+        } finally {
+            facade.dispose();
+        }
+    }
+
+    @Test
+    public void testAsyncSearchCancel() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        ConnectorFacadeFactory facf = ConnectorFacadeFactory.getInstance();
+        // a single thread, so the next operation waits for the search
+        AsyncConnectorFacade facade = facf.newAsyncInstance(facf.newInstance(api), 1, 10);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger handled = new AtomicInteger();
+            final CountDownLatch cancelled = new CountDownLatch(1);
+            Future<SearchResult> search =
+                    facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                        public boolean handle(ConnectorObject obj) {
+                            handled.incrementAndGet();
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return true;
+                        }
+                    }, null, new CompletionCallback<SearchResult>() {
+                        public void completed(SearchResult result) {
+                        }
+
+                        public void failed(RuntimeException error) {
+                            if (error instanceof CancellationException) {
+                                cancelled.countDown();
+                            }
+                        }
+                    });
+            Future<Schema> waiting = facade.schema(null);
+            Future<Schema> dropped = facade.schema(null);
+
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+            assertTrue(dropped.cancel(false));
+            assertTrue(search.cancel(false));
+            assertTrue(cancelled.await(30, TimeUnit.SECONDS));
+            release.countDown();
+
+            // the search stops, so the waiting operation gets the thread
+            assertNotNull(waiting.get(30, TimeUnit.SECONDS));
+            assertEquals(handled.get(), 1);
+            assertTrue(dropped.isCancelled());
+        } finally {
+            facade.dispose();
+        }
+    }
+
     @Test
     public void testSearchStress() throws Exception {
         ConnectorInfoManager manager = getConnectorInfoManager();
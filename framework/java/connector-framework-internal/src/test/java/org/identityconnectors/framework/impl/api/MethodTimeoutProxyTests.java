@@ -0,0 +1,188 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.framework.common.exceptions.OperationTimeoutException;
+import org.testng.annotations.Test;
+
+public class MethodTimeoutProxyTests {
+
+    public interface Operation {
+        String run(long sleepMillis) throws InterruptedException;
+    }
+
+    private static class SleepingOperation implements Operation {
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile String threadName;
+
+        public String run(long sleepMillis) throws InterruptedException {
+            threadName = Thread.currentThread().getName();
+            try {
+                if (sleepMillis < 0) {
+                    throw new IllegalArgumentException("negative");
+                }
+                Thread.sleep(sleepMillis);
+                return "done";
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    @Test
+    public void testWorkerTimeout() throws Exception {
+        SleepingOperation target = new SleepingOperation();
+        Operation proxy = createProxy(target, 100, false);
+        assertEquals(proxy.run(0), "done");
+        assertTrue(target.threadName.startsWith("MethodTimeoutWorker"));
+
+        target = new SleepingOperation();
+        proxy = createProxy(target, 100, false);
+        long timeouts = MethodTimeoutProxy.getTimeoutCount();
+        try {
+            proxy.run(500);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(MethodTimeoutProxy.getTimeoutCount() > timeouts);
+        // still running on the worker after the caller gave up
+        assertTrue(MethodTimeoutProxy.getOverdueCount() > 0);
+        assertTrue(target.finished.await(5, TimeUnit.SECONDS));
+        waitForNoOverdue();
+    }
+
+    @Test
+    public void testWatchdogTimeout() throws Exception {
+        SleepingOperation target = new SleepingOperation();
+        Operation proxy = createProxy(target, 100, true);
+        assertEquals(proxy.run(0), "done");
+        assertEquals(target.threadName, Thread.currentThread().getName());
+
+        long start = System.currentTimeMillis();
+        try {
+            proxy.run(10000);
+            fail("expected timeout");
+        } catch (OperationTimeoutException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000, "Caller was not interrupted");
+        assertFalse(Thread.currentThread().isInterrupted());
+        waitForNoOverdue();
+    }
+
+    @Test
+    public void testBurstBeyondWorkers() throws Exception {
+        // twice the default number of workers
+        int calls =
+                2 * Integer.getInteger(MethodTimeoutProxy.MAX_THREADS_PROPERTY, Math.max(16,
+                        Runtime.getRuntime().availableProcessors() * 4));
+        final Operation proxy = createProxy(new SleepingOperation(), 30000, false);
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < calls; i++) {
+                results.add(callers.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return proxy.run(200);
+                    }
+                }));
+            }
+            // the calls without a worker wait for one instead of failing
+            for (Future<String> result : results) {
+                assertEquals(result.get(60, TimeUnit.SECONDS), "done");
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWatchdogThread() throws Exception {
+        final SleepingOperation target = new SleepingOperation();
+        final Operation proxy = createProxy(target, 100, false);
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                MethodTimeoutProxy.useWatchdogOnCurrentThread();
+                try {
+                    proxy.run(0);
+                    proxy.run(10000);
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        }, "WatchdogThread");
+        thread.start();
+        thread.join(5000);
+        assertFalse(thread.isAlive(), "Thread was not interrupted");
+        assertEquals(target.threadName, "WatchdogThread");
+        assertTrue(failure[0] instanceof OperationTimeoutException);
+        waitForNoOverdue();
+    }
+
+    @Test
+    public void testPassException() throws Exception {
+        for (boolean watchdog : new boolean[] { false, true }) {
+            Operation proxy = createProxy(new SleepingOperation(), 1000, watchdog);
+            try {
+                proxy.run(-1);
+                fail("expected exception");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    private static void waitForNoOverdue() throws InterruptedException {
+        for (int i = 0; i < 100 && MethodTimeoutProxy.getOverdueCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(MethodTimeoutProxy.getOverdueCount(), 0);
+    }
+
+    private static Operation createProxy(Operation target, long timeout, boolean watchdog) {
+        return (Operation) Proxy.newProxyInstance(Operation.class.getClassLoader(),
+                new Class<?>[] { Operation.class },
+                new MethodTimeoutProxy(target, timeout, watchdog));
+    }
+}
@@ -38,6 +38,7 @@ import org.identityconnectors.framework.api.ConnectorInfo;
 import org.identityconnectors.framework.api.ConnectorInfoManager;
 import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
 import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoManagerImpl;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
 import org.identityconnectors.framework.server.ConnectorServer;
@@ -104,6 +105,26 @@ public class RemoteConnectorInfoManagerClearTests extends ConnectorInfoManagerTe
         Assert.assertEquals(mgr.getConnectorKeys().size(), 4);
     }
 
+    @Test
+    public void testObjectCacheStaysLocal() throws Exception {
+        ConnectorInfo info =
+                findConnectorInfo(getConnectorInfoManager(), "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getObjectCacheConfiguration().setEnabled(true);
+        api.getObjectCacheConfiguration().setMaxObjects(10);
+        AbstractConnectorFacade facade =
+                (AbstractConnectorFacade) ConnectorFacadeFactory.getInstance().newInstance(api);
+        Assert.assertNotNull(facade.getMetrics().getObjectCacheMetrics());
+        Assert.assertEquals(facade.getAPIConfiguration().getObjectCacheConfiguration(), api
+                .getObjectCacheConfiguration());
+        // the configuration sent to the server has no cache..
+        APIConfigurationImpl sent =
+                (APIConfigurationImpl) SerializerUtil.deserializeBase64Object(facade
+                        .getConnectorFacadeKey());
+        Assert.assertFalse(sent.getObjectCacheConfiguration().isEnabled());
+    }
+
     @Test
     public void testFacadeEviction() throws Exception {
         ConnectorServer server = ConnectorServer.newInstance();
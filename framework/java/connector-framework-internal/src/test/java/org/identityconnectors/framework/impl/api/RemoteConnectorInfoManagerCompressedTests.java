@@ -0,0 +1,116 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.List;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.impl.api.remote.CompressionStatistics;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RemoteConnectorInfoManagerCompressedTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    final int PORT = 8765;
+
+    private RemoteFrameworkConnectionInfo getConnectionInfo() {
+        return new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                .toCharArray()), false, null, 0, null, true, true);
+    }
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerCompressedTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.start();
+            }
+        }
+        return ConnectorInfoManagerFactory.getInstance().getRemoteManager(getConnectionInfo());
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerCompressedTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test
+    public void testCompressedSearch() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+
+        CompressionStatistics statistics = CompressionStatistics.getInstance();
+        long read = statistics.getUncompressedBytesRead();
+        long written = statistics.getUncompressedBytesWritten();
+        final int[] count = new int[1];
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                Assert.assertEquals(obj.getUid().getUidValue(), String.valueOf(count[0]++));
+                return true;
+            }
+        }, null);
+        Assert.assertEquals(count[0], 1000);
+        // both ends of the connection are in this JVM
+        Assert.assertTrue(statistics.getUncompressedBytesRead() > read);
+        Assert.assertTrue(statistics.getUncompressedBytesWritten() > written);
+        Assert.assertTrue(statistics.getCompressionRatio() > 1);
+    }
+}
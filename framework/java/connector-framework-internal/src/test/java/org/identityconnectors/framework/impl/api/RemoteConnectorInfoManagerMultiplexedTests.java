@@ -0,0 +1,236 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.RetryableException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectionPoolManager;
+import org.identityconnectors.framework.impl.api.remote.RemoteMultiplexedConnection;
+import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RemoteConnectorInfoManagerMultiplexedTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    final int PORT = 8764;
+
+    private RemoteFrameworkConnectionInfo getConnectionInfo() {
+        return new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                .toCharArray()), false, null, 0, null, true);
+    }
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerMultiplexedTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.start();
+            }
+        }
+        return ConnectorInfoManagerFactory.getInstance().getRemoteManager(getConnectionInfo());
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerMultiplexedTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test
+    public void testInterleavedSearches() throws Exception {
+        ConnectorInfoManager manager = getConnectorInfoManager();
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        api.setProducerBufferSize(0);
+        // several pauses per search
+        api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+        final ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        facade.schema();
+
+        RemoteMultiplexedConnection connection =
+                RemoteConnectionPoolManager.getMultiplexedConnection(getConnectionInfo());
+        Assert.assertNotNull(connection);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> searches = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 4; i++) {
+                searches.add(executor.submit(new Callable<List<String>>() {
+                    public List<String> call() throws Exception {
+                        final List<String> uids = new ArrayList<String>();
+                        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                            public boolean handle(ConnectorObject obj) {
+                                uids.add(obj.getUid().getUidValue());
+                                return true;
+                            }
+                        }, null);
+                        return uids;
+                    }
+                }));
+            }
+            for (Future<List<String>> search : searches) {
+                List<String> uids = search.get();
+                Assert.assertEquals(uids.size(), 1000);
+                for (int i = 0; i < uids.size(); i++) {
+                    Assert.assertEquals(uids.get(i), String.valueOf(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // all the searches shared the connection
+        Assert.assertSame(RemoteConnectionPoolManager.getMultiplexedConnection(getConnectionInfo()),
+                connection);
+        Assert.assertTrue(connection.isAlive());
+    }
+
+    @Test
+    public void testBusyServer() throws Exception {
+        final int busyPort = 8766;
+        ConnectorServer server = ConnectorServer.newInstance();
+        server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+        server.setBundleURLs(getTestBundles());
+        server.setPort(busyPort);
+        server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+        server.setMinWorkers(1);
+        server.setMaxWorkers(1);
+        server.start();
+        RemoteFrameworkConnectionInfo connectionInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", busyPort, new GuardedString(
+                        "changeit".toCharArray()), false, null, 0, null, true);
+        // one worker, one request in the pool queue and 64 pending requests
+        final int waitingCount = 1 + 64;
+        ExecutorService executor = Executors.newFixedThreadPool(waitingCount + 2);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            ConnectorInfoManager manager =
+                    ConnectorInfoManagerFactory.getInstance().getRemoteManager(connectionInfo);
+            ConnectorInfo info =
+                    findConnectorInfo(manager, "1.0.0.0",
+                            "org.identityconnectors.testconnector.TstConnector");
+            APIConfiguration api = info.createDefaultAPIConfiguration();
+            api.setProducerBufferSize(0);
+            // more than the initial credit, the blocked search keeps the worker
+            api.getConfigurationProperties().setPropertyValue("numResults", 1000);
+            final ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+            Callable<Integer> search = new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    final int[] count = new int[1];
+                    facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+                        public boolean handle(ConnectorObject obj) {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                return false;
+                            }
+                            count[0]++;
+                            return true;
+                        }
+                    }, null);
+                    return count[0];
+                }
+            };
+            Future<Integer> running = executor.submit(search);
+            Assert.assertTrue(started.await(30, TimeUnit.SECONDS));
+            // all of them wait for the worker but the last one
+            List<Future<Integer>> waiting = new ArrayList<Future<Integer>>();
+            for (int i = 0; i <= waitingCount; i++) {
+                waiting.add(executor.submit(search));
+            }
+            Future<Integer> rejected = null;
+            for (int i = 0; i < 300 && null == rejected; i++) {
+                for (Future<Integer> future : waiting) {
+                    if (future.isDone()) {
+                        rejected = future;
+                    }
+                }
+                Thread.sleep(100);
+            }
+            Assert.assertNotNull(rejected);
+            try {
+                rejected.get();
+                Assert.fail("The busy server accepted the request");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(((RemoteWrappedException) e.getCause())
+                        .is(RetryableException.class), e.getCause().toString());
+            }
+            waiting.remove(rejected);
+            release.countDown();
+            Assert.assertEquals(running.get().intValue(), 1000);
+            for (Future<Integer> future : waiting) {
+                Assert.assertEquals(future.get().intValue(), 1000);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            RemoteConnectionPoolManager.dispose(connectionInfo);
+            server.stop();
+        }
+    }
+}
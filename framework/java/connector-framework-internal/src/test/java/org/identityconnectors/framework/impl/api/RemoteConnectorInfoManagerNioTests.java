@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.identityconnectors.framework.server.impl.ConnectionProcessor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RemoteConnectorInfoManagerNioTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    final int PORT = 8763;
+
+    final int MAX_WORKERS = 2;
+
+    private RemoteFrameworkConnectionInfo getConnectionInfo(int maxObjects) {
+        ObjectPoolConfiguration poolConfiguration = new ObjectPoolConfiguration();
+        poolConfiguration.setMaxObjects(maxObjects);
+        poolConfiguration.setMaxIdle(maxObjects);
+        poolConfiguration.setMinIdle(0);
+        return new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                .toCharArray()), false, null, 0, poolConfiguration);
+    }
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerNioTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setUseNIO(true);
+                _server.setMaxWorkers(MAX_WORKERS);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.start();
+            }
+        }
+        return ConnectorInfoManagerFactory.getInstance().getRemoteManager(getConnectionInfo(4));
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerNioTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test
+    public void testIdleConnectionsDoNotHoldWorkers() throws Exception {
+        getConnectorInfoManager();
+        // every pool keeps its connection open after the call
+        for (int i = 1; i <= MAX_WORKERS * 2; i++) {
+            ConnectorInfoManager manager =
+                    ConnectorInfoManagerFactory.getInstance().getRemoteManager(
+                            getConnectionInfo(i));
+            ConnectorInfo info =
+                    findConnectorInfo(manager, "1.0.0.0",
+                            "org.identityconnectors.testconnector.TstConnector");
+            ConnectorFacade facade =
+                    ConnectorFacadeFactory.getInstance().newInstance(
+                            info.createDefaultAPIConfiguration());
+            Assert.assertNotNull(facade.schema());
+        }
+    }
+
+    @Test
+    public void testUnauthenticatedRequestSize() throws Exception {
+        getConnectorInfoManager();
+        Socket socket = new Socket("127.0.0.1", PORT);
+        try {
+            socket.setSoTimeout(30000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(BinaryObjectEncoder.OBJECT_MAGIC);
+            out.writeInt(BinaryObjectEncoder.ENCODING_VERSION);
+            // a constant which does not end before the server gives up
+            out.writeInt(1);
+            out.writeInt(64 * 1024 * 1024);
+            InputStream in = socket.getInputStream();
+            try {
+                byte[] chunk = new byte[8192];
+                for (int i = 0; i < 1024; i++) {
+                    out.write(chunk);
+                }
+                Assert.fail("The server kept buffering the request");
+            } catch (IOException e) {
+                // the server closed the connection
+            }
+            try {
+                Assert.assertEquals(in.read(), -1);
+            } catch (IOException e) {
+                // reset by the server
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testStreamWithinCredit() throws Exception {
+        ConnectorInfo info =
+                findConnectorInfo(getConnectorInfoManager(), "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        APIConfiguration api = info.createDefaultAPIConfiguration();
+        // several times the initial credit of the client
+        api.getConfigurationProperties().setPropertyValue("numResults", 500);
+        ConnectorFacade facade = ConnectorFacadeFactory.getInstance().newInstance(api);
+        final AtomicInteger count = new AtomicInteger();
+        long pauses = ConnectionProcessor.getPauseCount();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject obj) {
+                count.incrementAndGet();
+                return true;
+            }
+        }, new OperationOptionsBuilder().setOption("delay", 1).build());
+        Assert.assertEquals(count.get(), 500);
+        // a slow connector leaves the credit time to arrive, the server picks
+        // it up between the results instead of pausing for it
+        Assert.assertEquals(ConnectionProcessor.getPauseCount(), pauses);
+    }
+}
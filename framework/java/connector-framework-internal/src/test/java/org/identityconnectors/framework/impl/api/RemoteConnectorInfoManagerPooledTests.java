@@ -0,0 +1,125 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.List;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.api.remote.RemoteConnectionPoolManager;
+import org.identityconnectors.framework.impl.api.remote.RemoteFrameworkConnection;
+import org.identityconnectors.framework.server.ConnectorServer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class RemoteConnectorInfoManagerPooledTests extends ConnectorInfoManagerTestBase {
+
+    private static ConnectorServer _server;
+
+    final int PORT = 8762;
+
+    private RemoteFrameworkConnectionInfo getConnectionInfo(int maxObjects) {
+        ObjectPoolConfiguration poolConfiguration = new ObjectPoolConfiguration();
+        poolConfiguration.setMaxObjects(maxObjects);
+        poolConfiguration.setMaxIdle(maxObjects);
+        poolConfiguration.setMinIdle(0);
+        return new RemoteFrameworkConnectionInfo("127.0.0.1", PORT, new GuardedString("changeit"
+                .toCharArray()), false, null, 0, poolConfiguration);
+    }
+
+    @Override
+    protected ConnectorInfoManager getConnectorInfoManager() throws Exception {
+        List<URL> urls = getTestBundles();
+
+        synchronized (RemoteConnectorInfoManagerPooledTests.class) {
+            if (_server == null) {
+                _server = ConnectorServer.newInstance();
+                _server.setKeyHash(SecurityUtil.computeBase64SHA1Hash("changeit".toCharArray()));
+                _server.setBundleURLs(urls);
+                _server.setPort(PORT);
+                _server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+                _server.start();
+            }
+        }
+        return ConnectorInfoManagerFactory.getInstance().getRemoteManager(getConnectionInfo(4));
+    }
+
+    @Override
+    protected synchronized void shutdownConnnectorInfoManager() {
+        synchronized (RemoteConnectorInfoManagerPooledTests.class) {
+            if (_server != null) {
+                _server.stop();
+                _server = null;
+            }
+        }
+        // These are initialized by the connector server.
+        ConnectorFacadeFactory.getInstance().dispose();
+        ConnectorInfoManagerFactory.getInstance().clearLocalCache();
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        getConnectorInfoManager();
+        // use a dedicated pool
+        RemoteFrameworkConnectionInfo connectionInfo = getConnectionInfo(2);
+        ConnectorInfoManager manager =
+                ConnectorInfoManagerFactory.getInstance().getRemoteManager(connectionInfo);
+        ConnectorInfo info =
+                findConnectorInfo(manager, "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector");
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        info.createDefaultAPIConfiguration());
+
+        ObjectPool<RemoteFrameworkConnection> pool =
+                RemoteConnectionPoolManager.getPool(connectionInfo);
+        Assert.assertNotNull(pool);
+        for (int i = 0; i < 10; i++) {
+            facade.schema();
+        }
+        // the sequential calls share one connection
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+
+        // a broken connection is replaced on the next borrow
+        ObjectPoolEntry<RemoteFrameworkConnection> entry = pool.borrowObject();
+        entry.getPooledObject().close();
+        entry.close();
+        facade.schema();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.ConnectorInfo;
+import org.identityconnectors.framework.api.ConnectorInfoManager;
+import org.identityconnectors.framework.api.ConnectorInfoManagerFactory;
+import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.RemoteFrameworkConnectionInfo;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.impl.metrics.LatencyHistogram;
+import org.identityconnectors.framework.server.ConnectorServer;
+
+/**
+ * Loopback load test of the remote framework.
+ * <p/>
+ * Starts a {@link ConnectorServer} on localhost with the test bundles and
+ * drives the test connector through a remote facade from several threads.
+ * The client talks to the server through a relay which counts the bytes on
+ * the wire. Run it from the command line with the test classpath:
+ *
+ * <pre>
+ * java org.identityconnectors.framework.impl.api.RemoteLoadHarness \
+ *     -threads 8 -operations 1000 -results 100 -attributes 20 -valueSize 64 \
+ *     [-searchOnly|-createOnly] [-pooled] [-multiplexed] [-compressed] [-nio]
+ * </pre>
+ *
+ * Each operation is a search returning {@code results} objects, or a create
+ * sending {@code attributes} attributes of {@code valueSize} characters.
+ */
+public class RemoteLoadHarness {
+
+    private static final String KEY = "changeit";
+
+    /**
+     * The parameters of a run.
+     */
+    public static class Options {
+        int threads = 4;
+        int operations = 100;
+        int results = 100;
+        int attributes = 20;
+        int valueSize = 64;
+        boolean search = true;
+        boolean create = true;
+        boolean pooled = false;
+        boolean multiplexed = false;
+        boolean compressed = false;
+        boolean nio = false;
+
+        public static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                if ("-threads".equals(arg)) {
+                    options.threads = Integer.parseInt(args[++i]);
+                } else if ("-operations".equals(arg)) {
+                    options.operations = Integer.parseInt(args[++i]);
+                } else if ("-results".equals(arg)) {
+                    options.results = Integer.parseInt(args[++i]);
+                } else if ("-attributes".equals(arg)) {
+                    options.attributes = Integer.parseInt(args[++i]);
+                } else if ("-valueSize".equals(arg)) {
+                    options.valueSize = Integer.parseInt(args[++i]);
+                } else if ("-searchOnly".equals(arg)) {
+                    options.create = false;
+                } else if ("-createOnly".equals(arg)) {
+                    options.search = false;
+                } else if ("-pooled".equals(arg)) {
+                    options.pooled = true;
+                } else if ("-multiplexed".equals(arg)) {
+                    options.multiplexed = true;
+                } else if ("-compressed".equals(arg)) {
+                    options.multiplexed = true;
+                    options.compressed = true;
+                } else if ("-nio".equals(arg)) {
+                    options.nio = true;
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public static class Report {
+        long elapsedNanos;
+        long operations;
+        long objects;
+        long errors;
+        long bytesSent;
+        long bytesReceived;
+        LatencyHistogram latency;
+        Throwable firstFailure;
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getObjects() {
+            return objects;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns the first failed operation, or null if none failed.
+         */
+        public Throwable getFirstFailure() {
+            return firstFailure;
+        }
+
+        public double getOperationsPerSecond() {
+            return operations * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        public double getObjectsPerSecond() {
+            return objects * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("operations=%d errors=%d objects=%d elapsed=%.1fms%n"
+                    + "ops/sec=%.1f objects/sec=%.1f%n"
+                    + "latency p50=%.3fms p99=%.3fms max=%.3fms%n"
+                    + "bytes sent=%d received=%d (%.1f per operation)", operations, errors,
+                    objects, elapsedNanos / 1e6, getOperationsPerSecond(),
+                    getObjectsPerSecond(), latency.getPercentile(0.5) / 1e6, latency
+                            .getPercentile(0.99) / 1e6, latency.getMax() / 1e6, bytesSent,
+                    bytesReceived, operations > 0 ? (bytesSent + bytesReceived)
+                            / (double) operations : 0.0);
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Report report = new RemoteLoadHarness(Options.parse(args)).run();
+        System.out.println(report);
+        if (null != report.getFirstFailure()) {
+            System.err.println("First failure of " + report.getErrors() + ": "
+                    + report.getFirstFailure());
+        }
+        ConnectorFacadeFactory.getInstance().dispose();
+    }
+
+    private final Options options;
+
+    public RemoteLoadHarness(final Options options) {
+        this.options = options;
+    }
+
+    public Report run() throws Exception {
+        final ConnectorServer server = ConnectorServer.newInstance();
+        server.setKeyHash(SecurityUtil.computeBase64SHA1Hash(KEY.toCharArray()));
+        server.setBundleURLs(getTestBundles());
+        server.setPort(getFreePort());
+        server.setUseNIO(options.nio);
+        server.setIfAddress(InetAddress.getByName("127.0.0.1"));
+        server.start();
+        final CountingRelay relay = new CountingRelay(server.getPort());
+        try {
+            final ConnectorFacade facade = newFacade(relay.getPort());
+            // one round trip to set up the connection and the remote facade
+            facade.schema();
+            relay.reset();
+            return drive(facade, relay);
+        } finally {
+            relay.close();
+            server.stop();
+        }
+    }
+
+    private ConnectorFacade newFacade(final int port) {
+        ObjectPoolConfiguration poolConfiguration = null;
+        if (options.pooled) {
+            poolConfiguration = new ObjectPoolConfiguration();
+            poolConfiguration.setMaxObjects(options.threads);
+            poolConfiguration.setMaxIdle(options.threads);
+        }
+        final RemoteFrameworkConnectionInfo connectionInfo =
+                new RemoteFrameworkConnectionInfo("127.0.0.1", port, new GuardedString(KEY
+                        .toCharArray()), false, null, 0, poolConfiguration,
+                        options.multiplexed, options.compressed);
+        final ConnectorInfoManager manager =
+                ConnectorInfoManagerFactory.getInstance().getRemoteManager(connectionInfo);
+        final ConnectorInfo info =
+                manager.findConnectorInfo(new ConnectorKey("testbundlev1", "1.0.0.0",
+                        "org.identityconnectors.testconnector.TstConnector"));
+        if (null == info) {
+            throw new ConnectorException("TstConnector 1.0.0.0 is not deployed");
+        }
+        final APIConfiguration config = info.createDefaultAPIConfiguration();
+        config.getConfigurationProperties().setPropertyValue("numResults", options.results);
+        return ConnectorFacadeFactory.getInstance().newInstance(config);
+    }
+
+    private Report drive(final ConnectorFacade facade, final CountingRelay relay)
+            throws InterruptedException {
+        final Set<Attribute> createAttributes = newCreateAttributes();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong objects = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(options.threads);
+
+        final List<Thread> workers = new ArrayList<Thread>(options.threads);
+        for (int t = 0; t < options.threads; t++) {
+            final int threadIndex = t;
+            final Thread worker = new Thread("RemoteLoadHarness-" + t) {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < options.operations; i++) {
+                            final boolean search =
+                                    options.search && (!options.create || (i + threadIndex) % 2 == 0);
+                            final long begin = System.nanoTime();
+                            try {
+                                if (search) {
+                                    objects.addAndGet(search(facade));
+                                } else {
+                                    facade.create(ObjectClass.ACCOUNT, createAttributes, null);
+                                    objects.incrementAndGet();
+                                }
+                            } catch (RuntimeException e) {
+                                errors.incrementAndGet();
+                                firstFailure.compareAndSet(null, e);
+                            }
+                            latency.record(System.nanoTime() - begin);
+                            operations.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        final Report report = new Report();
+        report.elapsedNanos = System.nanoTime() - begin;
+        report.operations = operations.get();
+        report.objects = objects.get();
+        report.errors = errors.get();
+        report.bytesSent = relay.getBytesSent();
+        report.bytesReceived = relay.getBytesReceived();
+        report.latency = latency.snapshot();
+        report.firstFailure = firstFailure.get();
+        return report;
+    }
+
+    private static int search(final ConnectorFacade facade) {
+        final AtomicInteger count = new AtomicInteger();
+        facade.search(ObjectClass.ACCOUNT, null, new ResultsHandler() {
+            public boolean handle(ConnectorObject connectorObject) {
+                count.incrementAndGet();
+                return true;
+            }
+        }, null);
+        return count.get();
+    }
+
+    private Set<Attribute> newCreateAttributes() {
+        final StringBuilder value = new StringBuilder(options.valueSize);
+        for (int i = 0; i < options.valueSize; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        final Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(new Name("harness"));
+        for (int i = 0; i < options.attributes; i++) {
+            attributes.add(AttributeBuilder.build("attribute" + i, value.toString()));
+        }
+        return attributes;
+    }
+
+    private static List<URL> getTestBundles() {
+        final List<URL> urls = new ArrayList<URL>(2);
+        for (String bundle : new String[] { "/testbundlev1.jar", "/testbundlev2.jar" }) {
+            final URL url = RemoteLoadHarness.class.getResource(bundle);
+            if (null == url) {
+                throw new ConnectorException(bundle + " is not on the classpath");
+            }
+            urls.add(url);
+        }
+        return urls;
+    }
+
+    private static int getFreePort() throws IOException {
+        final ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Forwards every accepted connection to the server and counts the bytes
+     * in each direction.
+     */
+    static final class CountingRelay implements Runnable {
+
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+        private final ServerSocket serverSocket;
+        private final int targetPort;
+
+        CountingRelay(final int targetPort) throws IOException {
+            this.targetPort = targetPort;
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            final Thread acceptor = new Thread(this, "CountingRelay");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        void reset() {
+            bytesSent.set(0L);
+            bytesReceived.set(0L);
+        }
+
+        public void run() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    final Socket client = serverSocket.accept();
+                    final Socket target = new Socket(InetAddress.getByName("127.0.0.1"), targetPort);
+                    client.setTcpNoDelay(true);
+                    target.setTcpNoDelay(true);
+                    sockets.add(client);
+                    sockets.add(target);
+                    pump(client, target, bytesSent);
+                    pump(target, client, bytesReceived);
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }
+
+        private void pump(final Socket from, final Socket to, final AtomicLong counter) {
+            final Thread pump = new Thread("CountingRelay-pump") {
+                public void run() {
+                    final byte[] buffer = new byte[8192];
+                    try {
+                        final InputStream in = from.getInputStream();
+                        final OutputStream out = to.getOutputStream();
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            out.write(buffer, 0, read);
+                            out.flush();
+                            counter.addAndGet(read);
+                        }
+                        to.shutdownOutput();
+                    } catch (IOException e) {
+                        closeQuietly(from);
+                        closeQuietly(to);
+                    }
+                }
+            };
+            pump.setDaemon(true);
+            pump.start();
+        }
+
+        void close() {
+            closeQuietly(serverSocket);
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+        }
+
+        private static void closeQuietly(final java.io.Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
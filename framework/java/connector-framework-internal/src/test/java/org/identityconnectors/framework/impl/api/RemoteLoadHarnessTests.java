@@ -0,0 +1,69 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class RemoteLoadHarnessTests {
+
+    @AfterClass
+    public void tearDown() {
+        ConnectorFacadeFactory.getInstance().dispose();
+    }
+
+    @Test
+    public void testClassicConnections() throws Exception {
+        RemoteLoadHarness.Report report =
+                new RemoteLoadHarness(RemoteLoadHarness.Options.parse(new String[] {
+                    "-threads", "2", "-operations", "10", "-results", "5", "-pooled" })).run();
+        assertReport(report, 20, 10 * 5 + 10);
+    }
+
+    @Test
+    public void testMultiplexedConnection() throws Exception {
+        RemoteLoadHarness.Report report =
+                new RemoteLoadHarness(RemoteLoadHarness.Options.parse(new String[] {
+                    "-threads", "4", "-operations", "5", "-results", "20", "-searchOnly",
+                    "-multiplexed", "-nio" })).run();
+        assertReport(report, 20, 20 * 20);
+    }
+
+    private static void assertReport(RemoteLoadHarness.Report report, long operations,
+            long objects) {
+        assertEquals(report.getErrors(), 0L, report + "\nfirst failure: "
+                + report.getFirstFailure());
+        assertEquals(report.getOperations(), operations);
+        assertEquals(report.getObjects(), objects);
+        assertEquals(report.getLatency().getCount(), operations);
+        assertTrue(report.getBytesSent() > 0L);
+        assertTrue(report.getBytesReceived() > report.getBytesSent());
+    }
+}
@@ -22,6 +22,10 @@
  */
 package org.identityconnectors.framework.impl.api.local;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.identityconnectors.framework.common.serializer.SerializerUtil;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -54,7 +58,8 @@ public class ObjectPoolTests {
 
     private class MyTestConnectionFactory implements ObjectPoolHandler<MyTestConnection> {
         private boolean _createBadConnection = false;
-        private int _totalCreatedConnections = 0;
+        private final AtomicInteger _totalCreatedConnections = new AtomicInteger();
+        private int _totalTestedConnections = 0;
 
         public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
             ObjectPoolConfiguration configuration = (ObjectPoolConfiguration) SerializerUtil.cloneObject(original);
@@ -64,7 +69,7 @@ public class ObjectPoolTests {
         }
 
         public MyTestConnection makeObject() {
-            _totalCreatedConnections++;
+            _totalCreatedConnections.incrementAndGet();
             MyTestConnection rv = new MyTestConnection();
             if (_createBadConnection) {
                 rv.dispose();
@@ -73,6 +78,7 @@ public class ObjectPoolTests {
         }
         @Test
         public void testObject(MyTestConnection object) {
+            _totalTestedConnections++;
             object.test();
         }
 
@@ -81,7 +87,11 @@ public class ObjectPoolTests {
         }
 
         public int getTotalCreatedConnections() {
-            return _totalCreatedConnections;
+            return _totalCreatedConnections.get();
+        }
+
+        public int getTotalTestedConnections() {
+            return _totalTestedConnections;
         }
 
 
@@ -195,6 +205,13 @@ public class ObjectPoolTests {
         Assert.assertEquals(2, fact.getTotalCreatedConnections());
         conn.close();
         Assert.assertEquals(2, fact.getTotalCreatedConnections());
+
+        Statistics stats = pool.getStatistics();
+        Assert.assertEquals(stats.getCreatedCount(), 2);
+        Assert.assertEquals(stats.getDisposedCount(), 1);
+        Assert.assertEquals(stats.getValidationFailureCount(), 1);
+        Assert.assertEquals(stats.getBorrowWaitTime().getCount(), 3);
+        Assert.assertEquals(stats.getMaxObjects(), MAX_CONNECTIONS);
     }
 
     @Test
@@ -232,6 +249,174 @@ public class ObjectPoolTests {
         Assert.assertEquals(true, conn4.getPooledObject().isGood());
     }
 
+    @Test
+    public void testLifo() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(2);
+        config.setMaxIdle(2);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        Assert.assertSame(conn3, conn2);
+        conn3.close();
+        pool.shutdown();
+
+        config.setLifo(false);
+        pool = new ObjectPool<MyTestConnection>(fact,config);
+        conn1 = pool.borrowObject();
+        conn2 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        conn3 = pool.borrowObject();
+        Assert.assertSame(conn3, conn1);
+        conn3.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testTestOnBorrowIdleTime() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setTestOnBorrowIdleTimeMillis(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        //new objects are always tested
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalTestedConnections(), 1);
+        conn.close();
+        //recently returned objects are not
+        conn = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalTestedConnections(), 1);
+        conn.close();
+        pool.shutdown();
+
+        config.setTestOnBorrowIdleTimeMillis(0);
+        pool = new ObjectPool<MyTestConnection>(fact,config);
+        conn = pool.borrowObject();
+        conn.close();
+        conn = pool.borrowObject();
+        Assert.assertEquals(fact.getTotalTestedConnections(), 3);
+        conn.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setTestOnBorrowIdleTimeMillis(60*1000);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> conn = pool.borrowObject();
+        MyTestConnection broken = conn.getPooledObject();
+        //a broken object is disposed right away, not handed out untested
+        conn.invalidate();
+        Assert.assertEquals(pool.getStatistics().getDisposedCount(), 1);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 0);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 0);
+        conn = pool.borrowObject();
+        Assert.assertNotSame(conn.getPooledObject(), broken);
+        conn.close();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBackgroundEviction() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(3);
+        config.setMaxIdle(3);
+        config.setMinIdle(1);
+        config.setMinEvictableIdleTimeMillis(200);
+        config.setTimeBetweenEvictionRunsMillis(100);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 3);
+
+        //evicted without borrowing from the pool, the most recently used one is kept
+        Thread.sleep(1000);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        Assert.assertEquals(false, conn1.getPooledObject().isGood());
+        Assert.assertEquals(false, conn2.getPooledObject().isGood());
+        Assert.assertEquals(true, conn3.getPooledObject().isGood());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(4);
+        config.setMaxIdle(3);
+        config.setMinIdle(2);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory();
+
+        ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        pool.warmUp();
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 2);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+
+        //the borrowed objects are replaced in the background
+        ObjectPoolEntry<MyTestConnection> conn1 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn2 = pool.borrowObject();
+        ObjectPoolEntry<MyTestConnection> conn3 = pool.borrowObject();
+        for (int i = 0; i < 50 && pool.getStatistics().getNumIdle() < 1; i++) {
+            Thread.sleep(100);
+        }
+        //up to MaxObjects
+        Assert.assertEquals(fact.getTotalCreatedConnections(), 4);
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 1);
+        Assert.assertEquals(pool.getStatistics().getNumActive(), 3);
+        conn1.close();
+        conn2.close();
+        conn3.close();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCreateOutsideOfLock() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        ObjectPoolConfiguration config = new ObjectPoolConfiguration();
+        config.setMaxObjects(2);
+        config.setMaxIdle(2);
+        MyTestConnectionFactory fact = new MyTestConnectionFactory() {
+            @Override
+            public MyTestConnection makeObject() {
+                started.countDown();
+                try {
+                    // both borrowers have to be creating at the same time
+                    if (!started.await(10, TimeUnit.SECONDS)) {
+                        throw new ConnectorException("Objects are not created in parallel");
+                    }
+                } catch (InterruptedException e) {
+                    throw ConnectorException.wrap(e);
+                }
+                return super.makeObject();
+            }
+        };
+
+        final ObjectPool<MyTestConnection> pool = new ObjectPool<MyTestConnection>(fact,config);
+        MyTestThread thread1 = new MyTestThread(pool, 1);
+        MyTestThread thread2 = new MyTestThread(pool, 1);
+        thread1.start();
+        thread2.start();
+        thread1.shutdown();
+        thread2.shutdown();
+        Assert.assertEquals(pool.getStatistics().getNumIdle(), 2);
+        pool.shutdown();
+    }
+
     @Test
     public void testCreateBadConnection()
         throws Exception
@@ -0,0 +1,98 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.annotations.Test;
+
+public class DuplicateFilteringResultsHandlerTests {
+
+    @Test
+    public void testFingerprintSet() {
+        UidFingerprintSet set = new UidFingerprintSet();
+        // grows past the initial capacity several times
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(set.add("uid=" + i + ",ou=people"), "uid=" + i);
+        }
+        assertEquals(set.size(), 100000);
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(set.add("uid=" + i + ",ou=people"), "uid=" + i);
+        }
+        assertTrue(set.add(""));
+        assertFalse(set.add(""));
+        // case and order matter
+        assertTrue(set.add("UID=1,OU=PEOPLE"));
+        assertTrue(set.add("ab"));
+        assertTrue(set.add("ba"));
+        assertEquals(set.size(), 100004);
+    }
+
+    @Test
+    public void testDropsDuplicates() {
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        DuplicateFilteringResultsHandler handler =
+                new DuplicateFilteringResultsHandler(new SearchResultsHandler() {
+                    public void handleResult(SearchResult result) {
+                    }
+
+                    public boolean handle(ConnectorObject connectorObject) {
+                        results.add(connectorObject);
+                        return results.size() < 20;
+                    }
+                });
+        // two overlapping queries
+        for (int i = 0; i < 10; i++) {
+            assertTrue(handler.handle(newObject(i)));
+        }
+        for (int i = 5; i < 20; i++) {
+            // the duplicates do not stop the search
+            assertEquals(handler.handle(newObject(i)), i < 19);
+        }
+        assertEquals(results.size(), 20);
+        assertEquals(handler.getDuplicateCount(), 5L);
+        assertFalse(handler.isStillHandling());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).getUid().getUidValue(), Integer.toString(i));
+        }
+    }
+
+    private static ConnectorObject newObject(int i) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid(Integer.toString(i));
+        builder.setName("user" + i);
+        return builder.build();
+    }
+}
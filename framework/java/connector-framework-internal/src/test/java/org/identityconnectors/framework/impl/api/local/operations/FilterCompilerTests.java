@@ -0,0 +1,273 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.and;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.contains;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.containsAllValues;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.endsWith;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.equalTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.greaterThan;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.greaterThanOrEqualTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.lessThan;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.lessThanOrEqualTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.not;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.or;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.startsWith;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+import org.testng.annotations.Test;
+
+public class FilterCompilerTests {
+
+    private static List<ConnectorObject> newObjects() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 50; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(Integer.toString(i));
+            builder.setName("user" + i);
+            builder.addAttribute("count", i);
+            builder.addAttribute("mail", "user" + i + (i % 3 == 0 ? "@example.com" : "@example.org"));
+            if (i % 2 == 0) {
+                builder.addAttribute("group", "even", "all");
+            } else {
+                builder.addAttribute("group", "odd", "all");
+            }
+            if (i % 5 != 0) {
+                builder.addAttribute("Optional", "present" + (i % 4));
+            }
+            if (i % 7 == 0) {
+                builder.addAttribute("multi", i, i + 1);
+            }
+            objects.add(builder.build());
+        }
+        return objects;
+    }
+
+    private static List<Filter> newFilters() {
+        List<Filter> filters = new ArrayList<Filter>();
+        filters.add(equalTo(new Uid("7")));
+        filters.add(equalTo(AttributeBuilder.build(Uid.NAME, "7")));
+        filters.add(equalTo(new Name("user3")));
+        filters.add(equalTo(AttributeBuilder.build("COUNT", 3)));
+        filters.add(equalTo(AttributeBuilder.build("group", "even", "all")));
+        filters.add(equalTo(AttributeBuilder.build("group", "all", "even")));
+        filters.add(containsAllValues(AttributeBuilder.build("group", "all", "odd")));
+        filters.add(startsWith(AttributeBuilder.build("optional", "present1")));
+        filters.add(endsWith(AttributeBuilder.build("mail", ".com")));
+        filters.add(contains(AttributeBuilder.build("mail", "r1")));
+        filters.add(greaterThan(AttributeBuilder.build("count", 40)));
+        filters.add(greaterThanOrEqualTo(AttributeBuilder.build("count", 40)));
+        filters.add(lessThan(AttributeBuilder.build("multi", 10)));
+        filters.add(lessThanOrEqualTo(AttributeBuilder.build("optional", "present2")));
+        filters.add(lessThan(AttributeBuilder.build("missing", 10)));
+        filters.add(greaterThan(AttributeBuilder.build("missing", 10)));
+        int size = filters.size();
+        for (int i = 0; i < size; i++) {
+            Filter left = filters.get(i);
+            Filter right = filters.get((i * 7 + 3) % size);
+            Filter third = filters.get((i * 5 + 1) % size);
+            filters.add(and(left, right));
+            filters.add(or(left, right));
+            filters.add(not(left));
+            filters.add(and(or(left, not(right)), or(third, right)));
+            filters.add(or(and(left, third), and(not(third), right), left));
+            filters.add(new AndFilter(new ArrayList<Filter>(filters.subList(i, i + 3))));
+        }
+        // several tests of the same attribute
+        filters.add(and(greaterThan(AttributeBuilder.build("count", 10)), lessThan(
+                AttributeBuilder.build("Count", 20)), not(equalTo(AttributeBuilder.build(
+                "count", 15)))));
+        filters.add(or(lessThan(AttributeBuilder.build("count", 10)), greaterThan(
+                AttributeBuilder.build("count", 45)), startsWith(AttributeBuilder.build("mail",
+                "user2")), endsWith(AttributeBuilder.build("MAIL", "9@example.org"))));
+        return filters;
+    }
+
+    @Test
+    public void testSameResultAsFilter() {
+        List<ConnectorObject> objects = newObjects();
+        for (Filter filter : newFilters()) {
+            Filter compiled = FilterCompiler.compile(filter);
+            for (ConnectorObject object : objects) {
+                assertEquals(compiled.accept(object), filter.accept(object), filter + " on "
+                        + object.getUid());
+            }
+        }
+    }
+
+    @Test
+    public void testSameExceptionAsFilter() {
+        List<Filter> filters = new ArrayList<Filter>();
+        // the count is not a string, the mail is not comparable with a number
+        filters.add(and(startsWith(AttributeBuilder.build("count", "1")),
+                equalTo(new Name("user3"))));
+        filters.add(and(equalTo(AttributeBuilder.build("group", "even", "all")),
+                greaterThan(AttributeBuilder.build("mail", 1))));
+        filters.add(or(endsWith(AttributeBuilder.build("count", "1")), equalTo(new Uid("4"))));
+        filters.add(or(equalTo(new Uid("4")), lessThan(AttributeBuilder.build("mail", 1)),
+                equalTo(new Name("user5"))));
+        for (Filter filter : filters) {
+            Filter compiled = FilterCompiler.compile(filter);
+            for (ConnectorObject object : newObjects()) {
+                assertEquals(outcome(compiled, object), outcome(filter, object), filter
+                        + " on " + object.getUid());
+            }
+        }
+    }
+
+    private static Object outcome(Filter filter, ConnectorObject object) {
+        try {
+            return filter.accept(object);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    public void testSubclassNotCompiled() {
+        Filter filter =
+                new ContainsAllValuesFilter(AttributeBuilder.build("group", "none")) {
+                    @Override
+                    public boolean accept(ConnectorObject obj) {
+                        return true;
+                    }
+                };
+        Filter compiled = FilterCompiler.compile(filter);
+        for (ConnectorObject object : newObjects()) {
+            assertEquals(compiled.accept(object), true);
+        }
+    }
+
+    @Test
+    public void testNormalizingFilter() {
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new CaseNormalizer());
+        Filter filter =
+                new NormalizingFilter(or(startsWith(AttributeBuilder.build("mail", "USER1")),
+                        equalTo(new Name("User22"))), normalizer);
+        Filter compiled = FilterCompiler.compile(filter);
+        int accepted = 0;
+        for (ConnectorObject object : newObjects()) {
+            assertEquals(compiled.accept(object), filter.accept(object));
+            if (compiled.accept(object)) {
+                accepted++;
+            }
+        }
+        assertEquals(accepted, 12);
+    }
+
+    @Test
+    public void testVisitorSeesOriginal() {
+        Filter filter = and(equalTo(new Name("a")), equalTo(new Name("b")));
+        Filter compiled = FilterCompiler.compile(filter);
+        assertSame(FilterCompiler.compile(compiled), compiled);
+        assertEquals(compiled.toString(), filter.toString());
+        Filter visited = compiled.accept(new FilterVisitorAdapter(), null);
+        assertSame(visited, filter);
+    }
+
+    /**
+     * Returns the visited filter for the and filter.
+     */
+    private static class FilterVisitorAdapter implements FilterVisitor<Filter, Void> {
+        public Filter visitAndFilter(Void p, AndFilter filter) {
+            return filter;
+        }
+
+        public Filter visitContainsFilter(Void p, ContainsFilter filter) {
+            return null;
+        }
+
+        public Filter visitContainsAllValuesFilter(Void p, ContainsAllValuesFilter filter) {
+            return null;
+        }
+
+        public Filter visitEqualsFilter(Void p, EqualsFilter filter) {
+            return null;
+        }
+
+        public Filter visitExtendedFilter(Void p, Filter filter) {
+            return null;
+        }
+
+        public Filter visitGreaterThanFilter(Void p, GreaterThanFilter filter) {
+            return null;
+        }
+
+        public Filter visitGreaterThanOrEqualFilter(Void p, GreaterThanOrEqualFilter filter) {
+            return null;
+        }
+
+        public Filter visitLessThanFilter(Void p, LessThanFilter filter) {
+            return null;
+        }
+
+        public Filter visitLessThanOrEqualFilter(Void p, LessThanOrEqualFilter filter) {
+            return null;
+        }
+
+        public Filter visitNotFilter(Void p, NotFilter filter) {
+            return null;
+        }
+
+        public Filter visitOrFilter(Void p, OrFilter filter) {
+            return null;
+        }
+
+        public Filter visitStartsWithFilter(Void p, StartsWithFilter filter) {
+            return null;
+        }
+
+        public Filter visitEndsWithFilter(Void p, EndsWithFilter filter) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.api.local.operations;
+
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.and;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.endsWith;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.equalTo;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.greaterThan;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.or;
+import static org.identityconnectors.framework.common.objects.filter.FilterBuilder.startsWith;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
+import org.identityconnectors.framework.spi.AttributeNormalizer;
+import org.testng.annotations.Test;
+
+public class FusedResultsHandlerTests {
+
+    private static final String[] ATTRIBUTES_TO_GET = { "mail", "count" };
+
+    private static List<ConnectorObject> newObjects() {
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        for (int i = 0; i < 20; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setUid(Integer.toString(i));
+            builder.setName("user" + i);
+            builder.addAttribute("count", i);
+            builder.addAttribute("mail", "user" + i + (i % 3 == 0 ? "@example.com" : "@example.org"));
+            builder.addAttribute("group", i % 2 == 0 ? "even" : "odd");
+            builder.addAttribute("description", "Description of user" + i);
+            objects.add(builder.build());
+        }
+        return objects;
+    }
+
+    private static List<ConnectorObject> fused(Filter filter, ObjectNormalizerFacade normalizer,
+            String[] attrsToGet) {
+        Collector collector = new Collector();
+        ResultsHandler handler = new FusedResultsHandler(collector, filter, normalizer, attrsToGet, null);
+        for (ConnectorObject object : newObjects()) {
+            handler.handle(object);
+        }
+        return collector.objects;
+    }
+
+    @Test
+    public void testSameAsChainedHandlers() {
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new CaseNormalizer());
+        Filter[] filters = {
+            null,
+            endsWith(AttributeBuilder.build("mail", "@example.com")),
+            or(greaterThan(AttributeBuilder.build("count", 15)), startsWith(AttributeBuilder
+                    .build("mail", "user1"))),
+            and(equalTo(AttributeBuilder.build("count", 4)), endsWith(AttributeBuilder.build(
+                    "mail", ".org"))) };
+        for (Filter filter : filters) {
+            Filter normalizedFilter = normalizer.normalizeFilter(filter);
+            // normalize, filter and reduce one after the other
+            Collector expected = new Collector();
+            ResultsHandler chain =
+                    new NormalizingResultsHandler(new FilteredResultsHandler(
+                            new SearchImpl.AttributesToGetSearchResultsHandler(expected,
+                                    ATTRIBUTES_TO_GET), normalizedFilter), normalizer);
+            for (ConnectorObject object : newObjects()) {
+                chain.handle(object);
+            }
+            assertEquals(fused(normalizedFilter, normalizer, ATTRIBUTES_TO_GET),
+                    expected.objects, String.valueOf(filter));
+
+            expected = new Collector();
+            chain =
+                    new NormalizingResultsHandler(new FilteredResultsHandler(expected,
+                            normalizedFilter), normalizer);
+            for (ConnectorObject object : newObjects()) {
+                chain.handle(object);
+            }
+            assertEquals(fused(normalizedFilter, normalizer, null), expected.objects, String
+                    .valueOf(filter));
+        }
+    }
+
+    @Test
+    public void testFilterReadsAttributesNotReturned() {
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new CaseNormalizer());
+        List<ConnectorObject> results =
+                fused(normalizer.normalizeFilter(equalTo(AttributeBuilder.build("group", "even"))),
+                        normalizer, new String[] { "mail" });
+        assertEquals(results.size(), 10);
+        for (ConnectorObject object : results) {
+            assertEquals(object.getAttributes().size(), 3);
+            assertNull(object.getAttributeByName("group"));
+            assertEquals(object.getName().getNameValue(), object.getName().getNameValue()
+                    .toUpperCase());
+            String mail = (String) object.getAttributeByName("mail").getValue().get(0);
+            assertEquals(mail, mail.toUpperCase());
+        }
+    }
+
+    @Test
+    public void testNormalizesOnlyReadAttributes() {
+        final Set<String> normalized = CollectionUtil.newCaseInsensitiveSet();
+        ObjectNormalizerFacade normalizer =
+                new ObjectNormalizerFacade(ObjectClass.ACCOUNT, new AttributeNormalizer() {
+                    public Attribute normalizeAttribute(ObjectClass oclass, Attribute attribute) {
+                        normalized.add(attribute.getName());
+                        return attribute;
+                    }
+                });
+        fused(greaterThan(AttributeBuilder.build("count", 10)), normalizer,
+                new String[] { "mail" });
+        assertEquals(normalized, CollectionUtil.newSet("__UID__", "__NAME__", "mail", "count"));
+
+        normalized.clear();
+        fused(new FilteredResultsHandler.PassThroughFilter(), normalizer, new String[] { "mail" });
+        assertEquals(normalized, CollectionUtil.newSet("__UID__", "__NAME__", "mail"));
+
+        // the attributes of an unknown filter are not known
+        normalized.clear();
+        fused(new Filter() {
+            public boolean accept(ConnectorObject obj) {
+                return true;
+            }
+
+            public <R, P> R accept(FilterVisitor<R, P> v, P p) {
+                return v.visitExtendedFilter(p, this);
+            }
+        }, normalizer, new String[] { "mail" });
+        assertEquals(normalized.size(), 6);
+    }
+
+    @Test
+    public void testWithoutNormalizer() {
+        Filter filter = endsWith(AttributeBuilder.build("mail", "@example.com"));
+        List<ConnectorObject> results = fused(filter, null, null);
+        assertEquals(results.size(), 7);
+        Collector collector = new Collector();
+        ConnectorObject object = newObjects().get(0);
+        new FusedResultsHandler(collector, filter, null, null, null).handle(object);
+        assertSame(collector.objects.get(0), object);
+
+        results = fused(filter, null, new String[] { "count" });
+        assertEquals(results.size(), 7);
+        for (ConnectorObject result : results) {
+            assertEquals(result.getAttributes().size(), 3);
+            assertNotNull(result.getAttributeByName("count"));
+            assertEquals(result.getName().getNameValue().substring(0, 4), "user");
+        }
+    }
+
+    private static class Collector implements ResultsHandler {
+        private final List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+
+        public boolean handle(ConnectorObject object) {
+            objects.add(object);
+            return true;
+        }
+    }
+}
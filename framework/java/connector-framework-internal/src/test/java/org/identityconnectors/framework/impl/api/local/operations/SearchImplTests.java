@@ -26,11 +26,18 @@ package org.identityconnectors.framework.impl.api.local.operations;
 import org.identityconnectors.framework.common.objects.filter.FilterVisitor;
 import org.testng.annotations.Test;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
@@ -42,7 +49,10 @@ import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.Connector;
+import org.identityconnectors.framework.spi.ConnectorClass;
+import org.identityconnectors.framework.spi.PoolableConnector;
 import org.identityconnectors.framework.spi.operations.SearchOp;
+import org.identityconnectors.mockconnector.MockConfiguration;
 import org.identityconnectors.test.common.TestHelpers;
 import org.testng.Assert;
 
@@ -114,6 +124,56 @@ public class SearchImplTests {
         Assert.assertEquals(expecteList, actual);
     }
 
+    @Test
+    public void testParallelQueries() {
+        Set<ConnectorObject> expected = new LinkedHashSet<ConnectorObject>();
+        List<List<ConnectorObject>> main = new ArrayList<List<ConnectorObject>>();
+        for (int query = 0; query < 3; query++) {
+            List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+            for (int i = query * 5; i < query * 5 + 8; i++) {
+                data.add(createObject(i));
+                expected.add(createObject(i));
+            }
+            main.add(data);
+        }
+        ParallelProvider.reset(main.size());
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        TestHelpers.createTestConfiguration(ParallelProvider.class,
+                                new MockConfiguration(false)));
+        List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+        facade.search(ObjectClass.ACCOUNT, new MockFilter(main), new ToListResultsHandler(
+                actual, -1), null);
+        // same order and no duplicates as if the queries ran one by one
+        Assert.assertEquals(actual, CollectionUtil.newList(expected));
+        Assert.assertTrue(ParallelProvider.concurrent);
+        Assert.assertEquals(ParallelProvider.instances.size(), main.size());
+    }
+
+    @Test
+    public void testParallelQueriesStop() {
+        List<List<ConnectorObject>> main = new ArrayList<List<ConnectorObject>>();
+        for (int query = 0; query < 4; query++) {
+            List<ConnectorObject> data = new ArrayList<ConnectorObject>();
+            for (int i = query * 10; i < query * 10 + 10; i++) {
+                data.add(createObject(i));
+            }
+            main.add(data);
+        }
+        ParallelProvider.reset(main.size());
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        TestHelpers.createTestConfiguration(ParallelProvider.class,
+                                new MockConfiguration(false)));
+        List<ConnectorObject> actual = new ArrayList<ConnectorObject>();
+        facade.search(ObjectClass.ACCOUNT, new MockFilter(main), new ToListResultsHandler(
+                actual, 15), null);
+        Assert.assertEquals(actual.size(), 15);
+        for (int i = 0; i < actual.size(); i++) {
+            Assert.assertEquals(actual.get(i).getUid().getUidValue(), Integer.toString(i));
+        }
+    }
+
     ConnectorObject createObject(int uid) {
         ConnectorObjectBuilder bld = new ConnectorObjectBuilder();
         bld.setUid("" + uid);
@@ -168,6 +228,59 @@ public class SearchImplTests {
         }
     }
 
+    private static class ToListResultsHandler implements ResultsHandler {
+        private final List<ConnectorObject> objects;
+        private final int limit;
+
+        ToListResultsHandler(List<ConnectorObject> objects, int limit) {
+            this.objects = objects;
+            this.limit = limit;
+        }
+
+        public boolean handle(ConnectorObject connectorObject) {
+            objects.add(connectorObject);
+            return limit < 0 || objects.size() < limit;
+        }
+    }
+
+    /**
+     * Runs each query on its own instance, at the same time.
+     */
+    @ConnectorClass(configurationClass = MockConfiguration.class,
+            displayNameKey = "ParallelProvider", parallelQueries = true)
+    public static class ParallelProvider extends DuplicateProvider implements PoolableConnector {
+
+        static final Map<Object, Object> instances =
+                Collections.synchronizedMap(new IdentityHashMap<Object, Object>());
+        static volatile CountDownLatch started;
+        static volatile boolean concurrent;
+
+        static void reset(int queries) {
+            instances.clear();
+            started = new CountDownLatch(queries);
+            concurrent = true;
+        }
+
+        @Override
+        public void executeQuery(ObjectClass objectClass, List<ConnectorObject> query,
+                ResultsHandler handler, OperationOptions options) {
+            instances.put(this, this);
+            started.countDown();
+            try {
+                // all the queries must be running
+                if (!started.await(5, TimeUnit.SECONDS)) {
+                    concurrent = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.executeQuery(objectClass, query, handler, options);
+        }
+
+        public void checkAlive() {
+        }
+    }
+
     /**
      * Use the filter to pass objects to the filter translator.
      */
@@ -0,0 +1,271 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
+import org.identityconnectors.framework.api.ConnectorFacade;
+import org.identityconnectors.framework.api.ConnectorFacadeFactory;
+import org.identityconnectors.framework.api.operations.APIOperation;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
+import org.identityconnectors.framework.api.operations.TestApiOp;
+import org.identityconnectors.framework.api.operations.ValidateApiOp;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.impl.api.AbstractConnectorFacade;
+import org.identityconnectors.framework.impl.api.local.ObjectPool;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolEntry;
+import org.identityconnectors.framework.impl.api.local.ObjectPoolHandler;
+import org.identityconnectors.mockconnector.MockAllOpsConnector;
+import org.identityconnectors.mockconnector.MockConfiguration;
+import org.identityconnectors.mockconnector.MockUpdateConnector;
+import org.identityconnectors.test.common.TestHelpers;
+import org.testng.annotations.Test;
+
+public class MetricsTests {
+
+    private static final class StringPoolHandler implements ObjectPoolHandler<String> {
+
+        public ObjectPoolConfiguration validate(ObjectPoolConfiguration original) {
+            return new ObjectPoolConfiguration(original);
+        }
+
+        public String makeObject() {
+            return "object";
+        }
+
+        public void testObject(String object) {
+        }
+
+        public void disposeObject(String object) {
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getPercentile(0.99), 0L);
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(histogram.getCount(), 100L);
+        assertEquals(histogram.getMax(), TimeUnit.SECONDS.toNanos(1));
+        assertEquals(histogram.getMean(), TimeUnit.MICROSECONDS.toNanos(10990));
+        // within a factor of two
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= TimeUnit.MILLISECONDS.toNanos(1)
+                && p99 < TimeUnit.MILLISECONDS.toNanos(2), String.valueOf(p99));
+        assertEquals(histogram.getPercentile(1.0), TimeUnit.SECONDS.toNanos(1));
+
+        LatencyHistogram snapshot = histogram.snapshot();
+        histogram.record(0);
+        assertEquals(snapshot.getCount(), 100L);
+        assertEquals(histogram.getCount(), 101L);
+    }
+
+    @Test
+    public void testFacadeMetrics() {
+        ConnectorFacadeFactory factory = ConnectorFacadeFactory.getInstance();
+        ConnectorFacade facade =
+                factory.newInstance(TestHelpers.createTestConfiguration(
+                        MockAllOpsConnector.class, new MockConfiguration(true)));
+        facade.test();
+        facade.test();
+        try {
+            facade.validate();
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        FacadeMetrics metrics = ((AbstractConnectorFacade) facade).getMetrics();
+        OperationMetrics test = metrics.getOperationMetrics(TestApiOp.class);
+        assertEquals(test.getCallCount(), 2L);
+        assertEquals(test.getErrorCount(), 0L);
+        OperationMetrics validate = metrics.getOperationMetrics(ValidateApiOp.class);
+        assertEquals(validate.getCallCount(), 1L);
+        assertEquals(validate.getErrorCount(), 1L);
+        for (Class<? extends APIOperation> api : facade.getSupportedOperations()) {
+            assertTrue(metrics.getOperations().containsKey(api), api.getName());
+        }
+    }
+
+    @Test
+    public void testJmxPublisher() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsPublisher publisher = new JmxMetricsPublisher(server);
+        ObjectPool<String> pool =
+                new ObjectPool<String>(new StringPoolHandler(), new ObjectPoolConfiguration());
+        ObjectName poolName =
+                new ObjectName(JmxMetricsPublisher.DOMAIN + ":type=ObjectPool,name="
+                        + ObjectName.quote("MetricsTests"));
+        FacadeMetrics metrics =
+                new FacadeMetrics(CollectionUtil.<Class<? extends APIOperation>> newSet(
+                        TestApiOp.class, ValidateApiOp.class));
+        ObjectName testName =
+                new ObjectName(JmxMetricsPublisher.DOMAIN + ":type=ConnectorFacade,name="
+                        + ObjectName.quote("MetricsTests") + ",operation=TestApiOp");
+
+        // registered before the publisher is added
+        MetricsRegistry.registerPool("MetricsTests", pool);
+        MetricsRegistry.addPublisher(publisher);
+        try {
+            MetricsRegistry.registerFacade("MetricsTests", metrics);
+            assertTrue(server.isRegistered(poolName));
+            assertTrue(server.isRegistered(testName));
+
+            ObjectPoolEntry<String> entry = pool.borrowObject();
+            assertEquals(server.getAttribute(poolName, "NumActive"), 1);
+            assertEquals(server.getAttribute(poolName, "CreatedCount"), 1L);
+            assertEquals(server.getAttribute(poolName, "BorrowCount"), 1L);
+            assertEquals(server.getAttribute(poolName, "Utilization"), 0.1);
+            entry.close();
+            assertEquals(server.getAttribute(poolName, "NumIdle"), 1);
+
+            metrics.getOperationMetrics(TestApiOp.class).record(
+                    TimeUnit.MILLISECONDS.toNanos(3), true);
+            assertEquals(server.getAttribute(testName, "CallCount"), 1L);
+            assertEquals(server.getAttribute(testName, "ErrorCount"), 1L);
+            assertEquals(server.getAttribute(testName, "LatencyMax"), 3.0);
+
+            MetricsRegistry.unregisterFacade("MetricsTests");
+            assertFalse(server.isRegistered(testName));
+        } finally {
+            MetricsRegistry.removePublisher(publisher);
+            MetricsRegistry.unregisterPool("MetricsTests");
+            pool.shutdown();
+        }
+        assertFalse(server.isRegistered(poolName));
+    }
+
+    @Test
+    public void testUniqueNames() {
+        String first = MetricsRegistry.newName("MetricsTests");
+        String second = MetricsRegistry.newName("MetricsTests");
+        assertFalse(first.equals(second));
+        ObjectPool<String> pool =
+                new ObjectPool<String>(new StringPoolHandler(), new ObjectPoolConfiguration());
+        MetricsRegistry.registerPool(first, pool);
+        try {
+            assertSame(MetricsRegistry.getPool(first), pool);
+            MetricsRegistry.unregisterPool(pool);
+            assertNull(MetricsRegistry.getPool(first));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTracing() {
+        final List<TraceSpan> spans = Collections.synchronizedList(new ArrayList<TraceSpan>());
+        ConnectorFacade facade =
+                ConnectorFacadeFactory.getInstance().newInstance(
+                        TestHelpers.createTestConfiguration(MockUpdateConnector.class,
+                                new MockConfiguration(false)));
+        final List<ConnectorObject> results = new ArrayList<ConnectorObject>();
+        ResultsHandler handler = new ResultsHandler() {
+            public boolean handle(ConnectorObject connectorObject) {
+                results.add(connectorObject);
+                return true;
+            }
+        };
+
+        Tracing.setSink(new TraceSink() {
+            public void record(TraceSpan span) {
+                spans.add(span);
+            }
+        });
+        try {
+            assertTrue(Tracing.isEnabled());
+            facade.search(ObjectClass.ACCOUNT, FilterBuilder.startsWith(new Name("1")), handler,
+                    null);
+        } finally {
+            Tracing.setSink(null);
+        }
+        assertEquals(spans.size(), 1);
+        TraceSpan span = spans.get(0);
+        assertEquals(span.getOperation(), SearchApiOp.class);
+        assertEquals(span.getObjectCount(), results.size());
+        assertTrue(results.size() > 0);
+        assertTrue(span.getDuration(TracePhase.CONNECTOR) > 0L);
+        assertTrue(span.getDuration(TracePhase.FILTER) > 0L);
+        assertTrue(span.getDuration(TracePhase.RESULTS_HANDLER) > 0L);
+        assertEquals(span.getFailure(), null);
+        long sum = 0L;
+        for (TracePhase phase : TracePhase.values()) {
+            sum += span.getDuration(phase);
+        }
+        assertEquals(sum, span.getDuration());
+
+        // nothing is traced once the sink is removed
+        assertFalse(Tracing.isEnabled());
+        facade.search(ObjectClass.ACCOUNT, null, handler, null);
+        assertEquals(spans.size(), 1);
+    }
+
+    @Test
+    public void testManagedFacadeIsPublished() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        JmxMetricsPublisher publisher = new JmxMetricsPublisher(server);
+        ObjectName pattern =
+                new ObjectName(JmxMetricsPublisher.DOMAIN + ":type=ConnectorFacade,*");
+        MetricsRegistry.addPublisher(publisher);
+        try {
+            int before = server.queryNames(pattern, null).size();
+            ConnectorFacadeFactory.getManagedInstance().newInstance(
+                    TestHelpers.createTestConfiguration(MockAllOpsConnector.class,
+                            new MockConfiguration(true)));
+            assertTrue(server.queryNames(pattern, null).size() > before);
+        } finally {
+            MetricsRegistry.removePublisher(publisher);
+        }
+        assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+}
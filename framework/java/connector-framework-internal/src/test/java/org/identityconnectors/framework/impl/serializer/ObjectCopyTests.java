@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.impl.serializer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.serializer.SerializerUtil;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the serialization tests against {@link SerializerUtil#copyObject(Object)}
+ * which must return the same copies as the serializer.
+ */
+public class ObjectCopyTests extends ObjectSerializationTests {
+
+    @Override
+    protected Object cloneObject(Object o) {
+        return SerializerUtil.copyObject(o);
+    }
+
+    @Test
+    public void testMutableValuesAreCopied() {
+        String[] array = new String[] { "a", "b" };
+        List<Object> list = new ArrayList<Object>();
+        list.add(array);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("list", list);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> copy = (Map<String, Object>) cloneObject(map);
+        assertEquals(copy.keySet(), map.keySet());
+        List<?> listCopy = (List<?>) copy.get("list");
+        assertNotSame(listCopy, list);
+        String[] arrayCopy = (String[]) listCopy.get(0);
+        assertNotSame(arrayCopy, array);
+        assertTrue(Arrays.equals(arrayCopy, array));
+    }
+
+    @Test
+    public void testIterationOrderIsKept() {
+        Set<Object> set = new LinkedHashSet<Object>();
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (int i = 100; i > 0; i--) {
+            set.add("value" + i);
+            map.put("key" + i, i);
+        }
+        assertEquals(new ArrayList<Object>((Set<?>) cloneObject(set)), new ArrayList<Object>(
+                set));
+        assertEquals(new ArrayList<Object>(((Map<?, ?>) cloneObject(map)).keySet()),
+                new ArrayList<Object>(map.keySet()));
+    }
+
+    @Test
+    public void testCaseInsensitiveMap() {
+        Map<String, Object> map = CollectionUtil.newCaseInsensitiveMap();
+        map.put("Foo", new int[] { 1, 2 });
+        @SuppressWarnings("unchecked")
+        Map<String, Object> copy = (Map<String, Object>) cloneObject(map);
+        assertTrue(CollectionUtil.isCaseInsensitiveMap(copy));
+        assertTrue(Arrays.equals((int[]) copy.get("FOO"), new int[] { 1, 2 }));
+    }
+
+    @Test(expectedExceptions = ConnectorException.class)
+    public void testUnsupportedTypeIsRejected() {
+        List<Object> list = new ArrayList<Object>();
+        list.add(new StringBuilder("not serializable"));
+        cloneObject(list);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSortedMapIsRejected() {
+        cloneObject(new TreeMap<String, Object>(Collections.<String> reverseOrder()));
+    }
+
+    // immutable values are shared instead of copied
+
+    @Override
+    @Test
+    public void testString() {
+        assertEquals(cloneObject("abcd"), "abcd");
+    }
+
+    @Override
+    @Test
+    public void testFloat() {
+        assertEquals(cloneObject(1.1F), 1.1F);
+        assertEquals(cloneObject(Float.NaN), Float.NaN);
+    }
+
+    @Override
+    @Test
+    public void testDouble() {
+        assertEquals(cloneObject(1.1), 1.1);
+        assertEquals(cloneObject(Double.NEGATIVE_INFINITY), Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    @Test
+    public void testFile() {
+        assertEquals(cloneObject(new File("c:/foo.txt")), new File("c:/foo.txt"));
+    }
+
+    @Override
+    @Test
+    public void testURI() throws Exception {
+        assertEquals(cloneObject(new URI("mailto:john.doe@example.com")), new URI(
+                "mailto:john.doe@example.com"));
+    }
+}
@@ -32,6 +32,7 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.math.BigDecimal;
@@ -54,8 +55,10 @@ import org.identityconnectors.common.script.ScriptBuilder;
 import org.identityconnectors.common.security.GuardedByteArray;
 import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.api.ConnectorKey;
+import org.identityconnectors.framework.api.ObjectCacheConfiguration;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
+import org.identityconnectors.framework.api.operations.SearchApiOp;
 import org.identityconnectors.framework.common.FrameworkUtil;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
 import org.identityconnectors.framework.common.exceptions.ConfigurationException;
@@ -75,6 +78,9 @@ import org.identityconnectors.framework.common.objects.AttributeBuilder;
 import org.identityconnectors.framework.common.objects.AttributeInfo;
 import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
 import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchOperationType;
+import org.identityconnectors.framework.common.objects.BatchResult;
 import org.identityconnectors.framework.common.objects.ConnectorObject;
 import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
 import org.identityconnectors.framework.common.objects.Name;
@@ -112,15 +118,20 @@ import org.identityconnectors.framework.impl.api.ConfigurationPropertiesImpl;
 import org.identityconnectors.framework.impl.api.ConfigurationPropertyImpl;
 import org.identityconnectors.framework.impl.api.ConnectorMessagesImpl;
 import org.identityconnectors.framework.impl.api.remote.RemoteConnectorInfoImpl;
+import org.identityconnectors.framework.impl.api.remote.RemoteWrappedException;
 import org.identityconnectors.framework.impl.api.remote.messages.EchoMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.HelloResponse;
+import org.identityconnectors.framework.impl.api.remote.messages.MultiplexedMessage;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequest;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestMoreData;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationRequestStopData;
+import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseCredit;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponseEnd;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePart;
 import org.identityconnectors.framework.impl.api.remote.messages.OperationResponsePause;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectDecoder;
+import org.identityconnectors.framework.impl.serializer.binary.BinaryObjectEncoder;
 
 
 public class ObjectSerializationTests {
@@ -422,6 +433,9 @@ public class ObjectSerializationTests {
         v1.setMaxWait(3);
         v1.setMinEvictableIdleTimeMillis(4);
         v1.setMinIdle(5);
+        v1.setTimeBetweenEvictionRunsMillis(6);
+        v1.setTestOnBorrowIdleTimeMillis(7);
+        v1.setLifo(false);
 
         ObjectPoolConfiguration v2 =
             (ObjectPoolConfiguration)cloneObject(v1);
@@ -433,6 +447,9 @@ public class ObjectSerializationTests {
         assertEquals(3, v2.getMaxWait());
         assertEquals(4, v2.getMinEvictableIdleTimeMillis());
         assertEquals(5, v2.getMinIdle());
+        assertEquals(6, v2.getTimeBetweenEvictionRunsMillis());
+        assertEquals(7, v2.getTestOnBorrowIdleTimeMillis());
+        assertFalse(v2.isLifo());
     }
 
     @Test
@@ -525,6 +542,23 @@ public class ObjectSerializationTests {
         assertEquals(FrameworkUtil.allAPIOperations(),
                 v2.getSupportedOperations());
         assertEquals(map, v2.getTimeoutMap());
+        assertFalse(v2.getObjectCacheConfiguration().isEnabled());
+
+        v1.getObjectCacheConfiguration().setEnabled(true);
+        v1.getObjectCacheConfiguration().setMaxObjects(10);
+        v2 = (APIConfigurationImpl) cloneObject(v1);
+        assertEquals(v1.getObjectCacheConfiguration(), v2.getObjectCacheConfiguration());
+    }
+
+    @Test
+    public void testObjectCacheConfiguration() {
+        ObjectCacheConfiguration v1 = new ObjectCacheConfiguration();
+        v1.setEnabled(true);
+        v1.setMaxObjects(500);
+        v1.setTimeToLiveMillis(60000L);
+        ObjectCacheConfiguration v2 = (ObjectCacheConfiguration) cloneObject(v1);
+        assertEquals(v2, v1);
+        assertEquals(v2.getTimeToLiveMillis(), 60000L);
     }
 
     @Test
@@ -898,6 +932,17 @@ public class ObjectSerializationTests {
         HelloRequest v2 = (HelloRequest)cloneObject(v1);
         Assert.assertNotNull(v2);
         Assert.assertEquals(v2.getInfoLevel(),HelloRequest.CONNECTOR_INFO);
+        Assert.assertEquals(v2.getProtocolVersion(),HelloRequest.PROTOCOL_VERSION);
+
+        v1 = new HelloRequest(HelloRequest.SERVER_INFO, HelloRequest.MULTIPLEXED_PROTOCOL_VERSION);
+        v2 = (HelloRequest)cloneObject(v1);
+        Assert.assertEquals(v2.getProtocolVersion(),HelloRequest.MULTIPLEXED_PROTOCOL_VERSION);
+        Assert.assertNull(v2.getCompression());
+
+        v1 = new HelloRequest(HelloRequest.SERVER_INFO, HelloRequest.MULTIPLEXED_PROTOCOL_VERSION,
+                HelloRequest.DEFLATE_COMPRESSION);
+        v2 = (HelloRequest)cloneObject(v1);
+        Assert.assertEquals(v2.getCompression(),HelloRequest.DEFLATE_COMPRESSION);
     }
 
     @Test
@@ -922,6 +967,13 @@ public class ObjectSerializationTests {
         Assert.assertNotNull(v2.getServerInfo().get(HelloResponse.SERVER_START_TIME));
         Assert.assertNotNull(v2.getConnectorKeys().iterator().next());
         Assert.assertNotNull(v2.getConnectorInfos().iterator().next());
+        Assert.assertEquals(v2.getProtocolVersion(), HelloRequest.PROTOCOL_VERSION);
+        Assert.assertNull(v2.getCompression());
+
+        v1 = new HelloResponse(ex, serverInfo, null, null,
+                HelloRequest.MULTIPLEXED_PROTOCOL_VERSION, HelloRequest.DEFLATE_COMPRESSION);
+        v2 = (HelloResponse)cloneObject(v1);
+        Assert.assertEquals(v2.getCompression(), HelloRequest.DEFLATE_COMPRESSION);
     }
 
     @Test
@@ -950,6 +1002,12 @@ public class ObjectSerializationTests {
         assertEquals(CreateApiOp.class, v2.getOperation());
         assertEquals("mymethodName", v2.getOperationMethodName());
         assertEquals(args, v2.getArguments());
+        assertEquals(0, v2.getInitialCredit());
+
+        v1 = new OperationRequest(v1.getConnectorKey(), v1.getConnectorFacadeKey(),
+                SearchApiOp.class, "search", args, 200);
+        v2 = (OperationRequest)cloneObject(v1);
+        assertEquals(200, v2.getInitialCredit());
     }
 
     @Test
@@ -979,6 +1037,18 @@ public class ObjectSerializationTests {
         OperationRequestMoreData v1 = new OperationRequestMoreData();
         OperationRequestMoreData v2 = (OperationRequestMoreData)cloneObject(v1);
         assertNotNull(v2);
+        assertEquals(0, v2.getCredit());
+
+        v1 = new OperationRequestMoreData(100);
+        v2 = (OperationRequestMoreData)cloneObject(v1);
+        assertEquals(100, v2.getCredit());
+    }
+
+    @Test
+    public void testOperationResponseCredit() {
+        OperationResponseCredit v1 = new OperationResponseCredit();
+        OperationResponseCredit v2 = (OperationResponseCredit)cloneObject(v1);
+        assertNotNull(v2);
     }
 
     @Test
@@ -988,6 +1058,20 @@ public class ObjectSerializationTests {
         assertNotNull(v2);
     }
 
+    @Test
+    public void testMultiplexedMessage() {
+        MultiplexedMessage v1 = new MultiplexedMessage(42L, Locale.GERMANY, new OperationRequestMoreData());
+        MultiplexedMessage v2 = (MultiplexedMessage)cloneObject(v1);
+        assertEquals(42L, v2.getRequestId());
+        assertEquals(Locale.GERMANY, v2.getLocale());
+        assertTrue(v2.getMessage() instanceof OperationRequestMoreData);
+
+        v1 = new MultiplexedMessage(43L, null, new OperationResponseEnd());
+        v2 = (MultiplexedMessage)cloneObject(v1);
+        assertNull(v2.getLocale());
+        assertTrue(v2.getMessage() instanceof OperationResponseEnd);
+    }
+
     @Test
     public void testEchoMessage() {
         EchoMessage v1 = new EchoMessage("test","xml");
@@ -1113,6 +1197,140 @@ public class ObjectSerializationTests {
         assertEquals("myuid", v2.getUid().getUidValue());
     }
 
+    @Test
+    public void testBatchOperation() {
+        BatchOperation v1 = BatchOperation.addAttributeValues(ObjectClass.GROUP,
+                new Uid("myuid"), CollectionUtil.<Attribute> newSet(AttributeBuilder.build(
+                        "member", "foo", "bar")));
+        BatchOperation v2 = (BatchOperation) cloneObject(v1);
+        assertEquals(v2, v1);
+        assertEquals(v2.getType(), BatchOperationType.ADD_ATTRIBUTE_VALUES);
+
+        v1 = BatchOperation.create(ObjectClass.ACCOUNT, CollectionUtil
+                .<Attribute> newSet(new Name("myname")));
+        v2 = (BatchOperation) cloneObject(v1);
+        assertEquals(v2, v1);
+        assertNull(v2.getUid());
+
+        v1 = BatchOperation.delete(ObjectClass.ACCOUNT, new Uid("myuid"));
+        v2 = (BatchOperation) cloneObject(v1);
+        assertEquals(v2, v1);
+        assertTrue(v2.getAttributes().isEmpty());
+    }
+
+    @Test
+    public void testBatchResult() {
+        BatchResult v1 = new BatchResult(new Uid("myuid"));
+        BatchResult v2 = (BatchResult) cloneObject(v1);
+        assertTrue(v2.isSuccess());
+        assertEquals(v2.getUid(), new Uid("myuid"));
+
+        v1 = new BatchResult(new UnknownUidException("not found"));
+        v2 = (BatchResult) cloneObject(v1);
+        assertFalse(v2.isSuccess());
+        assertNull(v2.getUid());
+        assertTrue(((RemoteWrappedException) v2.getError())
+                .is(UnknownUidException.class));
+        assertEquals(v2.getError().getMessage(), "not found");
+    }
+
+    @Test
+    public void testDeeplyNestedObject() {
+        List<Object> v1 = new ArrayList<Object>();
+        List<Object> current = v1;
+        for (int i = 0; i < 100; i++) {
+            List<Object> child = new ArrayList<Object>();
+            current.add("level" + i);
+            current.add(child);
+            current = child;
+        }
+        current.add(new byte[] { 0x01, 0x02 });
+        @SuppressWarnings("unchecked")
+        List<Object> v2 = (List<Object>) cloneObject(v1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(v2.get(0), "level" + i);
+            v2 = (List<Object>) v2.get(1);
+        }
+        assertTrue(Arrays.equals(new byte[] { 0x01, 0x02 }, (byte[]) v2.get(0)));
+    }
+
+    @Test
+    public void testLargeObject() {
+        byte[] bytes = new byte[2 * 1024 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append("\u00e9value").append(i);
+        }
+        List<Object> v1 = new ArrayList<Object>();
+        v1.add(bytes);
+        v1.add(value.toString());
+        v1.add(Long.MIN_VALUE);
+        v1.add(Double.MAX_VALUE);
+        List<?> v2 = (List<?>) cloneObject(v1);
+        assertTrue(Arrays.equals(bytes, (byte[]) v2.get(0)));
+        assertEquals(v2.get(1), value.toString());
+        assertEquals(v2.get(2), Long.MIN_VALUE);
+        assertEquals(v2.get(3), Double.MAX_VALUE);
+    }
+
+    @Test
+    public void testSharedSymbols() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectEncoder encoder = new BinaryObjectEncoder(out);
+        encoder.setSharedSymbols(true);
+        List<ConnectorObject> objects = new ArrayList<ConnectorObject>();
+        int[] sizes = new int[3];
+        for (int i = 0; i < sizes.length; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+            builder.setObjectClass(new ObjectClass("account"));
+            builder.setUid("uid" + i);
+            builder.setName("name" + i);
+            builder.addAttribute("telephoneNumber", "555-000" + i);
+            builder.addAttribute("mail", "user" + i + "@example.com");
+            objects.add(builder.build());
+            encoder.writeObject(objects.get(i));
+            encoder.flush();
+            sizes[i] = out.size();
+        }
+        // the symbols of the first object are not sent again
+        assertTrue(sizes[1] - sizes[0] < sizes[0]);
+        assertEquals(sizes[2] - sizes[1], sizes[1] - sizes[0]);
+
+        BinaryObjectDecoder decoder =
+                new BinaryObjectDecoder(new ByteArrayInputStream(out.toByteArray()));
+        decoder.setSharedSymbols(true);
+        for (ConnectorObject expected : objects) {
+            assertEquals(decoder.readObject(), expected);
+        }
+    }
+
+    @Test
+    public void testSharedSymbolsOverflow() {
+        // more names than the constant pool takes, the rest is inlined
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("uid");
+        builder.setName("name");
+        for (int i = 0; i < 5000; i++) {
+            builder.addAttribute("attribute" + i, i);
+        }
+        ConnectorObject v1 = builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryObjectEncoder encoder = new BinaryObjectEncoder(out);
+        encoder.setSharedSymbols(true);
+        encoder.writeObject(v1);
+        encoder.writeObject(v1);
+        encoder.flush();
+
+        BinaryObjectDecoder decoder =
+                new BinaryObjectDecoder(new ByteArrayInputStream(out.toByteArray()));
+        decoder.setSharedSymbols(true);
+        assertEquals(decoder.readObject(), v1);
+        assertEquals(decoder.readObject(), v1);
+    }
+
     /**
      * Highly insecure method! Do not do this in production
      * code. This is only for test purposes
@@ -0,0 +1,63 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.mockconnector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.identityconnectors.framework.common.exceptions.UnknownUidException;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchOperationType;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.operations.BatchOp;
+
+/**
+ * Runs the batches natively: creates get the {@link Uid} of their position in
+ * the batch and deletes fail with an {@link UnknownUidException}.
+ */
+public class MockBatchConnector extends MockConnector implements BatchOp {
+
+    public List<BatchResult> executeBatch(final List<BatchOperation> operations,
+            final OperationOptions options) {
+        assert operations != null && options != null;
+        addCall(operations);
+        final List<BatchResult> results = new ArrayList<BatchResult>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final BatchOperation operation = operations.get(i);
+            if (operation.getType() == BatchOperationType.DELETE) {
+                results.add(new BatchResult(new UnknownUidException(operation.getUid(),
+                        operation.getObjectClass())));
+            } else if (operation.getType() == BatchOperationType.CREATE) {
+                results.add(new BatchResult(new Uid(Integer.toString(i))));
+            } else {
+                results.add(new BatchResult(operation.getUid()));
+            }
+        }
+        return results;
+    }
+}
@@ -46,6 +46,7 @@ import org.identityconnectors.common.event.ConnectorEvent;
 import org.identityconnectors.common.event.ConnectorEventHandler;
 import org.identityconnectors.common.event.ConnectorEventPublisher;
 import org.identityconnectors.framework.api.APIConfiguration;
+import org.identityconnectors.framework.api.AsyncConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacade;
 import org.identityconnectors.framework.api.ConnectorFacadeFactory;
 import org.identityconnectors.framework.api.ConnectorInfo;
@@ -56,6 +57,7 @@ import org.identityconnectors.framework.common.exceptions.ConfigurationException
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.impl.api.APIConfigurationImpl;
 import org.identityconnectors.framework.impl.api.AbstractConnectorInfo;
+import org.identityconnectors.framework.impl.api.AsyncConnectorFacadeImpl;
 import org.identityconnectors.framework.impl.api.ConnectorMessagesImpl;
 import org.identityconnectors.framework.impl.api.local.ConnectorPoolManager;
 import org.identityconnectors.framework.impl.api.local.JavaClassProperties;
@@ -120,6 +122,12 @@ public class OsgiConnectorInfoManagerImpl extends ConnectorFacadeFactory impleme
         ConnectorPoolManager.dispose();
     }
 
+    @Override
+    public AsyncConnectorFacade newAsyncInstance(ConnectorFacade facade,
+            int maxConcurrentOperations, int maxQueuedOperations) {
+        return new AsyncConnectorFacadeImpl(facade, maxConcurrentOperations, maxQueuedOperations);
+    }
+
     @Override
     public ConnectorFacade newInstance(APIConfiguration config) {
         ConnectorFacade ret = null;
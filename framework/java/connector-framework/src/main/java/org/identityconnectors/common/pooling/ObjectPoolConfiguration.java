@@ -40,6 +40,9 @@ public final class ObjectPoolConfiguration {
         this.setMaxWait(other.getMaxWait());
         this.setMinEvictableIdleTimeMillis(other.getMinEvictableIdleTimeMillis());
         this.setMinIdle(other.getMinIdle());
+        this.setTimeBetweenEvictionRunsMillis(other.getTimeBetweenEvictionRunsMillis());
+        this.setTestOnBorrowIdleTimeMillis(other.getTestOnBorrowIdleTimeMillis());
+        this.setLifo(other.isLifo());
     }
 
     /**
@@ -69,6 +72,23 @@ public final class ObjectPoolConfiguration {
      */
     private int minIdle = 1;
 
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are evicted only when an object is borrowed.
+     */
+    private long timeBetweenEvictionRunsMillis = 60 * 1000;
+
+    /**
+     * Minimum time an object has to be idle before it is tested when it is
+     * borrowed. Zero means every borrowed object is tested.
+     */
+    private long testOnBorrowIdleTimeMillis = 0;
+
+    /**
+     * Borrow the most recently returned idle object first.
+     */
+    private boolean lifo = true;
+
     /**
      * Get the set number of maximum objects (idle+active).
      */
@@ -144,6 +164,66 @@ public final class ObjectPoolConfiguration {
         this.minIdle = minIdle;
     }
 
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are evicted only when an object is borrowed.
+     *
+     * @since 1.4
+     */
+    public long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Time between two runs of the background evictor. Zero means idle
+     * objects are evicted only when an object is borrowed.
+     *
+     * @since 1.4
+     */
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * Minimum time an object has to be idle before it is tested when it is
+     * borrowed. Zero means every borrowed object is tested.
+     *
+     * @since 1.4
+     */
+    public long getTestOnBorrowIdleTimeMillis() {
+        return testOnBorrowIdleTimeMillis;
+    }
+
+    /**
+     * Minimum time an object has to be idle before it is tested when it is
+     * borrowed. Zero means every borrowed object is tested.
+     *
+     * @since 1.4
+     */
+    public void setTestOnBorrowIdleTimeMillis(long testOnBorrowIdleTimeMillis) {
+        this.testOnBorrowIdleTimeMillis = testOnBorrowIdleTimeMillis;
+    }
+
+    /**
+     * Whether the most recently returned idle object is borrowed first (LIFO)
+     * or the one idle for the longest time (FIFO).
+     *
+     * @since 1.4
+     */
+    public boolean isLifo() {
+        return lifo;
+    }
+
+    /**
+     * Whether the most recently returned idle object is borrowed first (LIFO)
+     * or the one idle for the longest time (FIFO).
+     *
+     * @since 1.4
+     */
+    public void setLifo(boolean lifo) {
+        this.lifo = lifo;
+    }
+
     public void validate() {
         if (minIdle < 0) {
             throw new IllegalArgumentException("Min idle is less than zero.");
@@ -160,6 +240,13 @@ public final class ObjectPoolConfiguration {
         if (minEvictableIdleTimeMillis < 0) {
             throw new IllegalArgumentException("Min evictable idle time millis less than zero.");
         }
+        if (timeBetweenEvictionRunsMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Time between eviction runs millis less than zero.");
+        }
+        if (testOnBorrowIdleTimeMillis < 0) {
+            throw new IllegalArgumentException("Test on borrow idle time millis less than zero.");
+        }
         if (minIdle > maxIdle) {
             throw new IllegalArgumentException("Min idle is greater than max idle.");
         }
@@ -171,7 +258,9 @@ public final class ObjectPoolConfiguration {
     @Override
     public int hashCode() {
         return (int) (getMaxObjects() + getMaxIdle() + getMaxWait()
-                + getMinEvictableIdleTimeMillis() + getMinIdle());
+                + getMinEvictableIdleTimeMillis() + getMinIdle()
+                + getTimeBetweenEvictionRunsMillis() + getTestOnBorrowIdleTimeMillis() + (isLifo()
+                ? 1 : 0));
     }
 
     @Override
@@ -194,6 +283,15 @@ public final class ObjectPoolConfiguration {
             if (getMinIdle() != other.getMinIdle()) {
                 return false;
             }
+            if (getTimeBetweenEvictionRunsMillis() != other.getTimeBetweenEvictionRunsMillis()) {
+                return false;
+            }
+            if (getTestOnBorrowIdleTimeMillis() != other.getTestOnBorrowIdleTimeMillis()) {
+                return false;
+            }
+            if (isLifo() != other.isLifo()) {
+                return false;
+            }
             return true;
         }
         return false;
@@ -208,6 +306,9 @@ public final class ObjectPoolConfiguration {
         bld.put("MaxWait", getMaxWait());
         bld.put("MinEvictableIdleTimeMillis", getMinEvictableIdleTimeMillis());
         bld.put("MinIdle", getMinIdle());
+        bld.put("TimeBetweenEvictionRunsMillis", getTimeBetweenEvictionRunsMillis());
+        bld.put("TestOnBorrowIdleTimeMillis", getTestOnBorrowIdleTimeMillis());
+        bld.put("Lifo", isLifo());
         return bld.toString();
     }
 }
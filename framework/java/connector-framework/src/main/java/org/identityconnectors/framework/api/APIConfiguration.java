@@ -117,4 +117,11 @@ public interface APIConfiguration {
      */
     ResultsHandlerConfiguration getResultsHandlerConfiguration();
 
+    /**
+     * Get the configuration of the cache of the GetApiOp operation.
+     *
+     * @since 1.4
+     */
+    ObjectCacheConfiguration getObjectCacheConfiguration();
+
 }
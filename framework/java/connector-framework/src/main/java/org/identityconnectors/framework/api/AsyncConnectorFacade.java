@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.api;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.Schema;
+import org.identityconnectors.framework.common.objects.ScriptContext;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
+/**
+ * Runs the operations of a {@link ConnectorFacade} without blocking the
+ * caller.
+ * <p/>
+ * Each method takes the same arguments as the {@link ConnectorFacade} method
+ * of the same name, starts the operation and returns at once. The outcome is
+ * available from the returned {@link Future} and, if one is given, reported
+ * to the {@link CompletionCallback}. The exception of a failed operation is
+ * the cause of the {@link java.util.concurrent.ExecutionException} of the
+ * future.
+ * <p/>
+ * The operations run on a pool of threads owned by this facade. At most the
+ * configured number of operations run at the same time and the others wait
+ * in a bounded queue; when the queue is full the methods throw a
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ * <p/>
+ * Cancelling a waiting operation means it never runs. Cancelling a running
+ * search or sync stops it before the next result is handled; the other
+ * running operations are interrupted if {@code mayInterruptIfRunning} is
+ * true and otherwise run to the end with their result discarded.
+ * <p/>
+ * The connector operations themselves stay blocking: this facade does not
+ * save threads, it only moves the wait off the caller. Each running operation
+ * holds one thread of this facade until it returns, including the time spent
+ * waiting for a remote connector server, so the number of operations in
+ * flight is bounded by the number of threads. A timed operation runs on that
+ * thread and is interrupted when its timeout passes; a search or a sync with
+ * a timeout or a buffer size still uses a second thread to produce the
+ * results.
+ *
+ * @see ConnectorFacadeFactory#newAsyncInstance(ConnectorFacade, int, int)
+ * @since 1.4
+ */
+public interface AsyncConnectorFacade {
+
+    /**
+     * Returns the facade which runs the operations.
+     */
+    ConnectorFacade getConnectorFacade();
+
+    /**
+     * Cancels the waiting operations and releases the threads of this facade.
+     * The running operations are interrupted.
+     */
+    void dispose();
+
+    Future<Uid> create(ObjectClass objectClass, Set<Attribute> createAttributes,
+            OperationOptions options, CompletionCallback<? super Uid> callback);
+
+    Future<Uid> update(ObjectClass objectClass, Uid uid, Set<Attribute> replaceAttributes,
+            OperationOptions options, CompletionCallback<? super Uid> callback);
+
+    Future<Uid> addAttributeValues(ObjectClass objectClass, Uid uid,
+            Set<Attribute> valuesToAdd, OperationOptions options,
+            CompletionCallback<? super Uid> callback);
+
+    Future<Uid> removeAttributeValues(ObjectClass objectClass, Uid uid,
+            Set<Attribute> valuesToRemove, OperationOptions options,
+            CompletionCallback<? super Uid> callback);
+
+    Future<Void> delete(ObjectClass objectClass, Uid uid, OperationOptions options,
+            CompletionCallback<? super Void> callback);
+
+    Future<ConnectorObject> getObject(ObjectClass objectClass, Uid uid,
+            OperationOptions options, CompletionCallback<? super ConnectorObject> callback);
+
+    /**
+     * The handler is called on the thread running the search.
+     */
+    Future<SearchResult> search(ObjectClass objectClass, Filter filter, ResultsHandler handler,
+            OperationOptions options, CompletionCallback<? super SearchResult> callback);
+
+    /**
+     * The handler is called on the thread running the sync.
+     */
+    Future<SyncToken> sync(ObjectClass objectClass, SyncToken token, SyncResultsHandler handler,
+            OperationOptions options, CompletionCallback<? super SyncToken> callback);
+
+    Future<SyncToken> getLatestSyncToken(ObjectClass objectClass,
+            CompletionCallback<? super SyncToken> callback);
+
+    Future<List<BatchResult>> executeBatch(List<BatchOperation> operations,
+            OperationOptions options, CompletionCallback<? super List<BatchResult>> callback);
+
+    Future<Uid> authenticate(ObjectClass objectClass, String username, GuardedString password,
+            OperationOptions options, CompletionCallback<? super Uid> callback);
+
+    Future<Uid> resolveUsername(ObjectClass objectClass, String username,
+            OperationOptions options, CompletionCallback<? super Uid> callback);
+
+    Future<Object> runScriptOnConnector(ScriptContext request, OperationOptions options,
+            CompletionCallback<Object> callback);
+
+    Future<Object> runScriptOnResource(ScriptContext request, OperationOptions options,
+            CompletionCallback<Object> callback);
+
+    Future<Schema> schema(CompletionCallback<? super Schema> callback);
+
+    Future<Void> test(CompletionCallback<? super Void> callback);
+
+    Future<Void> validate(CompletionCallback<? super Void> callback);
+}
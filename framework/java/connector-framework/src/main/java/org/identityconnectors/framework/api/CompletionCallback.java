@@ -0,0 +1,58 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.api;
+
+/**
+ * Receives the outcome of an operation of the {@link AsyncConnectorFacade}.
+ * <p/>
+ * The methods are called on the thread which ran the operation, or on the
+ * thread which cancelled it, so they should return quickly.
+ *
+ * @param <V>
+ *            the type of the result of the operation.
+ * @since 1.4
+ */
+public interface CompletionCallback<V> {
+
+    /**
+     * Called when the operation succeeded.
+     *
+     * @param result
+     *            the result of the operation, null for the operations without
+     *            result.
+     */
+    void completed(V result);
+
+    /**
+     * Called when the operation failed or was cancelled.
+     *
+     * @param error
+     *            the exception the operation failed with, a
+     *            {@link java.util.concurrent.CancellationException} if it was
+     *            cancelled.
+     */
+    void failed(RuntimeException error);
+}
@@ -23,6 +23,8 @@
  */
 package org.identityconnectors.framework.api;
 
+import java.lang.reflect.InvocationTargetException;
+
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
 /**
@@ -41,6 +43,9 @@ public abstract class ConnectorFacadeFactory {
     private static final String IMPL_NAME_MANAGED =
             "org.identityconnectors.framework.impl.api.ManagedConnectorFacadeFactoryImpl";
 
+    private static final String IMPL_NAME_ASYNC =
+            "org.identityconnectors.framework.impl.api.AsyncConnectorFacadeImpl";
+
     private static ConnectorFacadeFactory instance;
     private static ConnectorFacadeFactory managedInstance;
 
@@ -107,4 +112,42 @@ public abstract class ConnectorFacadeFactory {
      * @since 1.4
      */
     public abstract ConnectorFacade newInstance(ConnectorInfo connectorInfo, String config);
+
+    /**
+     * Get a new instance of {@link AsyncConnectorFacade} running the
+     * operations of the given facade.
+     * <p/>
+     * The default implementation works with any {@link ConnectorFacade}, a
+     * factory only needs to override it to load the implementation another
+     * way.
+     *
+     * @param facade
+     *            local or remote facade running the operations.
+     * @param maxConcurrentOperations
+     *            the maximum number of operations running at the same time,
+     *            which is also the number of threads of the new instance.
+     * @param maxQueuedOperations
+     *            the maximum number of operations waiting for a thread.
+     * @return {@link AsyncConnectorFacade} to call API operations against,
+     *         must be disposed of when no longer used.
+     * @since 1.4
+     */
+    public AsyncConnectorFacade newAsyncInstance(ConnectorFacade facade,
+            int maxConcurrentOperations, int maxQueuedOperations) {
+        try {
+            final Class<?> clazz = Class.forName(IMPL_NAME_ASYNC);
+            final Object object =
+                    clazz.getConstructor(ConnectorFacade.class, Integer.TYPE, Integer.TYPE)
+                            .newInstance(facade, maxConcurrentOperations, maxQueuedOperations);
+            return AsyncConnectorFacade.class.cast(object);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ConnectorException.wrap(cause);
+        } catch (Exception e) {
+            throw ConnectorException.wrap(e);
+        }
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.api;
+
+/**
+ * Configures the cache of the objects returned by
+ * {@link org.identityconnectors.framework.api.operations.GetApiOp#getObject}.
+ * <p/>
+ * When enabled, a ConnectorFacade keeps the objects it returned for a while
+ * and returns them again for the same object class, {@code Uid} and
+ * attributes to get. The update, delete and batch operations of the same
+ * facade, and the deltas of its sync operation, remove the changed objects
+ * from the cache. Changes made through other facades or directly on the
+ * resource are only seen once the cached object expires.
+ *
+ * @since 1.4
+ */
+public class ObjectCacheConfiguration {
+
+    /**
+     * Enables the cache, disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of objects in the cache, the least recently used object
+     * is evicted first.
+     */
+    private int maxObjects = 1000;
+
+    /**
+     * How long an object stays in the cache, in milliseconds.
+     */
+    private long timeToLiveMillis = 30 * 1000;
+
+    /**
+     * default empty constructor.
+     */
+    public ObjectCacheConfiguration() {
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param source
+     *            configuration that copied to.
+     */
+    public ObjectCacheConfiguration(ObjectCacheConfiguration source) {
+        this.enabled = source.isEnabled();
+        this.maxObjects = source.getMaxObjects();
+        this.timeToLiveMillis = source.getTimeToLiveMillis();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+
+    public void setMaxObjects(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public void setTimeToLiveMillis(long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     * Validates the configuration.
+     *
+     * @throws IllegalArgumentException
+     *             if a value is out of range.
+     */
+    public void validate() {
+        if (maxObjects < 1) {
+            throw new IllegalArgumentException("Max objects is less than one.");
+        }
+        if (timeToLiveMillis < 1) {
+            throw new IllegalArgumentException("Time to live is less than one.");
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ObjectCacheConfiguration other = (ObjectCacheConfiguration) obj;
+        return enabled == other.enabled && maxObjects == other.maxObjects
+                && timeToLiveMillis == other.timeToLiveMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 3;
+        hash = 79 * hash + (this.enabled ? 1 : 0);
+        hash = 79 * hash + this.maxObjects;
+        hash = 79 * hash + (int) (this.timeToLiveMillis ^ (this.timeToLiveMillis >>> 32));
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectCacheConfiguration{" + "enabled=" + enabled + "\nmaxObjects="
+                + maxObjects + "\ntimeToLiveMillis=" + timeToLiveMillis + '}';
+    }
+}
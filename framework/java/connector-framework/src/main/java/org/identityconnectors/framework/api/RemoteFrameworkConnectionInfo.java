@@ -19,6 +19,7 @@
  * enclosed by brackets [] replaced by your own identifying information:
  * "Portions Copyrighted [year] [name of copyright owner]"
  * ====================
+ * Portions Copyrighted 2014 ForgeRock AS.
  */
 package org.identityconnectors.framework.api;
 
@@ -28,6 +29,7 @@ import javax.net.ssl.TrustManager;
 
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.pooling.ObjectPoolConfiguration;
 import org.identityconnectors.common.security.GuardedString;
 
 /**
@@ -41,6 +43,9 @@ public final class RemoteFrameworkConnectionInfo {
     private final boolean useSSL;
     private final List<TrustManager> trustManagers;
     private final int timeout;
+    private final ObjectPoolConfiguration connectionPoolConfiguration;
+    private final boolean multiplexingEnabled;
+    private final boolean compressionEnabled;
 
     /**
      * Creates a new instance of RemoteFrameworkConnectionInfo, using a clear
@@ -79,6 +84,117 @@ public final class RemoteFrameworkConnectionInfo {
      */
     public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
             List<TrustManager> trustManagers, int timeout) {
+        this(host, port, key, useSSL, trustManagers, timeout, null);
+    }
+
+    /**
+     * Creates a new instance of RemoteFrameworkConnectionInfo which keeps the
+     * connections to the remote framework open and reuses them for subsequent
+     * requests.
+     *
+     * @param host
+     *            The host to connect to
+     * @param port
+     *            The port to connect to
+     * @param key
+     *            The remote framework key
+     * @param useSSL
+     *            Set to true if we are to connect via SSL.
+     * @param trustManagers
+     *            List of {@link TrustManager}'s to use for establising the SSL
+     *            connection. May be null or empty, in which case the default
+     *            installed providers for the JVM will be used. Ignored if
+     *            'useSSL' is false.
+     * @param timeout
+     *            The timeout to use (in milliseconds). A value of 0 means
+     *            infinite timeout;
+     * @param connectionPoolConfiguration
+     *            The configuration of the connection pool kept for this remote
+     *            framework. May be null, in which case a new connection is
+     *            opened for every request and closed after it.
+     * @since 1.4
+     */
+    public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
+            List<TrustManager> trustManagers, int timeout,
+            ObjectPoolConfiguration connectionPoolConfiguration) {
+        this(host, port, key, useSSL, trustManagers, timeout, connectionPoolConfiguration, false);
+    }
+
+    /**
+     * Creates a new instance of RemoteFrameworkConnectionInfo which may share
+     * one connection to the remote framework between concurrent operations.
+     *
+     * @param host
+     *            The host to connect to
+     * @param port
+     *            The port to connect to
+     * @param key
+     *            The remote framework key
+     * @param useSSL
+     *            Set to true if we are to connect via SSL.
+     * @param trustManagers
+     *            List of {@link TrustManager}'s to use for establising the SSL
+     *            connection. May be null or empty, in which case the default
+     *            installed providers for the JVM will be used. Ignored if
+     *            'useSSL' is false.
+     * @param timeout
+     *            The timeout to use (in milliseconds). A value of 0 means
+     *            infinite timeout;
+     * @param connectionPoolConfiguration
+     *            The configuration of the connection pool kept for this remote
+     *            framework. May be null, in which case a new connection is
+     *            opened for every request and closed after it.
+     * @param multiplexingEnabled
+     *            Set to true to send all operations over one shared connection
+     *            if the remote framework supports it. The connection pool is
+     *            used only for remote frameworks which don't.
+     * @since 1.4
+     */
+    public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
+            List<TrustManager> trustManagers, int timeout,
+            ObjectPoolConfiguration connectionPoolConfiguration, boolean multiplexingEnabled) {
+        this(host, port, key, useSSL, trustManagers, timeout, connectionPoolConfiguration,
+                multiplexingEnabled, false);
+    }
+
+    /**
+     * Creates a new instance of RemoteFrameworkConnectionInfo which may
+     * compress the shared connection to the remote framework.
+     *
+     * @param host
+     *            The host to connect to
+     * @param port
+     *            The port to connect to
+     * @param key
+     *            The remote framework key
+     * @param useSSL
+     *            Set to true if we are to connect via SSL.
+     * @param trustManagers
+     *            List of {@link TrustManager}'s to use for establising the SSL
+     *            connection. May be null or empty, in which case the default
+     *            installed providers for the JVM will be used. Ignored if
+     *            'useSSL' is false.
+     * @param timeout
+     *            The timeout to use (in milliseconds). A value of 0 means
+     *            infinite timeout;
+     * @param connectionPoolConfiguration
+     *            The configuration of the connection pool kept for this remote
+     *            framework. May be null, in which case a new connection is
+     *            opened for every request and closed after it.
+     * @param multiplexingEnabled
+     *            Set to true to send all operations over one shared connection
+     *            if the remote framework supports it. The connection pool is
+     *            used only for remote frameworks which don't.
+     * @param compressionEnabled
+     *            Set to true to compress the shared connection if the remote
+     *            framework supports it. Ignored if 'multiplexingEnabled' is
+     *            false.
+     * @since 1.4
+     */
+    public RemoteFrameworkConnectionInfo(String host, int port, GuardedString key, boolean useSSL,
+            List<TrustManager> trustManagers, int timeout,
+            ObjectPoolConfiguration connectionPoolConfiguration, boolean multiplexingEnabled,
+            boolean compressionEnabled) {
         Assertions.nullCheck(host, "host");
         Assertions.nullCheck(key, "key");
         this.host = host;
@@ -87,6 +203,15 @@ public final class RemoteFrameworkConnectionInfo {
         this.useSSL = useSSL;
         this.trustManagers = CollectionUtil.newReadOnlyList(trustManagers);
         this.timeout = timeout;
+        if (null != connectionPoolConfiguration) {
+            connectionPoolConfiguration.validate();
+            this.connectionPoolConfiguration =
+                    new ObjectPoolConfiguration(connectionPoolConfiguration);
+        } else {
+            this.connectionPoolConfiguration = null;
+        }
+        this.multiplexingEnabled = multiplexingEnabled;
+        this.compressionEnabled = compressionEnabled;
     }
 
     /**
@@ -145,6 +270,51 @@ public final class RemoteFrameworkConnectionInfo {
         return timeout;
     }
 
+    /**
+     * Returns the configuration of the connection pool or null if the
+     * connections are not pooled.
+     *
+     * @return a copy of the configuration of the connection pool or null.
+     * @since 1.4
+     */
+    public ObjectPoolConfiguration getConnectionPoolConfiguration() {
+        return null != connectionPoolConfiguration ? new ObjectPoolConfiguration(
+                connectionPoolConfiguration) : null;
+    }
+
+    /**
+     * Returns true if the connections to the remote framework are pooled.
+     *
+     * @return true if the connections to the remote framework are pooled.
+     * @since 1.4
+     */
+    public boolean isConnectionPoolingEnabled() {
+        return null != connectionPoolConfiguration;
+    }
+
+    /**
+     * Returns true if concurrent operations may share one connection to the
+     * remote framework.
+     *
+     * @return true if the connection is shared when the remote framework
+     *         supports it.
+     * @since 1.4
+     */
+    public boolean isMultiplexingEnabled() {
+        return multiplexingEnabled;
+    }
+
+    /**
+     * Returns true if the shared connection to the remote framework is
+     * compressed when the remote framework supports it.
+     *
+     * @return true if the shared connection may be compressed.
+     * @since 1.4
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -170,6 +340,17 @@ public final class RemoteFrameworkConnectionInfo {
             if (getTimeout() != other.getTimeout()) {
                 return false;
             }
+            if (null != connectionPoolConfiguration ? !connectionPoolConfiguration
+                    .equals(other.connectionPoolConfiguration)
+                    : null != other.connectionPoolConfiguration) {
+                return false;
+            }
+            if (isMultiplexingEnabled() != other.isMultiplexingEnabled()) {
+                return false;
+            }
+            if (isCompressionEnabled() != other.isCompressionEnabled()) {
+                return false;
+            }
 
             return true;
         }
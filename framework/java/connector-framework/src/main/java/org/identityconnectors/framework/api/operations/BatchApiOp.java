@@ -0,0 +1,66 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.api.operations;
+
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+
+/**
+ * Runs a batch of creates, updates and deletes.
+ * <p/>
+ * Connectors implementing
+ * {@link org.identityconnectors.framework.spi.operations.BatchOp} run the
+ * batch natively, for all the others the framework runs the operations one
+ * by one with {@link CreateApiOp}, {@link UpdateApiOp} and
+ * {@link DeleteApiOp}, spread across the pooled connector instances.
+ *
+ * @since 1.4
+ */
+public interface BatchApiOp extends APIOperation {
+
+    /**
+     * Runs the operations of the batch.
+     * <p/>
+     * A failed operation does not stop the batch, its exception is reported
+     * in the {@link BatchResult} of the operation. This includes an operation
+     * the framework rejects before it reaches the connector.
+     *
+     * @param operations
+     *            the operations to run.
+     * @param options
+     *            additional options that impact the way this operation is run.
+     *            May be null.
+     * @return one {@link BatchResult} per operation, in the order of the
+     *         operations.
+     * @throws RuntimeException
+     *             if a problem occurs that fails the whole batch.
+     */
+    public List<BatchResult> executeBatch(final List<BatchOperation> operations,
+            final OperationOptions options);
+}
@@ -0,0 +1,169 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.common.objects;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.identityconnectors.common.CollectionUtil;
+
+/**
+ * One create, update or delete of a batch.
+ * <p/>
+ * Use the static factory methods to create the operations.
+ *
+ * @see org.identityconnectors.framework.api.operations.BatchApiOp
+ * @since 1.4
+ */
+public final class BatchOperation {
+
+    private final BatchOperationType type;
+    private final ObjectClass objectClass;
+    private final Uid uid;
+    private final Set<Attribute> attributes;
+
+    /**
+     * Public only for serialization; please use the static factory methods.
+     *
+     * @throws IllegalArgumentException
+     *             if the {@link Uid} is missing for an operation other than
+     *             create, or the attributes are missing for an operation
+     *             other than delete.
+     */
+    public BatchOperation(final BatchOperationType type, final ObjectClass objectClass,
+            final Uid uid, final Set<Attribute> attributes) {
+        if (type == null) {
+            throw new IllegalArgumentException("Type may not be null");
+        }
+        if (objectClass == null) {
+            throw new IllegalArgumentException("ObjectClass may not be null");
+        }
+        if (uid == null && type != BatchOperationType.CREATE) {
+            throw new IllegalArgumentException("Uid may not be null for " + type);
+        }
+        if (attributes == null && type != BatchOperationType.DELETE) {
+            throw new IllegalArgumentException("Attributes may not be null for " + type);
+        }
+        this.type = type;
+        this.objectClass = objectClass;
+        this.uid = uid;
+        this.attributes =
+                attributes == null ? Collections.<Attribute> emptySet() : CollectionUtil
+                        .newReadOnlySet(attributes);
+    }
+
+    /**
+     * Creates an object with the attributes.
+     */
+    public static BatchOperation create(final ObjectClass objectClass,
+            final Set<Attribute> createAttributes) {
+        return new BatchOperation(BatchOperationType.CREATE, objectClass, null, createAttributes);
+    }
+
+    /**
+     * Replaces the values of the attributes of the object.
+     */
+    public static BatchOperation update(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> replaceAttributes) {
+        return new BatchOperation(BatchOperationType.UPDATE, objectClass, uid, replaceAttributes);
+    }
+
+    /**
+     * Adds the values to the attributes of the object.
+     */
+    public static BatchOperation addAttributeValues(final ObjectClass objectClass, final Uid uid,
+            final Set<Attribute> valuesToAdd) {
+        return new BatchOperation(BatchOperationType.ADD_ATTRIBUTE_VALUES, objectClass, uid,
+                valuesToAdd);
+    }
+
+    /**
+     * Removes the values from the attributes of the object.
+     */
+    public static BatchOperation removeAttributeValues(final ObjectClass objectClass,
+            final Uid uid, final Set<Attribute> valuesToRemove) {
+        return new BatchOperation(BatchOperationType.REMOVE_ATTRIBUTE_VALUES, objectClass, uid,
+                valuesToRemove);
+    }
+
+    /**
+     * Deletes the object.
+     */
+    public static BatchOperation delete(final ObjectClass objectClass, final Uid uid) {
+        return new BatchOperation(BatchOperationType.DELETE, objectClass, uid, null);
+    }
+
+    public BatchOperationType getType() {
+        return type;
+    }
+
+    public ObjectClass getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Returns the {@link Uid} of the object, null for a create.
+     */
+    public Uid getUid() {
+        return uid;
+    }
+
+    /**
+     * Returns the attributes, empty for a delete.
+     */
+    public Set<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public int hashCode() {
+        return (type.hashCode() * 31 + objectClass.hashCode()) * 31
+                + (uid == null ? 0 : uid.hashCode());
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj instanceof BatchOperation) {
+            final BatchOperation other = (BatchOperation) obj;
+            return type == other.type && objectClass.equals(other.objectClass)
+                    && CollectionUtil.equals(uid, other.uid)
+                    && attributes.equals(other.attributes);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("Type", type);
+        map.put("ObjectClass", objectClass);
+        map.put("Uid", uid);
+        map.put("Attributes", attributes);
+        return map.toString();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.common.objects;
+
+/**
+ * The type of a {@link BatchOperation}.
+ *
+ * @since 1.4
+ */
+public enum BatchOperationType {
+    /**
+     * Create an object, same as
+     * {@link org.identityconnectors.framework.api.operations.CreateApiOp#create}.
+     */
+    CREATE,
+
+    /**
+     * Replace the values of the attributes, same as
+     * {@link org.identityconnectors.framework.api.operations.UpdateApiOp#update}.
+     */
+    UPDATE,
+
+    /**
+     * Add the values to the attributes, same as
+     * {@link org.identityconnectors.framework.api.operations.UpdateApiOp#addAttributeValues}.
+     */
+    ADD_ATTRIBUTE_VALUES,
+
+    /**
+     * Remove the values from the attributes, same as
+     * {@link org.identityconnectors.framework.api.operations.UpdateApiOp#removeAttributeValues}.
+     */
+    REMOVE_ATTRIBUTE_VALUES,
+
+    /**
+     * Delete the object, same as
+     * {@link org.identityconnectors.framework.api.operations.DeleteApiOp#delete}.
+     */
+    DELETE
+}
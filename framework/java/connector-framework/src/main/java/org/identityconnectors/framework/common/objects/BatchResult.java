@@ -0,0 +1,94 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.common.objects;
+
+/**
+ * The outcome of one {@link BatchOperation}: the {@link Uid} of the object
+ * or the exception the operation failed with.
+ *
+ * @see org.identityconnectors.framework.api.operations.BatchApiOp
+ * @since 1.4
+ */
+public final class BatchResult {
+
+    private final Uid uid;
+    private final RuntimeException error;
+
+    /**
+     * Creates the result of a successful operation.
+     *
+     * @param uid
+     *            the {@link Uid} of the created, updated or deleted object.
+     */
+    public BatchResult(final Uid uid) {
+        this(uid, null);
+    }
+
+    /**
+     * Creates the result of a failed operation.
+     *
+     * @param error
+     *            the exception the operation failed with.
+     */
+    public BatchResult(final RuntimeException error) {
+        this(null, error);
+        if (error == null) {
+            throw new IllegalArgumentException("Error may not be null");
+        }
+    }
+
+    /**
+     * Public only for serialization; please use the other constructors.
+     */
+    public BatchResult(final Uid uid, final RuntimeException error) {
+        this.uid = uid;
+        this.error = error;
+    }
+
+    /**
+     * Returns the {@link Uid} of the object, null if the operation failed.
+     */
+    public Uid getUid() {
+        return uid;
+    }
+
+    /**
+     * Returns the exception the operation failed with, null if it
+     * succeeded.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "BatchResult: " + uid : "BatchResult: " + error;
+    }
+}
@@ -23,11 +23,17 @@
  */
 package org.identityconnectors.framework.common.objects;
 
+import java.util.AbstractSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-
-import org.identityconnectors.common.CollectionUtil;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A ConnectorObject represents an object (e.g., an Account or a Group) on the
@@ -38,8 +44,34 @@ import org.identityconnectors.common.CollectionUtil;
  * construct instances of ConnectorObject.
  */
 public final class ConnectorObject {
+
+    /**
+     * The last layout seen per object class. The objects of a search usually
+     * have the same attribute names, so they share the layout.
+     */
+    private static final ConcurrentMap<ObjectClass, Layout> LAYOUTS =
+            new ConcurrentHashMap<ObjectClass, Layout>();
+
+    /**
+     * Upper bound of the object classes with a cached layout.
+     */
+    private static final int MAX_LAYOUTS = 256;
+
+    /**
+     * Objects in a row which must not fit the cached layout of their class
+     * before it is replaced. Objects of mixed shapes keep the layout in place
+     * instead of replacing each other's.
+     */
+    private static final int MAX_MISSES = 16;
+
     final ObjectClass objectClass;
-    final Map<String, Attribute> attributeMap;
+
+    /**
+     * The attributes, at the index of their name in the layout.
+     */
+    private final Attribute[] attributes;
+
+    private final Layout layout;
 
     /**
      * Public only for serialization; please use {@link ConnectorObjectBuilder}.
@@ -58,16 +90,35 @@ public final class ConnectorObject {
             throw new IllegalArgumentException("The set can not be null or empty.");
         }
         this.objectClass = objectClass;
-        // create an easy look map..
-        this.attributeMap = AttributeUtil.toMap(set);
-        // make sure the Uid was added..
-        if (!this.attributeMap.containsKey(Uid.NAME)) {
-            throw new IllegalArgumentException("The Attribute set must contain a 'Uid'.");
-        }
-        // make sure the Name attribute was added..
-        if (!this.attributeMap.containsKey(Name.NAME)) {
-            throw new IllegalArgumentException("The Attribute set must contain a 'Name'.");
+        final Layout shared = LAYOUTS.get(objectClass);
+        Attribute[] values = null == shared ? null : shared.arrange(set);
+        if (null == values) {
+            final Layout own = Layout.of(set);
+            values = own.arrange(set);
+            // make sure the Uid was added..
+            if (own.uid < 0) {
+                throw new IllegalArgumentException("The Attribute set must contain a 'Uid'.");
+            }
+            // make sure the Name attribute was added..
+            if (own.name < 0) {
+                throw new IllegalArgumentException("The Attribute set must contain a 'Name'.");
+            }
+            if (null == shared) {
+                if (LAYOUTS.size() < MAX_LAYOUTS) {
+                    LAYOUTS.putIfAbsent(objectClass, own);
+                }
+            } else if (shared.misses.incrementAndGet() >= MAX_MISSES) {
+                LAYOUTS.replace(objectClass, shared, own);
+            }
+            this.layout = own;
+        } else {
+            // read first, the hits must not write to the shared layout
+            if (shared.misses.get() != 0) {
+                shared.misses.set(0);
+            }
+            this.layout = shared;
         }
+        this.attributes = values;
     }
 
     /**
@@ -76,8 +127,8 @@ public final class ConnectorObject {
      * This includes the {@link Uid} and all {@link OperationalAttributes}.
      */
     public Set<Attribute> getAttributes() {
-        // create a copy/unmodifiable set..
-        return CollectionUtil.newReadOnlySet(this.attributeMap.values());
+        // read-only view, the object has no setters
+        return new AttributeSet();
     }
 
     /**
@@ -85,14 +136,15 @@ public final class ConnectorObject {
      */
     public Attribute getAttributeByName(String name) {
         // no need to clone since it has no setters
-        return this.attributeMap.get(name);
+        final int index = layout.indexOf(name);
+        return index < 0 ? null : attributes[index];
     }
 
     /**
      * Get the native identifier for this object.
      */
     public Uid getUid() {
-        final Attribute uid = this.attributeMap.get(Uid.NAME);
+        final Attribute uid = attributes[layout.uid];
         if (uid instanceof Uid) {
             return (Uid) uid;
         }
@@ -103,7 +155,7 @@ public final class ConnectorObject {
      * Gets the {@link Name} of the object.
      */
     public Name getName() {
-        final Attribute name = this.attributeMap.get(Name.NAME);
+        final Attribute name = attributes[layout.name];
         if (name instanceof Name) {
             return (Name) name;
         }
@@ -124,14 +176,27 @@ public final class ConnectorObject {
             if (!objectClass.equals(other.getObjectClass())) {
                 return false;
             }
-            return CollectionUtil.equals(getAttributes(), other.getAttributes());
+            if (attributes.length != other.attributes.length) {
+                return false;
+            }
+            for (Attribute attribute : attributes) {
+                if (!attribute.equals(other.getAttributeByName(attribute.getName()))) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return getAttributes().hashCode();
+        // same as the hash code of the attribute set
+        int hash = 0;
+        for (Attribute attribute : attributes) {
+            hash += attribute.hashCode();
+        }
+        return hash;
     }
 
     @Override
@@ -145,4 +210,165 @@ public final class ConnectorObject {
         return map.toString();
     }
 
+    /**
+     * Read-only view of the attributes.
+     */
+    private final class AttributeSet extends AbstractSet<Attribute> {
+
+        @Override
+        public Iterator<Attribute> iterator() {
+            return new Iterator<Attribute>() {
+                private int index = 0;
+
+                public boolean hasNext() {
+                    return index < attributes.length;
+                }
+
+                public Attribute next() {
+                    if (index >= attributes.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return attributes[index++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return attributes.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof Attribute) {
+                final Attribute attribute = (Attribute) o;
+                return attribute.equals(getAttributeByName(attribute.getName()));
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return ConnectorObject.this.hashCode();
+        }
+    }
+
+    /**
+     * The attribute names of an object and an open addressing table to look
+     * them up case insensitively, the same way as
+     * {@link String#CASE_INSENSITIVE_ORDER} compares them. The layout is
+     * immutable and shared by the objects with the same attribute names.
+     */
+    private static final class Layout {
+
+        private final String[] names;
+
+        /**
+         * Hash of the folded name of each attribute.
+         */
+        private final int[] hashes;
+
+        /**
+         * Index of the attribute plus one per slot, zero if the slot is empty.
+         */
+        private final int[] table;
+
+        private final int uid;
+
+        private final int name;
+
+        /**
+         * Objects in a row which did not fit this layout while it was cached.
+         */
+        private final AtomicInteger misses = new AtomicInteger();
+
+        private Layout(final String[] names) {
+            this.names = names;
+            this.hashes = new int[names.length];
+            int size = 4;
+            while (size < names.length * 2) {
+                size <<= 1;
+            }
+            this.table = new int[size];
+            for (int i = 0; i < names.length; i++) {
+                hashes[i] = hash(names[i]);
+                int slot = hashes[i] & (table.length - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                table[slot] = i + 1;
+            }
+            this.uid = indexOf(Uid.NAME);
+            this.name = indexOf(Name.NAME);
+        }
+
+        /**
+         * Creates the layout of the distinct attribute names of the set.
+         */
+        static Layout of(final Set<? extends Attribute> set) {
+            final SortedMap<String, String> names =
+                    new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            for (Attribute attribute : set) {
+                if (!names.containsKey(attribute.getName())) {
+                    names.put(attribute.getName(), attribute.getName());
+                }
+            }
+            return new Layout(names.values().toArray(new String[names.size()]));
+        }
+
+        /**
+         * Places the attributes at the index of their names. The last of the
+         * attributes with the same name wins.
+         *
+         * @return null if the names of the set are not the names of the
+         *         layout.
+         */
+        Attribute[] arrange(final Set<? extends Attribute> set) {
+            final Attribute[] values = new Attribute[names.length];
+            int count = 0;
+            for (Attribute attribute : set) {
+                final int index = indexOf(attribute.getName());
+                if (index < 0) {
+                    return null;
+                }
+                if (null == values[index]) {
+                    count++;
+                }
+                values[index] = attribute;
+            }
+            return count == names.length ? values : null;
+        }
+
+        int indexOf(final String attributeName) {
+            if (null == attributeName) {
+                return -1;
+            }
+            final int hash = hash(attributeName);
+            int slot = hash & (table.length - 1);
+            int index;
+            while ((index = table[slot]) != 0) {
+                index--;
+                if (hashes[index] == hash && names[index].equalsIgnoreCase(attributeName)) {
+                    return index;
+                }
+                slot = (slot + 1) & (table.length - 1);
+            }
+            return -1;
+        }
+
+        private static int hash(final String attributeName) {
+            int hash = 0;
+            for (int i = 0; i < attributeName.length(); i++) {
+                hash =
+                        31 * hash
+                                + Character.toLowerCase(Character.toUpperCase(attributeName
+                                        .charAt(i)));
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
 }
@@ -165,7 +165,7 @@ public final class OperationOptions {
         // is an array
         @SuppressWarnings("unchecked")
         Map<String, Object> operationOptionsClone =
-                (Map<String, Object>) SerializerUtil.cloneObject(operationOptions);
+                (Map<String, Object>) SerializerUtil.copyObject(operationOptions);
         this.operationOptions = CollectionUtil.asReadOnlyMap(operationOptionsClone);
     }
 
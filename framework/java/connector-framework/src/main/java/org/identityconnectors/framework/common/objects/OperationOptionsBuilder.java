@@ -58,7 +58,7 @@ public final class OperationOptionsBuilder {
         // is an array
         @SuppressWarnings("unchecked")
         Map<String, Object> operationOptionsClone =
-                (Map<String, Object>) SerializerUtil.cloneObject(options.getOptions());
+                (Map<String, Object>) SerializerUtil.copyObject(options.getOptions());
         this.options = operationOptionsClone;
     }
 
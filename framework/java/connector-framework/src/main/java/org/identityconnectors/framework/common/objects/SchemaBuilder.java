@@ -31,6 +31,7 @@ import java.util.Set;
 import org.identityconnectors.common.Assertions;
 import org.identityconnectors.framework.api.operations.APIOperation;
 import org.identityconnectors.framework.api.operations.AuthenticationApiOp;
+import org.identityconnectors.framework.api.operations.BatchApiOp;
 import org.identityconnectors.framework.api.operations.CreateApiOp;
 import org.identityconnectors.framework.api.operations.DeleteApiOp;
 import org.identityconnectors.framework.api.operations.GetApiOp;
@@ -86,7 +87,8 @@ public final class SchemaBuilder {
         if (AuthenticationApiOp.class.equals(op) || CreateApiOp.class.equals(op)
                 || DeleteApiOp.class.equals(op) || GetApiOp.class.equals(op)
                 || ResolveUsernameApiOp.class.equals(op) || SearchApiOp.class.equals(op)
-                || SyncApiOp.class.equals(op) || UpdateApiOp.class.equals(op)) {
+                || SyncApiOp.class.equals(op) || UpdateApiOp.class.equals(op)
+                || BatchApiOp.class.equals(op)) {
             return true;
         }
         return false;
@@ -97,7 +99,8 @@ public final class SchemaBuilder {
                 || DeleteApiOp.class.equals(op) || GetApiOp.class.equals(op)
                 || ResolveUsernameApiOp.class.equals(op) || ScriptOnConnectorApiOp.class.equals(op)
                 || ScriptOnResourceApiOp.class.equals(op) || SearchApiOp.class.equals(op)
-                || SyncApiOp.class.equals(op) || UpdateApiOp.class.equals(op)) {
+                || SyncApiOp.class.equals(op) || UpdateApiOp.class.equals(op)
+                || BatchApiOp.class.equals(op)) {
             return true;
         }
         return false;
@@ -67,7 +67,7 @@ public final class ScriptContext {
         // 2)does a deep copy
         @SuppressWarnings("unchecked")
         Map<String, Object> scriptArgumentsClone =
-                (Map<String, Object>) SerializerUtil.cloneObject(scriptArguments);
+                (Map<String, Object>) SerializerUtil.copyObject(scriptArguments);
         this.scriptLanguage = scriptLanguage;
         this.scriptText = scriptText;
         this.scriptArguments = CollectionUtil.asReadOnlyMap(scriptArgumentsClone);
@@ -25,12 +25,33 @@ package org.identityconnectors.framework.common.serializer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 
 import org.identityconnectors.common.Base64;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.script.Script;
+import org.identityconnectors.common.security.GuardedByteArray;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.QualifiedUid;
+import org.identityconnectors.framework.common.objects.Uid;
 import org.xml.sax.InputSource;
 
 /**
@@ -38,6 +59,34 @@ import org.xml.sax.InputSource;
  */
 public final class SerializerUtil {
 
+    /**
+     * The serializable types whose instances can't be changed, so a copy can
+     * share them. Only exact classes, a subclass could be mutable.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>();
+
+    static {
+        IMMUTABLE_TYPES.add(String.class);
+        IMMUTABLE_TYPES.add(Boolean.class);
+        IMMUTABLE_TYPES.add(Character.class);
+        IMMUTABLE_TYPES.add(Byte.class);
+        IMMUTABLE_TYPES.add(Integer.class);
+        IMMUTABLE_TYPES.add(Long.class);
+        IMMUTABLE_TYPES.add(Float.class);
+        IMMUTABLE_TYPES.add(Double.class);
+        IMMUTABLE_TYPES.add(BigInteger.class);
+        IMMUTABLE_TYPES.add(BigDecimal.class);
+        IMMUTABLE_TYPES.add(URI.class);
+        IMMUTABLE_TYPES.add(File.class);
+        IMMUTABLE_TYPES.add(Locale.class);
+        IMMUTABLE_TYPES.add(Class.class);
+        IMMUTABLE_TYPES.add(Script.class);
+        IMMUTABLE_TYPES.add(ObjectClass.class);
+        IMMUTABLE_TYPES.add(Uid.class);
+        IMMUTABLE_TYPES.add(Name.class);
+        IMMUTABLE_TYPES.add(QualifiedUid.class);
+    }
+
     private SerializerUtil() {
 
     }
@@ -160,4 +209,93 @@ public final class SerializerUtil {
         return deserializeBinaryObject(bytes);
     }
 
+    /**
+     * Returns a deep copy of the given object, the same as
+     * {@link #cloneObject(Object)} would return.
+     * <p/>
+     * Immutable types are shared and the collections, arrays and guarded
+     * values are copied directly. The copy of a set or a map iterates in the
+     * same order as the original. Only the objects of other types are cloned
+     * with the serializer, which also rejects the types it does not support.
+     *
+     * @param object
+     *            The object.
+     * @return A copy of the object
+     * @since 1.4
+     */
+    public static Object copyObject(Object object) {
+        if (object == null || IMMUTABLE_TYPES.contains(object.getClass())) {
+            return object;
+        }
+        if (object instanceof List) {
+            List<?> list = (List<?>) object;
+            List<Object> rv = new ArrayList<Object>(list.size());
+            for (Object element : list) {
+                rv.add(copyObject(element));
+            }
+            return rv;
+        }
+        if (object instanceof Set && (CollectionUtil.isCaseInsensitiveSet((Set<?>) object)
+                || !(object instanceof SortedSet))) {
+            return copySet((Set<?>) object);
+        }
+        if (object instanceof Map && (CollectionUtil.isCaseInsensitiveMap((Map<?, ?>) object)
+                || !(object instanceof SortedMap))) {
+            return copyMap((Map<?, ?>) object);
+        }
+        if (object.getClass().isArray()) {
+            Class<?> componentType = object.getClass().getComponentType();
+            int length = Array.getLength(object);
+            if (componentType.isPrimitive()) {
+                Object rv = Array.newInstance(componentType, length);
+                System.arraycopy(object, 0, rv, 0, length);
+                return rv;
+            }
+            if (IMMUTABLE_TYPES.contains(componentType) || componentType == Object.class) {
+                Object[] rv = (Object[]) Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    rv[i] = copyObject(Array.get(object, i));
+                }
+                return rv;
+            }
+        }
+        if (object.getClass() == GuardedString.class) {
+            return ((GuardedString) object).copy();
+        }
+        if (object.getClass() == GuardedByteArray.class) {
+            return ((GuardedByteArray) object).copy();
+        }
+        return cloneObject(object);
+    }
+
+    private static Set<?> copySet(Set<?> set) {
+        if (CollectionUtil.isCaseInsensitiveSet(set)) {
+            Set<String> rv = CollectionUtil.newCaseInsensitiveSet();
+            for (Object element : set) {
+                rv.add(String.valueOf(copyObject(element)));
+            }
+            return rv;
+        }
+        Set<Object> rv = new LinkedHashSet<Object>(set.size() * 4 / 3 + 1);
+        for (Object element : set) {
+            rv.add(copyObject(element));
+        }
+        return rv;
+    }
+
+    private static Map<?, ?> copyMap(Map<?, ?> map) {
+        if (CollectionUtil.isCaseInsensitiveMap(map)) {
+            Map<String, Object> rv = CollectionUtil.newCaseInsensitiveMap();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                rv.put(String.valueOf(copyObject(entry.getKey())), copyObject(entry.getValue()));
+            }
+            return rv;
+        }
+        Map<Object, Object> rv = new LinkedHashMap<Object, Object>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            rv.put(copyObject(entry.getKey()), copyObject(entry.getValue()));
+        }
+        return rv;
+    }
+
 }
@@ -58,4 +58,14 @@ public @interface ConnectorClass {
      */
     String[] messageCatalogPaths() default {};
 
+    /**
+     * Whether the queries the {@link org.identityconnectors.framework.common.objects.filter.FilterTranslator}
+     * returns for one search may run at the same time, each on its own
+     * connector instance. The results are still returned in the order of the
+     * queries and without duplicates.
+     *
+     * @since 1.4
+     */
+    boolean parallelQueries() default false;
+
 }
@@ -0,0 +1,65 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.spi.operations;
+
+import java.util.List;
+
+import org.identityconnectors.framework.common.objects.BatchOperation;
+import org.identityconnectors.framework.common.objects.BatchResult;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.spi.Connector;
+
+/**
+ * Operation interface to run a batch of creates, updates and deletes with the
+ * bulk facilities of the target resource.
+ * <p/>
+ * Connectors without this operation still support batches, the framework then
+ * runs the operations one by one with {@link CreateOp}, {@link UpdateOp} and
+ * {@link DeleteOp}.
+ *
+ * @since 1.4
+ */
+public interface BatchOp extends SPIOperation {
+
+    /**
+     * The {@link Connector} developer is responsible for sending the
+     * operations to the target resource and reporting the outcome of each.
+     *
+     * @param operations
+     *            the operations to run, never null nor empty.
+     * @param options
+     *            additional options that impact the way this operation is run.
+     *            If the caller passes null, the framework will convert this
+     *            into an empty set of options, so SPI need not worry about this
+     *            ever being null.
+     * @return one
+     *         {@link org.identityconnectors.framework.common.objects.BatchResult}
+     *         per operation, in the order of the operations. The exception of
+     *         a failed operation goes in its result rather than being thrown.
+     */
+    List<BatchResult> executeBatch(final List<BatchOperation> operations,
+            final OperationOptions options);
+}
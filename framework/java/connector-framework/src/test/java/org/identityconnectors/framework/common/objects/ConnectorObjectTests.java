@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 ForgeRock AS. All Rights Reserved
+ *
+ * The contents of this file are subject to the terms
+ * of the Common Development and Distribution License
+ * (the License). You may not use this file except in
+ * compliance with the License.
+ *
+ * You can obtain a copy of the License at
+ * http://forgerock.org/license/CDDLv1.0.html
+ * See the License for the specific language governing
+ * permission and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL
+ * Header Notice in each file and include the License file
+ * at http://forgerock.org/license/CDDLv1.0.html
+ * If applicable, add the following below the CDDL Header,
+ * with the fields enclosed by brackets [] replaced by
+ * your own identifying information:
+ * "Portions Copyrighted [year] [name of copyright owner]"
+ */
+
+
+package org.identityconnectors.framework.common.objects;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class ConnectorObjectTests {
+
+    private static Set<Attribute> newAttributes(String id, String... names) {
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(new Uid(id));
+        attributes.add(new Name("name" + id));
+        for (String name : names) {
+            attributes.add(AttributeBuilder.build(name, name + id));
+        }
+        return attributes;
+    }
+
+    @Test
+    public void testGetAttributeByName() {
+        Set<Attribute> attributes = newAttributes("1", "givenName", "sn", "mail");
+        ConnectorObject object = new ConnectorObject(ObjectClass.ACCOUNT, attributes);
+        assertEquals(object.getUid().getUidValue(), "1");
+        assertEquals(object.getName().getNameValue(), "name1");
+        for (Attribute attribute : attributes) {
+            assertSame(object.getAttributeByName(attribute.getName()), attribute);
+            assertSame(object.getAttributeByName(attribute.getName().toUpperCase()), attribute);
+            assertSame(object.getAttributeByName(attribute.getName().toLowerCase()), attribute);
+        }
+        assertNull(object.getAttributeByName("cn"));
+        assertNull(object.getAttributeByName("mai"));
+        assertNull(object.getAttributeByName(null));
+    }
+
+    @Test
+    public void testChangingShapes() {
+        // the objects of the same class do not have to have the same names
+        String[][] shapes = { { "a", "b", "c" }, { "a", "b" }, { "a", "b", "d" }, {},
+            { "a", "b", "c" } };
+        for (int i = 0; i < shapes.length; i++) {
+            Set<Attribute> attributes = newAttributes(Integer.toString(i), shapes[i]);
+            ConnectorObject object = new ConnectorObject(ObjectClass.GROUP, attributes);
+            assertEquals(object.getAttributes(), attributes);
+            for (String name : new String[] { "a", "b", "c", "d" }) {
+                assertEquals(object.getAttributeByName(name), AttributeUtil.find(name, attributes));
+            }
+        }
+    }
+
+    @Test
+    public void testMixedShapes() {
+        // alternating shapes first, then a long run of a new one
+        ObjectClass objectClass = new ObjectClass("mixedShapes");
+        String[][] shapes = { { "a", "b" }, { "c" } };
+        for (int i = 0; i < 100; i++) {
+            String[] names = i < 50 ? shapes[i % 2] : new String[] { "d", "e" };
+            Set<Attribute> attributes = newAttributes(Integer.toString(i), names);
+            ConnectorObject object = new ConnectorObject(objectClass, attributes);
+            assertEquals(object.getAttributes(), attributes);
+            for (String name : new String[] { "a", "b", "c", "d", "e" }) {
+                assertEquals(object.getAttributeByName(name), AttributeUtil.find(name, attributes));
+            }
+        }
+    }
+
+    @Test
+    public void testSameNameDifferentCase() {
+        Set<Attribute> attributes = newAttributes("1");
+        Attribute lower = AttributeBuilder.build("mail", "a@example.com");
+        Attribute upper = AttributeBuilder.build("MAIL", "b@example.com");
+        attributes.add(lower);
+        attributes.add(upper);
+        assertEquals(attributes.size(), 4);
+        ConnectorObject object = new ConnectorObject(ObjectClass.ACCOUNT, attributes);
+        assertEquals(object.getAttributes().size(), 3);
+        Attribute mail = object.getAttributeByName("Mail");
+        assertTrue(mail == lower || mail == upper);
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        Set<Attribute> attributes = newAttributes("1", "givenName", "sn");
+        ConnectorObject object = new ConnectorObject(ObjectClass.ACCOUNT, attributes);
+        ConnectorObject same = new ConnectorObject(ObjectClass.ACCOUNT, new HashSet<Attribute>(attributes));
+        assertEquals(object, same);
+        assertEquals(object.hashCode(), same.hashCode());
+        assertEquals(object.hashCode(), attributes.hashCode());
+        assertEquals(object.getAttributes().hashCode(), attributes.hashCode());
+        assertEquals(attributes, object.getAttributes());
+
+        assertFalse(object.equals(new ConnectorObject(ObjectClass.GROUP, attributes)));
+        assertFalse(object.equals(new ConnectorObject(ObjectClass.ACCOUNT, newAttributes("1",
+                "givenName"))));
+        assertFalse(object.equals(new ConnectorObject(ObjectClass.ACCOUNT, newAttributes("1",
+                "givenName", "cn"))));
+        assertFalse(object.equals(new ConnectorObject(ObjectClass.ACCOUNT, newAttributes("2",
+                "givenName", "sn"))));
+    }
+
+    @Test
+    public void testReadOnlyAttributes() {
+        ConnectorObject object = new ConnectorObject(ObjectClass.ACCOUNT, newAttributes("1", "sn"));
+        try {
+            object.getAttributes().add(AttributeBuilder.build("cn"));
+            fail("The attributes must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            object.getAttributes().clear();
+            fail("The attributes must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(object.getAttributes().size(), 3);
+    }
+
+    @Test
+    public void testRequiredAttributes() {
+        ObjectClass objectClass = new ObjectClass("required");
+        new ConnectorObject(objectClass, newAttributes("1", "sn"));
+        Set<Attribute> attributes = newAttributes("2", "sn");
+        attributes.remove(new Uid("2"));
+        try {
+            new ConnectorObject(objectClass, attributes);
+            fail("The Uid is required");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        attributes = newAttributes("3", "sn");
+        attributes.remove(new Name("name3"));
+        try {
+            new ConnectorObject(objectClass, attributes);
+            fail("The Name is required");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(new ConnectorObject(objectClass, newAttributes("4", "sn")).getUid()
+                .getUidValue(), "4");
+    }
+}